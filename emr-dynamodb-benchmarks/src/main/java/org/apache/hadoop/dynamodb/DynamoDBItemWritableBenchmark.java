@@ -0,0 +1,84 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link DynamoDBItemWritable} write and readFields, as done for every item that is
+ * shuffled or written to a SequenceFile.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DynamoDBItemWritableBenchmark {
+
+  @Param({"SMALL_FLAT", "WIDE", "DEEPLY_NESTED", "BINARY_HEAVY"})
+  public ItemShape shape;
+
+  @Param({"false", "true"})
+  public boolean binaryFormat;
+
+  private final DataOutputBuffer out = new DataOutputBuffer();
+  private final DataInputBuffer in = new DataInputBuffer();
+  private DynamoDBItemWritable writable;
+  private DynamoDBItemWritable target;
+  private byte[] serialized;
+
+  @Setup
+  public void setup() throws IOException {
+    Configuration conf = new Configuration(false);
+    conf.setBoolean(DynamoDBConstants.ITEM_WRITABLE_BINARY_FORMAT, binaryFormat);
+    writable = new DynamoDBItemWritable(shape.newItems(1).get(0));
+    writable.setConf(conf);
+    target = new DynamoDBItemWritable();
+
+    out.reset();
+    writable.write(out);
+    serialized = new byte[out.getLength()];
+    System.arraycopy(out.getData(), 0, serialized, 0, out.getLength());
+  }
+
+  @Benchmark
+  public int write() throws IOException {
+    out.reset();
+    writable.write(out);
+    return out.getLength();
+  }
+
+  @Benchmark
+  public DynamoDBItemWritable readFields() throws IOException {
+    in.reset(serialized, serialized.length);
+    target.readFields(in);
+    return target;
+  }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the streaming item JSON adapters registered in {@link DynamoDBUtil#getGson()} with the
+ * reflective Gson serialization they replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemJsonBenchmark {
+
+  @Param({"SMALL_FLAT", "WIDE", "DEEPLY_NESTED", "BINARY_HEAVY"})
+  public ItemShape shape;
+
+  private Gson streaming;
+  private Gson reflective;
+  private Map<String, AttributeValue> item;
+  private String json;
+
+  @Setup
+  public void setup() {
+    streaming = DynamoDBUtil.getGson();
+    reflective = new GsonBuilder()
+        .registerTypeAdapter(ByteBuffer.class, new ReflectiveByteBufferAdapter())
+        .disableHtmlEscaping()
+        .create();
+    item = shape.newItems(1).get(0);
+    json = streaming.toJson(item, DynamoDBItemWritable.type);
+  }
+
+  @Benchmark
+  public String writeStreaming() {
+    return streaming.toJson(item, DynamoDBItemWritable.type);
+  }
+
+  @Benchmark
+  public String writeReflective() {
+    return reflective.toJson(item, DynamoDBItemWritable.type);
+  }
+
+  @Benchmark
+  public Map<String, AttributeValue> readStreaming() {
+    return streaming.fromJson(json, DynamoDBItemWritable.type);
+  }
+
+  @Benchmark
+  public Map<String, AttributeValue> readReflective() {
+    return reflective.fromJson(json, DynamoDBItemWritable.type);
+  }
+
+  /**
+   * The ByteBuffer handling DynamoDBUtil used before the streaming adapters.
+   */
+  private static class ReflectiveByteBufferAdapter implements JsonSerializer<ByteBuffer>,
+      JsonDeserializer<ByteBuffer> {
+
+    @Override
+    public JsonElement serialize(ByteBuffer byteBuffer, Type type,
+        JsonSerializationContext context) {
+      return new JsonPrimitive(DynamoDBUtil.base64EncodeByteArray(byteBuffer.array()));
+    }
+
+    @Override
+    public ByteBuffer deserialize(JsonElement jsonElement, Type type,
+        JsonDeserializationContext context) {
+      return DynamoDBUtil.base64StringToByteBuffer(jsonElement.getAsString());
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Realistic item shapes the benchmarks are parameterized with.
+ */
+public enum ItemShape {
+
+  /** A handful of scalar attributes, the most common table layout. */
+  SMALL_FLAT {
+    @Override
+    Map<String, AttributeValue> newItem(Random random) {
+      Map<String, AttributeValue> item = keys(random);
+      item.put("name", new AttributeValue(randomString(random, 16)));
+      item.put("count", new AttributeValue().withN(Integer.toString(random.nextInt())));
+      item.put("active", new AttributeValue().withBOOL(random.nextBoolean()));
+      return item;
+    }
+  },
+
+  /** Fifty attributes of mixed scalar and set types. */
+  WIDE {
+    @Override
+    Map<String, AttributeValue> newItem(Random random) {
+      Map<String, AttributeValue> item = keys(random);
+      for (int i = 0; i < 50; i++) {
+        switch (i % 4) {
+          case 0:
+            item.put("s" + i, new AttributeValue(randomString(random, 24)));
+            break;
+          case 1:
+            item.put("n" + i, new AttributeValue().withN(Double.toString(random.nextDouble())));
+            break;
+          case 2:
+            item.put("ss" + i, new AttributeValue().withSS(randomString(random, 8),
+                randomString(random, 8), randomString(random, 8)));
+            break;
+          default:
+            item.put("ns" + i, new AttributeValue().withNS(Long.toString(random.nextLong()),
+                Long.toString(random.nextLong())));
+        }
+      }
+      return item;
+    }
+  },
+
+  /** Documents nested four levels deep through maps and lists. */
+  DEEPLY_NESTED {
+    @Override
+    Map<String, AttributeValue> newItem(Random random) {
+      Map<String, AttributeValue> item = keys(random);
+      item.put("document", nested(random, 4));
+      return item;
+    }
+
+    private AttributeValue nested(Random random, int depth) {
+      if (depth == 0) {
+        return new AttributeValue(randomString(random, 12));
+      }
+      Map<String, AttributeValue> map = new HashMap<>();
+      List<AttributeValue> list = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        map.put("field" + i, nested(random, depth - 1));
+        list.add(new AttributeValue().withN(Integer.toString(random.nextInt(1000))));
+      }
+      map.put("list", new AttributeValue().withL(list));
+      return new AttributeValue().withM(map);
+    }
+  },
+
+  /** Binary payloads, e.g. compressed blobs, next to a binary set. */
+  BINARY_HEAVY {
+    @Override
+    Map<String, AttributeValue> newItem(Random random) {
+      Map<String, AttributeValue> item = keys(random);
+      item.put("payload", new AttributeValue().withB(randomBytes(random, 8 * 1024)));
+      item.put("chunks", new AttributeValue().withBS(randomBytes(random, 512),
+          randomBytes(random, 512), randomBytes(random, 512), randomBytes(random, 512)));
+      return item;
+    }
+  };
+
+  abstract Map<String, AttributeValue> newItem(Random random);
+
+  /**
+   * Builds {@code count} items of this shape from a fixed seed, so runs are comparable.
+   */
+  public List<Map<String, AttributeValue>> newItems(int count) {
+    Random random = new Random(count);
+    List<Map<String, AttributeValue>> items = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      items.add(newItem(random));
+    }
+    return items;
+  }
+
+  private static Map<String, AttributeValue> keys(Random random) {
+    Map<String, AttributeValue> item = new HashMap<>();
+    item.put("id", new AttributeValue(randomString(random, 20)));
+    item.put("timestamp", new AttributeValue().withN(Long.toString(random.nextLong())));
+    return item;
+  }
+
+  private static String randomString(Random random, int length) {
+    StringBuilder builder = new StringBuilder(length);
+    for (int i = 0; i < length; i++) {
+      builder.append((char) ('a' + random.nextInt(26)));
+    }
+    return builder.toString();
+  }
+
+  private static ByteBuffer randomBytes(Random random, int length) {
+    byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return ByteBuffer.wrap(bytes);
+  }
+}
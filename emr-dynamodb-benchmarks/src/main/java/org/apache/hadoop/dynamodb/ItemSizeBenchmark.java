@@ -0,0 +1,106 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link DynamoDBUtil#getItemSizeBytes}, computed for every item handed to the writer,
+ * against the String.getBytes sizing it replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ItemSizeBenchmark {
+
+  @Param({"SMALL_FLAT", "WIDE", "DEEPLY_NESTED", "BINARY_HEAVY"})
+  public ItemShape shape;
+
+  private Map<String, AttributeValue> item;
+
+  @Setup
+  public void setup() {
+    item = shape.newItems(1).get(0);
+  }
+
+  @Benchmark
+  public int getItemSizeBytes() {
+    return DynamoDBUtil.getItemSizeBytes(item);
+  }
+
+  @Benchmark
+  public int getItemSizeBytesWithGetBytes() {
+    int itemSize = 0;
+    for (Entry<String, AttributeValue> entry : item.entrySet()) {
+      itemSize += entry.getKey().getBytes(StandardCharsets.UTF_8).length
+          + getAttributeSizeWithGetBytes(entry.getValue());
+    }
+    return itemSize;
+  }
+
+  /**
+   * The attribute sizing DynamoDBUtil used before counting UTF-8 bytes without encoding.
+   */
+  private static int getAttributeSizeWithGetBytes(AttributeValue att) {
+    int byteSize = 0;
+    if (att.getN() != null) {
+      byteSize += att.getN().getBytes(StandardCharsets.UTF_8).length;
+    } else if (att.getS() != null) {
+      byteSize += att.getS().getBytes(StandardCharsets.UTF_8).length;
+    } else if (att.getB() != null) {
+      byteSize += att.getB().array().length;
+    } else if (att.getNS() != null) {
+      for (String number : att.getNS()) {
+        byteSize += number.getBytes(StandardCharsets.UTF_8).length;
+      }
+    } else if (att.getSS() != null) {
+      for (String string : att.getSS()) {
+        byteSize += string.getBytes(StandardCharsets.UTF_8).length;
+      }
+    } else if (att.getBS() != null) {
+      for (ByteBuffer byteBuffer : att.getBS()) {
+        byteSize += byteBuffer.array().length;
+      }
+    } else if (att.getM() != null) {
+      for (Entry<String, AttributeValue> entry : att.getM().entrySet()) {
+        byteSize += getAttributeSizeWithGetBytes(entry.getValue())
+            + entry.getKey().getBytes(StandardCharsets.UTF_8).length;
+      }
+    } else if (att.getL() != null) {
+      for (AttributeValue entry : att.getL()) {
+        byteSize += getAttributeSizeWithGetBytes(entry);
+      }
+    }
+    return byteSize;
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.preader;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.dynamodb.DynamoDBConstants;
+import org.apache.hadoop.dynamodb.ItemShape;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link PageResultMultiplexer#next()} for the record reader thread while a number of
+ * read workers keep pushing pages, as in a parallel scan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageResultMultiplexerBenchmark {
+
+  private static final int ITEMS_PER_PAGE = 100;
+
+  @Param({"1", "4", "16"})
+  public int producers;
+
+  private PageResultMultiplexer<Map<String, AttributeValue>> mux;
+  private List<Thread> producerThreads;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    mux = new PageResultMultiplexer<>(DynamoDBConstants.PSCAN_SEGMENT_BATCH_SIZE,
+        DynamoDBConstants.PSCAN_MULTIPLEXER_CAPACITY);
+    final List<Map<String, AttributeValue>> items = ItemShape.SMALL_FLAT.newItems(ITEMS_PER_PAGE);
+
+    producerThreads = new ArrayList<>(producers);
+    for (int i = 0; i < producers; i++) {
+      Thread producer = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          while (!Thread.currentThread().isInterrupted()) {
+            if (!mux.addPageResults(new PageResults<>(items, null))) {
+              return;
+            }
+          }
+        }
+      }, "MuxProducer-" + i);
+      producer.setDaemon(true);
+      producer.start();
+      producerThreads.add(producer);
+    }
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() throws InterruptedException {
+    for (Thread producer : producerThreads) {
+      producer.interrupt();
+    }
+    mux.setDraining(true);
+    // Unblock producers waiting on a full mux
+    try {
+      while (mux.next() != null) {
+        // discard
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    for (Thread producer : producerThreads) {
+      producer.join();
+    }
+  }
+
+  @Benchmark
+  public Map<String, AttributeValue> next() throws IOException {
+    return mux.next();
+  }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.preader;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.dynamodb.util.TimeSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link TokenBucket#acquire} as the read workers of a task contend on the shared bucket.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenBucketBenchmark {
+
+  private TokenBucket bucket;
+
+  @Setup
+  public void setup() {
+    // A refill rate high enough that acquiring never starves, so only the locking is measured
+    bucket = new TokenBucket(1e9, 1e9, new TimeSource());
+  }
+
+  @Benchmark
+  @Threads(1)
+  public double acquireUncontended() {
+    return bucket.acquire(1, 10);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public double acquire4Threads() {
+    return bucket.acquire(1, 10);
+  }
+
+  @Benchmark
+  @Threads(16)
+  public double acquire16Threads() {
+    return bucket.acquire(1, 10);
+  }
+}
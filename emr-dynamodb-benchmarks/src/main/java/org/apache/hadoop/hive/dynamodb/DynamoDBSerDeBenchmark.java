@@ -0,0 +1,132 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.hive.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.google.common.base.Joiner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.dynamodb.DynamoDBConstants;
+import org.apache.hadoop.dynamodb.DynamoDBItemWritable;
+import org.apache.hadoop.dynamodb.ItemShape;
+import org.apache.hadoop.dynamodb.type.DynamoDBTypeConstants;
+import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.Writable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the Hive row conversions: {@link DynamoDBObjectInspector#getStructFieldsDataAsList} on
+ * every row read from a table and {@link DynamoDBSerDe#serialize} on every row written to one.
+ *
+ * <p>Each top level attribute of the item is mapped to a column of the matching Hive type. Shapes
+ * with attributes Hive cannot type, i.e. documents, are read through an item map column instead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DynamoDBSerDeBenchmark {
+
+  private static final String ITEM_COLUMN = "item";
+
+  @Param({"SMALL_FLAT", "WIDE", "DEEPLY_NESTED", "BINARY_HEAVY"})
+  public ItemShape shape;
+
+  private DynamoDBSerDe serde;
+  private StructObjectInspector objectInspector;
+  private DynamoDBItemWritable row;
+
+  @Setup
+  public void setup() throws SerDeException {
+    Map<String, AttributeValue> item = shape.newItems(1).get(0);
+    List<String> columns = new ArrayList<>();
+    List<String> columnTypes = new ArrayList<>();
+    List<String> columnMapping = new ArrayList<>();
+    List<String> typeMapping = new ArrayList<>();
+    boolean needsItemColumn = false;
+
+    for (Entry<String, AttributeValue> attribute : item.entrySet()) {
+      String name = attribute.getKey();
+      AttributeValue value = attribute.getValue();
+      String hiveType;
+      if (value.getS() != null) {
+        hiveType = "string";
+      } else if (value.getN() != null) {
+        hiveType = "double";
+      } else if (value.getB() != null) {
+        hiveType = "binary";
+      } else if (value.getBOOL() != null) {
+        hiveType = "boolean";
+      } else if (!value.getSS().isEmpty()) {
+        hiveType = "array<string>";
+        typeMapping.add(name + ":" + DynamoDBTypeConstants.STRING_SET);
+      } else if (!value.getNS().isEmpty()) {
+        hiveType = "array<double>";
+        typeMapping.add(name + ":" + DynamoDBTypeConstants.NUMBER_SET);
+      } else if (!value.getBS().isEmpty()) {
+        hiveType = "array<binary>";
+        typeMapping.add(name + ":" + DynamoDBTypeConstants.BINARY_SET);
+      } else {
+        needsItemColumn = true;
+        continue;
+      }
+      columns.add(name);
+      columnTypes.add(hiveType);
+      columnMapping.add(name + ":" + name);
+    }
+    if (needsItemColumn) {
+      columns.add(ITEM_COLUMN);
+      columnTypes.add("map<string,string>");
+    }
+
+    Properties tbl = new Properties();
+    tbl.setProperty(serdeConstants.LIST_COLUMNS, Joiner.on(',').join(columns));
+    tbl.setProperty(serdeConstants.LIST_COLUMN_TYPES, Joiner.on(',').join(columnTypes));
+    tbl.setProperty(DynamoDBConstants.DYNAMODB_COLUMN_MAPPING, Joiner.on(',').join(columnMapping));
+    tbl.setProperty(DynamoDBConstants.DYNAMODB_TYPE_MAPPING, Joiner.on(',').join(typeMapping));
+
+    serde = new DynamoDBSerDe();
+    serde.initialize(null, tbl);
+    objectInspector = (StructObjectInspector) serde.getObjectInspector();
+    row = new DynamoDBItemWritable(item);
+  }
+
+  @Benchmark
+  public List<Object> getStructFieldsDataAsList() {
+    return objectInspector.getStructFieldsDataAsList(row);
+  }
+
+  @Benchmark
+  public Writable serialize() throws SerDeException {
+    return serde.serialize(row, objectInspector);
+  }
+}
@@ -0,0 +1,275 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Streaming replacement for the reflective Gson serialization of {@link AttributeValue}.
+ *
+ * <p>The JSON produced is the one the reflective adapter produces, i.e. the AttributeValue field
+ * names ("s", "n", "b", "sS", "nS", "bS", "m", "l", "nULLValue" and "bOOL") in declaration order
+ * with unset fields omitted, so previously written data stays readable in both directions.
+ */
+final class AttributeValueTypeAdapter extends TypeAdapter<AttributeValue> {
+
+  private static final Base64.Encoder BASE64_ENCODER = Base64.getEncoder();
+
+  @Override
+  public void write(JsonWriter out, AttributeValue value) throws IOException {
+    if (value == null) {
+      out.nullValue();
+      return;
+    }
+
+    out.beginObject();
+    if (value.getS() != null) {
+      out.name("s").value(value.getS());
+    }
+    if (value.getN() != null) {
+      out.name("n").value(value.getN());
+    }
+    if (value.getB() != null) {
+      out.name("b");
+      writeBinary(out, value.getB());
+    }
+    List<String> ss = DynamoDBUtil.explicitList(value.getSS());
+    if (ss != null) {
+      out.name("sS");
+      writeStrings(out, ss);
+    }
+    List<String> ns = DynamoDBUtil.explicitList(value.getNS());
+    if (ns != null) {
+      out.name("nS");
+      writeStrings(out, ns);
+    }
+    List<ByteBuffer> bs = DynamoDBUtil.explicitList(value.getBS());
+    if (bs != null) {
+      out.name("bS").beginArray();
+      for (ByteBuffer element : bs) {
+        writeBinary(out, element);
+      }
+      out.endArray();
+    }
+    if (value.getM() != null) {
+      out.name("m");
+      writeItem(out, value.getM());
+    }
+    List<AttributeValue> l = DynamoDBUtil.explicitList(value.getL());
+    if (l != null) {
+      out.name("l").beginArray();
+      for (AttributeValue element : l) {
+        write(out, element);
+      }
+      out.endArray();
+    }
+    if (value.getNULL() != null) {
+      out.name("nULLValue").value(value.getNULL());
+    }
+    if (value.getBOOL() != null) {
+      out.name("bOOL").value(value.getBOOL());
+    }
+    out.endObject();
+  }
+
+  @Override
+  public AttributeValue read(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+
+    AttributeValue value = new AttributeValue();
+    in.beginObject();
+    while (in.hasNext()) {
+      String name = in.nextName();
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        continue;
+      }
+      switch (name) {
+        case "s":
+          value.setS(readString(in));
+          break;
+        case "n":
+          value.setN(readString(in));
+          break;
+        case "b":
+          value.setB(readBinary(in));
+          break;
+        case "sS":
+          value.setSS(readStrings(in));
+          break;
+        case "nS":
+          value.setNS(readStrings(in));
+          break;
+        case "bS":
+          List<ByteBuffer> bs = new ArrayList<>();
+          in.beginArray();
+          while (in.hasNext()) {
+            bs.add(readBinary(in));
+          }
+          in.endArray();
+          value.setBS(bs);
+          break;
+        case "m":
+          value.setM(readItem(in));
+          break;
+        case "l":
+          List<AttributeValue> l = new ArrayList<>();
+          in.beginArray();
+          while (in.hasNext()) {
+            l.add(read(in));
+          }
+          in.endArray();
+          value.setL(l);
+          break;
+        case "nULLValue":
+          value.setNULL(readBoolean(in));
+          break;
+        case "bOOL":
+          value.setBOOL(readBoolean(in));
+          break;
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+    return value;
+  }
+
+  private void writeItem(JsonWriter out, Map<String, AttributeValue> item) throws IOException {
+    if (item == null) {
+      out.nullValue();
+      return;
+    }
+    out.beginObject();
+    for (Entry<String, AttributeValue> entry : item.entrySet()) {
+      out.name(entry.getKey());
+      write(out, entry.getValue());
+    }
+    out.endObject();
+  }
+
+  private Map<String, AttributeValue> readItem(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    Map<String, AttributeValue> item = new LinkedHashMap<>();
+    in.beginObject();
+    while (in.hasNext()) {
+      String name = in.nextName();
+      item.put(name, read(in));
+    }
+    in.endObject();
+    return item;
+  }
+
+  /**
+   * Adapter for whole items, sharing the attribute value adapter for the values.
+   */
+  static final class ItemTypeAdapter extends TypeAdapter<Map<String, AttributeValue>> {
+
+    private final AttributeValueTypeAdapter valueAdapter;
+
+    ItemTypeAdapter(AttributeValueTypeAdapter valueAdapter) {
+      this.valueAdapter = valueAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, Map<String, AttributeValue> item) throws IOException {
+      valueAdapter.writeItem(out, item);
+    }
+
+    @Override
+    public Map<String, AttributeValue> read(JsonReader in) throws IOException {
+      return valueAdapter.readItem(in);
+    }
+  }
+
+  private static void writeStrings(JsonWriter out, List<String> strings) throws IOException {
+    out.beginArray();
+    for (String string : strings) {
+      out.value(string);
+    }
+    out.endArray();
+  }
+
+  private static List<String> readStrings(JsonReader in) throws IOException {
+    List<String> strings = new ArrayList<>();
+    in.beginArray();
+    while (in.hasNext()) {
+      if (in.peek() == JsonToken.NULL) {
+        in.nextNull();
+        strings.add(null);
+      } else {
+        strings.add(readString(in));
+      }
+    }
+    in.endArray();
+    return strings;
+  }
+
+  /**
+   * Encodes the remaining bytes of the buffer, without copying them when it wraps a whole array.
+   */
+  private static void writeBinary(JsonWriter out, ByteBuffer buffer) throws IOException {
+    if (buffer == null) {
+      out.nullValue();
+    } else if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+        && buffer.remaining() == buffer.array().length) {
+      out.value(BASE64_ENCODER.encodeToString(buffer.array()));
+    } else {
+      ByteBuffer encoded = BASE64_ENCODER.encode(buffer.duplicate());
+      out.value(new String(encoded.array(), 0, encoded.remaining(), StandardCharsets.ISO_8859_1));
+    }
+  }
+
+  private static ByteBuffer readBinary(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    // Decoded with commons-codec, which is as lenient as the previous deserializer
+    return DynamoDBUtil.base64StringToByteBuffer(in.nextString());
+  }
+
+  private static String readString(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.BOOLEAN) {
+      return Boolean.toString(in.nextBoolean());
+    }
+    return in.nextString();
+  }
+
+  private static Boolean readBoolean(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.STRING) {
+      return Boolean.parseBoolean(in.nextString());
+    }
+    return in.nextBoolean();
+  }
+}
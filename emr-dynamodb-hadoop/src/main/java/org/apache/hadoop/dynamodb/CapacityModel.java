@@ -0,0 +1,236 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndexDescription;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.LocalSecondaryIndexDescription;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Predicts the capacity units DynamoDB charges for reads and writes, following
+ * https://docs.aws.amazon.com/amazondynamodb/latest/developerguide/ProvisionedThroughput.html.
+ *
+ * <p>A write consumes a write unit per started KB of the item from the table, and the same for
+ * the projection of the item into every index whose keys the item has. Local secondary indexes
+ * share the throughput of the table, while global secondary indexes have their own, so the write
+ * units of an item are those of the table and its local indexes, or those of the global index it
+ * fills fastest relative to the throughput of the table, whichever are more.
+ *
+ * <p>A Query or Scan page consumes a read unit per started 4 KB of all the items it reads, and
+ * half of that when eventually consistent, as all reads of the connector are.
+ */
+public class CapacityModel {
+
+  private static final Log log = LogFactory.getLog(CapacityModel.class);
+
+  private final Set<String> tableKeys;
+  private final List<IndexModel> localIndexes = new ArrayList<>();
+  private final List<IndexModel> globalIndexes = new ArrayList<>();
+
+  public CapacityModel(TableDescription table) {
+    tableKeys = getKeyNames(table.getKeySchema());
+    if (table.getLocalSecondaryIndexes() != null) {
+      for (LocalSecondaryIndexDescription index : table.getLocalSecondaryIndexes()) {
+        localIndexes.add(new IndexModel(getKeyNames(index.getKeySchema()),
+            index.getProjection(), 1.0));
+      }
+    }
+    if (table.getGlobalSecondaryIndexes() != null) {
+      double tableWriteUnits = getWriteCapacityUnits(table.getProvisionedThroughput());
+      for (GlobalSecondaryIndexDescription index : table.getGlobalSecondaryIndexes()) {
+        // On-demand indexes scale with their writes, and don't limit the writes to the table
+        double indexWriteUnits = getWriteCapacityUnits(index.getProvisionedThroughput());
+        if (tableWriteUnits > 0 && indexWriteUnits > 0) {
+          globalIndexes.add(new IndexModel(getKeyNames(index.getKeySchema()),
+              index.getProjection(), tableWriteUnits / indexWriteUnits));
+        }
+      }
+    }
+    log.info("Capacity model of table " + table.getTableName() + ": " + localIndexes.size()
+        + " local and " + globalIndexes.size() + " provisioned global secondary indexes");
+  }
+
+  /**
+   * @param deletion whether the item is only the key of an item to delete, whose size is unknown
+   * @return the write units writing the item consumes of the throughput of the table, counting
+   *     those of global secondary indexes relative to the throughput of the table
+   */
+  public double getWriteUnits(Map<String, AttributeValue> item, boolean deletion) {
+    return getWriteUnits(item, deletion ? 0 : DynamoDBUtil.getItemSizeBytes(item), deletion);
+  }
+
+  /**
+   * @param itemBytes the size of the item, as computed by {@link #getItemSizeBytes(Map)}, ignored
+   *     for deletions
+   * @see #getWriteUnits(Map, boolean)
+   */
+  public double getWriteUnits(Map<String, AttributeValue> item, int itemBytes, boolean deletion) {
+    if (deletion) {
+      // The deleted item may have been in any of the indexes
+      double units = 1 + localIndexes.size();
+      for (IndexModel index : globalIndexes) {
+        units = Math.max(units, index.throughputRatio);
+      }
+      return units;
+    }
+
+    double units = getWriteUnits(itemBytes);
+    for (IndexModel index : localIndexes) {
+      if (index.contains(item)) {
+        units += getWriteUnits(index.getProjectedSizeBytes(item, itemBytes, tableKeys));
+      }
+    }
+    for (IndexModel index : globalIndexes) {
+      if (index.contains(item)) {
+        units = Math.max(units, getWriteUnits(index.getProjectedSizeBytes(item, itemBytes,
+            tableKeys)) * index.throughputRatio);
+      }
+    }
+    return units;
+  }
+
+  /**
+   * @return the write units an item or index entry of the given size consumes
+   */
+  public static double getWriteUnits(long itemBytes) {
+    return Math.max(1, Math.ceil(itemBytes / DynamoDBConstants.BYTES_PER_WRITE_CAPACITY_UNIT));
+  }
+
+  /**
+   * @return the read units an eventually consistent Query or Scan page of items of the given
+   *     total size consumes, or a GetItem of an item of that size
+   */
+  public static double getReadUnits(long pageBytes) {
+    return Math.max(1, Math.ceil(pageBytes / DynamoDBConstants.BYTES_PER_READ_CAPACITY_UNIT))
+        / DynamoDBConstants.READ_EVENTUALLY_TO_STRONGLY_CONSISTENT_FACTOR;
+  }
+
+  /**
+   * @return the most bytes an eventually consistent page can read without consuming more than the
+   *     given read units
+   */
+  public static long getMaxReadBytes(double readUnits) {
+    return (long) (Math.floor(readUnits
+        * DynamoDBConstants.READ_EVENTUALLY_TO_STRONGLY_CONSISTENT_FACTOR)
+        * DynamoDBConstants.BYTES_PER_READ_CAPACITY_UNIT);
+  }
+
+  /**
+   * @return the fewest bytes an eventually consistent page that consumed the given read units can
+   *     have read
+   */
+  public static long getMinReadBytes(double consumedReadUnits) {
+    return Math.max(getMaxReadBytes(consumedReadUnits)
+        - (long) DynamoDBConstants.BYTES_PER_READ_CAPACITY_UNIT + 1, 0);
+  }
+
+  /**
+   * @return the size of the item, as DynamoDB counts it for capacity units
+   */
+  public static int getItemSizeBytes(Map<String, AttributeValue> item) {
+    return DynamoDBUtil.getItemSizeBytes(item);
+  }
+
+  /**
+   * @return the total size of the given items
+   */
+  public static long getItemSizeBytes(Collection<Map<String, AttributeValue>> items) {
+    long bytes = 0;
+    for (Map<String, AttributeValue> item : items) {
+      bytes += DynamoDBUtil.getItemSizeBytes(item);
+    }
+    return bytes;
+  }
+
+  private static double getWriteCapacityUnits(ProvisionedThroughputDescription throughput) {
+    if (throughput == null || throughput.getWriteCapacityUnits() == null) {
+      return 0;
+    }
+    return throughput.getWriteCapacityUnits();
+  }
+
+  private static Set<String> getKeyNames(List<KeySchemaElement> keySchema) {
+    if (keySchema == null) {
+      return Collections.emptySet();
+    }
+    Set<String> names = new HashSet<>();
+    for (KeySchemaElement element : keySchema) {
+      names.add(element.getAttributeName());
+    }
+    return names;
+  }
+
+  private static final class IndexModel {
+    private final Set<String> keys;
+    // Null when every attribute is projected
+    private final Set<String> projectedAttributes;
+    private final double throughputRatio;
+
+    private IndexModel(Set<String> keys, Projection projection, double throughputRatio) {
+      this.keys = keys;
+      this.throughputRatio = throughputRatio;
+      if (projection == null
+          || ProjectionType.ALL.toString().equals(projection.getProjectionType())) {
+        projectedAttributes = null;
+      } else {
+        projectedAttributes = new HashSet<>();
+        if (projection.getNonKeyAttributes() != null) {
+          projectedAttributes.addAll(projection.getNonKeyAttributes());
+        }
+      }
+    }
+
+    /**
+     * An item is only written to a sparse index if it has all of the keys of the index.
+     */
+    private boolean contains(Map<String, AttributeValue> item) {
+      for (String key : keys) {
+        if (item.get(key) == null) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int getProjectedSizeBytes(Map<String, AttributeValue> item, int itemBytes,
+        Set<String> tableKeys) {
+      if (projectedAttributes == null) {
+        return itemBytes;
+      }
+      int bytes = 0;
+      for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+        String attributeName = attribute.getKey();
+        if (keys.contains(attributeName) || tableKeys.contains(attributeName)
+            || projectedAttributes.contains(attributeName)) {
+          bytes += DynamoDBUtil.getAttributeEntrySizeBytes(attributeName, attribute.getValue());
+        }
+      }
+      return bytes;
+    }
+  }
+}
@@ -14,9 +14,11 @@
 package org.apache.hadoop.dynamodb;
 
 import static org.apache.hadoop.dynamodb.DynamoDBConstants.DEFAULT_MAX_BATCH_SIZE;
+import static org.apache.hadoop.dynamodb.DynamoDBConstants.DEFAULT_MAX_CONCURRENT_WRITE_BATCHES;
 import static org.apache.hadoop.dynamodb.DynamoDBConstants.DEFAULT_MAX_ITEMS_PER_BATCH;
 import static org.apache.hadoop.dynamodb.DynamoDBConstants.DEFAULT_MAX_ITEM_SIZE;
 import static org.apache.hadoop.dynamodb.DynamoDBConstants.MAX_BATCH_SIZE;
+import static org.apache.hadoop.dynamodb.DynamoDBConstants.MAX_CONCURRENT_WRITE_BATCHES;
 import static org.apache.hadoop.dynamodb.DynamoDBConstants.MAX_ITEMS_PER_BATCH;
 import static org.apache.hadoop.dynamodb.DynamoDBConstants.MAX_ITEM_SIZE;
 import static org.apache.hadoop.dynamodb.DynamoDBUtil.getDynamoDBEndpoint;
@@ -29,8 +31,11 @@ import com.amazonaws.auth.AWSCredentialsProviderChain;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.auth.BasicSessionCredentials;
 import com.amazonaws.auth.InstanceProfileCredentialsProvider;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
 import com.amazonaws.services.dynamodbv2.model.Capacity;
@@ -39,6 +44,10 @@ import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
 import com.amazonaws.services.dynamodbv2.model.DeleteRequest;
 import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
 import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
 import com.amazonaws.services.dynamodbv2.model.PutRequest;
 import com.amazonaws.services.dynamodbv2.model.QueryRequest;
 import com.amazonaws.services.dynamodbv2.model.QueryResult;
@@ -51,14 +60,29 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Random;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -74,7 +98,6 @@ public class DynamoDBClient {
   private static final Log log = LogFactory.getLog(DynamoDBClient.class);
 
   private static final int DEFAULT_RETRY_DURATION = 10;
-  private static final long MAX_BACKOFF_IN_MILLISECONDS = 1000 * 3;
   private static final CredentialPairName DYNAMODB_CREDENTIAL_PAIR_NAME =
       new CredentialPairName(
           DynamoDBConstants.DYNAMODB_ACCESS_KEY_CONF,
@@ -92,32 +115,74 @@ public class DynamoDBClient {
           DynamoDBConstants.DEFAULT_SECRET_KEY_CONF
       );
   private final Map<String, List<WriteRequest>> writeBatchMap = new HashMap<>();
-  private final AmazonDynamoDBClient dynamoDB;
+  private final AmazonDynamoDB dynamoDB;
   private int writeBatchMapSizeBytes;
+  // Sizes of the requests in writeBatchMap, so that unprocessed items aren't sized again
+  private final Map<WriteRequest, Integer> writeRequestSizes = new IdentityHashMap<>();
+  // Primary key attribute names of the tables whose writes are coalesced by key
+  private final Map<String, List<String>> tableKeyNames = new HashMap<>();
+  // Positions of the keys of the requests in writeBatchMap, per table
+  private final Map<String, Map<List<AttributeValue>, Integer>> pendingKeyIndexes =
+      new HashMap<>();
   private int batchWriteRetries;
+  private long unprocessedItemsDelayMs;
+  private final RetryCoordinator retryCoordinator = RetryCoordinator.forTask();
+  private WriteMetrics writeMetrics;
   private final Configuration config;
   private final long maxBatchSize;
   private final long maxItemByteSize;
 
+  // Asynchronous write pipeline, only used when more than one batch may be in flight
+  private final int maxConcurrentWriteBatches;
+  private final Queue<BatchWriteItemResult> completedWriteResults = new ConcurrentLinkedQueue<>();
+  private final AtomicReference<Throwable> asyncWriteFailure = new AtomicReference<>();
+  private ExecutorService writeExecutor;
+  private Semaphore writeBatchPermits;
+  // Keys of the batches in flight, qualified by table, guarded by itself
+  private final Set<List<Object>> inFlightKeys = new HashSet<>();
+
   // For unit testing only
   public DynamoDBClient() {
     dynamoDB = null;
     config = null;
     maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
     maxItemByteSize = DEFAULT_MAX_ITEM_SIZE;
+    maxConcurrentWriteBatches = DEFAULT_MAX_CONCURRENT_WRITE_BATCHES;
+    writeMetrics = new WriteMetrics(DEFAULT_MAX_ITEMS_PER_BATCH);
   }
 
   public DynamoDBClient(Configuration conf) {
-    this(conf, null);
+    this(conf, (String) null);
   }
 
   public DynamoDBClient(Configuration conf, String region) {
     Preconditions.checkNotNull(conf, "conf cannot be null.");
     config = conf;
-    dynamoDB = getDynamoDBClient(conf);
-    dynamoDB.setEndpoint(getDynamoDBEndpoint(conf, region));
+    String clientClass = conf.get(DynamoDBConstants.CUSTOM_CLIENT_CONF);
+    if (Strings.isNullOrEmpty(clientClass)) {
+      dynamoDB = getDynamoDBClient(conf);
+      dynamoDB.setEndpoint(getDynamoDBEndpoint(conf, region));
+    } else {
+      // A custom client is responsible for its own endpoint and credentials
+      dynamoDB = getCustomDynamoDBClient(clientClass, conf);
+    }
+    maxBatchSize = config.getLong(MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_SIZE);
+    maxItemByteSize = config.getLong(MAX_ITEM_SIZE, DEFAULT_MAX_ITEM_SIZE);
+    maxConcurrentWriteBatches = getMaxConcurrentWriteBatches(conf);
+    writeMetrics = new WriteMetrics(config.getLong(MAX_ITEMS_PER_BATCH,
+        DEFAULT_MAX_ITEMS_PER_BATCH));
+  }
+
+  @VisibleForTesting
+  DynamoDBClient(Configuration conf, AmazonDynamoDB dynamoDB) {
+    Preconditions.checkNotNull(conf, "conf cannot be null.");
+    config = conf;
+    this.dynamoDB = dynamoDB;
     maxBatchSize = config.getLong(MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_SIZE);
     maxItemByteSize = config.getLong(MAX_ITEM_SIZE, DEFAULT_MAX_ITEM_SIZE);
+    maxConcurrentWriteBatches = getMaxConcurrentWriteBatches(conf);
+    writeMetrics = new WriteMetrics(config.getLong(MAX_ITEMS_PER_BATCH,
+        DEFAULT_MAX_ITEMS_PER_BATCH));
   }
 
   public final Map<String, List<WriteRequest>> getWriteBatchMap() {
@@ -128,7 +193,7 @@ public class DynamoDBClient {
     final DescribeTableRequest describeTablesRequest = new DescribeTableRequest()
         .withTableName(tableName);
     try {
-      RetryResult<DescribeTableResult> describeResult = getRetryDriver().runWithRetry(
+      RetryResult<DescribeTableResult> describeResult = getRetryDriver(null).runWithRetry(
           new Callable<DescribeTableResult>() {
             @Override
             public DescribeTableResult call() {
@@ -146,6 +211,17 @@ public class DynamoDBClient {
   public RetryResult<ScanResult> scanTable(
       String tableName, DynamoDBQueryFilter dynamoDBQueryFilter, Integer segment, Integer
       totalSegments, Map<String, AttributeValue> exclusiveStartKey, long limit, Reporter reporter) {
+    return scanTable(tableName, dynamoDBQueryFilter, null, segment, totalSegments,
+        exclusiveStartKey, limit, reporter);
+  }
+
+  /**
+   * @param attributes the attributes to fetch, or null to fetch whole items
+   */
+  public RetryResult<ScanResult> scanTable(
+      String tableName, DynamoDBQueryFilter dynamoDBQueryFilter, Collection<String> attributes,
+      Integer segment, Integer totalSegments, Map<String, AttributeValue> exclusiveStartKey,
+      long limit, Reporter reporter) {
     final ScanRequest scanRequest = new ScanRequest(tableName)
         .withExclusiveStartKey(exclusiveStartKey)
         .withLimit(Ints.checkedCast(limit))
@@ -160,7 +236,21 @@ public class DynamoDBClient {
       }
     }
 
-    RetryResult<ScanResult> retryResult = getRetryDriver().runWithRetry(new Callable<ScanResult>() {
+    if (attributes != null && !attributes.isEmpty()) {
+      // DynamoDB rejects requests mixing expression and legacy parameters, so a ScanFilter
+      // forces the legacy AttributesToGet form of the projection
+      if (scanRequest.getScanFilter() == null) {
+        Map<String, String> expressionAttributeNames = new HashMap<>();
+        scanRequest.setProjectionExpression(
+            buildProjectionExpression(attributes, expressionAttributeNames));
+        scanRequest.setExpressionAttributeNames(expressionAttributeNames);
+      } else {
+        scanRequest.setAttributesToGet(new LinkedHashSet<>(attributes));
+      }
+    }
+
+    DynamoDBFibonacciRetryer retryDriver = getRetryDriver(DynamoDBOperationType.READ);
+    RetryResult<ScanResult> retryResult = retryDriver.runWithRetry(new Callable<ScanResult>() {
       @Override
       public ScanResult call() {
         log.debug("Executing DynamoDB scan: " + scanRequest);
@@ -173,20 +263,42 @@ public class DynamoDBClient {
   public RetryResult<QueryResult> queryTable(
       String tableName, DynamoDBQueryFilter dynamoDBQueryFilter, Map<String, AttributeValue>
       exclusiveStartKey, long limit, Reporter reporter) {
+    return queryTable(tableName, dynamoDBQueryFilter, null, exclusiveStartKey, limit, reporter);
+  }
+
+  /**
+   * @param attributes the attributes to fetch, or null to fetch whole items
+   */
+  public RetryResult<QueryResult> queryTable(
+      String tableName, DynamoDBQueryFilter dynamoDBQueryFilter, Collection<String> attributes,
+      Map<String, AttributeValue> exclusiveStartKey, long limit, Reporter reporter) {
+    return queryTable(tableName, dynamoDBQueryFilter.getKeyConditions(),
+        dynamoDBQueryFilter.getIndex(), attributes, exclusiveStartKey, limit, reporter);
+  }
+
+  public RetryResult<QueryResult> queryTable(
+      String tableName, Map<String, Condition> keyConditions, DynamoDBIndexInfo index,
+      Collection<String> attributes, Map<String, AttributeValue> exclusiveStartKey, long limit,
+      Reporter reporter) {
     final QueryRequest queryRequest = new QueryRequest()
         .withTableName(tableName)
         .withExclusiveStartKey(exclusiveStartKey)
-        .withKeyConditions(dynamoDBQueryFilter.getKeyConditions())
+        .withKeyConditions(keyConditions)
         .withLimit(Ints.checkedCast(limit))
         .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
 
-    DynamoDBIndexInfo index = dynamoDBQueryFilter.getIndex();
     if (index != null) {
       log.debug("Using DynamoDB index: " + index.getIndexName());
       queryRequest.setIndexName(index.getIndexName());
     }
 
-    RetryResult<QueryResult> retryResult = getRetryDriver().runWithRetry(
+    if (attributes != null && !attributes.isEmpty()) {
+      // KeyConditions is a legacy parameter and cannot be combined with a ProjectionExpression
+      queryRequest.setAttributesToGet(new LinkedHashSet<>(attributes));
+    }
+
+    DynamoDBFibonacciRetryer retryDriver = getRetryDriver(DynamoDBOperationType.READ);
+    RetryResult<QueryResult> retryResult = retryDriver.runWithRetry(
         new Callable<QueryResult>() {
           @Override
           public QueryResult call() {
@@ -197,15 +309,84 @@ public class DynamoDBClient {
     return retryResult;
   }
 
+  public RetryResult<GetItemResult> getItem(String tableName, Map<String, AttributeValue> key,
+      Collection<String> attributes, Reporter reporter) {
+    final GetItemRequest getItemRequest = new GetItemRequest()
+        .withTableName(tableName)
+        .withKey(key)
+        .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+
+    if (attributes != null && !attributes.isEmpty()) {
+      Map<String, String> expressionAttributeNames = new HashMap<>();
+      getItemRequest.setProjectionExpression(
+          buildProjectionExpression(attributes, expressionAttributeNames));
+      getItemRequest.setExpressionAttributeNames(expressionAttributeNames);
+    }
+
+    DynamoDBFibonacciRetryer retryDriver = getRetryDriver(DynamoDBOperationType.READ);
+    RetryResult<GetItemResult> retryResult = retryDriver.runWithRetry(
+        new Callable<GetItemResult>() {
+          @Override
+          public GetItemResult call() {
+            log.debug("Executing DynamoDB get item: " + getItemRequest);
+            return dynamoDB.getItem(getItemRequest);
+          }
+        }, reporter, PrintCounter.DynamoDBReadThrottle);
+    return retryResult;
+  }
+
+  /**
+   * Reads up to {@link DynamoDBConstants#MAX_BATCH_GET_ITEMS} items by key. Like DynamoDB, keys
+   * that weren't read are returned as UnprocessedKeys for the caller to retry.
+   */
+  public RetryResult<BatchGetItemResult> batchGetItem(String tableName,
+      List<Map<String, AttributeValue>> keys, Collection<String> attributes,
+      Reporter reporter) {
+    KeysAndAttributes keysAndAttributes = new KeysAndAttributes().withKeys(keys);
+    if (attributes != null && !attributes.isEmpty()) {
+      Map<String, String> expressionAttributeNames = new HashMap<>();
+      keysAndAttributes.setProjectionExpression(
+          buildProjectionExpression(attributes, expressionAttributeNames));
+      keysAndAttributes.setExpressionAttributeNames(expressionAttributeNames);
+    }
+    final BatchGetItemRequest batchGetItemRequest = new BatchGetItemRequest()
+        .addRequestItemsEntry(tableName, keysAndAttributes)
+        .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+
+    DynamoDBFibonacciRetryer retryDriver = getRetryDriver(DynamoDBOperationType.READ);
+    RetryResult<BatchGetItemResult> retryResult = retryDriver.runWithRetry(
+        new Callable<BatchGetItemResult>() {
+          @Override
+          public BatchGetItemResult call() {
+            log.debug("Executing DynamoDB batch get item: " + batchGetItemRequest);
+            return dynamoDB.batchGetItem(batchGetItemRequest);
+          }
+        }, reporter, PrintCounter.DynamoDBReadThrottle);
+    return retryResult;
+  }
+
   public BatchWriteItemResult putBatch(String tableName, Map<String, AttributeValue> item,
       long maxItemsPerBatch, Reporter reporter, boolean deletionMode)
       throws UnsupportedEncodingException {
+    return putBatch(tableName, item, DynamoDBUtil.getItemSizeBytes(item), maxItemsPerBatch,
+        reporter, deletionMode);
+  }
+
+  /**
+   * @param itemSizeBytes the size of the item, as computed by
+   *     {@link CapacityModel#getItemSizeBytes(Map)}, for callers that already sized it
+   */
+  public BatchWriteItemResult putBatch(String tableName, Map<String, AttributeValue> item,
+      int itemSizeBytes, long maxItemsPerBatch, Reporter reporter, boolean deletionMode)
+      throws UnsupportedEncodingException {
 
-    int itemSizeBytes = DynamoDBUtil.getItemSizeBytes(item);
     if (itemSizeBytes > maxItemByteSize) {
       throw new RuntimeException("Cannot pass items with size greater than " + maxItemByteSize
           + ". Item with size of " + itemSizeBytes + " was given.");
     }
+    if (coalescePendingWrite(tableName, item, itemSizeBytes, deletionMode)) {
+      return null;
+    }
     maxItemsPerBatch = DynamoDBUtil.getBoundedBatchLimit(config, maxItemsPerBatch);
     BatchWriteItemResult result = null;
     if (writeBatchMap.containsKey(tableName)) {
@@ -217,7 +398,16 @@ public class DynamoDBClient {
           writeBatchMapSizeBytes + itemSizeBytes > maxBatchSize;
 
       if (writeRequestsForTableAtLimit || totalSizeOfWriteBatchesOverLimit) {
-        result = writeBatch(reporter, itemSizeBytes);
+        if (isAsyncWriteEnabled()) {
+          submitWriteBatch(reporter);
+          result = pollCompletedWriteResults();
+        } else {
+          result = writeBatch(reporter, itemSizeBytes);
+          // An unprocessed write of the key may be pending again, the batch can't hold it twice
+          if (coalescePendingWrite(tableName, item, itemSizeBytes, deletionMode)) {
+            return result;
+          }
+        }
       }
     }
     // writeBatchMap could be cleared from writeBatch()
@@ -231,27 +421,382 @@ public class DynamoDBClient {
 
     log.debug("BatchWriteItem deletionMode " + deletionMode);
 
-    if (deletionMode) {
-      writeBatchList.add(new WriteRequest().withDeleteRequest(new DeleteRequest().withKey(item)));
-    } else {
-      writeBatchList.add(new WriteRequest().withPutRequest(new PutRequest().withItem(item)));
+    List<AttributeValue> key = getKey(tableName, item);
+    if (key != null) {
+      getPendingKeys(tableName).put(key, writeBatchList.size());
     }
+    WriteRequest writeRequest = createWriteRequest(item, deletionMode);
+    writeBatchList.add(writeRequest);
 
+    writeRequestSizes.put(writeRequest, itemSizeBytes);
     writeBatchMapSizeBytes += itemSizeBytes;
 
     return result;
   }
 
-  public void close() {
+  /**
+   * Coalesces the writes of the table by primary key: a write replaces the pending write of its
+   * key, as a batch can't write a key twice. Only the last write of a key in a batch is sent,
+   * which is also the one DynamoDB would keep of the writes.
+   */
+  public void setKeySchema(String tableName, List<KeySchemaElement> keySchema) {
+    List<String> keyNames = new ArrayList<>();
+    for (KeySchemaElement key : keySchema) {
+      keyNames.add(key.getAttributeName());
+    }
+    tableKeyNames.put(tableName, keyNames);
+    indexPendingKeys();
+  }
+
+  /**
+   * Replaces the pending write of the key of the item, if there is one and the batch stays within
+   * its size limit with the item instead of it.
+   *
+   * @return whether the item replaced a pending write
+   */
+  private boolean coalescePendingWrite(String tableName, Map<String, AttributeValue> item,
+      int itemSizeBytes, boolean deletionMode) {
+    List<AttributeValue> key = getKey(tableName, item);
+    Map<List<AttributeValue>, Integer> pendingKeys = pendingKeyIndexes.get(tableName);
+    if (key == null || pendingKeys == null || !pendingKeys.containsKey(key)) {
+      return false;
+    }
+    int index = pendingKeys.get(key);
+    List<WriteRequest> writeBatchList = writeBatchMap.get(tableName);
+    WriteRequest superseded = writeBatchList.get(index);
+    int supersededBytes = getWriteRequestSize(superseded);
+    if (writeBatchMapSizeBytes - supersededBytes + itemSizeBytes > maxBatchSize) {
+      return false;
+    }
+
+    WriteRequest writeRequest = createWriteRequest(item, deletionMode);
+    writeBatchList.set(index, writeRequest);
+    writeRequestSizes.remove(superseded);
+    writeRequestSizes.put(writeRequest, itemSizeBytes);
+    writeBatchMapSizeBytes += itemSizeBytes - supersededBytes;
+    writeMetrics.recordCoalescedWrite(CapacityModel.getWriteUnits(supersededBytes));
+    return true;
+  }
+
+  /**
+   * @return the normalized values of the primary key attributes of the item, or null if the
+   *     writes of the table aren't coalesced or the item lacks a key attribute
+   */
+  private List<AttributeValue> getKey(String tableName, Map<String, AttributeValue> item) {
+    List<String> keyNames = tableKeyNames.get(tableName);
+    if (keyNames == null) {
+      return null;
+    }
+    List<AttributeValue> key = new ArrayList<>(keyNames.size());
+    for (String keyName : keyNames) {
+      AttributeValue value = item.get(keyName);
+      if (value == null) {
+        return null;
+      }
+      // Numbers written differently may be the same key
+      key.add(DynamoDBUtil.normalizeKeyValue(value));
+    }
+    return key;
+  }
+
+  private Map<List<AttributeValue>, Integer> getPendingKeys(String tableName) {
+    Map<List<AttributeValue>, Integer> pendingKeys = pendingKeyIndexes.get(tableName);
+    if (pendingKeys == null) {
+      pendingKeys = new HashMap<>();
+      pendingKeyIndexes.put(tableName, pendingKeys);
+    }
+    return pendingKeys;
+  }
+
+  /**
+   * Indexes the keys of the requests in writeBatchMap, after it was replaced.
+   */
+  private void indexPendingKeys() {
+    pendingKeyIndexes.clear();
+    for (Entry<String, List<WriteRequest>> entry : writeBatchMap.entrySet()) {
+      if (!tableKeyNames.containsKey(entry.getKey())) {
+        continue;
+      }
+      List<WriteRequest> requests = entry.getValue();
+      for (int i = 0; i < requests.size(); i++) {
+        WriteRequest request = requests.get(i);
+        List<AttributeValue> key = getKey(entry.getKey(), request.getPutRequest() != null
+            ? request.getPutRequest().getItem() : request.getDeleteRequest().getKey());
+        if (key != null) {
+          getPendingKeys(entry.getKey()).put(key, i);
+        }
+      }
+    }
+  }
+
+  private static WriteRequest createWriteRequest(Map<String, AttributeValue> item,
+      boolean deletionMode) {
+    if (deletionMode) {
+      return new WriteRequest().withDeleteRequest(new DeleteRequest().withKey(item));
+    }
+    return new WriteRequest().withPutRequest(new PutRequest().withItem(item));
+  }
+
+  /**
+   * Writes the pending items and waits for the batches in flight, without closing the client.
+   *
+   * @return the combined result of the batches written since putBatch last returned a result, or
+   *     null if none
+   */
+  public BatchWriteItemResult flushWrites(Reporter reporter) {
+    if (isAsyncWriteEnabled()) {
+      if (!writeBatchMap.isEmpty()) {
+        submitWriteBatch(reporter);
+      }
+      if (writeBatchPermits != null) {
+        try {
+          writeBatchPermits.acquire(maxConcurrentWriteBatches);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException("Interrupted while waiting for in-flight write batches", e);
+        }
+        writeBatchPermits.release(maxConcurrentWriteBatches);
+      }
+      checkAsyncWriteFailure();
+      return pollCompletedWriteResults();
+    }
+
+    List<ConsumedCapacity> consumedCapacity = null;
     while (!writeBatchMap.isEmpty()) {
-      writeBatch(Reporter.NULL, 0);
+      BatchWriteItemResult result = writeBatch(reporter, 0);
+      if (result.getConsumedCapacity() != null) {
+        if (consumedCapacity == null) {
+          consumedCapacity = new ArrayList<>();
+        }
+        consumedCapacity.addAll(result.getConsumedCapacity());
+      }
+    }
+    if (consumedCapacity == null) {
+      return null;
+    }
+    return new BatchWriteItemResult()
+        .withConsumedCapacity(consumedCapacity)
+        .withUnprocessedItems(new HashMap<String, List<WriteRequest>>());
+  }
+
+  public void close() {
+    try {
+      if (isAsyncWriteEnabled()) {
+        drainAsyncWrites();
+      } else {
+        while (!writeBatchMap.isEmpty()) {
+          writeBatch(Reporter.NULL, 0);
+        }
+      }
+    } finally {
+      if (dynamoDB != null) {
+        dynamoDB.shutdown();
+      }
+    }
+  }
+
+  private boolean isAsyncWriteEnabled() {
+    return maxConcurrentWriteBatches > 1;
+  }
+
+  /**
+   * Hands the pending write batch over to the write executor. Blocks while the maximum number of
+   * batches are already in flight, so a fast producer cannot buffer an unbounded amount of items.
+   * Also blocks while a batch in flight writes a key of the batch, as that batch may still resubmit
+   * an older write of the key as an unprocessed item. Only the keys of tables whose key schema was
+   * set are known, the writes of a key of other tables may be reordered.
+   */
+  private void submitWriteBatch(final Reporter reporter) {
+    checkAsyncWriteFailure();
+    if (writeExecutor == null) {
+      writeExecutor = Executors.newFixedThreadPool(maxConcurrentWriteBatches,
+          new ThreadFactoryBuilder().setNameFormat("DynamoDBBatchWriter-%d").setDaemon(true)
+              .build());
+      writeBatchPermits = new Semaphore(maxConcurrentWriteBatches);
+      log.info("Writing with up to " + maxConcurrentWriteBatches + " concurrent batches");
+      if (!tableKeyNames.keySet().containsAll(writeBatchMap.keySet())) {
+        log.warn("The key schema of the written tables isn't known, concurrent batches may "
+            + "reorder the writes of a key");
+      }
+    }
+
+    final Map<String, List<WriteRequest>> batch = new HashMap<>(writeBatchMap);
+    final long batchBytes = writeBatchMapSizeBytes;
+    final Set<List<Object>> batchKeys = getQualifiedKeys(batch);
+    writeBatchMap.clear();
+    writeRequestSizes.clear();
+    pendingKeyIndexes.clear();
+    writeBatchMapSizeBytes = 0;
+
+    try {
+      awaitInFlightKeys(batchKeys);
+      writeBatchPermits.acquire();
+    } catch (InterruptedException e) {
+      releaseInFlightKeys(batchKeys);
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for an in-flight write batch", e);
+    }
+
+    try {
+      writeExecutor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            completedWriteResults.add(writeBatchUntilProcessed(batch, batchBytes, reporter));
+          } catch (Throwable t) {
+            log.error("Asynchronous batch write failed", t);
+            asyncWriteFailure.compareAndSet(null, t);
+          } finally {
+            releaseInFlightKeys(batchKeys);
+            writeBatchPermits.release();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      releaseInFlightKeys(batchKeys);
+      writeBatchPermits.release();
+      throw new RuntimeException("Could not submit write batch", e);
+    }
+  }
+
+  /**
+   * @return the keys the batch writes, qualified by their table, of the tables with a key schema
+   */
+  private Set<List<Object>> getQualifiedKeys(Map<String, List<WriteRequest>> batch) {
+    Set<List<Object>> keys = new HashSet<>();
+    for (Entry<String, List<WriteRequest>> entry : batch.entrySet()) {
+      if (!tableKeyNames.containsKey(entry.getKey())) {
+        continue;
+      }
+      for (WriteRequest request : entry.getValue()) {
+        List<AttributeValue> key = getKey(entry.getKey(), request.getPutRequest() != null
+            ? request.getPutRequest().getItem() : request.getDeleteRequest().getKey());
+        if (key != null) {
+          keys.add(Arrays.<Object>asList(entry.getKey(), key));
+        }
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * Waits until no batch in flight writes any of the keys, then marks them in flight.
+   */
+  private void awaitInFlightKeys(Set<List<Object>> keys) throws InterruptedException {
+    synchronized (inFlightKeys) {
+      while (!Collections.disjoint(inFlightKeys, keys)) {
+        inFlightKeys.wait();
+      }
+      inFlightKeys.addAll(keys);
+    }
+  }
+
+  private void releaseInFlightKeys(Set<List<Object>> keys) {
+    synchronized (inFlightKeys) {
+      if (inFlightKeys.removeAll(keys)) {
+        inFlightKeys.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Writes the batch, resubmitting unprocessed items until DynamoDB has accepted all of them.
+   *
+   * @return a result carrying the capacity consumed by every round and no unprocessed items
+   */
+  private BatchWriteItemResult writeBatchUntilProcessed(Map<String, List<WriteRequest>> batch,
+      long batchBytes, Reporter reporter) throws InterruptedException {
+    List<ConsumedCapacity> consumedCapacity = new ArrayList<>();
+    Map<String, List<WriteRequest>> remaining = batch;
+    final int batchItems = countWriteRequests(batch);
+    long delayMs = 0;
+    while (remaining != null && !remaining.isEmpty()) {
+      if (remaining != batch) {
+        delayMs = pauseForUnprocessedItems(delayMs);
+      }
+      final BatchWriteItemRequest batchWriteItemRequest = new BatchWriteItemRequest()
+          .withRequestItems(remaining)
+          .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
+      final int items = countWriteRequests(remaining);
+      // The sizes of the requests are only known on the producer thread, estimate those of
+      // unprocessed items from the size of the whole batch
+      final long bytes = batchItems == 0 ? 0 : batchBytes * items / batchItems;
+      BatchWriteItemResult result = getRetryDriver(DynamoDBOperationType.WRITE).runWithRetry(
+          new Callable<BatchWriteItemResult>() {
+            @Override
+            public BatchWriteItemResult call() {
+              long startNanos = System.nanoTime();
+              BatchWriteItemResult result = dynamoDB.batchWriteItem(batchWriteItemRequest);
+              writeMetrics.recordBatch(System.nanoTime() - startNanos, items, bytes,
+                  countWriteRequests(result.getUnprocessedItems()), result.getConsumedCapacity());
+              return result;
+            }
+          }, reporter, PrintCounter.DynamoDBWriteThrottle).result;
+
+      if (result.getConsumedCapacity() != null) {
+        consumedCapacity.addAll(result.getConsumedCapacity());
+      }
+      remaining = result.getUnprocessedItems();
+      if (remaining != null && !remaining.isEmpty()) {
+        retryCoordinator.onThrottle(DynamoDBOperationType.WRITE);
+      }
+    }
+    return new BatchWriteItemResult()
+        .withConsumedCapacity(consumedCapacity)
+        .withUnprocessedItems(new HashMap<String, List<WriteRequest>>());
+  }
+
+  /**
+   * @return the combined result of the batches completed since the last call, or null if none
+   */
+  private BatchWriteItemResult pollCompletedWriteResults() {
+    List<ConsumedCapacity> consumedCapacity = null;
+    BatchWriteItemResult completed;
+    while ((completed = completedWriteResults.poll()) != null) {
+      if (consumedCapacity == null) {
+        consumedCapacity = new ArrayList<>();
+      }
+      consumedCapacity.addAll(completed.getConsumedCapacity());
+    }
+    if (consumedCapacity == null) {
+      return null;
+    }
+    return new BatchWriteItemResult()
+        .withConsumedCapacity(consumedCapacity)
+        .withUnprocessedItems(new HashMap<String, List<WriteRequest>>());
+  }
+
+  private void drainAsyncWrites() {
+    if (!writeBatchMap.isEmpty()) {
+      submitWriteBatch(Reporter.NULL);
+    }
+    if (writeExecutor != null) {
+      writeExecutor.shutdown();
+      try {
+        while (!writeExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+          log.info("Waiting for in-flight write batches to complete");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        writeExecutor.shutdownNow();
+        throw new RuntimeException("Interrupted while draining in-flight write batches", e);
+      }
     }
+    checkAsyncWriteFailure();
+  }
 
-    if (dynamoDB != null) {
-      dynamoDB.shutdown();
+  private void checkAsyncWriteFailure() {
+    Throwable failure = asyncWriteFailure.get();
+    if (failure != null) {
+      throw new RuntimeException("Asynchronous batch write failed", failure);
     }
   }
 
+  private static int getMaxConcurrentWriteBatches(Configuration conf) {
+    return Math.max(conf.getInt(MAX_CONCURRENT_WRITE_BATCHES,
+        DEFAULT_MAX_CONCURRENT_WRITE_BATCHES), 1);
+  }
+
   /**
    * @param roomNeeded number of bytes that writeBatch MUST make room for
    */
@@ -260,20 +805,35 @@ public class DynamoDBClient {
         .withRequestItems(writeBatchMap)
         .withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES);
 
-    RetryResult<BatchWriteItemResult> retryResult = getRetryDriver().runWithRetry(
+    DynamoDBFibonacciRetryer retryDriver = getRetryDriver(DynamoDBOperationType.WRITE);
+    RetryResult<BatchWriteItemResult> retryResult = retryDriver.runWithRetry(
         new Callable<BatchWriteItemResult>() {
+          private boolean retried;
+
           @Override
           public BatchWriteItemResult call() throws
               UnsupportedEncodingException,
               InterruptedException {
-            pauseExponentially(batchWriteRetries);
+            // Once the retry driver has backed off, pausing for unprocessed items would back off
+            // twice
+            if (batchWriteRetries > 0 && !retried) {
+              unprocessedItemsDelayMs = pauseForUnprocessedItems(unprocessedItemsDelayMs);
+            }
+            retried = true;
+            long startNanos = System.nanoTime();
             BatchWriteItemResult result = dynamoDB.batchWriteItem(batchWriteItemRequest);
-
             Map<String, List<WriteRequest>> unprocessedItems = result.getUnprocessedItems();
+            int batchItems = countWriteRequests(batchWriteItemRequest.getRequestItems());
+            writeMetrics.recordBatch(System.nanoTime() - startNanos, batchItems,
+                writeBatchMapSizeBytes, countWriteRequests(unprocessedItems),
+                result.getConsumedCapacity());
+
             if (unprocessedItems == null || unprocessedItems.isEmpty()) {
               batchWriteRetries = 0;
+              unprocessedItemsDelayMs = 0;
             } else {
               batchWriteRetries++;
+              retryCoordinator.onThrottle(DynamoDBOperationType.WRITE);
 
               int unprocessedItemCount = 0;
               for (List<WriteRequest> unprocessedWriteRequests : unprocessedItems.values()) {
@@ -281,8 +841,7 @@ public class DynamoDBClient {
 
                 int batchSizeBytes = 0;
                 for (WriteRequest request : unprocessedWriteRequests) {
-                  batchSizeBytes += DynamoDBUtil.getItemSizeBytes(
-                      request.getPutRequest().getItem());
+                  batchSizeBytes += getWriteRequestSize(request);
                 }
 
                 long maxItemsPerBatch =
@@ -306,14 +865,8 @@ public class DynamoDBClient {
                 }
               }
 
-              int batchSize = 0;
-              for (List<WriteRequest> writeRequests :
-                  batchWriteItemRequest.getRequestItems().values()) {
-                batchSize += writeRequests.size();
-              }
-
               log.debug(
-                  "BatchWriteItem attempted " + batchSize + " items, consumed " + consumed + " "
+                  "BatchWriteItem attempted " + batchItems + " items, consumed " + consumed + " "
                       + "wcu, left unprocessed " + unprocessedItemCount + " items," + " "
                       + "now at " + "" + batchWriteRetries + " retries");
             }
@@ -326,38 +879,124 @@ public class DynamoDBClient {
 
     // If some items failed to go through, add them back to the writeBatchMap
     Map<String, List<WriteRequest>> unprocessedItems = retryResult.result.getUnprocessedItems();
+    Map<WriteRequest, Integer> unprocessedSizes = new IdentityHashMap<>();
     for (Entry<String, List<WriteRequest>> entry : unprocessedItems.entrySet()) {
       String key = entry.getKey();
       List<WriteRequest> requests = entry.getValue();
       for (WriteRequest request : requests) {
-        writeBatchMapSizeBytes += DynamoDBUtil.getItemSizeBytes(request.getPutRequest().getItem());
+        int size = getWriteRequestSize(request);
+        unprocessedSizes.put(request, size);
+        writeBatchMapSizeBytes += size;
       }
-      writeBatchMap.put(key, requests);
+      // Copied, as later writes are added to or replace requests of the list
+      writeBatchMap.put(key, new ArrayList<>(requests));
     }
+    writeRequestSizes.clear();
+    writeRequestSizes.putAll(unprocessedSizes);
+    indexPendingKeys();
     return retryResult.result;
   }
 
-  private DynamoDBFibonacciRetryer getRetryDriver() {
-    return new DynamoDBFibonacciRetryer(Duration.standardMinutes(DEFAULT_RETRY_DURATION));
+  /**
+   * @return the size of the item or key of the request, computed once per request
+   */
+  private int getWriteRequestSize(WriteRequest request) {
+    Integer size = writeRequestSizes.get(request);
+    if (size == null) {
+      size = DynamoDBUtil.getItemSizeBytes(request.getPutRequest() != null
+          ? request.getPutRequest().getItem() : request.getDeleteRequest().getKey());
+      writeRequestSizes.put(request, size);
+    }
+    return size;
   }
 
-  private void pauseExponentially(int retries) throws InterruptedException {
-    if (retries == 0) {
-      return;
+  /**
+   * Builds a projection expression over the given attribute names, registering a placeholder for
+   * each of them so that reserved words and special characters need no escaping.
+   */
+  @VisibleForTesting
+  static String buildProjectionExpression(Collection<String> attributes,
+      Map<String, String> expressionAttributeNames) {
+    StringBuilder projection = new StringBuilder();
+    for (String attribute : new LinkedHashSet<>(attributes)) {
+      String placeholder = "#p" + expressionAttributeNames.size();
+      expressionAttributeNames.put(placeholder, attribute);
+      if (projection.length() > 0) {
+        projection.append(',');
+      }
+      projection.append(placeholder);
     }
-    long scaleFactor = 500 + new Random().nextInt(100);
-    long delay = (long) (Math.pow(2, retries) * scaleFactor) / 4;
-    delay = Math.min(delay, MAX_BACKOFF_IN_MILLISECONDS);
-    log.info("Pausing " + delay + " ms at retry " + retries);
+    return projection.toString();
+  }
+
+  /**
+   * @return the retry coordinator shared by the clients of the task
+   */
+  public RetryCoordinator getRetryCoordinator() {
+    return retryCoordinator;
+  }
+
+  public WriteMetrics getWriteMetrics() {
+    return writeMetrics;
+  }
+
+  /**
+   * Records the writes of this client in the given metrics, to share them between clients.
+   */
+  public void setWriteMetrics(WriteMetrics writeMetrics) {
+    this.writeMetrics = writeMetrics;
+  }
+
+  private DynamoDBFibonacciRetryer getRetryDriver(DynamoDBOperationType operationType) {
+    return new DynamoDBFibonacciRetryer(Duration.standardMinutes(DEFAULT_RETRY_DURATION),
+        retryCoordinator, operationType);
+  }
+
+  /**
+   * Waits before resubmitting unprocessed items, which DynamoDB leaves when the table is throttled.
+   *
+   * @return the delay waited, to compute the next delay from
+   */
+  private long pauseForUnprocessedItems(long previousDelayMs) throws InterruptedException {
+    long delay = retryCoordinator.getRetryDelayMs(previousDelayMs);
+    log.info("Pausing " + delay + " ms before resubmitting unprocessed items");
     Thread.sleep(delay);
+    writeMetrics.recordUnprocessedRetry(delay);
+    return delay;
+  }
+
+  private static int countWriteRequests(Map<String, List<WriteRequest>> requestItems) {
+    int count = 0;
+    if (requestItems != null) {
+      for (List<WriteRequest> requests : requestItems.values()) {
+        count += requests.size();
+      }
+    }
+    return count;
   }
 
-  private AmazonDynamoDBClient getDynamoDBClient(Configuration conf) {
+  private AmazonDynamoDB getDynamoDBClient(Configuration conf) {
     ClientConfiguration clientConfig = new ClientConfiguration().withMaxErrorRetry(1);
+    if (DynamoDBConstants.READ_ENGINE_ASYNC.equalsIgnoreCase(
+        conf.get(DynamoDBConstants.READ_ENGINE, DynamoDBConstants.DEFAULT_READ_ENGINE))) {
+      // Every outstanding read holds a connection
+      clientConfig.setMaxConnections(Math.max(clientConfig.getMaxConnections(),
+          conf.getInt(DynamoDBConstants.MAX_OUTSTANDING_READS,
+              DynamoDBConstants.DEFAULT_MAX_OUTSTANDING_READS)));
+    }
     applyProxyConfiguration(clientConfig, conf);
     return new AmazonDynamoDBClient(getAWSCredentialsProvider(conf), clientConfig);
   }
 
+  private AmazonDynamoDB getCustomDynamoDBClient(String clientClass, Configuration conf) {
+    log.info("Using custom AmazonDynamoDB client: " + clientClass);
+    try {
+      return (AmazonDynamoDB) ReflectionUtils.newInstance(Class.forName(clientClass), conf);
+    } catch (ClassNotFoundException e) {
+      throw new RuntimeException("Custom AmazonDynamoDB client not found: " + clientClass, e);
+    }
+  }
+
   @VisibleForTesting
   void applyProxyConfiguration(ClientConfiguration clientConfig, Configuration conf) {
     final String proxyHost = conf.get(DynamoDBConstants.PROXY_HOST);
@@ -31,6 +31,9 @@ public interface DynamoDBConstants {
   String DEFAULT_SECRET_KEY_CONF = "fs.s3.awsSecretAccessKey";
   String CUSTOM_CREDENTIALS_PROVIDER_CONF = "dynamodb.customAWSCredentialsProvider";
 
+  // Client
+  String CUSTOM_CLIENT_CONF = "dynamodb.customAmazonDynamoDB";
+
   // Table constants
   String DYNAMODB_COLUMN_MAPPING = "dynamodb.column.mapping";
   String DYNAMODB_TYPE_MAPPING = "dynamodb.type.mapping";
@@ -62,12 +65,20 @@ public interface DynamoDBConstants {
   String TABLE_SIZE_BYTES = "dynamodb.table.size-bytes";
   String MAX_MAP_TASKS = "dynamodb.max.map.tasks";
   String DEFAULT_THROUGHPUT_PERCENTAGE = "0.5";
+  String THROUGHPUT_COORDINATION = "dynamodb.throughput.coordination";
+  String THROUGHPUT_LEASE_DIR = "dynamodb.throughput.lease.dir";
+  String THROUGHPUT_LEASE_RENEW_INTERVAL_MS = "dynamodb.throughput.lease.renew.interval.ms";
+  long DEFAULT_THROUGHPUT_LEASE_RENEW_INTERVAL_MS = 30 * 1000;
   String BILLING_MODE_PROVISIONED = BillingMode.PROVISIONED.toString();
 
   String DYNAMODB_MAX_ITEM_SIZE = "dynamodb.max.item.size";
   String MAX_ITEM_SIZE = DYNAMODB_MAX_ITEM_SIZE;
   String MAX_BATCH_SIZE = "dynamodb.max.batch.size";
   String MAX_ITEMS_PER_BATCH = "dynamodb.max.batch.items";
+  String MAX_CONCURRENT_WRITE_BATCHES = "dynamodb.max.concurrent.write.batches";
+
+  String ITEM_WRITABLE_BINARY_FORMAT = "dynamodb.item.writable.binary";
+  boolean DEFAULT_ITEM_WRITABLE_BINARY_FORMAT = false;
 
   String DELETION_MODE = "dynamodb.deletion.mode";
   boolean DEFAULT_DELETION_MODE = false;
@@ -76,12 +87,43 @@ public interface DynamoDBConstants {
   long DEFAULT_MAX_ITEM_SIZE = 400 * 1024;
   long DEFAULT_MAX_BATCH_SIZE = 16 * 1024 * 1024;
   long DEFAULT_MAX_ITEMS_PER_BATCH = 25;
+  // A single in-flight batch keeps the synchronous write behavior
+  int DEFAULT_MAX_CONCURRENT_WRITE_BATCHES = 1;
+  // Sender threads a task writes through, each with its own batch, the writes of a key in order
+  String WRITE_LANES = "dynamodb.write.lanes";
+  int DEFAULT_WRITE_LANES = 1;
 
   double READ_EVENTUALLY_TO_STRONGLY_CONSISTENT_FACTOR = 2;
 
   String SCAN_SEGMENTS = "dynamodb.scan.segments";
   int MAX_SCAN_SEGMENTS = 1000000;
   int MIN_SCAN_SEGMENTS = 1;
+  // Only used with mapreduce.map.speculative=false, claims are shared by the attempts of a task
+  String SEGMENT_CLAIMING = "dynamodb.scan.segment.claiming";
+  String SEGMENT_CLAIM_DIR = "dynamodb.scan.segment.claim.dir";
+  // Segments a task reads at once when claiming segments, the rest are left for idle tasks
+  String MAX_OPEN_CLAIMED_SEGMENTS = "dynamodb.scan.segment.claim.max.open";
+  int DEFAULT_MAX_OPEN_CLAIMED_SEGMENTS = 8;
+  // Only used with mapreduce.map.speculative=false, checkpoints are shared by the attempts of a
+  // task
+  String SCAN_CHECKPOINTING = "dynamodb.scan.checkpointing";
+  String SCAN_CHECKPOINT_DIR = "dynamodb.scan.checkpoint.dir";
+  // How often consumers that save scan checkpoints, like the export tool, save them
+  String SCAN_CHECKPOINT_INTERVAL_MS = "dynamodb.scan.checkpoint.interval.ms";
+  long DEFAULT_SCAN_CHECKPOINT_INTERVAL_MS = 10 * 60 * 1000;
+  // Sub-ranges a BETWEEN key condition is queried in, each read as a separate query segment
+  String QUERY_RANGE_SEGMENTS = "dynamodb.query.range.segments";
+  int DEFAULT_QUERY_RANGE_SEGMENTS = 1;
+  // Whether predicates on every key of the primary key are read with GetItem and BatchGetItem
+  String PRIMARY_KEY_LOOKUP = "dynamodb.read.primary.key.lookup";
+  boolean DEFAULT_PRIMARY_KEY_LOOKUP = true;
+  int MAX_BATCH_GET_ITEMS = 100;
+  // Lookups by key of tasks joining their input with a table, see DynamoDBLookup
+  String LOOKUP_READ_THROUGHPUT = "dynamodb.lookup.throughput.read";
+  String LOOKUP_CACHE_SIZE = "dynamodb.lookup.cache.size";
+  int DEFAULT_LOOKUP_CACHE_SIZE = 10000;
+  String LOOKUP_MAX_CONCURRENT_BATCHES = "dynamodb.lookup.max.concurrent.batches";
+  int DEFAULT_LOOKUP_MAX_CONCURRENT_BATCHES = 4;
   double BYTES_PER_READ_CAPACITY_UNIT = 4096;
   double BYTES_PER_WRITE_CAPACITY_UNIT = 1024;
 
@@ -90,7 +132,22 @@ public interface DynamoDBConstants {
 
   int PSCAN_SEGMENT_BATCH_SIZE = 50;
   int PSCAN_MULTIPLEXER_CAPACITY = 600;
+  String PSCAN_MULTIPLEXER_HEAP_FRACTION = "dynamodb.multiplexer.heap.fraction";
+  double DEFAULT_PSCAN_MULTIPLEXER_HEAP_FRACTION = 0.25;
+  // Heap bytes taken by a buffered item per byte of its DynamoDB size
+  int PSCAN_MULTIPLEXER_HEAP_BYTES_PER_ITEM_BYTE = 3;
+  String READ_ENGINE = "dynamodb.read.engine";
+  String READ_ENGINE_THREADS = "threads";
+  String READ_ENGINE_ASYNC = "async";
+  String DEFAULT_READ_ENGINE = READ_ENGINE_THREADS;
+  String MAX_OUTSTANDING_READS = "dynamodb.read.max.outstanding";
+  int DEFAULT_MAX_OUTSTANDING_READS = 256;
   int RATE_CONTROLLER_WINDOW_SIZE_SEC = 5;
+  // How often a reader writes a JSON snapshot of its metrics, 0 to only report task counters
+  String READ_METRICS_SNAPSHOT_INTERVAL_MS = "dynamodb.read.metrics.snapshot.interval.ms";
+  long DEFAULT_READ_METRICS_SNAPSHOT_INTERVAL_MS = 0;
+  // Local directory of the snapshots, by default the log directory of the task
+  String READ_METRICS_SNAPSHOT_DIR = "dynamodb.read.metrics.snapshot.dir";
 
   String EXPORT_FORMAT_VERSION = "dynamodb.export.format.version";
   String DEFAULT_AWS_REGION = Regions.US_EAST_1.getName();
@@ -18,7 +18,6 @@ import com.amazonaws.AmazonServiceException;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.util.HashSet;
-import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import org.apache.commons.logging.Log;
@@ -29,7 +28,11 @@ import org.joda.time.DateTimeZone;
 import org.joda.time.Duration;
 
 /**
- * FIXME This class is not thread safe.
+ * Retries DynamoDB calls until they succeed, fail with an error that can't be retried, or the
+ * retry period runs out. The delays between retries and the retry budget come from a
+ * {@link RetryCoordinator} shared by the task, and throttling of a call lowers the rate of its
+ * operation type there. Retries of a call keep their state on the calling thread, so a retryer can
+ * be shared between threads.
  */
 public class DynamoDBFibonacciRetryer {
 
@@ -46,25 +49,31 @@ public class DynamoDBFibonacciRetryer {
   }
 
   private final Duration retryPeriod;
-  private final Random random = new Random(System.currentTimeMillis());
+  private final RetryCoordinator coordinator;
+  private final DynamoDBOperationType operationType;
   private volatile boolean isShutdown;
-  private int fib1 = 0;
-  private int fib2 = 1;
-  private int retryCount;
 
   public DynamoDBFibonacciRetryer(Duration retryPeriod) {
+    this(retryPeriod, RetryCoordinator.forTask(), null);
+  }
+
+  /**
+   * @param operationType the operation type whose rate throttling lowers, or null for calls that
+   *     don't count against the read or write rate
+   */
+  public DynamoDBFibonacciRetryer(Duration retryPeriod, RetryCoordinator coordinator,
+      DynamoDBOperationType operationType) {
     this.retryPeriod = retryPeriod;
+    this.coordinator = coordinator;
+    this.operationType = operationType;
   }
 
   /*
-   * This method retries with fibonacci backoff with maximum retry for 1 hour
-   * period.
+   * This method retries with jittered backoff until the retry period is over.
    */
   public <T> RetryResult<T> runWithRetry(Callable<T> callable, Reporter reporter,
       PrintCounter retryCounter) {
-    fib1 = 0;
-    fib2 = 1;
-    retryCount = 0;
+    RetryState state = new RetryState();
     DateTime currentTime = new DateTime(DateTimeZone.UTC);
     DateTime retryEndTime = currentTime.plus(retryPeriod);
 
@@ -76,9 +85,10 @@ public class DynamoDBFibonacciRetryer {
 
       try {
         T returnObj = callable.call();
-        return new RetryResult<>(returnObj, retryCount);
+        coordinator.onSuccess();
+        return new RetryResult<>(returnObj, state.retryCount);
       } catch (Exception e) {
-        handleException(retryEndTime, e, reporter, retryCounter);
+        handleException(retryEndTime, e, reporter, retryCounter, state);
       }
     }
   }
@@ -91,7 +101,7 @@ public class DynamoDBFibonacciRetryer {
   }
 
   private void handleException(DateTime retryEndTime, Exception exception, Reporter reporter,
-      PrintCounter retryCounter) {
+      PrintCounter retryCounter, RetryState state) {
     DateTime currentTime = new DateTime(DateTimeZone.UTC);
     long maxDelay = retryEndTime.getMillis() - currentTime.getMillis();
 
@@ -99,7 +109,9 @@ public class DynamoDBFibonacciRetryer {
       if (exception instanceof AmazonServiceException) {
         AmazonServiceException ase = (AmazonServiceException) exception;
         if (throttleErrorCodes.contains(ase.getErrorCode())) {
-          // Retry exception
+          if (operationType != null) {
+            coordinator.onThrottle(operationType);
+          }
         } else if (internalErrorStatusCodes.contains(ase.getStatusCode())) {
           // Retry exception
         } else {
@@ -107,9 +119,9 @@ public class DynamoDBFibonacciRetryer {
         }
       }
       incrementRetryCounter(reporter, retryCounter);
-      retryCount++;
-      log.warn("Retry: " + retryCount + " Exception: " + exception);
-      delayOp(maxDelay);
+      state.retryCount++;
+      log.warn("Retry: " + state.retryCount + " Exception: " + exception);
+      delayOp(maxDelay, state);
     } else {
       if (isShutdown) {
         log.warn("Retries exceeded and caught, but is shutdown so not throwing", exception);
@@ -137,21 +149,18 @@ public class DynamoDBFibonacciRetryer {
     }
   }
 
-  private void delayOp(long maxDelay) {
-    increment();
+  private void delayOp(long maxDelay, RetryState state) {
+    state.previousDelay = coordinator.getRetryDelayMs(state.previousDelay);
     try {
-      long computedDelay = (fib2 * 50) + random.nextInt(fib1 * 100);
-      long delay = Math.min(computedDelay, maxDelay + random.nextInt(100));
-      Thread.sleep(delay);
+      Thread.sleep(Math.min(state.previousDelay, maxDelay));
     } catch (InterruptedException e) {
       throw new RuntimeException("Interrupted while retrying", e);
     }
   }
 
-  private void increment() {
-    int sum = fib1 + fib2;
-    fib1 = fib2;
-    fib2 = sum;
+  private static final class RetryState {
+    private int retryCount;
+    private long previousDelay;
   }
 
   public static class RetryResult<T> {
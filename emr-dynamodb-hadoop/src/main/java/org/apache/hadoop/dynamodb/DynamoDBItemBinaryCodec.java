@@ -0,0 +1,226 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.google.common.collect.Maps;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Compact binary encoding of DynamoDB items used by {@link DynamoDBItemWritable}.
+ *
+ * <p>An item is written as a varint entry count (-1 for a null item) followed by its entries.
+ * Strings are a varint byte length followed by their UTF-8 bytes and binaries a varint length
+ * followed by the raw bytes. Each attribute value starts with a varint bit mask of the fields
+ * that are set (-1 for a null value), followed by those fields in bit order. The mask keeps the
+ * encoding as lossless as the JSON one, including empty values and explicitly empty sets.
+ */
+final class DynamoDBItemBinaryCodec {
+
+  static final byte VERSION = 1;
+
+  private static final int S = 1;
+  private static final int N = 1 << 1;
+  private static final int B = 1 << 2;
+  private static final int M = 1 << 3;
+  private static final int L = 1 << 4;
+  private static final int SS = 1 << 5;
+  private static final int NS = 1 << 6;
+  private static final int BS = 1 << 7;
+  private static final int NULL = 1 << 8;
+  private static final int BOOL = 1 << 9;
+
+  private DynamoDBItemBinaryCodec() {
+  }
+
+  static void writeItem(DataOutput out, Map<String, AttributeValue> item) throws IOException {
+    if (item == null) {
+      WritableUtils.writeVInt(out, -1);
+      return;
+    }
+    WritableUtils.writeVInt(out, item.size());
+    for (Entry<String, AttributeValue> entry : item.entrySet()) {
+      Text.writeString(out, entry.getKey());
+      writeAttributeValue(out, entry.getValue());
+    }
+  }
+
+  static Map<String, AttributeValue> readItem(DataInput in) throws IOException {
+    int size = WritableUtils.readVInt(in);
+    if (size < 0) {
+      return null;
+    }
+    Map<String, AttributeValue> item = Maps.newHashMapWithExpectedSize(size);
+    for (int i = 0; i < size; i++) {
+      String name = Text.readString(in);
+      item.put(name, readAttributeValue(in));
+    }
+    return item;
+  }
+
+  private static void writeAttributeValue(DataOutput out, AttributeValue value)
+      throws IOException {
+    if (value == null) {
+      WritableUtils.writeVInt(out, -1);
+      return;
+    }
+
+    List<String> ss = DynamoDBUtil.explicitList(value.getSS());
+    List<String> ns = DynamoDBUtil.explicitList(value.getNS());
+    List<ByteBuffer> bs = DynamoDBUtil.explicitList(value.getBS());
+    List<AttributeValue> l = DynamoDBUtil.explicitList(value.getL());
+
+    int mask = (value.getS() != null ? S : 0)
+        | (value.getN() != null ? N : 0)
+        | (value.getB() != null ? B : 0)
+        | (value.getM() != null ? M : 0)
+        | (l != null ? L : 0)
+        | (ss != null ? SS : 0)
+        | (ns != null ? NS : 0)
+        | (bs != null ? BS : 0)
+        | (value.getNULL() != null ? NULL : 0)
+        | (value.getBOOL() != null ? BOOL : 0);
+    WritableUtils.writeVInt(out, mask);
+
+    if ((mask & S) != 0) {
+      Text.writeString(out, value.getS());
+    }
+    if ((mask & N) != 0) {
+      Text.writeString(out, value.getN());
+    }
+    if ((mask & B) != 0) {
+      writeBinary(out, value.getB());
+    }
+    if ((mask & M) != 0) {
+      writeItem(out, value.getM());
+    }
+    if ((mask & L) != 0) {
+      WritableUtils.writeVInt(out, l.size());
+      for (AttributeValue element : l) {
+        writeAttributeValue(out, element);
+      }
+    }
+    if ((mask & SS) != 0) {
+      writeStrings(out, ss);
+    }
+    if ((mask & NS) != 0) {
+      writeStrings(out, ns);
+    }
+    if ((mask & BS) != 0) {
+      WritableUtils.writeVInt(out, bs.size());
+      for (ByteBuffer element : bs) {
+        writeBinary(out, element);
+      }
+    }
+    if ((mask & NULL) != 0) {
+      out.writeBoolean(value.getNULL());
+    }
+    if ((mask & BOOL) != 0) {
+      out.writeBoolean(value.getBOOL());
+    }
+  }
+
+  private static AttributeValue readAttributeValue(DataInput in) throws IOException {
+    int mask = WritableUtils.readVInt(in);
+    if (mask < 0) {
+      return null;
+    }
+
+    AttributeValue value = new AttributeValue();
+    if ((mask & S) != 0) {
+      value.setS(Text.readString(in));
+    }
+    if ((mask & N) != 0) {
+      value.setN(Text.readString(in));
+    }
+    if ((mask & B) != 0) {
+      value.setB(readBinary(in));
+    }
+    if ((mask & M) != 0) {
+      value.setM(readItem(in));
+    }
+    if ((mask & L) != 0) {
+      int size = WritableUtils.readVInt(in);
+      List<AttributeValue> l = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        l.add(readAttributeValue(in));
+      }
+      value.setL(l);
+    }
+    if ((mask & SS) != 0) {
+      value.setSS(readStrings(in));
+    }
+    if ((mask & NS) != 0) {
+      value.setNS(readStrings(in));
+    }
+    if ((mask & BS) != 0) {
+      int size = WritableUtils.readVInt(in);
+      List<ByteBuffer> bs = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        bs.add(readBinary(in));
+      }
+      value.setBS(bs);
+    }
+    if ((mask & NULL) != 0) {
+      value.setNULL(in.readBoolean());
+    }
+    if ((mask & BOOL) != 0) {
+      value.setBOOL(in.readBoolean());
+    }
+    return value;
+  }
+
+  private static void writeStrings(DataOutput out, List<String> strings) throws IOException {
+    WritableUtils.writeVInt(out, strings.size());
+    for (String string : strings) {
+      Text.writeString(out, string);
+    }
+  }
+
+  private static List<String> readStrings(DataInput in) throws IOException {
+    int size = WritableUtils.readVInt(in);
+    List<String> strings = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      strings.add(Text.readString(in));
+    }
+    return strings;
+  }
+
+  private static void writeBinary(DataOutput out, ByteBuffer buffer) throws IOException {
+    ByteBuffer bytes = buffer.duplicate();
+    WritableUtils.writeVInt(out, bytes.remaining());
+    if (bytes.hasArray()) {
+      out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+    } else {
+      byte[] copy = new byte[bytes.remaining()];
+      bytes.get(copy);
+      out.write(copy);
+    }
+  }
+
+  private static ByteBuffer readBinary(DataInput in) throws IOException {
+    byte[] bytes = new byte[WritableUtils.readVInt(in)];
+    in.readFully(bytes);
+    return ByteBuffer.wrap(bytes);
+  }
+}
@@ -26,9 +26,11 @@ import java.lang.Math;
 import java.lang.reflect.Type;
 import java.util.HashMap;
 import java.util.Map;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Writable;
 
-public class DynamoDBItemWritable implements Writable, Serializable {
+public class DynamoDBItemWritable implements Writable, Configurable, Serializable {
 
   public static final Type type = new TypeToken<Map<String, AttributeValue>>() {}.getType();
 
@@ -38,8 +40,11 @@ public class DynamoDBItemWritable implements Writable, Serializable {
   static final String END_OF_TEXT = Character.toString((char) 03);
   private static final char FIRST_MAGIC_BYTES = 0x0001;
   private static final byte NEXT_MAGIC_BYTE = 0x00;
+  private static final byte BINARY_MAGIC_BYTE = 0x01;
 
   private Map<String, AttributeValue> dynamoDBItem;
+  private transient Configuration conf;
+  private boolean binaryFormat;
 
   public DynamoDBItemWritable() {
     dynamoDBItem = new HashMap<>();
@@ -55,7 +60,17 @@ public class DynamoDBItemWritable implements Writable, Serializable {
   // format itself and make sure that's backward compatible.
   @Override
   public void readFields(DataInput in) throws IOException {
-    readFieldsStream(readStringFromDataInput(in));
+    char firstBytes = in.readChar();
+    if (firstBytes == FIRST_MAGIC_BYTES) {
+      byte nextByte = in.readByte();
+      if (nextByte == BINARY_MAGIC_BYTE) {
+        readBinary(in);
+        return;
+      }
+      readFieldsStream(readStringFromDataInput(in, firstBytes, nextByte));
+    } else {
+      readFieldsStream(readStringFromDataInput(in, firstBytes, null));
+    }
   }
 
   // Reads what might be either the result of a single call to
@@ -65,13 +80,14 @@ public class DynamoDBItemWritable implements Writable, Serializable {
   // string.  Crucially, in that modified UTF8 format the null character
   // '\u0000' is always written with two bytes.  Thus the sequence 00000000
   // 00000001 00000000 will not occur as a result of DataOutput.writeUTF and so
-  // we use it as a magic sequence signifying the chunked format.
-  private String readStringFromDataInput(DataInput in) throws IOException {
+  // we use it as a magic sequence signifying the chunked format. The sequence
+  // 00000000 00000001 00000001 could only be a single '\u0001' character, which
+  // is never a valid item, and signifies the binary format.
+  private String readStringFromDataInput(DataInput in, char firstBytes, Byte nextByte)
+      throws IOException {
     byte[] data;
-    char firstBytes = in.readChar();
 
-    if (firstBytes == FIRST_MAGIC_BYTES) {
-      byte nextByte = in.readByte();
+    if (nextByte != null) {
       if (nextByte == NEXT_MAGIC_BYTE) {
         // After those three magic bytes the real input begins
         return readChunks(in);
@@ -103,8 +119,21 @@ public class DynamoDBItemWritable implements Writable, Serializable {
     return whole.toString();
   }
 
+  private void readBinary(DataInput in) throws IOException {
+    byte version = in.readByte();
+    if (version != DynamoDBItemBinaryCodec.VERSION) {
+      throw new IOException("Unsupported binary item format version " + version);
+    }
+    dynamoDBItem = DynamoDBItemBinaryCodec.readItem(in);
+  }
+
   @Override
   public void write(DataOutput out) throws IOException {
+    if (binaryFormat) {
+      writeBinary(out);
+      return;
+    }
+
     String whole = writeStream();
     int chunkSize = 1 << 14;
     int chunks = whole.length() / chunkSize;
@@ -122,6 +151,13 @@ public class DynamoDBItemWritable implements Writable, Serializable {
     }
   }
 
+  private void writeBinary(DataOutput out) throws IOException {
+    out.writeChar(FIRST_MAGIC_BYTES);
+    out.writeByte(BINARY_MAGIC_BYTE);
+    out.writeByte(DynamoDBItemBinaryCodec.VERSION);
+    DynamoDBItemBinaryCodec.writeItem(out, dynamoDBItem);
+  }
+
   public void readFieldsStream(String string) {
     Gson gson = DynamoDBUtil.getGson();
     String itemJson = fixMalformedJson(string);
@@ -141,6 +177,18 @@ public class DynamoDBItemWritable implements Writable, Serializable {
     this.dynamoDBItem = dynamoDBItem;
   }
 
+  @Override
+  public void setConf(Configuration conf) {
+    this.conf = conf;
+    binaryFormat = conf != null && conf.getBoolean(DynamoDBConstants.ITEM_WRITABLE_BINARY_FORMAT,
+        DynamoDBConstants.DEFAULT_ITEM_WRITABLE_BINARY_FORMAT);
+  }
+
+  @Override
+  public Configuration getConf() {
+    return conf;
+  }
+
   @Override
   public String toString() {
     return writeStream();
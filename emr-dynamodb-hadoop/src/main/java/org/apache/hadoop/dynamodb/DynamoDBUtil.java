@@ -16,6 +16,7 @@ package org.apache.hadoop.dynamodb;
 import static org.apache.hadoop.dynamodb.DynamoDBConstants.DEFAULT_MAX_ITEMS_PER_BATCH;
 import static org.apache.hadoop.dynamodb.DynamoDBConstants.MAX_ITEMS_PER_BATCH;
 
+import com.amazonaws.internal.SdkInternalList;
 import com.amazonaws.regions.RegionUtils;
 import com.amazonaws.regions.ServiceAbbreviations;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
@@ -32,11 +33,12 @@ import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Type;
+import java.math.BigDecimal;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -49,14 +51,19 @@ import org.apache.hadoop.dynamodb.util.NodeCapacityProvider;
 import org.apache.hadoop.dynamodb.util.RoundRobinYarnContainerAllocator;
 import org.apache.hadoop.dynamodb.util.TaskCalculator;
 import org.apache.hadoop.dynamodb.util.YarnContainerAllocator;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapred.JobClient;
 import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.TaskAttemptID;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
 public final class DynamoDBUtil {
 
   public static final String CHARACTER_ENCODING = "UTF-8";
+  // https://docs.aws.amazon.com/amazondynamodb/latest/developerguide/CapacityUnitCalculations.html
+  private static final int DOCUMENT_OVERHEAD_BYTES = 3;
+  private static final int DOCUMENT_ELEMENT_OVERHEAD_BYTES = 1;
   private static final Log log = LogFactory.getLog(DynamoDBUtil.class);
   private static final Gson gson;
 
@@ -65,6 +72,11 @@ public final class DynamoDBUtil {
     /* We hand serialize/deserialize ByteBuffer objects. */
     gsonBuilder.registerTypeAdapter(ByteBuffer.class, new ByteBufferSerializer());
     gsonBuilder.registerTypeAdapter(ByteBuffer.class, new ByteBufferDeserializer());
+    /* Items are streamed by hand rather than through reflection. */
+    AttributeValueTypeAdapter attributeValueAdapter = new AttributeValueTypeAdapter();
+    gsonBuilder.registerTypeAdapter(AttributeValue.class, attributeValueAdapter);
+    gsonBuilder.registerTypeAdapter(DynamoDBItemWritable.type,
+        new AttributeValueTypeAdapter.ItemTypeAdapter(attributeValueAdapter));
 
     gson = gsonBuilder.disableHtmlEscaping().create();
   }
@@ -129,6 +141,35 @@ public final class DynamoDBUtil {
     return byteBuffers;
   }
 
+  /**
+   * Copies a key, writing numbers the same way whichever way they were written, so that equal
+   * keys are equal maps: DynamoDB treats 1 and 1.0 as the same key.
+   */
+  public static Map<String, AttributeValue> normalizeKey(Map<String, AttributeValue> key) {
+    Map<String, AttributeValue> normalizedKey = new HashMap<>();
+    for (Entry<String, AttributeValue> entry : key.entrySet()) {
+      normalizedKey.put(entry.getKey(), normalizeKeyValue(entry.getValue()));
+    }
+    return normalizedKey;
+  }
+
+  /**
+   * @return the value with a number written in its shortest plain form, or the value itself if
+   *     it isn't a valid number
+   */
+  public static AttributeValue normalizeKeyValue(AttributeValue value) {
+    if (value == null || value.getN() == null) {
+      return value;
+    }
+    try {
+      return new AttributeValue().withN(new BigDecimal(value.getN()).stripTrailingZeros()
+          .toPlainString());
+    } catch (NumberFormatException e) {
+      // DynamoDB rejects the value, whichever key it is grouped with
+      return value;
+    }
+  }
+
   /**
    * Get a Gson reference with custom ByteBuffer serializer/deserializer.
    *
@@ -138,20 +179,60 @@ public final class DynamoDBUtil {
     return gson;
   }
 
+  /**
+   * Computes the size of an item the way DynamoDB does for its item size limit and for capacity
+   * units: attribute names and strings by their UTF-8 length, binaries by their remaining bytes,
+   * numbers by their significant digits, and a few bytes of overhead for maps, lists, booleans and
+   * nulls. Nothing is allocated, since this runs for every item written.
+   */
   static int getItemSizeBytes(Map<String, AttributeValue> item) {
-    try {
-      int itemSize = 0;
-      for (Entry<String, AttributeValue> entry : item.entrySet()) {
-        itemSize += entry.getKey() != null ? entry.getKey().getBytes(CHARACTER_ENCODING).length : 0;
-        itemSize += entry.getValue() != null ? getAttributeSizeBytes(entry.getValue()) : 0;
+    int itemSize = 0;
+    for (Entry<String, AttributeValue> entry : item.entrySet()) {
+      itemSize += getAttributeEntrySizeBytes(entry.getKey(), entry.getValue());
+    }
+    return itemSize;
+  }
+
+  /**
+   * @return the size of an attribute of an item, its name included
+   */
+  static int getAttributeEntrySizeBytes(String name, AttributeValue value) {
+    return (name != null ? getUtf8Length(name) : 0)
+        + (value != null ? getAttributeSizeBytes(value) : 0);
+  }
+
+  /**
+   * @return the number of bytes the string takes encoded as UTF-8
+   */
+  static int getUtf8Length(String string) {
+    int length = string.length();
+    int bytes = length;
+    for (int i = 0; i < length; i++) {
+      char c = string.charAt(i);
+      if (c < 0x80) {
+        continue;
       }
-      return itemSize;
-    } catch (UnsupportedEncodingException e) {
-      throw new RuntimeException(e);
+      if (c < 0x800) {
+        bytes++;
+      } else if (Character.isHighSurrogate(c) && i + 1 < length
+          && Character.isLowSurrogate(string.charAt(i + 1))) {
+        // Four bytes for the two chars of the pair
+        bytes += 2;
+        i++;
+      } else if (!Character.isSurrogate(c)) {
+        bytes += 2;
+      }
+      // An unpaired surrogate is encoded as a single replacement byte
     }
+    return bytes;
   }
 
-  public static void verifyInterval(long intervalBeginTime, long intervalLength) {
+  /**
+   * Sleeps until the interval that began at the given time is over.
+   *
+   * @return how long it slept
+   */
+  public static long verifyInterval(long intervalBeginTime, long intervalLength) {
     long interval = intervalBeginTime + intervalLength;
     long currentDateTime = new DateTime(DateTimeZone.UTC).getMillis();
     if (currentDateTime < interval) {
@@ -160,42 +241,76 @@ public final class DynamoDBUtil {
       } catch (InterruptedException e) {
         throw new RuntimeException("Interrupted while waiting ", e);
       }
+      return interval - currentDateTime;
     }
+    return 0;
   }
 
-  private static int getAttributeSizeBytes(AttributeValue att) throws UnsupportedEncodingException {
+  private static int getAttributeSizeBytes(AttributeValue att) {
     int byteSize = 0;
     if (att.getN() != null) {
-      byteSize += att.getN().getBytes(CHARACTER_ENCODING).length;
+      byteSize += getNumberSizeBytes(att.getN());
     } else if (att.getS() != null) {
-      byteSize += att.getS().getBytes(CHARACTER_ENCODING).length;
+      byteSize += getUtf8Length(att.getS());
     } else if (att.getB() != null) {
-      byteSize += att.getB().array().length;
+      byteSize += att.getB().remaining();
     } else if (att.getNS() != null) {
       for (String number : att.getNS()) {
-        byteSize += number.getBytes(CHARACTER_ENCODING).length;
+        byteSize += getNumberSizeBytes(number);
       }
     } else if (att.getSS() != null) {
       for (String string : att.getSS()) {
-        byteSize += string.getBytes(CHARACTER_ENCODING).length;
+        byteSize += getUtf8Length(string);
       }
     } else if (att.getBS() != null) {
       for (ByteBuffer byteBuffer : att.getBS()) {
-        byteSize += byteBuffer.array().length;
+        byteSize += byteBuffer.remaining();
       }
     } else if (att.getM() != null) {
+      byteSize += DOCUMENT_OVERHEAD_BYTES;
       for (Entry<String, AttributeValue> entry : att.getM().entrySet()) {
-        byteSize += getAttributeSizeBytes(entry.getValue())
-            + entry.getKey().getBytes(CHARACTER_ENCODING).length;
+        byteSize += getAttributeSizeBytes(entry.getValue()) + getUtf8Length(entry.getKey())
+            + DOCUMENT_ELEMENT_OVERHEAD_BYTES;
       }
     } else if (att.getL() != null) {
+      byteSize += DOCUMENT_OVERHEAD_BYTES;
       for (AttributeValue entry : att.getL()) {
-        byteSize += getAttributeSizeBytes(entry);
+        byteSize += getAttributeSizeBytes(entry) + DOCUMENT_ELEMENT_OVERHEAD_BYTES;
       }
+    } else if (att.getBOOL() != null || att.getNULL() != null) {
+      byteSize += 1;
     }
     return byteSize;
   }
 
+  /**
+   * A number takes a byte per two significant digits, leading and trailing zeros aside, plus a
+   * byte.
+   */
+  private static int getNumberSizeBytes(String number) {
+    int end = number.length();
+    int first = -1;
+    int last = -1;
+    int digits = 0;
+    for (int i = 0; i < end; i++) {
+      char c = number.charAt(i);
+      if (c == 'e' || c == 'E') {
+        break;
+      }
+      if (c >= '0' && c <= '9') {
+        if (c != '0') {
+          if (first < 0) {
+            first = digits;
+          }
+          last = digits;
+        }
+        digits++;
+      }
+    }
+    int significantDigits = first < 0 ? 1 : last - first + 1;
+    return (significantDigits + 1) / 2 + 1;
+  }
+
   static long getBoundedBatchLimit(Configuration config, long batchSize) {
     long maxItemsPerBatch = config.getLong(MAX_ITEMS_PER_BATCH, DEFAULT_MAX_ITEMS_PER_BATCH);
     return Math.min(Math.max(batchSize, 1), maxItemsPerBatch);
@@ -271,6 +386,40 @@ public final class DynamoDBUtil {
     return taskCalculator.getMaxMapTasks();
   }
 
+  /**
+   * Finds a directory the tasks of the running job can share.
+   *
+   * @param dirConfKey  key of a configured parent directory, in which a directory named after the
+   *                    job is used
+   * @param defaultName name of the directory in the job's staging directory, which is removed
+   *                    when the job completes, used if no parent directory is configured
+   * @return the directory, or null if not running as part of a job
+   */
+  public static Path getJobSharedDir(JobConf conf, String dirConfKey, String defaultName) {
+    String jobId = conf.get("mapreduce.job.id");
+    if (Strings.isNullOrEmpty(jobId)) {
+      return null;
+    }
+    String dir = conf.get(dirConfKey);
+    if (!Strings.isNullOrEmpty(dir)) {
+      return new Path(dir, jobId);
+    }
+    String jobDir = conf.get("mapreduce.job.dir");
+    return Strings.isNullOrEmpty(jobDir) ? null : new Path(jobDir, defaultName);
+  }
+
+  /**
+   * @return the id of the running task, which is the same for all of its attempts, or null if not
+   *     running as a task
+   */
+  public static String getTaskId(JobConf conf) {
+    String taskAttemptId = conf.get("mapreduce.task.attempt.id");
+    if (Strings.isNullOrEmpty(taskAttemptId)) {
+      return null;
+    }
+    return TaskAttemptID.forName(taskAttemptId).getTaskID().toString();
+  }
+
   /**
    * Since ByteBuffer does not have a no-arg constructor we hand serialize/deserialize them.
    */
@@ -300,6 +449,19 @@ public final class DynamoDBUtil {
     }
   }
 
+  /**
+   * The SDK list getters hand out an empty placeholder list for fields that were never set, which
+   * must not be confused with an explicitly empty list.
+   *
+   * @return the list, or null if it is such a placeholder
+   */
+  static <T> List<T> explicitList(List<T> list) {
+    if (list instanceof SdkInternalList && ((SdkInternalList<T>) list).isAutoConstruct()) {
+      return null;
+    }
+    return list;
+  }
+
   private DynamoDBUtil() {
 
   }
@@ -22,19 +22,30 @@ import org.joda.time.Duration;
 
 public class IopsController {
 
+  private static final long DEFAULT_MIN_UPDATE_MILLIS = 5 * 60 * 1000;
+
   private final IopsCalculator iopsCalculator;
   private final Duration iopsUpdateDuration;
   private final DynamoDBOperationType operationType;
   private DateTime lastUpdateTime;
   private double targetIops;
   private double targetItemsPerSecond;
+  private RetryCoordinator retryCoordinator;
 
   public IopsController(IopsCalculator iopsCalculator, double averageItemSizeInBytes,
       DynamoDBOperationType operationType) {
+    this(iopsCalculator, averageItemSizeInBytes, operationType, DEFAULT_MIN_UPDATE_MILLIS);
+  }
+
+  /**
+   * @param minUpdateMillis the target is recalculated every minUpdateMillis to twice that
+   */
+  public IopsController(IopsCalculator iopsCalculator, double averageItemSizeInBytes,
+      DynamoDBOperationType operationType, long minUpdateMillis) {
     this.iopsCalculator = iopsCalculator;
     this.operationType = operationType;
 
-    iopsUpdateDuration = getUpdateDuration();
+    iopsUpdateDuration = getUpdateDuration(minUpdateMillis);
     lastUpdateTime = getCurrentTime();
     targetIops = iopsCalculator.calculateTargetIops();
 
@@ -61,8 +72,30 @@ public class IopsController {
     return result;
   }
 
+  /**
+   * Follows the rate of the given coordinator, which lowers it while the table throttles the task.
+   */
+  public void setRetryCoordinator(RetryCoordinator retryCoordinator) {
+    this.retryCoordinator = retryCoordinator;
+  }
+
   public long getTargetItemsPerSecond() {
-    return (long) targetItemsPerSecond;
+    if (retryCoordinator == null) {
+      return (long) targetItemsPerSecond;
+    }
+    return Math.max((long) (targetItemsPerSecond * retryCoordinator.getRateFactor(operationType)),
+        1);
+  }
+
+  /**
+   * @return the target rate in capacity units per second, lowered while the table throttles the
+   *     task
+   */
+  public double getTargetIops() {
+    if (retryCoordinator == null) {
+      return targetIops;
+    }
+    return targetIops * retryCoordinator.getRateFactor(operationType);
   }
 
   public void update(long itemsPerSecond, double iopsConsumed) {
@@ -79,13 +112,14 @@ public class IopsController {
   }
 
   /**
-   * This method generates a random duration between 5 and 10 minutes. This is the duration used
-   * to get the updated capacity unit information from the table.
+   * This method generates a random duration between minUpdateMillis and twice that, 5 to 10
+   * minutes by default. This is the duration used to get the updated capacity unit information
+   * from the table.
    */
-  private Duration getUpdateDuration() {
+  private Duration getUpdateDuration(long minUpdateMillis) {
     Random random = new Random(System.currentTimeMillis());
-    long randomDuration = random.nextInt(5 * 60 * 1000);
-    return Duration.standardMinutes(5).plus(randomDuration);
+    long randomDuration = (long) (random.nextDouble() * minUpdateMillis);
+    return Duration.millis(minUpdateMillis).plus(randomDuration);
   }
 
   private DateTime getCurrentTime() {
@@ -16,10 +16,28 @@ package org.apache.hadoop.dynamodb;
 /*
  * These are a list of counters printed at the end of each Map Reduce job.
  */
-enum PrintCounter {
+public enum PrintCounter {
 
   DynamoDBReadThrottle("DynamoDB", "RetriedReadExceptions"), DynamoDBWriteThrottle("DynamoDB",
-      "RetriedWriteExceptions");
+      "RetriedWriteExceptions"),
+  MultiplexerConsumerWaitMillis("DynamoDB", "MultiplexerConsumerWaitMillis"),
+  MultiplexerProducerWaitMillis("DynamoDB", "MultiplexerProducerWaitMillis"),
+  ReadPages("DynamoDB", "ReadPages"),
+  ReadFailedPages("DynamoDB", "ReadFailedPages"),
+  ReadPageLatencyMillis("DynamoDB", "ReadPageLatencyMillis"),
+  ReadCapacityUnitsPermitted("DynamoDB", "ReadCapacityUnitsPermitted"),
+  ReadCapacityUnitsConsumed("DynamoDB", "ReadCapacityUnitsConsumed"),
+  ReadPageRetries("DynamoDB", "ReadPageRetries"),
+  WriteBatches("DynamoDB", "WriteBatches"),
+  WriteBatchItems("DynamoDB", "WriteBatchItems"),
+  WriteBatchBytes("DynamoDB", "WriteBatchBytes"),
+  WriteBatchLatencyMillis("DynamoDB", "WriteBatchLatencyMillis"),
+  WriteUnprocessedItems("DynamoDB", "WriteUnprocessedItems"),
+  WriteUnprocessedRetryRounds("DynamoDB", "WriteUnprocessedRetryRounds"),
+  WriteUnprocessedSleepMillis("DynamoDB", "WriteUnprocessedSleepMillis"),
+  WriteRateLimitSleepMillis("DynamoDB", "WriteRateLimitSleepMillis"),
+  WriteCoalescedItems("DynamoDB", "WriteCoalescedItems"),
+  WriteCoalescedCapacityUnits("DynamoDB", "WriteCoalescedCapacityUnits");
 
   private final String group;
   private final String name;
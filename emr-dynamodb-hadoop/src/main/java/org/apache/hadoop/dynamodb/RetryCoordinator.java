@@ -0,0 +1,162 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.dynamodb.util.AbstractTimeSource;
+import org.apache.hadoop.dynamodb.util.TimeSource;
+
+/**
+ * Coordinates the retries of all DynamoDB calls of a task, so that the read workers and the
+ * writer of a task react to throttling together instead of each backing off on its own.
+ *
+ * <ul>
+ * <li>Retry delays use decorrelated jitter: each delay is drawn between {@link #MIN_DELAY_GROWTH}
+ * and three times the previous delay, so that retries of calls throttled at the same time spread
+ * out while backing off at least as fast as a Fibonacci backoff.</li>
+ * <li>Retries are paid from a retry budget, which every successful call adds a fraction of a retry
+ * to, and which refills slowly over time. A retry without budget waits the maximum delay, so
+ * that retries can't multiply the load on a table that is already overloaded.</li>
+ * <li>Throttling lowers the rate of its operation type multiplicatively, at most once per
+ * {@link #DECREASE_INTERVAL_MS}, and the rate recovers additively while there is no throttling.
+ * The rate controllers of the task scale their target rates by
+ * {@link #getRateFactor(DynamoDBOperationType)}.</li>
+ * </ul>
+ */
+public class RetryCoordinator {
+
+  static final long BASE_DELAY_MS = 100;
+  static final long MAX_DELAY_MS = 10 * 1000;
+  static final double MIN_DELAY_GROWTH = 1.5;
+  static final double MAX_RETRY_BUDGET = 100;
+  // Retries earned by a successful call, and per second without any call
+  static final double RETRY_BUDGET_PER_SUCCESS = 0.1;
+  static final double RETRY_BUDGET_PER_SECOND = 1;
+  static final double RATE_DECREASE_FACTOR = 0.7;
+  static final double MIN_RATE_FACTOR = 0.1;
+  static final double RATE_INCREASE_PER_SECOND = 0.02;
+  // Calls throttled together are one signal, not one per call
+  static final long DECREASE_INTERVAL_MS = 1000;
+
+  private static final Log log = LogFactory.getLog(RetryCoordinator.class);
+  private static final RetryCoordinator TASK_COORDINATOR = new RetryCoordinator(new TimeSource());
+
+  private final AbstractTimeSource time;
+  private final Random random = new Random();
+  private final Map<DynamoDBOperationType, RateState> rates =
+      new EnumMap<>(DynamoDBOperationType.class);
+  private double retryBudget = MAX_RETRY_BUDGET;
+  private long lastBudgetRefillNanos;
+  private boolean budgetExhausted;
+
+  @VisibleForTesting
+  public RetryCoordinator(AbstractTimeSource time) {
+    this.time = time;
+    this.lastBudgetRefillNanos = time.getNanoTime();
+    for (DynamoDBOperationType type : DynamoDBOperationType.values()) {
+      rates.put(type, new RateState());
+    }
+  }
+
+  /**
+   * @return the coordinator shared by all clients of the task
+   */
+  public static RetryCoordinator forTask() {
+    return TASK_COORDINATOR;
+  }
+
+  /**
+   * Takes a retry from the budget and computes how long to wait before it.
+   *
+   * @param previousDelayMs the delay before the previous retry of the call, or 0 for its first
+   */
+  public synchronized long getRetryDelayMs(long previousDelayMs) {
+    refillBudget();
+    if (retryBudget < 1) {
+      if (!budgetExhausted) {
+        log.warn("Retry budget exhausted, retrying with the maximum delay");
+        budgetExhausted = true;
+      }
+      return MAX_DELAY_MS;
+    }
+    if (budgetExhausted) {
+      log.info("Retry budget recovered");
+      budgetExhausted = false;
+    }
+    retryBudget--;
+
+    long lower = Math.max((long) (previousDelayMs * MIN_DELAY_GROWTH), BASE_DELAY_MS);
+    long upper = Math.max(previousDelayMs * 3, lower + 1);
+    long delay = lower + (long) (random.nextDouble() * (upper - lower));
+    return Math.min(delay, MAX_DELAY_MS);
+  }
+
+  public synchronized void onSuccess() {
+    retryBudget = Math.min(retryBudget + RETRY_BUDGET_PER_SUCCESS, MAX_RETRY_BUDGET);
+  }
+
+  /**
+   * Lowers the rate of the given operation type, unless it was lowered less than
+   * {@link #DECREASE_INTERVAL_MS} ago.
+   */
+  public synchronized void onThrottle(DynamoDBOperationType type) {
+    RateState rate = rates.get(type);
+    long now = time.getNanoTime();
+    if (rate.decreased
+        && time.getTimeDeltaMs(rate.lastDecreaseNanos, now) < DECREASE_INTERVAL_MS) {
+      return;
+    }
+    double oldFactor = getRateFactor(rate, now);
+    rate.factorAtDecrease = Math.max(oldFactor * RATE_DECREASE_FACTOR, MIN_RATE_FACTOR);
+    rate.lastDecreaseNanos = now;
+    rate.decreased = true;
+    log.info("Throttled, lowering the " + type.name().toLowerCase() + " rate from " + oldFactor
+        + " to " + rate.factorAtDecrease + " of the target");
+  }
+
+  /**
+   * @return the fraction of its target rate the given operation type should run at
+   */
+  public synchronized double getRateFactor(DynamoDBOperationType type) {
+    return getRateFactor(rates.get(type), time.getNanoTime());
+  }
+
+  private double getRateFactor(RateState rate, long now) {
+    if (!rate.decreased) {
+      return 1.0;
+    }
+    double secondsSinceDecrease = time.getTimeDeltaMs(rate.lastDecreaseNanos, now) / 1000.0;
+    return Math.min(rate.factorAtDecrease + RATE_INCREASE_PER_SECOND * secondsSinceDecrease, 1.0);
+  }
+
+  private void refillBudget() {
+    long now = time.getNanoTime();
+    double seconds = time.getTimeDeltaMs(lastBudgetRefillNanos, now) / 1000.0;
+    if (seconds > 0) {
+      retryBudget = Math.min(retryBudget + RETRY_BUDGET_PER_SECOND * seconds, MAX_RETRY_BUDGET);
+      lastBudgetRefillNanos = now;
+    }
+  }
+
+  private static final class RateState {
+    private double factorAtDecrease = 1.0;
+    private long lastDecreaseNanos;
+    private boolean decreased;
+  }
+}
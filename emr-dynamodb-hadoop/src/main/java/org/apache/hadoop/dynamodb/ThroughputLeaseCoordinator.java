@@ -0,0 +1,215 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.JobConf;
+
+/**
+ * Shares a table's throughput between the tasks that are running, instead of giving every task a
+ * fixed slice. Each task holds a lease file named after its task id and weight in a directory
+ * shared by the tasks of the job, and renews it periodically. A task's share is its weight divided
+ * by the total weight of the unexpired leases, so the throughput of finished tasks goes to the
+ * tasks still running.
+ *
+ * <p>Leases expire after {@link #LEASE_TTL_INTERVALS} renewal intervals. Expiry is judged by the
+ * file system's modification times, so the clocks of the task hosts don't need to agree. A task
+ * that can't renew its own lease falls back to its fixed slice.
+ */
+public class ThroughputLeaseCoordinator implements Closeable {
+
+  static final int LEASE_TTL_INTERVALS = 3;
+
+  private static final Log log = LogFactory.getLog(ThroughputLeaseCoordinator.class);
+  private static final String DEFAULT_LEASE_DIR_NAME = "dynamodb-throughput-leases";
+  private static final char WEIGHT_SEPARATOR = '_';
+
+  private final FileSystem fs;
+  private final Path leaseDir;
+  private final String leaseId;
+  // Guarded by this
+  private Path leasePath;
+  private int weight;
+  private boolean closed;
+  private final double fallbackShare;
+  private final long renewIntervalMs;
+  private final ScheduledExecutorService renewer;
+
+  private volatile double share;
+  private volatile long lastRenewalMs;
+
+  @VisibleForTesting
+  ThroughputLeaseCoordinator(FileSystem fs, Path leaseDir, String leaseId, int weight,
+      double fallbackShare, long renewIntervalMs) throws IOException {
+    this.fs = fs;
+    this.leaseDir = leaseDir;
+    this.leaseId = leaseId;
+    this.leasePath = getLeasePath(weight);
+    this.weight = weight;
+    this.fallbackShare = fallbackShare;
+    this.renewIntervalMs = renewIntervalMs;
+    this.share = fallbackShare;
+
+    fs.mkdirs(leaseDir);
+    renew();
+
+    this.renewer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("DynamoDBThroughputLeaseRenewer-%d").setDaemon(true).build());
+    this.renewer.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          renew();
+        } catch (IOException | RuntimeException e) {
+          log.warn("Unable to renew throughput lease " + leasePath, e);
+        }
+      }
+    }, renewIntervalMs, renewIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Takes a lease on the throughput of the given table and operation, if throughput coordination
+   * is enabled.
+   *
+   * @param weight        the task's weight, like the number of segments it reads
+   * @param fallbackShare the task's fixed slice, used when the lease can't be renewed
+   * @return null if coordination is disabled or not possible in this task
+   */
+  public static ThroughputLeaseCoordinator create(JobConf conf, DynamoDBOperationType type,
+      String tableName, int weight, double fallbackShare) {
+    if (!conf.getBoolean(DynamoDBConstants.THROUGHPUT_COORDINATION, false)) {
+      return null;
+    }
+
+    // Attempts of the same task hold the same lease
+    String taskId = DynamoDBUtil.getTaskId(conf);
+    Path leaseRoot = DynamoDBUtil.getJobSharedDir(conf, DynamoDBConstants.THROUGHPUT_LEASE_DIR,
+        DEFAULT_LEASE_DIR_NAME);
+    if (taskId == null || leaseRoot == null) {
+      log.warn("Throughput coordination is enabled, but the job or task can't be identified. "
+          + "Using a fixed share of the throughput.");
+      return null;
+    }
+
+    Path leaseDir = new Path(leaseRoot, type.name().toLowerCase() + "-" + tableName);
+    long renewIntervalMs = conf.getLong(DynamoDBConstants.THROUGHPUT_LEASE_RENEW_INTERVAL_MS,
+        DynamoDBConstants.DEFAULT_THROUGHPUT_LEASE_RENEW_INTERVAL_MS);
+    try {
+      ThroughputLeaseCoordinator coordinator = new ThroughputLeaseCoordinator(
+          leaseDir.getFileSystem(conf), leaseDir, taskId, weight, fallbackShare, renewIntervalMs);
+      log.info("Took throughput lease " + coordinator.leasePath + ", share: "
+          + coordinator.getShare());
+      return coordinator;
+    } catch (IOException e) {
+      log.warn("Unable to take a throughput lease in " + leaseDir + ". Using a fixed share of the "
+          + "throughput.", e);
+      return null;
+    }
+  }
+
+  /**
+   * @return the fraction of the table's throughput this task may use
+   */
+  public double getShare() {
+    if (System.currentTimeMillis() - lastRenewalMs > renewIntervalMs * LEASE_TTL_INTERVALS) {
+      // Other tasks no longer count our lease
+      return fallbackShare;
+    }
+    return share;
+  }
+
+  public long getRenewIntervalMs() {
+    return renewIntervalMs;
+  }
+
+  /**
+   * Changes the task's weight, like when it claims segments of other tasks or has no more segments
+   * to read. Other tasks see the new weight the next time they renew their lease.
+   */
+  public synchronized void setWeight(int newWeight) {
+    if (closed || newWeight == weight) {
+      return;
+    }
+    Path oldLeasePath = leasePath;
+    log.info("Throughput lease weight changed from " + weight + " to " + newWeight);
+    leasePath = getLeasePath(newWeight);
+    weight = newWeight;
+    try {
+      // Taken under the new weight first, so that the task always holds a lease
+      fs.create(leasePath, true).close();
+      fs.delete(oldLeasePath, false);
+      renew();
+    } catch (IOException e) {
+      log.warn("Unable to move throughput lease " + oldLeasePath + " to " + leasePath, e);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    renewer.shutdownNow();
+    try {
+      fs.delete(leasePath, false);
+    } catch (IOException e) {
+      log.warn("Unable to release throughput lease " + leasePath, e);
+    }
+  }
+
+  @VisibleForTesting
+  synchronized void renew() throws IOException {
+    fs.create(leasePath, true).close();
+    long now = fs.getFileStatus(leasePath).getModificationTime();
+    long ttlMs = renewIntervalMs * LEASE_TTL_INTERVALS;
+
+    int totalWeight = 0;
+    int leases = 0;
+    for (FileStatus status : fs.listStatus(leaseDir)) {
+      if (now - status.getModificationTime() <= ttlMs) {
+        totalWeight += getWeight(status.getPath().getName());
+        leases++;
+      }
+    }
+
+    double newShare = weight == 0 ? 0 : (double) weight / Math.max(totalWeight, weight);
+    if (newShare != share) {
+      log.info("Throughput share changed from " + share + " to " + newShare + " (" + leases
+          + " leases, total weight " + totalWeight + ")");
+    }
+    share = newShare;
+    lastRenewalMs = System.currentTimeMillis();
+  }
+
+  private Path getLeasePath(int weight) {
+    return new Path(leaseDir, leaseId + WEIGHT_SEPARATOR + weight);
+  }
+
+  private static int getWeight(String leaseName) {
+    try {
+      return Integer.parseInt(leaseName.substring(leaseName.lastIndexOf(WEIGHT_SEPARATOR) + 1));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
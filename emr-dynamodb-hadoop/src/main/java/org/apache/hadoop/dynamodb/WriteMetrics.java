@@ -0,0 +1,217 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb;
+
+import com.amazonaws.services.dynamodbv2.model.Capacity;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.hadoop.dynamodb.util.LatencyHistogram;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * Collects the metrics of a task's writes: the latency, fill and size of the BatchWriteItem calls,
+ * the write units they consumed per table and index, and the time spent waiting, both for the
+ * write rate limit and before resubmitting unprocessed items, and the writes replaced by a later
+ * write of their key before they were sent. The totals are reported as task counters
+ * of the DynamoDB group, with the write units per table and index in counters named after them.
+ */
+public class WriteMetrics {
+
+  static final String WRITE_UNITS_COUNTER_PREFIX = "WriteCapacityUnits-";
+
+  private final long maxItemsPerBatch;
+  // Guarded by this
+  private final LatencyHistogram batchLatency = new LatencyHistogram();
+  private final Map<String, Double> writeUnits = new TreeMap<>();
+  private long items;
+  private long bytes;
+  private long unprocessedItems;
+  private long unprocessedRetryRounds;
+  private long unprocessedSleepMillis;
+  private long rateLimitSleepMillis;
+  private long coalescedItems;
+  private double coalescedWriteUnits;
+
+  /**
+   * @param maxItemsPerBatch the items a full batch has, to compute how full batches are
+   */
+  public WriteMetrics(long maxItemsPerBatch) {
+    this.maxItemsPerBatch = maxItemsPerBatch;
+  }
+
+  /**
+   * Records a BatchWriteItem call that DynamoDB answered.
+   *
+   * @param latencyNanos     how long the call took
+   * @param items            the number of write requests in the batch
+   * @param bytes            the size of the items and keys of the batch
+   * @param unprocessedItems the number of write requests DynamoDB left unprocessed
+   * @param consumed         the capacity the call consumed, with indexes, or null
+   */
+  public synchronized void recordBatch(long latencyNanos, int items, long bytes,
+      int unprocessedItems, Collection<ConsumedCapacity> consumed) {
+    batchLatency.record(latencyNanos);
+    this.items += items;
+    this.bytes += bytes;
+    this.unprocessedItems += unprocessedItems;
+    if (consumed == null) {
+      return;
+    }
+    for (ConsumedCapacity capacity : consumed) {
+      String tableName = capacity.getTableName();
+      if (capacity.getTable() != null) {
+        addWriteUnits(tableName, capacity.getTable());
+      }
+      if (capacity.getLocalSecondaryIndexes() != null) {
+        for (Map.Entry<String, Capacity> index : capacity.getLocalSecondaryIndexes().entrySet()) {
+          addWriteUnits(tableName + "-" + index.getKey(), index.getValue());
+        }
+      }
+      if (capacity.getGlobalSecondaryIndexes() != null) {
+        for (Map.Entry<String, Capacity> index : capacity.getGlobalSecondaryIndexes().entrySet()) {
+          addWriteUnits(tableName + "-" + index.getKey(), index.getValue());
+        }
+      }
+    }
+  }
+
+  /**
+   * Records a round of resubmitting unprocessed items, and the time waited before it.
+   */
+  public synchronized void recordUnprocessedRetry(long sleepMillis) {
+    unprocessedRetryRounds++;
+    unprocessedSleepMillis += sleepMillis;
+  }
+
+  /**
+   * Records time the writer waited to stay within its write rate.
+   */
+  public synchronized void recordRateLimitSleep(long sleepMillis) {
+    rateLimitSleepMillis += sleepMillis;
+  }
+
+  /**
+   * Records a pending write that a later write of its key replaced, saving its write units.
+   */
+  public synchronized void recordCoalescedWrite(double writeUnits) {
+    coalescedItems++;
+    coalescedWriteUnits += writeUnits;
+  }
+
+  public synchronized long getBatches() {
+    return batchLatency.getCount();
+  }
+
+  public synchronized long getItems() {
+    return items;
+  }
+
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * @return the average number of items of a batch relative to a full batch, between 0 and 1
+   */
+  public synchronized double getBatchFillRatio() {
+    long batches = batchLatency.getCount();
+    return batches == 0 ? 0 : (double) items / (batches * maxItemsPerBatch);
+  }
+
+  public synchronized long getBatchLatencyPercentileMillis(double percentile) {
+    return batchLatency.getPercentileMillis(percentile);
+  }
+
+  public synchronized long getUnprocessedItems() {
+    return unprocessedItems;
+  }
+
+  public synchronized long getUnprocessedRetryRounds() {
+    return unprocessedRetryRounds;
+  }
+
+  public synchronized long getUnprocessedSleepMillis() {
+    return unprocessedSleepMillis;
+  }
+
+  public synchronized long getRateLimitSleepMillis() {
+    return rateLimitSleepMillis;
+  }
+
+  public synchronized long getCoalescedItems() {
+    return coalescedItems;
+  }
+
+  /**
+   * @return the write units of the table that the replaced writes would have consumed
+   */
+  public synchronized double getCoalescedWriteUnits() {
+    return coalescedWriteUnits;
+  }
+
+  /**
+   * @return the write units consumed per table, and per index, named table-index
+   */
+  public synchronized Map<String, Double> getWriteUnits() {
+    return new TreeMap<>(writeUnits);
+  }
+
+  /**
+   * Adds the totals to the task counters. Call it once, as counters add up. Hadoop also adds up
+   * the counters of all tasks, so the fill ratio and the latency percentiles and maximum are only
+   * in {@link #toString()}, which the writer logs.
+   */
+  public synchronized void reportCounters(Reporter reporter) {
+    incrCounter(reporter, PrintCounter.WriteBatches, batchLatency.getCount());
+    incrCounter(reporter, PrintCounter.WriteBatchItems, items);
+    incrCounter(reporter, PrintCounter.WriteBatchBytes, bytes);
+    incrCounter(reporter, PrintCounter.WriteBatchLatencyMillis, batchLatency.getTotalMillis());
+    incrCounter(reporter, PrintCounter.WriteUnprocessedItems, unprocessedItems);
+    incrCounter(reporter, PrintCounter.WriteUnprocessedRetryRounds, unprocessedRetryRounds);
+    incrCounter(reporter, PrintCounter.WriteUnprocessedSleepMillis, unprocessedSleepMillis);
+    incrCounter(reporter, PrintCounter.WriteRateLimitSleepMillis, rateLimitSleepMillis);
+    incrCounter(reporter, PrintCounter.WriteCoalescedItems, coalescedItems);
+    incrCounter(reporter, PrintCounter.WriteCoalescedCapacityUnits,
+        Math.round(coalescedWriteUnits));
+    for (Map.Entry<String, Double> units : writeUnits.entrySet()) {
+      reporter.incrCounter(PrintCounter.WriteBatches.getGroup(),
+          WRITE_UNITS_COUNTER_PREFIX + units.getKey(), Math.round(units.getValue()));
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "batches=" + batchLatency.getCount() + ", items=" + items + ", bytes=" + bytes
+        + ", fill=" + getBatchFillRatio() + ", p50Ms=" + batchLatency.getPercentileMillis(50)
+        + ", p99Ms=" + batchLatency.getPercentileMillis(99) + ", maxMs="
+        + batchLatency.getMaxMillis() + ", unprocessedItems=" + unprocessedItems
+        + ", unprocessedRetryRounds=" + unprocessedRetryRounds + ", unprocessedSleepMs="
+        + unprocessedSleepMillis + ", rateLimitSleepMs=" + rateLimitSleepMillis
+        + ", coalescedItems=" + coalescedItems + ", coalescedWriteUnits=" + coalescedWriteUnits
+        + ", writeUnits=" + writeUnits;
+  }
+
+  private void addWriteUnits(String name, Capacity capacity) {
+    if (capacity.getCapacityUnits() != null) {
+      Double units = writeUnits.get(name);
+      writeUnits.put(name, (units == null ? 0 : units) + capacity.getCapacityUnits());
+    }
+  }
+
+  private static void incrCounter(Reporter reporter, PrintCounter counter, long amount) {
+    reporter.incrCounter(counter.getGroup(), counter.getName(), amount);
+  }
+}
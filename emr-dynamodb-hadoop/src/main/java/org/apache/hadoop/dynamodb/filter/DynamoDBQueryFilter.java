@@ -13,16 +13,32 @@
 
 package org.apache.hadoop.dynamodb.filter;
 
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
 import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.google.common.annotations.VisibleForTesting;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 public class DynamoDBQueryFilter {
 
+  // Characters from the surrogates up don't sort the same in Java and UTF-8
+  private static final int MAX_SPLIT_CHAR = 0xD7FF;
+
   private final Map<String, Condition> keyConditions = new HashMap<>();
   private final Map<String, Condition> scanFilter = new HashMap<>();
 
   private DynamoDBIndexInfo index;
+  private boolean primaryKeyConditions;
 
   public DynamoDBIndexInfo getIndex() {
     return index;
@@ -47,4 +63,174 @@ public class DynamoDBQueryFilter {
   public void addScanFilter(DynamoDBFilter filter) {
     this.scanFilter.put(filter.getColumnName(), filter.getDynamoDBCondition());
   }
+
+  /**
+   * Marks the key conditions as conditions on every key of the table's primary key.
+   */
+  public void setPrimaryKeyConditions(boolean primaryKeyConditions) {
+    this.primaryKeyConditions = primaryKeyConditions;
+  }
+
+  /**
+   * @return whether the key conditions only match the items of known primary keys, which can be
+   *     read by key instead of queried
+   */
+  public boolean isPrimaryKeyLookup() {
+    if (!primaryKeyConditions || index != null || keyConditions.isEmpty()) {
+      return false;
+    }
+    for (Condition condition : keyConditions.values()) {
+      String operator = condition.getComparisonOperator();
+      if (!ComparisonOperator.EQ.toString().equals(operator)
+          && !ComparisonOperator.IN.toString().equals(operator)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the primary keys of a {@link #isPrimaryKeyLookup() primary key lookup}, one for each
+   *     of its query segments and in the same order
+   */
+  public List<Map<String, AttributeValue>> getPrimaryKeys() {
+    List<Map<String, AttributeValue>> keys = new ArrayList<>();
+    for (DynamoDBQuerySegment segment : getQuerySegments(1)) {
+      Map<String, AttributeValue> key = new HashMap<>();
+      for (Map.Entry<String, Condition> entry : segment.getKeyConditions().entrySet()) {
+        key.put(entry.getKey(), entry.getValue().getAttributeValueList().get(0));
+      }
+      keys.add(key);
+    }
+    return keys;
+  }
+
+  /**
+   * Fans the key conditions out into queries that together read the items of the key conditions,
+   * so that they can be read as separate segments: one query per value of an IN condition, and
+   * the range of a BETWEEN condition on a number or string key divided into up to rangeSegments
+   * sub-ranges. The result only depends on the key conditions and rangeSegments, so that every
+   * task of a job finds the same query segments.
+   */
+  public List<DynamoDBQuerySegment> getQuerySegments(int rangeSegments) {
+    List<DynamoDBQuerySegment> segments = Collections.singletonList(
+        new DynamoDBQuerySegment(new HashMap<String, Condition>()));
+    for (Map.Entry<String, Condition> entry : new TreeMap<>(keyConditions).entrySet()) {
+      String keyName = entry.getKey();
+      Condition condition = entry.getValue();
+      List<AttributeValue> values = condition.getAttributeValueList();
+
+      List<DynamoDBQuerySegment> fannedOutSegments = new ArrayList<>();
+      for (DynamoDBQuerySegment segment : segments) {
+        if (ComparisonOperator.IN.toString().equals(condition.getComparisonOperator())) {
+          for (AttributeValue value : getDistinctValues(values)) {
+            fannedOutSegments.add(withKeyCondition(segment, keyName, new Condition()
+                .withComparisonOperator(ComparisonOperator.EQ)
+                .withAttributeValueList(value), null));
+          }
+        } else if (ComparisonOperator.BETWEEN.toString().equals(condition
+            .getComparisonOperator()) && rangeSegments > 1) {
+          List<AttributeValue> bounds = splitRange(values.get(0), values.get(1), rangeSegments);
+          for (int i = 0; i < bounds.size() - 1; i++) {
+            AttributeValue upperBound = bounds.get(i + 1);
+            fannedOutSegments.add(withKeyCondition(segment, keyName, new Condition()
+                .withComparisonOperator(ComparisonOperator.BETWEEN)
+                .withAttributeValueList(bounds.get(i), upperBound),
+                i < bounds.size() - 2 ? upperBound : null));
+          }
+        } else {
+          fannedOutSegments.add(withKeyCondition(segment, keyName, condition, null));
+        }
+      }
+      segments = fannedOutSegments;
+    }
+    return segments;
+  }
+
+  /**
+   * Divides the range between two number or string values into up to the given number of
+   * sub-ranges.
+   *
+   * @return the bounds of the sub-ranges in ascending order, starting with lower and ending with
+   *     upper, or just lower and upper if the range can't be divided
+   */
+  @VisibleForTesting
+  static List<AttributeValue> splitRange(AttributeValue lower, AttributeValue upper, int parts) {
+    List<AttributeValue> bounds = new ArrayList<>();
+    bounds.add(lower);
+    if (lower.getN() != null && upper.getN() != null) {
+      BigDecimal lowerNumber = new BigDecimal(lower.getN());
+      BigDecimal upperNumber = new BigDecimal(upper.getN());
+      BigDecimal span = upperNumber.subtract(lowerNumber);
+      // Integer bounds keep sub-ranges on integers, which most number keys are
+      boolean integral = lowerNumber.stripTrailingZeros().scale() <= 0
+          && upperNumber.stripTrailingZeros().scale() <= 0;
+      BigDecimal previous = lowerNumber;
+      for (int i = 1; i < parts; i++) {
+        BigDecimal offset = integral
+            ? span.multiply(BigDecimal.valueOf(i)).divide(BigDecimal.valueOf(parts), 0,
+                RoundingMode.FLOOR)
+            : span.multiply(BigDecimal.valueOf(i)).divide(BigDecimal.valueOf(parts),
+                MathContext.DECIMAL128);
+        BigDecimal bound = lowerNumber.add(offset).round(MathContext.DECIMAL128);
+        if (bound.compareTo(previous) > 0 && bound.compareTo(upperNumber) < 0) {
+          bounds.add(new AttributeValue().withN(bound.stripTrailingZeros().toPlainString()));
+          previous = bound;
+        }
+      }
+    } else if (lower.getS() != null && upper.getS() != null) {
+      String lowerString = lower.getS();
+      String upperString = upper.getS();
+      int prefixLength = 0;
+      while (prefixLength < lowerString.length() && prefixLength < upperString.length()
+          && lowerString.charAt(prefixLength) == upperString.charAt(prefixLength)) {
+        prefixLength++;
+      }
+      // Bounds only differ from the common prefix in the next character
+      if (prefixLength < upperString.length()) {
+        String prefix = upperString.substring(0, prefixLength);
+        int lowerChar = prefixLength < lowerString.length() ? lowerString.charAt(prefixLength) : 0;
+        int upperChar = upperString.charAt(prefixLength);
+        if (lowerChar < upperChar && upperChar <= MAX_SPLIT_CHAR) {
+          int previous = lowerChar;
+          for (int i = 1; i < parts; i++) {
+            int boundChar = lowerChar + (int) ((long) (upperChar - lowerChar) * i / parts);
+            if (boundChar > previous && boundChar < upperChar) {
+              bounds.add(new AttributeValue().withS(prefix + (char) boundChar));
+              previous = boundChar;
+            }
+          }
+        }
+      }
+    }
+    bounds.add(upper);
+    return bounds;
+  }
+
+  /**
+   * Drops repeated values of an IN condition, which would otherwise read the same items twice.
+   */
+  private static Collection<AttributeValue> getDistinctValues(List<AttributeValue> values) {
+    Map<Object, AttributeValue> distinctValues = new LinkedHashMap<>();
+    for (AttributeValue value : values) {
+      // The same number can be written in more than one way
+      Object key = value.getN() == null ? value : new BigDecimal(value.getN()).stripTrailingZeros();
+      if (!distinctValues.containsKey(key)) {
+        distinctValues.put(key, value);
+      }
+    }
+    return distinctValues.values();
+  }
+
+  private static DynamoDBQuerySegment withKeyCondition(DynamoDBQuerySegment segment,
+      String keyName, Condition condition, AttributeValue exclusiveUpperBound) {
+    Map<String, Condition> keyConditions = new HashMap<>(segment.getKeyConditions());
+    keyConditions.put(keyName, condition);
+    if (exclusiveUpperBound != null) {
+      return new DynamoDBQuerySegment(keyConditions, keyName, exclusiveUpperBound);
+    }
+    // Only one key has a range condition, keep the bound of its sub-range
+    return new DynamoDBQuerySegment(keyConditions, segment.getRangeKeyName(),
+        segment.getExclusiveUpperBound());
+  }
 }
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.filter;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One of the queries the key conditions of a {@link DynamoDBQueryFilter} are fanned out to. Each
+ * is read as a segment of the query, like the segments of a parallel scan.
+ *
+ * <p>A query segment reading a sub-range of a range key condition also reads the first key of the
+ * next sub-range, because a single key condition can't exclude its upper bound. Items with that
+ * key are dropped by {@link #filterItems(List, Collection)}.
+ */
+public class DynamoDBQuerySegment {
+
+  private final Map<String, Condition> keyConditions;
+  private final String rangeKeyName;
+  private final AttributeValue exclusiveUpperBound;
+
+  public DynamoDBQuerySegment(Map<String, Condition> keyConditions) {
+    this(keyConditions, null, null);
+  }
+
+  public DynamoDBQuerySegment(Map<String, Condition> keyConditions, String rangeKeyName,
+      AttributeValue exclusiveUpperBound) {
+    this.keyConditions = keyConditions;
+    this.rangeKeyName = rangeKeyName;
+    this.exclusiveUpperBound = exclusiveUpperBound;
+  }
+
+  public Map<String, Condition> getKeyConditions() {
+    return keyConditions;
+  }
+
+  public String getRangeKeyName() {
+    return rangeKeyName;
+  }
+
+  public AttributeValue getExclusiveUpperBound() {
+    return exclusiveUpperBound;
+  }
+
+  /**
+   * @param attributes the attributes the reader projects, or null for whole items
+   * @return the attributes to request, which include the range key if items need to be filtered
+   */
+  public Collection<String> getAttributesToGet(Collection<String> attributes) {
+    if (exclusiveUpperBound == null || attributes == null || attributes.isEmpty()
+        || attributes.contains(rangeKeyName)) {
+      return attributes;
+    }
+    Set<String> attributesToGet = new LinkedHashSet<>(attributes);
+    attributesToGet.add(rangeKeyName);
+    return attributesToGet;
+  }
+
+  /**
+   * Drops the items another query segment reads, and the range key if only
+   * {@link #getAttributesToGet(Collection)} added it.
+   */
+  public List<Map<String, AttributeValue>> filterItems(List<Map<String, AttributeValue>> items,
+      Collection<String> attributes) {
+    if (exclusiveUpperBound == null || items == null) {
+      return items;
+    }
+    boolean removeRangeKey = attributes != null && !attributes.isEmpty()
+        && !attributes.contains(rangeKeyName);
+
+    List<Map<String, AttributeValue>> filteredItems = new ArrayList<>(items.size());
+    for (Map<String, AttributeValue> item : items) {
+      if (isUpperBound(item.get(rangeKeyName))) {
+        continue;
+      }
+      if (removeRangeKey) {
+        item.remove(rangeKeyName);
+      }
+      filteredItems.add(item);
+    }
+    return filteredItems;
+  }
+
+  private boolean isUpperBound(AttributeValue value) {
+    if (value == null) {
+      return false;
+    }
+    if (exclusiveUpperBound.getN() != null && value.getN() != null) {
+      // The same number can be written in more than one way
+      return new BigDecimal(exclusiveUpperBound.getN()).compareTo(new BigDecimal(value.getN()))
+          == 0;
+    }
+    return exclusiveUpperBound.equals(value);
+  }
+
+  @Override
+  public String toString() {
+    return exclusiveUpperBound == null ? keyConditions.toString()
+        : keyConditions + " excluding " + rangeKeyName + " " + exclusiveUpperBound;
+  }
+}
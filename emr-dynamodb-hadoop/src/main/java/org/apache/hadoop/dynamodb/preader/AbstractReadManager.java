@@ -19,18 +19,25 @@ import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Random;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.dynamodb.DynamoDBConstants;
+import org.apache.hadoop.dynamodb.IopsCalculator;
 import org.apache.hadoop.dynamodb.util.AbstractTimeSource;
 
 /**
  * The ReadManager is responsible for deciding the required number of ReadWorkers to achieve the
  * target throughput rate. It will keep track of RCUs achieved and increase or decrease the worker
  * count as necessary.
+ *
+ * <p>With the async read engine ({@link DynamoDBConstants#READ_ENGINE}) an
+ * {@link AsyncReadDispatcher} replaces the workers, and adding or removing a worker doubles or
+ * halves the number of reads it keeps outstanding.
  */
 public abstract class AbstractReadManager {
 
@@ -46,6 +53,8 @@ public abstract class AbstractReadManager {
   private static final int INITIAL_WORKER_COUNT = MIN_WORKER_COUNT;
   private static final int EVALUATION_FREQ_MS = DynamoDBConstants.RATE_CONTROLLER_WINDOW_SIZE_SEC
       * 1000;
+  // By default the target rate is refreshed every 5 to 10 minutes, like IopsController's target
+  private static final long DEFAULT_TARGET_RATE_REFRESH_MIN_MS = 5 * 60 * 1000;
   protected final DynamoDBRecordReaderContext context;
   protected final RateController rateController;
   protected final AbstractTimeSource time;
@@ -56,7 +65,13 @@ public abstract class AbstractReadManager {
   private final List<Report> reportedStats = new ArrayList<>();
   private final Object reportStatsLock = new Object();
   private final PageResultMultiplexer<Map<String, AttributeValue>> pageMux;
+  private final AsyncReadDispatcher dispatcher;
+  private final Random random = new Random();
   private long lastEvaluatedTimeNano;
+  // Guarded by reportStatsLock
+  private IopsCalculator iopsCalculator;
+  private long targetRateRefreshMinMs;
+  private long nextTargetRateRefreshNano;
 
   public AbstractReadManager(RateController rateController, AbstractTimeSource time,
       DynamoDBRecordReaderContext context) {
@@ -65,20 +80,50 @@ public abstract class AbstractReadManager {
     this.time = time;
     this.lastEvaluatedTimeNano = time.getNanoTime();
     this.pageMux = context.getPageResultMultiplexer();
+    this.dispatcher = createDispatcher(context);
 
     initializeReadRequests();
 
-    for (int i = 0; i < INITIAL_WORKER_COUNT; i++) {
-      addWorker();
+    if (dispatcher != null) {
+      dispatcher.start();
+    } else {
+      for (int i = 0; i < INITIAL_WORKER_COUNT; i++) {
+        addWorker();
+      }
     }
   }
 
   public void enqueueReadRequestToTail(AbstractRecordReadRequest req) {
     readRequestQueue.addLast(req);
+    if (dispatcher != null) {
+      dispatcher.signalRequestAvailable();
+    }
   }
 
   public void enqueueReadRequestToHead(AbstractRecordReadRequest req) {
     readRequestQueue.addFirst(req);
+    if (dispatcher != null) {
+      dispatcher.signalRequestAvailable();
+    }
+  }
+
+  /**
+   * Periodically recalculates the target rate with the given calculator, so that reads follow
+   * changes in the table's provisioned throughput.
+   */
+  public void setIopsCalculator(IopsCalculator iopsCalculator) {
+    setIopsCalculator(iopsCalculator, DEFAULT_TARGET_RATE_REFRESH_MIN_MS);
+  }
+
+  /**
+   * @param refreshMinMs the target rate is recalculated every refreshMinMs to twice that
+   */
+  public void setIopsCalculator(IopsCalculator iopsCalculator, long refreshMinMs) {
+    synchronized (reportStatsLock) {
+      this.iopsCalculator = iopsCalculator;
+      this.targetRateRefreshMinMs = refreshMinMs;
+      scheduleTargetRateRefresh();
+    }
   }
 
   public AbstractRecordReadRequest dequeueReadRequest() {
@@ -92,10 +137,23 @@ public abstract class AbstractReadManager {
    * @param retries            Number of throttles
    */
   public void report(double permittedReadUnits, double consumedReadUnits, int items, int retries) {
-    rateController.adjust(permittedReadUnits, consumedReadUnits, items);
+    report(permittedReadUnits, consumedReadUnits, items, -1, retries);
+  }
+
+  /**
+   * @param itemBytes Total size of the items returned, or -1 if unknown
+   */
+  public void report(double permittedReadUnits, double consumedReadUnits, int items,
+      long itemBytes, int retries) {
+    if (itemBytes < 0) {
+      rateController.adjust(permittedReadUnits, consumedReadUnits, items);
+    } else {
+      rateController.adjust(permittedReadUnits, consumedReadUnits, items, itemBytes);
+    }
 
     boolean addWorker = false;
     boolean removeWorker = false;
+    IopsCalculator refreshCalculator = null;
 
     synchronized (reportStatsLock) {
       reportedStats.add(new Report(consumedReadUnits, items, retries));
@@ -114,12 +172,15 @@ public abstract class AbstractReadManager {
       double rcuPerRequest = sum.readUnits / reportCount;
       double rcuPerSecond = (sum.readUnits * 1000) / deltaMs;
       recordEvaluationStats(reportCount, rcuPerRequest, rcuPerSecond);
+      context.getReadMetrics().recordEvaluation(getWorkerCount(), rcuPerSecond,
+          rateController.getEffectiveRate());
 
       // Remove a worker if we're achieving our throughput with very low
       // iops requests. There's benefit in doing slightly larger requests.
-      if (rcuPerRequest < MIN_RCU_PER_REQ && rcuPerSecond * 1.1 > rateController.getTargetRate()) {
+      if (rcuPerRequest < MIN_RCU_PER_REQ
+          && rcuPerSecond * 1.1 > rateController.getEffectiveRate()) {
         removeWorker = true;
-      } else if (rcuPerSecond * 1.1 <= rateController.getTargetRate()) {
+      } else if (rcuPerSecond * 1.1 <= rateController.getEffectiveRate()) {
         if (sum.retries > 0) {
           log.warn("Not achieving throughput, but not adding workers due to retries (throttles or"
               + " 500s) (cnt=" + sum.retries + ")");
@@ -130,6 +191,15 @@ public abstract class AbstractReadManager {
       }
       reportedStats.clear();
       lastEvaluatedTimeNano = time.getNanoTime();
+
+      if (iopsCalculator != null && lastEvaluatedTimeNano - nextTargetRateRefreshNano >= 0) {
+        refreshCalculator = iopsCalculator;
+        scheduleTargetRateRefresh();
+      }
+    }
+
+    if (refreshCalculator != null) {
+      refreshTargetRate(refreshCalculator);
     }
 
     if (removeWorker) {
@@ -147,6 +217,11 @@ public abstract class AbstractReadManager {
    * @param segment the segment to be marked as completed
    */
   void markSegmentComplete(int segment) {
+    if (startNextSegment()) {
+      log.info("Segment " + segment + " complete. Started reading another segment.");
+      return;
+    }
+
     int remaining = segmentsRemaining.decrementAndGet();
 
     log.info("Segment " + segment + " complete. Remaining segments: " + remaining);
@@ -171,6 +246,9 @@ public abstract class AbstractReadManager {
       log.info("Shutting down record reader, no segments remaining.");
     }
 
+    if (dispatcher != null) {
+      dispatcher.shutdown();
+    }
     while (workers.size() > 0) {
       removeWorker(true /* force */);
     }
@@ -178,12 +256,32 @@ public abstract class AbstractReadManager {
 
   protected abstract void initializeReadRequests();
 
+  /**
+   * Called once a segment has been fully read, to start reading a segment that wasn't known when
+   * the read requests were initialized.
+   *
+   * @return true if a read request for another segment was enqueued
+   */
+  protected boolean startNextSegment() {
+    return false;
+  }
+
   protected void recordEvaluationStats(int reportCnt, double rcuPerRequest, double rcuPerSecond) {
     log.info("Evaluating rcuPerRequest=" + rcuPerRequest + ", rcuPerSecond=" + rcuPerSecond + ", "
-        + "reportCnt=" + reportCnt + ", workers=" + workers.size());
+        + "reportCnt=" + reportCnt + ", workers=" + getWorkerCount());
+  }
+
+  protected int getWorkerCount() {
+    return dispatcher != null ? dispatcher.getTargetOutstanding() : workers.size();
   }
 
   protected void addWorker() {
+    if (dispatcher != null) {
+      if (!dispatcher.increaseOutstanding()) {
+        log.info("Can't increase outstanding reads, already at max");
+      }
+      return;
+    }
     ReadWorker worker = new ReadWorker(this, context.getReporter());
     if (workers.offer(worker)) {
       worker.start();
@@ -197,7 +295,11 @@ public abstract class AbstractReadManager {
   }
 
   private void removeWorker(boolean force) {
-    if (!force && workers.size() <= MIN_WORKER_COUNT) {
+    if (dispatcher != null && !force) {
+      if (!dispatcher.decreaseOutstanding()) {
+        log.info("Can't reduce outstanding reads, already at min");
+      }
+    } else if (!force && workers.size() <= MIN_WORKER_COUNT) {
       log.info("Can't reduce worker count, already at min worker count");
     } else {
       ReadWorker worker = workers.poll();
@@ -207,6 +309,33 @@ public abstract class AbstractReadManager {
     }
   }
 
+  private void scheduleTargetRateRefresh() {
+    long delayMs = targetRateRefreshMinMs + (long) (random.nextDouble() * targetRateRefreshMinMs);
+    nextTargetRateRefreshNano = time.getNanoTime()
+        + delayMs * AbstractTimeSource.NANOSECONDS_IN_MILLISECOND;
+  }
+
+  private void refreshTargetRate(IopsCalculator calculator) {
+    try {
+      rateController.setTargetRate(calculator.calculateTargetIops());
+    } catch (RuntimeException e) {
+      // Keep reading at the current rate, we'll try again at the next refresh
+      log.warn("Unable to refresh the target rate", e);
+    }
+  }
+
+  private AsyncReadDispatcher createDispatcher(DynamoDBRecordReaderContext context) {
+    Configuration conf = context.getConf();
+    if (conf == null || !DynamoDBConstants.READ_ENGINE_ASYNC.equalsIgnoreCase(
+        conf.get(DynamoDBConstants.READ_ENGINE, DynamoDBConstants.DEFAULT_READ_ENGINE))) {
+      return null;
+    }
+    int maxOutstanding = Math.max(conf.getInt(DynamoDBConstants.MAX_OUTSTANDING_READS,
+        DynamoDBConstants.DEFAULT_MAX_OUTSTANDING_READS), 1);
+    return new AsyncReadDispatcher(this, context.getReporter(), maxOutstanding,
+        INITIAL_WORKER_COUNT);
+  }
+
   private Report getReportedSum() {
     double readUnits = 0;
     int items = 0;
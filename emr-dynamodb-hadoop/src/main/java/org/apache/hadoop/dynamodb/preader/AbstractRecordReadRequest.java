@@ -15,6 +15,7 @@ package org.apache.hadoop.dynamodb.preader;
 
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import java.util.Map;
+import org.apache.hadoop.dynamodb.CapacityModel;
 import org.apache.hadoop.dynamodb.DynamoDBConstants;
 import org.apache.hadoop.dynamodb.preader.RateController.RequestLimit;
 
@@ -38,17 +39,27 @@ public abstract class AbstractRecordReadRequest {
 
   public void read(RequestLimit lim) {
     signalProgress();
+    long startNanos = System.nanoTime();
     PageResults<Map<String, AttributeValue>> pageResults = readNextPage(lim);
-    addPageToMultiplexer(pageResults);
-    reportMetrics(lim, pageResults);
+    long latencyNanos = System.nanoTime() - startNanos;
+    long pageSizeBytes = pageResults.isFailed() ? 0
+        : CapacityModel.getItemSizeBytes(pageResults.items);
+    addPageToMultiplexer(pageResults, pageSizeBytes);
+    reportMetrics(lim, pageResults, pageSizeBytes, latencyNanos);
     enqueueNextPageOrCompleteSegment(pageResults);
   }
 
   private void reportMetrics(RequestLimit lim,
-      PageResults<Map<String, AttributeValue>> pageResults) {
-    if (!pageResults.isFailed()) {
+      PageResults<Map<String, AttributeValue>> pageResults, long pageSizeBytes,
+      long latencyNanos) {
+    ReadMetrics metrics = context.getReadMetrics();
+    if (pageResults.isFailed()) {
+      metrics.recordFailedPage(latencyNanos);
+    } else {
+      metrics.recordPage(latencyNanos, lim.readCapacityUnits, pageResults.consumedRcu,
+          pageResults.items.size(), pageSizeBytes, pageResults.retries);
       readMgr.report(lim.readCapacityUnits, pageResults.consumedRcu, pageResults.items.size(),
-          pageResults.retries);
+          pageSizeBytes, pageResults.retries);
     }
   }
 
@@ -69,8 +80,14 @@ public abstract class AbstractRecordReadRequest {
     }
   }
 
-  private void addPageToMultiplexer(PageResults<Map<String, AttributeValue>> pageResults) {
-    if (!context.getPageResultMultiplexer().addPageResults(pageResults)) {
+  private void addPageToMultiplexer(PageResults<Map<String, AttributeValue>> pageResults,
+      long pageSizeBytes) {
+    ScanCheckpoints checkpoints = context.getScanCheckpoints();
+    if (checkpoints != null && !pageResults.isFailed()) {
+      // Before the page is added, as the consumer may return it right away
+      checkpoints.pageAdded(segment, pageResults);
+    }
+    if (!context.getPageResultMultiplexer().addPageResults(pageResults, pageSizeBytes)) {
       throw new RuntimeException("Interrupted while adding to the page mux. Aborting.");
     }
   }
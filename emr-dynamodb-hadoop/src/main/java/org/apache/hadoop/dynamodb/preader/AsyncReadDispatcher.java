@@ -0,0 +1,265 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.preader;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.dynamodb.preader.RateController.RequestLimit;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * Read engine that replaces the pool of ReadWorker threads with a single dispatcher thread. The
+ * dispatcher hands read requests to an executor, keeping up to a target number of them
+ * outstanding, and waits until the rate controller's token bucket has tokens instead of polling
+ * it.
+ *
+ * <p>On JDKs with virtual threads every read runs on its own virtual thread, so hundreds of
+ * segment pages can be outstanding without as many OS threads. Otherwise reads run on a fixed
+ * pool of platform threads and at most {@link #MAX_PLATFORM_THREADS} of them are outstanding.
+ */
+public class AsyncReadDispatcher extends Thread {
+
+  static final int MAX_PLATFORM_THREADS = 30;
+
+  private static final Log log = LogFactory.getLog(AsyncReadDispatcher.class);
+  private static final AtomicInteger dispatcherId = new AtomicInteger();
+
+  // Longest wait between two reporter.progress() calls
+  private static final long MAX_WAIT_MS = 1000;
+
+  private final AbstractReadManager readMgr;
+  private final Reporter reporter;
+  private final ExecutorService executor;
+  private final int maxOutstanding;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition wakeup = lock.newCondition();
+  // Guarded by lock
+  private int targetOutstanding;
+  private int outstanding;
+
+  private volatile boolean alive = true;
+
+  public AsyncReadDispatcher(AbstractReadManager readMgr, Reporter reporter, int maxOutstanding,
+      int initialOutstanding) {
+    super("AsyncReadDispatcher-" + dispatcherId.incrementAndGet());
+    setDaemon(true);
+    this.readMgr = readMgr;
+    this.reporter = reporter;
+
+    ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+    if (virtualThreadExecutor != null) {
+      this.executor = virtualThreadExecutor;
+      this.maxOutstanding = maxOutstanding;
+      log.info("Reading on virtual threads, max outstanding reads: " + this.maxOutstanding);
+    } else {
+      this.maxOutstanding = Math.min(maxOutstanding, MAX_PLATFORM_THREADS);
+      this.executor = Executors.newFixedThreadPool(this.maxOutstanding,
+          new ThreadFactoryBuilder().setNameFormat(getName() + "-Reader-%d").setDaemon(true)
+              .build());
+      log.info("Virtual threads unavailable, reading on platform threads, max outstanding reads: "
+          + this.maxOutstanding);
+    }
+    this.targetOutstanding = Math.min(Math.max(initialOutstanding, 1), this.maxOutstanding);
+  }
+
+  @Override
+  public void run() {
+    while (alive) {
+      try {
+        dispatchNext();
+      } catch (InterruptedException e) {
+        Thread.interrupted();
+      } catch (Throwable e) {
+        log.error("Unknown exception thrown!", e);
+      }
+    }
+
+    executor.shutdown();
+    log.info("Dispatcher shutting down, no longer alive");
+  }
+
+  /**
+   * Wakes the dispatcher up to look for read requests.
+   */
+  public void signalRequestAvailable() {
+    lock.lock();
+    try {
+      wakeup.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Doubles the number of reads kept outstanding.
+   *
+   * @return false if already at the maximum
+   */
+  public boolean increaseOutstanding() {
+    lock.lock();
+    try {
+      if (targetOutstanding >= maxOutstanding) {
+        return false;
+      }
+      targetOutstanding = Math.min(targetOutstanding * 2, maxOutstanding);
+      wakeup.signal();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Halves the number of reads kept outstanding.
+   *
+   * @return false if already at one
+   */
+  public boolean decreaseOutstanding() {
+    lock.lock();
+    try {
+      if (targetOutstanding <= 1) {
+        return false;
+      }
+      targetOutstanding = Math.max(targetOutstanding / 2, 1);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getTargetOutstanding() {
+    lock.lock();
+    try {
+      return targetOutstanding;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Stops dispatching. Reads already handed to the executor run to completion.
+   */
+  public void shutdown() {
+    alive = false;
+    signalRequestAvailable();
+  }
+
+  private void dispatchNext() throws InterruptedException {
+    // We're alive, even though we might not get tokens or find work below
+    if (reporter != null) {
+      reporter.progress();
+    }
+
+    lock.lock();
+    try {
+      if (alive && outstanding >= targetOutstanding) {
+        wakeup.await(MAX_WAIT_MS, TimeUnit.MILLISECONDS);
+        return;
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    final AbstractRecordReadRequest req = readMgr.dequeueReadRequest();
+    if (req == null) {
+      awaitRequest();
+      return;
+    }
+
+    // Find the limit for the next request
+    final RequestLimit lim = readMgr.rateController.getNextRequestLimit();
+    if (lim == RequestLimit.ZERO) {
+      readMgr.enqueueReadRequestToHead(req);
+      awaitTokens();
+      return;
+    }
+
+    lock.lock();
+    try {
+      outstanding++;
+    } finally {
+      lock.unlock();
+    }
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          req.read(lim);
+        } catch (Throwable e) {
+          log.error("Unknown exception thrown!", e);
+        } finally {
+          completeRead();
+        }
+      }
+    });
+  }
+
+  private void completeRead() {
+    lock.lock();
+    try {
+      outstanding--;
+      wakeup.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void awaitRequest() throws InterruptedException {
+    lock.lock();
+    try {
+      // Requests are enqueued before signalling, so checking under the lock can't miss one
+      if (alive && readMgr.readRequestQueue.isEmpty()) {
+        wakeup.await(MAX_WAIT_MS, TimeUnit.MILLISECONDS);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void awaitTokens() throws InterruptedException {
+    long waitMs = Math.min(readMgr.rateController.getMillisUntilNextRequest(), MAX_WAIT_MS);
+    if (log.isDebugEnabled()) {
+      log.debug("No read token from rate controller, waiting " + waitMs + " ms");
+    }
+    if (waitMs > 0) {
+      // Not woken up by new requests or completed reads, only tokens let us go on
+      Thread.sleep(waitMs);
+    }
+  }
+
+  /**
+   * @return an executor starting a virtual thread per task, null if the JDK has no virtual threads
+   */
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (NoSuchMethodException e) {
+      return null;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Virtual threads are a preview feature on some JDKs
+      log.warn("Unable to create a virtual thread executor", e);
+      return null;
+    }
+  }
+}
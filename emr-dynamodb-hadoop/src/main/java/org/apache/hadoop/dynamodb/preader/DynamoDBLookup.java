@@ -0,0 +1,437 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.preader;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.dynamodb.DynamoDBClient;
+import org.apache.hadoop.dynamodb.DynamoDBConstants;
+import org.apache.hadoop.dynamodb.DynamoDBOperationType;
+import org.apache.hadoop.dynamodb.DynamoDBUtil;
+import org.apache.hadoop.dynamodb.RetryCoordinator;
+import org.apache.hadoop.dynamodb.util.AbstractTimeSource;
+import org.apache.hadoop.dynamodb.util.TimeSource;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * Looks up items by primary key, for tasks that join their input with a DynamoDB table on the map
+ * side instead of reading the whole table and joining it in a shuffle.
+ *
+ * <p>Keys are collected into BatchGetItem calls of up to
+ * {@link DynamoDBConstants#MAX_BATCH_GET_ITEMS} keys, and several batches are read at the same
+ * time. Batches are paced by a token bucket filled at the task's read capacity budget. Items, and
+ * keys without an item, are kept in a bounded least recently used cache, so that hot keys are
+ * only read once. A key looked up again while a batch reads it waits for that batch's result.
+ *
+ * <p>Results are handed back on the caller's thread, together with a tag the caller passed with
+ * the key, like the input record to join with the item. A mapper looks up the key of every record
+ * with {@link #lookup(Map, Object)} and emits the results returned by {@link #poll()} so far. When
+ * its input ends, it calls {@link #flush()} and emits the remaining results. A lookup is used by
+ * one thread.
+ *
+ * @param <T> the type of the tags passed with the keys
+ */
+public class DynamoDBLookup<T> implements Closeable {
+
+  private static final Log log = LogFactory.getLog(DynamoDBLookup.class);
+  // Cached for keys without an item
+  private static final Map<String, AttributeValue> NO_ITEM = Collections.emptyMap();
+  // The smallest read, of an eventually consistent item of up to 4 KB
+  private static final double MIN_RCU_PER_KEY = 0.5;
+  private static final double RCU_PER_KEY_SMOOTH_FACTOR = 0.7;
+
+  private final DynamoDBClient client;
+  private final String tableName;
+  private final Collection<String> attributes;
+  private final Reporter reporter;
+  private final TokenBucket bucket;
+  private final double bucketCapacity;
+  private final int maxConcurrentBatches;
+  private final ExecutorService executor;
+  private final Semaphore batchPermits;
+  // Guarded by itself
+  private final Map<Map<String, AttributeValue>, Map<String, AttributeValue>> cache;
+  // Guarded by cache, the keys of the batches being read, completed with their item or NO_ITEM
+  private final Map<Map<String, AttributeValue>, CompletableFuture<Map<String, AttributeValue>>>
+      inFlightKeys = new HashMap<>();
+  private final Queue<LookupResult<T>> results = new ConcurrentLinkedQueue<>();
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  private final AtomicLong keysRead = new AtomicLong();
+  private final AtomicLong cacheHits = new AtomicLong();
+  private final AtomicLong inFlightHits = new AtomicLong();
+  private Map<Map<String, AttributeValue>, List<T>> pendingKeys = new LinkedHashMap<>();
+  private volatile double rcuPerKey = MIN_RCU_PER_KEY;
+
+  @VisibleForTesting
+  DynamoDBLookup(DynamoDBClient client, String tableName, Collection<String> attributes,
+      Reporter reporter, double readRate, final int cacheSize, int maxConcurrentBatches,
+      AbstractTimeSource time) {
+    this.client = client;
+    this.tableName = tableName;
+    this.attributes = attributes;
+    this.reporter = reporter == null ? Reporter.NULL : reporter;
+    this.bucketCapacity = Math.max(readRate * DynamoDBConstants.RATE_CONTROLLER_WINDOW_SIZE_SEC,
+        RateController.MIN_RCU_PER_REQ);
+    this.bucket = new TokenBucket(readRate, bucketCapacity, time);
+    this.maxConcurrentBatches = maxConcurrentBatches;
+    this.executor = Executors.newFixedThreadPool(maxConcurrentBatches, new ThreadFactoryBuilder()
+        .setNameFormat("DynamoDBLookup-%d").setDaemon(true).build());
+    this.batchPermits = new Semaphore(maxConcurrentBatches);
+    this.cache = new LinkedHashMap<Map<String, AttributeValue>, Map<String, AttributeValue>>(16,
+        0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(
+          Entry<Map<String, AttributeValue>, Map<String, AttributeValue>> eldest) {
+        return size() > cacheSize;
+      }
+    };
+
+    log.info("Looking up items of table " + tableName + " at up to " + readRate + " RCU per "
+        + "second, " + maxConcurrentBatches + " concurrent batches and " + cacheSize
+        + " cached keys");
+  }
+
+  /**
+   * Creates a lookup of items of the given table. The task's read capacity budget is
+   * {@link DynamoDBConstants#LOOKUP_READ_THROUGHPUT} if set, or else its share of the table's
+   * read throughput percentage, split evenly between the map tasks of the job.
+   *
+   * @param attributes the attributes to read, or null for whole items
+   */
+  public static <T> DynamoDBLookup<T> create(JobConf conf, String tableName,
+      Collection<String> attributes, Reporter reporter) {
+    DynamoDBClient client = new DynamoDBClient(conf);
+    String readRate = conf.get(DynamoDBConstants.LOOKUP_READ_THROUGHPUT);
+    return new DynamoDBLookup<>(client, tableName, attributes, reporter,
+        readRate != null ? Double.parseDouble(readRate) : getReadRate(conf, client, tableName),
+        conf.getInt(DynamoDBConstants.LOOKUP_CACHE_SIZE,
+            DynamoDBConstants.DEFAULT_LOOKUP_CACHE_SIZE),
+        Math.max(conf.getInt(DynamoDBConstants.LOOKUP_MAX_CONCURRENT_BATCHES,
+            DynamoDBConstants.DEFAULT_LOOKUP_MAX_CONCURRENT_BATCHES), 1),
+        new TimeSource());
+  }
+
+  /**
+   * Looks up the item of a primary key. The result is returned by {@link #poll()} once the item has
+   * been read, which may block until the task's read capacity allows another batch.
+   *
+   * @param key the primary key of the item, which is copied
+   * @param tag returned with the result
+   */
+  public void lookup(Map<String, AttributeValue> key, T tag) throws IOException {
+    checkFailure();
+    Map<String, AttributeValue> lookupKey = DynamoDBUtil.normalizeKey(key);
+
+    Map<String, AttributeValue> item;
+    CompletableFuture<Map<String, AttributeValue>> inFlightItem = null;
+    synchronized (cache) {
+      item = cache.get(lookupKey);
+      if (item == null) {
+        inFlightItem = inFlightKeys.get(lookupKey);
+      }
+    }
+    if (item != null) {
+      cacheHits.incrementAndGet();
+      results.add(new LookupResult<>(lookupKey, item == NO_ITEM ? null : item, tag));
+      return;
+    }
+    if (inFlightItem != null) {
+      // Not cached yet, so the result of the batch is shared instead of reading the key again
+      inFlightHits.incrementAndGet();
+      inFlightItem.thenAccept(inFlight -> results.add(new LookupResult<>(lookupKey,
+          inFlight == NO_ITEM ? null : inFlight, tag)));
+      return;
+    }
+
+    // A batch can't read the same key twice
+    List<T> tags = pendingKeys.get(lookupKey);
+    if (tags == null) {
+      tags = new ArrayList<>(1);
+      pendingKeys.put(lookupKey, tags);
+    }
+    tags.add(tag);
+    if (pendingKeys.size() >= DynamoDBConstants.MAX_BATCH_GET_ITEMS) {
+      submitBatch();
+    }
+  }
+
+  /**
+   * @return the next completed lookup, or null if no lookup has completed since the last call
+   */
+  public LookupResult<T> poll() throws IOException {
+    checkFailure();
+    return results.poll();
+  }
+
+  /**
+   * Reads the keys not read yet and waits for all batches to complete, after which
+   * {@link #poll()} returns the results of all keys looked up so far.
+   */
+  public void flush() throws IOException {
+    if (!pendingKeys.isEmpty()) {
+      submitBatch();
+    }
+    try {
+      batchPermits.acquire(maxConcurrentBatches);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for lookup batches");
+    }
+    batchPermits.release(maxConcurrentBatches);
+    checkFailure();
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    client.close();
+    log.info("Read " + keysRead + " keys, " + cacheHits + " lookups were cached and "
+        + inFlightHits + " waited for a batch reading their key");
+  }
+
+  private void submitBatch() throws IOException {
+    final Map<Map<String, AttributeValue>, List<T>> batch = pendingKeys;
+    pendingKeys = new LinkedHashMap<>();
+    synchronized (cache) {
+      for (Map<String, AttributeValue> key : batch.keySet()) {
+        inFlightKeys.put(key, new CompletableFuture<Map<String, AttributeValue>>());
+      }
+    }
+
+    // Paced on the caller's thread, so that the caller can't queue more keys than it may read
+    final double permittedRcu = Math.min(Math.ceil(batch.size() * rcuPerKey),
+        Math.floor(bucketCapacity));
+    try {
+      while (bucket.acquire(permittedRcu, permittedRcu) < permittedRcu) {
+        Thread.sleep(Math.max(bucket.getMillisUntilAvailable(permittedRcu), 1));
+      }
+      batchPermits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      InterruptedIOException interrupted = new InterruptedIOException(
+          "Interrupted while waiting to read a lookup batch");
+      failBatch(batch, interrupted);
+      throw interrupted;
+    }
+
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            readBatch(batch, permittedRcu);
+          } catch (Throwable t) {
+            log.error("Lookup batch failed", t);
+            failure.compareAndSet(null, t);
+            failBatch(batch, t);
+          } finally {
+            batchPermits.release();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      batchPermits.release();
+      IOException notSubmitted = new IOException("Could not submit lookup batch", e);
+      failBatch(batch, notSubmitted);
+      throw notSubmitted;
+    }
+  }
+
+  /**
+   * Stops tracking the keys of a batch that won't be read, failing the lookups waiting for them.
+   */
+  private void failBatch(Map<Map<String, AttributeValue>, List<T>> batch, Throwable t) {
+    List<CompletableFuture<Map<String, AttributeValue>>> inFlightItems = new ArrayList<>();
+    synchronized (cache) {
+      for (Map<String, AttributeValue> key : batch.keySet()) {
+        CompletableFuture<Map<String, AttributeValue>> inFlightItem = inFlightKeys.remove(key);
+        if (inFlightItem != null) {
+          inFlightItems.add(inFlightItem);
+        }
+      }
+    }
+    for (CompletableFuture<Map<String, AttributeValue>> inFlightItem : inFlightItems) {
+      inFlightItem.completeExceptionally(t);
+    }
+  }
+
+  private void readBatch(Map<Map<String, AttributeValue>, List<T>> batch, double permittedRcu)
+      throws InterruptedException {
+    List<Map<String, AttributeValue>> keys = new ArrayList<>(batch.keySet());
+    Set<String> keyNames = keys.get(0).keySet();
+    Collection<String> attributesToGet = getAttributesToGet(keyNames);
+
+    Map<Map<String, AttributeValue>, Map<String, AttributeValue>> items = new HashMap<>();
+    double consumedRcu = 0;
+    RetryCoordinator retryCoordinator = client.getRetryCoordinator();
+    long delayMs = 0;
+    boolean retry = false;
+    while (!keys.isEmpty()) {
+      if (retry) {
+        // DynamoDB leaves keys unprocessed when the table is throttled
+        retryCoordinator.onThrottle(DynamoDBOperationType.READ);
+        delayMs = retryCoordinator.getRetryDelayMs(delayMs);
+        Thread.sleep(delayMs);
+      }
+      BatchGetItemResult result = client.batchGetItem(tableName, keys, attributesToGet,
+          reporter).result;
+
+      if (result.getResponses() != null && result.getResponses().get(tableName) != null) {
+        for (Map<String, AttributeValue> item : result.getResponses().get(tableName)) {
+          Map<String, AttributeValue> key = new HashMap<>();
+          for (String keyName : keyNames) {
+            key.put(keyName, item.get(keyName));
+          }
+          if (attributesToGet != attributes) {
+            item = new HashMap<>(item);
+            item.keySet().retainAll(attributes);
+          }
+          items.put(DynamoDBUtil.normalizeKey(key), item);
+        }
+      }
+      if (result.getConsumedCapacity() != null) {
+        for (ConsumedCapacity capacity : result.getConsumedCapacity()) {
+          consumedRcu += capacity.getCapacityUnits();
+        }
+      }
+
+      KeysAndAttributes unprocessed = result.getUnprocessedKeys() == null ? null
+          : result.getUnprocessedKeys().get(tableName);
+      keys = unprocessed == null || unprocessed.getKeys() == null
+          ? Collections.<Map<String, AttributeValue>>emptyList() : unprocessed.getKeys();
+      retry = true;
+    }
+
+    bucket.forceUpdate(permittedRcu - consumedRcu);
+    rcuPerKey = Math.max(MIN_RCU_PER_KEY, rcuPerKey * RCU_PER_KEY_SMOOTH_FACTOR
+        + consumedRcu / batch.size() * (1.0 - RCU_PER_KEY_SMOOTH_FACTOR));
+
+    // Cached and no longer in flight at once, so that a lookup finds the key in either
+    Map<Map<String, AttributeValue>, CompletableFuture<Map<String, AttributeValue>>>
+        inFlightItems = new HashMap<>();
+    synchronized (cache) {
+      for (Map<String, AttributeValue> key : batch.keySet()) {
+        Map<String, AttributeValue> item = items.get(key);
+        cache.put(key, item == null ? NO_ITEM : item);
+        inFlightItems.put(key, inFlightKeys.remove(key));
+      }
+    }
+    for (Entry<Map<String, AttributeValue>, List<T>> entry : batch.entrySet()) {
+      Map<String, AttributeValue> item = items.get(entry.getKey());
+      for (T tag : entry.getValue()) {
+        results.add(new LookupResult<>(entry.getKey(), item, tag));
+      }
+    }
+    // Before the batch permit is released, so that flush() also waits for the waiting lookups
+    for (Entry<Map<String, AttributeValue>, CompletableFuture<Map<String, AttributeValue>>> entry
+        : inFlightItems.entrySet()) {
+      Map<String, AttributeValue> item = items.get(entry.getKey());
+      entry.getValue().complete(item == null ? NO_ITEM : item);
+    }
+    keysRead.addAndGet(batch.size());
+  }
+
+  /**
+   * Adds the key attributes to the projection, as they tell which key an item belongs to.
+   */
+  private Collection<String> getAttributesToGet(Set<String> keyNames) {
+    if (attributes == null || attributes.isEmpty() || attributes.containsAll(keyNames)) {
+      return attributes;
+    }
+    Set<String> attributesToGet = new LinkedHashSet<>(attributes);
+    attributesToGet.addAll(keyNames);
+    return attributesToGet;
+  }
+
+  private void checkFailure() throws IOException {
+    Throwable t = failure.get();
+    if (t != null) {
+      throw new IOException("Lookup batch failed", t);
+    }
+  }
+
+  private static double getReadRate(JobConf conf, DynamoDBClient client, String tableName) {
+    TableDescription table = client.describeTable(tableName);
+    double tableThroughput = table.getBillingModeSummary() == null
+        || DynamoDBConstants.BILLING_MODE_PROVISIONED.equalsIgnoreCase(
+            table.getBillingModeSummary().getBillingMode())
+        ? table.getProvisionedThroughput().getReadCapacityUnits()
+        : DynamoDBConstants.DEFAULT_CAPACITY_FOR_ON_DEMAND;
+    double throughputPercent = Double.parseDouble(conf.get(
+        DynamoDBConstants.THROUGHPUT_READ_PERCENT,
+        DynamoDBConstants.DEFAULT_THROUGHPUT_PERCENTAGE));
+    int mapTasks = Math.max(conf.getInt("mapreduce.job.maps", 1), 1);
+    return Math.max(Math.floor(tableThroughput * throughputPercent / mapTasks), 1);
+  }
+
+  /**
+   * The item of a looked up key. Items are shared with the cache and must not be modified.
+   */
+  public static final class LookupResult<T> {
+    private final Map<String, AttributeValue> key;
+    private final Map<String, AttributeValue> item;
+    private final T tag;
+
+    LookupResult(Map<String, AttributeValue> key, Map<String, AttributeValue> item, T tag) {
+      this.key = key;
+      this.item = item;
+      this.tag = tag;
+    }
+
+    public Map<String, AttributeValue> getKey() {
+      return key;
+    }
+
+    /**
+     * @return the item, or null if the table has no item with the key
+     */
+    public Map<String, AttributeValue> getItem() {
+      return item;
+    }
+
+    public T getTag() {
+      return tag;
+    }
+  }
+}
@@ -17,6 +17,7 @@ import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import java.util.Collection;
 import java.util.Map;
 import org.apache.hadoop.dynamodb.DynamoDBClient;
+import org.apache.hadoop.dynamodb.ThroughputLeaseCoordinator;
 import org.apache.hadoop.dynamodb.split.DynamoDBSplit;
 import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
@@ -31,6 +32,33 @@ public class DynamoDBRecordReaderContext {
   private Collection<String> attributes;
   private double averageItemSize;
   private PageResultMultiplexer<Map<String, AttributeValue>> pageMux;
+  private ScanCheckpoints scanCheckpoints;
+  private ThroughputLeaseCoordinator leaseCoordinator;
+  private ReadMetrics readMetrics = new ReadMetrics();
+
+  public ReadMetrics getReadMetrics() {
+    return readMetrics;
+  }
+
+  public void setReadMetrics(ReadMetrics readMetrics) {
+    this.readMetrics = readMetrics;
+  }
+
+  public ScanCheckpoints getScanCheckpoints() {
+    return scanCheckpoints;
+  }
+
+  public void setScanCheckpoints(ScanCheckpoints scanCheckpoints) {
+    this.scanCheckpoints = scanCheckpoints;
+  }
+
+  public ThroughputLeaseCoordinator getLeaseCoordinator() {
+    return leaseCoordinator;
+  }
+
+  public void setLeaseCoordinator(ThroughputLeaseCoordinator leaseCoordinator) {
+    this.leaseCoordinator = leaseCoordinator;
+  }
 
   public PageResultMultiplexer<Map<String, AttributeValue>> getPageResultMultiplexer() {
     return pageMux;
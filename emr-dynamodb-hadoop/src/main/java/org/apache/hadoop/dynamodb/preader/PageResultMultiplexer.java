@@ -14,11 +14,12 @@
 package org.apache.hadoop.dynamodb.preader;
 
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.NoSuchElementException;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -27,106 +28,406 @@ import org.apache.commons.logging.LogFactory;
  *
  * The next() method will walk through pages in the buffer and return a single item a time. next()
  * will block if the number of pages is smaller than batchSize.
+ *
+ * <p>Consumers take a whole round-robin pass over the buffered pages, one item from each page,
+ * per lock acquisition and hand the items out from a per-thread batch. Producers and consumers
+ * wait on conditions rather than polling, so a consumer wakes up as soon as enough pages have
+ * been added or draining starts.
+ *
+ * <p>A multiplexer created with a byte budget also blocks producers once the estimated size of
+ * the buffered pages reaches the budget. Its consumers stop waiting for a full batch when a
+ * producer is blocked on the budget, or when, at the measured page arrival rate, the batch would
+ * not fill within {@link #MAX_BATCH_WAIT_MS}.
+ *
+ * <p>A {@link PageReturnListener} learns when a consumer asks for an item after the last item of
+ * a page, that is once the consumer is done with the page, for example to track how far each
+ * segment has been consumed.
  */
 public class PageResultMultiplexer<V> {
 
   private static final Log log = LogFactory.getLog(PageResultMultiplexer.class);
 
+  static final long MAX_BATCH_WAIT_MS = 100;
+
+  private static final int STATS_INTERVAL = 10000;
+  private static final double PAGE_INTERVAL_SMOOTH_FACTOR = 0.8;
+
   private final int batchSize;
   private final int capacity;
-  private final BlockingQueue<PageResults<V>> pages;
-  private final AtomicInteger pageCount = new AtomicInteger();
-  private final Object removeItemLock = new Object();
+  private final long maxBufferedBytes;
+  private final long maxBatchWaitNanos;
+
+  // Pages in round-robin order with their estimated sizes, guarded by lock
+  private final Deque<BufferedPage<V>> pages;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition muxReady = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private final ThreadLocal<Batch<V>> batches = new ThreadLocal<Batch<V>>() {
+    @Override
+    protected Batch<V> initialValue() {
+      return new Batch<>();
+    }
+  };
 
   private long itemsReturned = 0;
   private volatile boolean draining = false;
-  private volatile Iterator<PageResults<V>> pageIterator;
+  private volatile PageReturnListener<V> pageReturnListener;
+
+  // Occupancy statistics, guarded by lock
+  private long bufferedBytes;
+  private int waitingProducers;
+  private long lastPageAddedNanos;
+  private double avgPageIntervalNanos;
+  private int peakPages;
+  private long peakBytes;
+  private long producerWaitNanos;
+  private long consumerWaitNanos;
 
+  /**
+   * Creates a multiplexer bounded by page count only, whose consumers always wait for batchSize
+   * pages.
+   */
   public PageResultMultiplexer(int batchSize, int capacity) {
+    this(batchSize, capacity, Long.MAX_VALUE, Long.MAX_VALUE);
+  }
+
+  /**
+   * @param maxBufferedBytes budget for the estimated size of the buffered pages, see
+   *     {@link #addPageResults(PageResults, long)}
+   */
+  public PageResultMultiplexer(int batchSize, int capacity, long maxBufferedBytes) {
+    this(batchSize, capacity, maxBufferedBytes, TimeUnit.MILLISECONDS.toNanos(MAX_BATCH_WAIT_MS));
+  }
+
+  private PageResultMultiplexer(int batchSize, int capacity, long maxBufferedBytes,
+      long maxBatchWaitNanos) {
     this.batchSize = batchSize;
     this.capacity = capacity;
-    this.pages = new LinkedBlockingQueue<>(capacity);
-    this.pageIterator = pages.iterator();
+    this.maxBufferedBytes = maxBufferedBytes;
+    this.maxBatchWaitNanos = maxBatchWaitNanos;
+    this.pages = new ArrayDeque<>(Math.min(capacity, 1024));
   }
 
   public boolean addPageResults(PageResults<V> page) {
-    // Order: add page, increment counter
-    boolean admitted = pages.offer(page);
-    if (!admitted) {
-      try {
-        log.info("Blocking on page add, mux full.");
-        pages.put(page);
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-        log.error("Page add was interrupted");
-        return false;
+    return addPageResults(page, 0);
+  }
+
+  /**
+   * Adds a page, blocking while the multiplexer is at capacity. A page is always admitted into an
+   * empty multiplexer, even if it is larger than the byte budget.
+   *
+   * @param sizeBytes the estimated size of the page
+   * @return false if interrupted while blocked
+   */
+  public boolean addPageResults(PageResults<V> page, long sizeBytes) {
+    int pageCount;
+    long waitNanos = 0;
+    lock.lock();
+    try {
+      if (isFull(sizeBytes)) {
+        long waitStart = System.nanoTime();
+        if (waitingProducers++ == 0) {
+          // Consumers stop waiting for a full batch while producers are blocked
+          muxReady.signalAll();
+        }
+        try {
+          do {
+            notFull.await();
+          } while (isFull(sizeBytes));
+        } finally {
+          waitingProducers--;
+          waitNanos = System.nanoTime() - waitStart;
+          producerWaitNanos += waitNanos;
+        }
       }
-    }
 
-    pageCount.incrementAndGet();
-    log.info("Added a page. Page count: " + pageCount.get());
+      pages.addLast(new BufferedPage<>(page, sizeBytes));
+      bufferedBytes += sizeBytes;
+      pageCount = pages.size();
+      peakPages = Math.max(peakPages, pageCount);
+      peakBytes = Math.max(peakBytes, bufferedBytes);
+
+      long now = System.nanoTime();
+      if (lastPageAddedNanos != 0) {
+        avgPageIntervalNanos = avgPageIntervalNanos * PAGE_INTERVAL_SMOOTH_FACTOR
+            + (now - lastPageAddedNanos) * (1.0 - PAGE_INTERVAL_SMOOTH_FACTOR);
+      }
+      lastPageAddedNanos = now;
 
+      if (pageCount >= batchSize || maxBatchWaitNanos != Long.MAX_VALUE) {
+        muxReady.signalAll();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.error("Page add was interrupted");
+      return false;
+    } finally {
+      lock.unlock();
+    }
+
+    if (waitNanos > 0) {
+      log.info("Page add was blocked for " + TimeUnit.NANOSECONDS.toMillis(waitNanos)
+          + " ms, mux full.");
+    }
+    if (log.isDebugEnabled()) {
+      log.debug("Added a page. Page count: " + pageCount);
+    }
     return true;
   }
 
   public V next() throws IOException {
-    if (itemsReturned % 10000 == 0) {
-      log.info("Pagemux stats: items=" + itemsReturned + ", pages=" + pageCount.get() + ", cap="
-          + capacity);
+    Batch<V> batch = batches.get();
+    // The consumer is done with the items it got before
+    notifyReturnedPages(batch);
+    if (batch.items.isEmpty()) {
+      fillBatch(batch);
+      // Pages without items
+      notifyReturnedPages(batch);
     }
+    V item = batch.items.pollFirst();
+    if (item != null) {
+      batch.itemsReturned++;
+    }
+    return item;
+  }
 
-    synchronized (removeItemLock) {
-      // Now, this could block for a while as we wait for enough pages to
-      // multiplex. As long as we're really doing work in the background (
-      // scans/queries), then the dynamodb client/retrier will tick the
-      // reporter to signal liveness.
-      waitForMuxCondition();
+  public void setPageReturnListener(PageReturnListener<V> pageReturnListener) {
+    this.pageReturnListener = pageReturnListener;
+  }
 
-      // Loop until we find the queue in draining mode and empty
-      while (!(draining && pageCount.get() == 0)) {
-        PageResults<V> nextPage;
-        try {
-          nextPage = pageIterator.next();
-        } catch (NoSuchElementException e) {
-          pageIterator = pages.iterator();
-          continue;
-        }
+  public void setDraining(boolean draining) {
+    lock.lock();
+    try {
+      this.draining = draining;
+      muxReady.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of pages buffered now
+   */
+  public int getBufferedPages() {
+    lock.lock();
+    try {
+      return pages.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the estimated size of the pages buffered now
+   */
+  public long getBufferedBytes() {
+    lock.lock();
+    try {
+      return bufferedBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
 
-        if (nextPage.exception != null) {
-          throw new IOException(nextPage.exception);
+  /**
+   * @return the most pages buffered at any time
+   */
+  public int getPeakPages() {
+    lock.lock();
+    try {
+      return peakPages;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the largest estimated size of the buffered pages at any time
+   */
+  public long getPeakBytes() {
+    lock.lock();
+    try {
+      return peakBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the total time producers spent blocked on a full multiplexer
+   */
+  public long getProducerWaitMillis() {
+    lock.lock();
+    try {
+      return TimeUnit.NANOSECONDS.toMillis(producerWaitNanos);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the total time consumers spent waiting for pages
+   */
+  public long getConsumerWaitMillis() {
+    lock.lock();
+    try {
+      return TimeUnit.NANOSECONDS.toMillis(consumerWaitNanos);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean isFull(long sizeBytes) {
+    return pages.size() >= capacity
+        || (!pages.isEmpty() && bufferedBytes + sizeBytes > maxBufferedBytes);
+  }
+
+  /**
+   * Moves one item of every buffered page to the batch, stopping early once a page runs out and
+   * fewer than batchSize pages are left, unless draining. Leaves the batch empty only when the
+   * mux is draining and has no pages left.
+   */
+  private void fillBatch(Batch<V> batch) throws IOException {
+    boolean trackPages = pageReturnListener != null;
+    lock.lock();
+    try {
+      while (batch.items.isEmpty()) {
+        // Now, this could block for a while as we wait for enough pages to
+        // multiplex. As long as we're really doing work in the background (
+        // scans/queries), then the dynamodb client/retrier will tick the
+        // reporter to signal liveness.
+        waitForMuxCondition();
+        if (pages.isEmpty()) {
+          return;
         }
 
-        V nextItem = nextPage.next();
+        for (int i = pages.size(); i > 0; i--) {
+          BufferedPage<V> bufferedPage = pages.pollFirst();
+          PageResults<V> page = bufferedPage.page;
+          if (page.exception != null) {
+            pages.addFirst(bufferedPage);
+            throw new IOException(page.exception);
+          }
+
+          V item = page.next();
+          if (item != null) {
+            batch.items.addLast(item);
+            batch.itemsAdded++;
+          }
 
-        // Remove the page if we've emptied it
-        if (!nextPage.hasMore()) {
-          // Order: lower counter, remove page
-          pageCount.decrementAndGet();
-          pageIterator.remove();
+          if (page.hasMore()) {
+            pages.addLast(bufferedPage);
+          } else {
+            if (trackPages) {
+              // The page has been returned once all items added to the batch so far have been
+              batch.pageEnds.addLast(new PageEnd<>(page, batch.itemsAdded));
+            }
+            bufferedBytes -= bufferedPage.sizeBytes;
+            notFull.signalAll();
+            if (pages.size() < batchSize && !draining) {
+              break;
+            }
+          }
         }
+      }
+
+      long previousItemsReturned = itemsReturned;
+      itemsReturned += batch.items.size();
+      if (itemsReturned / STATS_INTERVAL != previousItemsReturned / STATS_INTERVAL) {
+        log.info("Pagemux stats: items=" + itemsReturned + ", pages=" + pages.size() + ", bytes="
+            + bufferedBytes + ", cap=" + capacity + ", maxBytes=" + maxBufferedBytes);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
 
-        if (nextItem != null) {
-          itemsReturned++;
-          return nextItem;
+  private void notifyReturnedPages(Batch<V> batch) {
+    while (!batch.pageEnds.isEmpty()
+        && batch.pageEnds.peekFirst().itemsAdded <= batch.itemsReturned) {
+      PageResults<V> page = batch.pageEnds.pollFirst().page;
+      PageReturnListener<V> listener = pageReturnListener;
+      if (listener != null) {
+        listener.pageReturned(page);
+      }
+    }
+  }
+
+  private void waitForMuxCondition() throws InterruptedIOException {
+    long waitStart = System.nanoTime();
+    try {
+      while (pages.size() < batchSize && !draining
+          && (pages.isEmpty() || waitingProducers == 0)) {
+        long waitNanos = getBatchWaitNanos(waitStart);
+        if (waitNanos <= 0) {
+          return;
+        }
+        if (log.isDebugEnabled()) {
+          log.debug("Waiting on consumption condition, pagecount = " + pages.size());
+        }
+        if (waitNanos == Long.MAX_VALUE) {
+          muxReady.await();
+        } else {
+          muxReady.awaitNanos(waitNanos);
         }
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for pages");
+    } finally {
+      consumerWaitNanos += System.nanoTime() - waitStart;
     }
+  }
 
-    return null;
+  /**
+   * @return how much longer to wait for the batch to fill, Long.MAX_VALUE to wait until
+   *     signalled and 0 or less to go ahead with the buffered pages
+   */
+  private long getBatchWaitNanos(long waitStart) {
+    if (pages.isEmpty() || maxBatchWaitNanos == Long.MAX_VALUE) {
+      return Long.MAX_VALUE;
+    }
+    double expectedFillNanos = avgPageIntervalNanos * (batchSize - pages.size());
+    if (avgPageIntervalNanos > 0 && expectedFillNanos > maxBatchWaitNanos) {
+      return 0;
+    }
+    return maxBatchWaitNanos - (System.nanoTime() - waitStart);
   }
 
-  public void setDraining(boolean draining) {
-    this.draining = draining;
+  /**
+   * Notified on the consumer's thread when it calls {@link #next()} after having been returned all
+   * items of a page.
+   */
+  public interface PageReturnListener<V> {
+
+    void pageReturned(PageResults<V> page);
   }
 
-  private void waitForMuxCondition() {
-    while (pageCount.get() < batchSize && !draining) {
-      try {
-        log.info("Sleeping on consumption condition, pagecount = " + pageCount.get());
-        Thread.sleep(100);
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-      }
+  // Items taken from the pages by one consumer thread, not yet returned
+  private static final class Batch<V> {
+    private final Deque<V> items = new ArrayDeque<>();
+    private final Deque<PageEnd<V>> pageEnds = new ArrayDeque<>();
+    private long itemsAdded;
+    private long itemsReturned;
+  }
+
+  private static final class PageEnd<V> {
+    private final PageResults<V> page;
+    private final long itemsAdded;
+
+    private PageEnd(PageResults<V> page, long itemsAdded) {
+      this.page = page;
+      this.itemsAdded = itemsAdded;
+    }
+  }
+
+  private static final class BufferedPage<V> {
+    private final PageResults<V> page;
+    private final long sizeBytes;
+
+    private BufferedPage(PageResults<V> page, long sizeBytes) {
+      this.page = page;
+      this.sizeBytes = sizeBytes;
     }
   }
 }
@@ -0,0 +1,192 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.preader;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.dynamodb.CapacityModel;
+import org.apache.hadoop.dynamodb.DynamoDBConstants;
+import org.apache.hadoop.dynamodb.DynamoDBFibonacciRetryer.RetryResult;
+import org.apache.hadoop.dynamodb.DynamoDBOperationType;
+import org.apache.hadoop.dynamodb.RetryCoordinator;
+import org.apache.hadoop.dynamodb.preader.RateController.RequestLimit;
+import org.apache.hadoop.dynamodb.split.DynamoDBSplit;
+
+/**
+ * Reads the items of a primary key lookup by key, with GetItem for a single key and BatchGetItem
+ * for up to {@link DynamoDBConstants#MAX_BATCH_GET_ITEMS} keys at a time. Every segment of a
+ * lookup is one of the keys of
+ * {@link org.apache.hadoop.dynamodb.filter.DynamoDBQueryFilter#getPrimaryKeys()}.
+ *
+ * <p>Unlike the read managers, keys are read on the consumer's thread when it asks for the next
+ * item, so a lookup of a few keys doesn't wait for read workers and a page multiplexer to start.
+ */
+public class PrimaryKeyLookupReader {
+
+  private static final Log log = LogFactory.getLog(PrimaryKeyLookupReader.class);
+
+  private final DynamoDBRecordReaderContext context;
+  private final RateController rateController;
+  private final String tableName;
+  private final Deque<Map<String, AttributeValue>> pendingKeys = new ArrayDeque<>();
+  private final Deque<Map<String, AttributeValue>> items = new ArrayDeque<>();
+  private long unprocessedDelayMs;
+
+  public PrimaryKeyLookupReader(DynamoDBRecordReaderContext context,
+      RateController rateController) {
+    this.context = context;
+    this.rateController = rateController;
+    this.tableName = context.getConf().get(DynamoDBConstants.INPUT_TABLE_NAME);
+
+    DynamoDBSplit split = context.getSplit();
+    List<Map<String, AttributeValue>> keys = split.getFilterPushdown().getPrimaryKeys();
+    for (int segment : split.getSegments()) {
+      pendingKeys.add(keys.get(segment));
+    }
+  }
+
+  /**
+   * @return the next item found, or null once all keys have been read
+   */
+  public Map<String, AttributeValue> next() throws IOException {
+    while (items.isEmpty()) {
+      if (pendingKeys.isEmpty()) {
+        return null;
+      }
+      RequestLimit lim = rateController.getNextRequestLimit();
+      if (lim == RequestLimit.ZERO) {
+        sleep(rateController.getMillisUntilNextRequest());
+        continue;
+      }
+      readNextKeys(lim);
+    }
+    return items.poll();
+  }
+
+  private void readNextKeys(RequestLimit lim) throws IOException {
+    context.getReporter().progress();
+
+    // Every key is charged a read of its own item, rounded up, even if the item is missing
+    int maxKeys = (int) Math.max(1, lim.readCapacityUnits
+        / CapacityModel.getReadUnits((long) rateController.getAvgItemSize()));
+    int batchSize = Math.min(Math.min(Math.min(lim.items, maxKeys),
+        DynamoDBConstants.MAX_BATCH_GET_ITEMS), pendingKeys.size());
+    List<Map<String, AttributeValue>> keys = new ArrayList<>(batchSize);
+    for (int i = 0; i < batchSize; i++) {
+      keys.add(pendingKeys.poll());
+    }
+
+    Collection<String> attributes = context.getAttributes();
+    ReadMetrics metrics = context.getReadMetrics();
+    List<Map<String, AttributeValue>> itemsRead = new ArrayList<>(keys.size());
+    double consumedRcu = 0;
+    int retries;
+    KeysAndAttributes unprocessed = null;
+    long startNanos = System.nanoTime();
+    try {
+      if (keys.size() == 1) {
+        RetryResult<GetItemResult> retryResult = context.getClient().getItem(tableName,
+            keys.get(0), attributes, context.getReporter());
+        GetItemResult result = retryResult.result;
+        retries = retryResult.retries;
+        if (result.getItem() != null) {
+          itemsRead.add(result.getItem());
+        }
+        if (result.getConsumedCapacity() != null) {
+          consumedRcu = result.getConsumedCapacity().getCapacityUnits();
+        }
+      } else {
+        RetryResult<BatchGetItemResult> retryResult = context.getClient().batchGetItem(tableName,
+            keys, attributes, context.getReporter());
+        BatchGetItemResult result = retryResult.result;
+        retries = retryResult.retries;
+        if (result.getResponses() != null && result.getResponses().get(tableName) != null) {
+          itemsRead.addAll(result.getResponses().get(tableName));
+        }
+        if (result.getConsumedCapacity() != null) {
+          for (ConsumedCapacity capacity : result.getConsumedCapacity()) {
+            consumedRcu += capacity.getCapacityUnits();
+          }
+        }
+        if (result.getUnprocessedKeys() != null) {
+          unprocessed = result.getUnprocessedKeys().get(tableName);
+        }
+      }
+    } catch (RuntimeException e) {
+      metrics.recordFailedPage(System.nanoTime() - startNanos);
+      throw e;
+    }
+
+    // Every call is recorded as a page of the lookup
+    metrics.recordPage(System.nanoTime() - startNanos, lim.readCapacityUnits, consumedRcu,
+        itemsRead.size(), CapacityModel.getItemSizeBytes(itemsRead), retries);
+    items.addAll(itemsRead);
+    rateController.adjust(lim.readCapacityUnits, consumedRcu, itemsRead.size());
+    if (keys.size() == 1) {
+      unprocessedDelayMs = 0;
+    } else {
+      requeueUnprocessedKeys(keys.size(), unprocessed);
+    }
+  }
+
+  private void requeueUnprocessedKeys(int requestedKeys, KeysAndAttributes unprocessed)
+      throws IOException {
+    if (unprocessed == null || unprocessed.getKeys() == null || unprocessed.getKeys().isEmpty()) {
+      unprocessedDelayMs = 0;
+      return;
+    }
+
+    // DynamoDB leaves keys unprocessed when the table is throttled
+    RetryCoordinator retryCoordinator = context.getClient().getRetryCoordinator();
+    retryCoordinator.onThrottle(DynamoDBOperationType.READ);
+
+    // Read again before the other keys, in the same order
+    List<Map<String, AttributeValue>> unprocessedKeys = unprocessed.getKeys();
+    for (int i = unprocessedKeys.size() - 1; i >= 0; i--) {
+      pendingKeys.addFirst(unprocessedKeys.get(i));
+    }
+    if (unprocessedKeys.size() < requestedKeys) {
+      unprocessedDelayMs = 0;
+      return;
+    }
+
+    // No key was read, give the table time to recover
+    unprocessedDelayMs = retryCoordinator.getRetryDelayMs(unprocessedDelayMs);
+    log.info("None of " + requestedKeys + " keys were read, retrying in " + unprocessedDelayMs
+        + " ms");
+    sleep(unprocessedDelayMs);
+  }
+
+  private void sleep(long millis) throws IOException {
+    try {
+      Thread.sleep(Math.max(millis, 1));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to read keys");
+    }
+  }
+}
@@ -13,8 +13,17 @@
 
 package org.apache.hadoop.dynamodb.preader;
 
+import java.util.List;
+import org.apache.hadoop.dynamodb.DynamoDBConstants;
+import org.apache.hadoop.dynamodb.filter.DynamoDBQueryFilter;
+import org.apache.hadoop.dynamodb.filter.DynamoDBQuerySegment;
+import org.apache.hadoop.dynamodb.split.DynamoDBSplit;
 import org.apache.hadoop.dynamodb.util.AbstractTimeSource;
 
+/**
+ * Reads the query segments of the split. Each is one of the queries the key conditions are fanned
+ * out to by {@link DynamoDBQueryFilter#getQuerySegments(int)}.
+ */
 public class QueryReadManager extends AbstractReadManager {
 
   public QueryReadManager(RateController rateController, AbstractTimeSource time,
@@ -24,16 +33,21 @@ public class QueryReadManager extends AbstractReadManager {
 
   @Override
   protected void initializeReadRequests() {
-    int totalSegments = context.getSplit().getTotalSegments();
-    if (totalSegments != 1) {
-      String errorMsg = "Expect 1 segment for query (received " + context.getSplit()
-          .getTotalSegments() + ")";
+    DynamoDBSplit split = context.getSplit();
+    List<DynamoDBQuerySegment> querySegments = split.getFilterPushdown().getQuerySegments(
+        context.getConf().getInt(DynamoDBConstants.QUERY_RANGE_SEGMENTS,
+            DynamoDBConstants.DEFAULT_QUERY_RANGE_SEGMENTS));
+    if (querySegments.size() != split.getTotalSegments()) {
+      String errorMsg = "Expect " + querySegments.size() + " segments for query (received "
+          + split.getTotalSegments() + ")";
       log.error(errorMsg);
       throw new RuntimeException(errorMsg);
     }
-    segmentsRemaining.set(totalSegments);
+    segmentsRemaining.set(split.getSegments().size());
 
-    enqueueReadRequestToTail(new QueryRecordReadRequest(this, context, null /* lastEvaluatedKey
-    */));
+    for (Integer segment : split.getSegments()) {
+      enqueueReadRequestToTail(new QueryRecordReadRequest(this, context, segment,
+          querySegments.get(segment), null /* lastEvaluatedKey */));
+    }
   }
 }
@@ -15,33 +15,43 @@ package org.apache.hadoop.dynamodb.preader;
 
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import java.util.Collection;
 import java.util.Map;
 import org.apache.hadoop.dynamodb.DynamoDBFibonacciRetryer.RetryResult;
+import org.apache.hadoop.dynamodb.filter.DynamoDBQuerySegment;
 import org.apache.hadoop.dynamodb.preader.RateController.RequestLimit;
 
 public class QueryRecordReadRequest extends AbstractRecordReadRequest {
 
+  private final DynamoDBQuerySegment querySegment;
+
   public QueryRecordReadRequest(AbstractReadManager readMgr, DynamoDBRecordReaderContext context,
+      int segment, DynamoDBQuerySegment querySegment,
       Map<String, AttributeValue> lastEvaluatedKey) {
-    super(readMgr, context, 0 /* segment */, lastEvaluatedKey);
+    super(readMgr, context, segment, lastEvaluatedKey);
+    this.querySegment = querySegment;
   }
 
   @Override
   protected AbstractRecordReadRequest buildNextReadRequest(PageResults<Map<String,
       AttributeValue>> pageResults) {
-    return new QueryRecordReadRequest(readMgr, context, pageResults.lastEvaluatedKey);
+    return new QueryRecordReadRequest(readMgr, context, segment, querySegment,
+        pageResults.lastEvaluatedKey);
   }
 
   @Override
   protected PageResults<Map<String, AttributeValue>> fetchPage(RequestLimit lim) {
     // Read from DynamoDB
-    RetryResult<QueryResult> retryResult = context.getClient().queryTable(tableName, context
-        .getSplit().getFilterPushdown(), lastEvaluatedKey, lim.items, context.getReporter());
+    Collection<String> attributes = context.getAttributes();
+    RetryResult<QueryResult> retryResult = context.getClient().queryTable(tableName,
+        querySegment.getKeyConditions(), context.getSplit().getFilterPushdown().getIndex(),
+        querySegment.getAttributesToGet(attributes), lastEvaluatedKey, lim.items,
+        context.getReporter());
 
     QueryResult result = retryResult.result;
     int retries = retryResult.retries;
 
-    return new PageResults<>(result.getItems(), result.getLastEvaluatedKey(), result
-        .getConsumedCapacity().getCapacityUnits(), retries);
+    return new PageResults<>(querySegment.filterItems(result.getItems(), attributes),
+        result.getLastEvaluatedKey(), result.getConsumedCapacity().getCapacityUnits(), retries);
   }
 }
@@ -15,7 +15,10 @@ package org.apache.hadoop.dynamodb.preader;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.dynamodb.CapacityModel;
 import org.apache.hadoop.dynamodb.DynamoDBConstants;
+import org.apache.hadoop.dynamodb.DynamoDBOperationType;
+import org.apache.hadoop.dynamodb.RetryCoordinator;
 import org.apache.hadoop.dynamodb.util.AbstractTimeSource;
 
 public class RateController {
@@ -29,29 +32,47 @@ public class RateController {
   private static final double MIN_ITEM_SIZE = 1.0;
   private static final double MAX_ITEM_SIZE = 400 * 1024;
 
-  private final double targetRate;
+  // Smallest change of the throttled rate that resizes the bucket
+  private static final double MIN_RATE_CHANGE = 0.01;
+
+  private final int windowSize;
   private final TokenBucket bucket;
+  private volatile double targetRate;
+  private volatile double effectiveRate;
+  private volatile RetryCoordinator retryCoordinator;
   private double avgItemSizeBytes;
 
   public RateController(AbstractTimeSource time, double targetRate, int windowSize, double
       avgItemSizeBytes) {
     this.targetRate = targetRate;
+    this.effectiveRate = targetRate;
+    this.windowSize = windowSize;
     this.avgItemSizeBytes = Math.min(Math.max(avgItemSizeBytes, MIN_ITEM_SIZE), MAX_ITEM_SIZE);;
 
-    double capacity = Math.max(targetRate * windowSize, MIN_RCU_PER_REQ);
+    double capacity = getBucketCapacity(targetRate);
     this.bucket = new TokenBucket(targetRate, capacity, time);
 
     log.info("Rate controller initialized. target rate=" + targetRate + ", bucket capacity="
         + capacity);
   }
 
+  /**
+   * Follows the read rate of the given coordinator, which lowers it while the table throttles the
+   * task.
+   */
+  public void setRetryCoordinator(RetryCoordinator retryCoordinator) {
+    this.retryCoordinator = retryCoordinator;
+  }
+
   RequestLimit getNextRequestLimit() {
+    updateEffectiveRate();
     double rcu = bucket.acquire(MIN_RCU_PER_REQ, MAX_RCU_PER_REQ);
     if (rcu < MIN_RCU_PER_REQ) {
       return RequestLimit.ZERO;
     }
 
-    double items = getBytesFromRcu(rcu) / avgItemSizeBytes;
+    // A page consumes read units by the started 4 KB, so only whole units of it can be filled
+    double items = CapacityModel.getMaxReadBytes(rcu) / avgItemSizeBytes;
 
     // Round down, but always to at least one item
     items = Math.max(1, Math.floor(items));
@@ -59,12 +80,29 @@ public class RateController {
     return new RequestLimit((int) items, rcu);
   }
 
+  /**
+   * @return milliseconds until getNextRequestLimit() can return a non-zero limit
+   */
+  long getMillisUntilNextRequest() {
+    return bucket.getMillisUntilAvailable(MIN_RCU_PER_REQ);
+  }
+
   void adjust(double permittedReadUnits, double consumedReadUnits, int items) {
+    adjust(permittedReadUnits, consumedReadUnits, items, getBytesFromRcu(consumedReadUnits));
+  }
+
+  /**
+   * @param itemBytes the size of the items returned. A page that consumed more than its items
+   *     account for, because a filter dropped some of the items read, counts as the fewest bytes
+   *     that consume as much.
+   */
+  void adjust(double permittedReadUnits, double consumedReadUnits, int items, double itemBytes) {
     // Update average item size
     double oldAvg = avgItemSizeBytes;
     if (items > 0) {
+      double pageBytes = Math.max(itemBytes, CapacityModel.getMinReadBytes(consumedReadUnits));
       avgItemSizeBytes = (avgItemSizeBytes * ITEM_SIZE_SMOOTH_FACTOR)
-          + estimateAvgItemSize(consumedReadUnits, items) * (1.0 - ITEM_SIZE_SMOOTH_FACTOR);
+          + pageBytes / items * (1.0 - ITEM_SIZE_SMOOTH_FACTOR);
       avgItemSizeBytes = Math.min(Math.max(avgItemSizeBytes, MIN_ITEM_SIZE), MAX_ITEM_SIZE);
     }
 
@@ -86,12 +124,46 @@ public class RateController {
     return targetRate;
   }
 
+  /**
+   * @return the target rate, lowered by throttling of the task
+   */
+  double getEffectiveRate() {
+    return effectiveRate;
+  }
+
+  /**
+   * Changes the target rate, resizing the token bucket to the same window.
+   */
+  void setTargetRate(double targetRate) {
+    if (targetRate == this.targetRate) {
+      return;
+    }
+    log.info("Rate controller target rate changed from " + this.targetRate + " to " + targetRate);
+    this.targetRate = targetRate;
+    updateEffectiveRate();
+  }
+
+  private synchronized void updateEffectiveRate() {
+    RetryCoordinator coordinator = retryCoordinator;
+    double rate = coordinator == null ? targetRate
+        : targetRate * coordinator.getRateFactor(DynamoDBOperationType.READ);
+    if (Math.abs(rate - effectiveRate) <= targetRate * MIN_RATE_CHANGE
+        && (rate != targetRate || effectiveRate == targetRate)) {
+      return;
+    }
+    double capacity = getBucketCapacity(rate);
+    bucket.setRate(rate, capacity);
+    log.debug("Rate controller rate changed from " + effectiveRate + " to " + rate
+        + ", bucket capacity=" + capacity);
+    effectiveRate = rate;
+  }
+
   double getAvgItemSize() {
     return avgItemSizeBytes;
   }
 
-  private double estimateAvgItemSize(double consumedReadUnits, int items) {
-    return getBytesFromRcu(consumedReadUnits) / items;
+  private double getBucketCapacity(double targetRate) {
+    return Math.max(targetRate * windowSize, MIN_RCU_PER_REQ);
   }
 
   private double getBytesFromRcu(double rcu) {
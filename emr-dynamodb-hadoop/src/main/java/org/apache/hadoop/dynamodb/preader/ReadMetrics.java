@@ -0,0 +1,368 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.preader;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.dynamodb.DynamoDBConstants;
+import org.apache.hadoop.dynamodb.DynamoDBUtil;
+import org.apache.hadoop.dynamodb.PrintCounter;
+import org.apache.hadoop.dynamodb.util.LatencyHistogram;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * Collects the metrics of a reader's read pipeline: the latency, read units and retries of the
+ * pages read, or of the GetItem and BatchGetItem calls of a primary key lookup, the number of read
+ * workers and the rate they achieve against the target rate, and
+ * the occupancy of the page multiplexer.
+ *
+ * <p>The totals are reported as task counters when the reader closes. Hadoop adds up the counters
+ * of all tasks, so peaks, like the peak number of workers, are only in the snapshots and the task
+ * log. If {@link DynamoDBConstants#READ_METRICS_SNAPSHOT_INTERVAL_MS} is set, snapshots are
+ * appended periodically as one line of JSON per snapshot to a file in the log directory of the
+ * task, so that the read throughput percent and the number of segments can be tuned from how a
+ * task's reads went over time.
+ */
+public class ReadMetrics implements Closeable {
+
+  private static final Log log = LogFactory.getLog(ReadMetrics.class);
+  private static final String SNAPSHOT_FILE_PREFIX = "dynamodb-read-metrics";
+
+  private final long startTimeMs = System.currentTimeMillis();
+  // Guarded by this
+  private long pages;
+  private long failedPages;
+  private long items;
+  private long bytes;
+  private long retries;
+  private double permittedReadUnits;
+  private double consumedReadUnits;
+  private final LatencyHistogram pageLatency = new LatencyHistogram();
+  private int workers;
+  private int peakWorkers;
+  private double readUnitsPerSecond;
+  private double targetReadUnitsPerSecond;
+
+  private volatile PageResultMultiplexer<Map<String, AttributeValue>> pageMux;
+  private ScheduledExecutorService snapshotter;
+  private Path snapshotPath;
+
+  public void setPageResultMultiplexer(PageResultMultiplexer<Map<String, AttributeValue>>
+      pageMux) {
+    this.pageMux = pageMux;
+  }
+
+  /**
+   * Records a page that was read.
+   *
+   * @param latencyNanos how long reading the page took, including its retries
+   * @param retries      the number of throttles and other retries of the page
+   */
+  public synchronized void recordPage(long latencyNanos, double permittedReadUnits,
+      double consumedReadUnits, int items, long bytes, int retries) {
+    pageLatency.record(latencyNanos);
+    this.pages++;
+    this.permittedReadUnits += permittedReadUnits;
+    this.consumedReadUnits += consumedReadUnits;
+    this.items += items;
+    this.bytes += bytes;
+    this.retries += retries;
+  }
+
+  /**
+   * Records a page that couldn't be read, after all of its retries.
+   */
+  public synchronized void recordFailedPage(long latencyNanos) {
+    pageLatency.record(latencyNanos);
+    failedPages++;
+  }
+
+  /**
+   * Records an evaluation of the read manager.
+   *
+   * @param workers                  the number of read workers or outstanding reads
+   * @param readUnitsPerSecond       the rate achieved since the last evaluation
+   * @param targetReadUnitsPerSecond the rate the rate controller was aiming for
+   */
+  public synchronized void recordEvaluation(int workers, double readUnitsPerSecond,
+      double targetReadUnitsPerSecond) {
+    this.workers = workers;
+    this.peakWorkers = Math.max(peakWorkers, workers);
+    this.readUnitsPerSecond = readUnitsPerSecond;
+    this.targetReadUnitsPerSecond = targetReadUnitsPerSecond;
+  }
+
+  public synchronized Snapshot getSnapshot() {
+    Snapshot snapshot = new Snapshot();
+    snapshot.timeMs = System.currentTimeMillis();
+    snapshot.elapsedMs = snapshot.timeMs - startTimeMs;
+    snapshot.pages = pages;
+    snapshot.failedPages = failedPages;
+    snapshot.items = items;
+    snapshot.bytes = bytes;
+    snapshot.retries = retries;
+    snapshot.permittedReadUnits = permittedReadUnits;
+    snapshot.consumedReadUnits = consumedReadUnits;
+    snapshot.pageLatencyMillis = pageLatency.getTotalMillis();
+    snapshot.pageLatencyP50Millis = pageLatency.getPercentileMillis(50);
+    snapshot.pageLatencyP99Millis = pageLatency.getPercentileMillis(99);
+    snapshot.maxPageLatencyMillis = pageLatency.getMaxMillis();
+    snapshot.workers = workers;
+    snapshot.peakWorkers = peakWorkers;
+    snapshot.readUnitsPerSecond = readUnitsPerSecond;
+    snapshot.targetReadUnitsPerSecond = targetReadUnitsPerSecond;
+
+    PageResultMultiplexer<Map<String, AttributeValue>> mux = pageMux;
+    if (mux != null) {
+      snapshot.bufferedPages = mux.getBufferedPages();
+      snapshot.bufferedBytes = mux.getBufferedBytes();
+      snapshot.peakBufferedPages = mux.getPeakPages();
+      snapshot.peakBufferedBytes = mux.getPeakBytes();
+      snapshot.consumerWaitMillis = mux.getConsumerWaitMillis();
+      snapshot.producerWaitMillis = mux.getProducerWaitMillis();
+    }
+    return snapshot;
+  }
+
+  /**
+   * Adds the metrics to the task counters. Call it once, as counters add up.
+   */
+  public void reportCounters(Reporter reporter) {
+    Snapshot snapshot = getSnapshot();
+    incrCounter(reporter, PrintCounter.ReadPages, snapshot.pages);
+    incrCounter(reporter, PrintCounter.ReadFailedPages, snapshot.failedPages);
+    incrCounter(reporter, PrintCounter.ReadPageLatencyMillis, snapshot.pageLatencyMillis);
+    incrCounter(reporter, PrintCounter.ReadCapacityUnitsPermitted,
+        Math.round(snapshot.permittedReadUnits));
+    incrCounter(reporter, PrintCounter.ReadCapacityUnitsConsumed,
+        Math.round(snapshot.consumedReadUnits));
+    incrCounter(reporter, PrintCounter.ReadPageRetries, snapshot.retries);
+    if (pageMux != null) {
+      incrCounter(reporter, PrintCounter.MultiplexerConsumerWaitMillis,
+          snapshot.consumerWaitMillis);
+      incrCounter(reporter, PrintCounter.MultiplexerProducerWaitMillis,
+          snapshot.producerWaitMillis);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return DynamoDBUtil.getGson().toJson(getSnapshot());
+  }
+
+  /**
+   * Starts appending snapshots to the snapshot file periodically, if snapshots are enabled and
+   * there is a directory to write them to.
+   */
+  public synchronized void startSnapshots(JobConf conf) {
+    long intervalMs = conf.getLong(DynamoDBConstants.READ_METRICS_SNAPSHOT_INTERVAL_MS,
+        DynamoDBConstants.DEFAULT_READ_METRICS_SNAPSHOT_INTERVAL_MS);
+    if (intervalMs <= 0 || snapshotter != null) {
+      return;
+    }
+    String dir = getSnapshotDir(conf);
+    if (dir == null) {
+      log.warn("Read metrics snapshots are enabled, but there is no log directory. Set "
+          + DynamoDBConstants.READ_METRICS_SNAPSHOT_DIR + " to write them.");
+      return;
+    }
+    String taskAttemptId = conf.get("mapreduce.task.attempt.id");
+    startSnapshots(Paths.get(dir, Strings.isNullOrEmpty(taskAttemptId) ? SNAPSHOT_FILE_PREFIX
+        + ".json" : SNAPSHOT_FILE_PREFIX + "-" + taskAttemptId + ".json"), intervalMs);
+  }
+
+  @VisibleForTesting
+  synchronized void startSnapshots(Path path, long intervalMs) {
+    snapshotPath = path;
+    snapshotter = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat("DynamoDBReadMetricsSnapshotter-%d").setDaemon(true).build());
+    snapshotter.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        writeSnapshot();
+      }
+    }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    log.info("Writing read metrics snapshots to " + path + " every " + intervalMs + " ms");
+  }
+
+  /**
+   * Stops the periodic snapshots, after writing a last one.
+   */
+  @Override
+  public void close() {
+    ScheduledExecutorService executor;
+    synchronized (this) {
+      executor = snapshotter;
+      snapshotter = null;
+    }
+    if (executor == null) {
+      return;
+    }
+    executor.shutdownNow();
+    try {
+      executor.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    writeSnapshot();
+  }
+
+  private void writeSnapshot() {
+    try {
+      Files.write(snapshotPath, Collections.singletonList(toString()), StandardCharsets.UTF_8,
+          StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Unable to write a read metrics snapshot to " + snapshotPath, e);
+    }
+  }
+
+  private static String getSnapshotDir(JobConf conf) {
+    String dir = conf.get(DynamoDBConstants.READ_METRICS_SNAPSHOT_DIR);
+    if (Strings.isNullOrEmpty(dir)) {
+      // Set by YARN in the JVMs of tasks, and by the hadoop scripts otherwise
+      dir = System.getProperty("yarn.app.container.log.dir",
+          System.getProperty("hadoop.log.dir"));
+    }
+    return Strings.isNullOrEmpty(dir) ? null : dir;
+  }
+
+  private static void incrCounter(Reporter reporter, PrintCounter counter, long amount) {
+    reporter.incrCounter(counter.getGroup(), counter.getName(), amount);
+  }
+
+  /**
+   * The metrics of a reader at a point in time, as written to the snapshot file.
+   */
+  public static final class Snapshot {
+    private long timeMs;
+    private long elapsedMs;
+    private long pages;
+    private long failedPages;
+    private long items;
+    private long bytes;
+    private long retries;
+    private double permittedReadUnits;
+    private double consumedReadUnits;
+    private long pageLatencyMillis;
+    private long pageLatencyP50Millis;
+    private long pageLatencyP99Millis;
+    private long maxPageLatencyMillis;
+    private int workers;
+    private int peakWorkers;
+    private double readUnitsPerSecond;
+    private double targetReadUnitsPerSecond;
+    private int bufferedPages;
+    private long bufferedBytes;
+    private int peakBufferedPages;
+    private long peakBufferedBytes;
+    private long consumerWaitMillis;
+    private long producerWaitMillis;
+
+    public long getPages() {
+      return pages;
+    }
+
+    public long getFailedPages() {
+      return failedPages;
+    }
+
+    public long getItems() {
+      return items;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    public long getRetries() {
+      return retries;
+    }
+
+    public double getPermittedReadUnits() {
+      return permittedReadUnits;
+    }
+
+    public double getConsumedReadUnits() {
+      return consumedReadUnits;
+    }
+
+    /**
+     * @return the total latency of the pages read and failed
+     */
+    public long getPageLatencyMillis() {
+      return pageLatencyMillis;
+    }
+
+    public long getPageLatencyP50Millis() {
+      return pageLatencyP50Millis;
+    }
+
+    public long getPageLatencyP99Millis() {
+      return pageLatencyP99Millis;
+    }
+
+    public long getMaxPageLatencyMillis() {
+      return maxPageLatencyMillis;
+    }
+
+    public int getWorkers() {
+      return workers;
+    }
+
+    public int getPeakWorkers() {
+      return peakWorkers;
+    }
+
+    public double getReadUnitsPerSecond() {
+      return readUnitsPerSecond;
+    }
+
+    public double getTargetReadUnitsPerSecond() {
+      return targetReadUnitsPerSecond;
+    }
+
+    public int getBufferedPages() {
+      return bufferedPages;
+    }
+
+    public long getBufferedBytes() {
+      return bufferedBytes;
+    }
+
+    public int getPeakBufferedPages() {
+      return peakBufferedPages;
+    }
+
+    public long getPeakBufferedBytes() {
+      return peakBufferedBytes;
+    }
+  }
+}
@@ -0,0 +1,345 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.preader;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.JsonParseException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.dynamodb.DynamoDBConstants;
+import org.apache.hadoop.dynamodb.DynamoDBUtil;
+import org.apache.hadoop.dynamodb.preader.PageResultMultiplexer.PageReturnListener;
+import org.apache.hadoop.dynamodb.split.DynamoDBSplit;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.JobConf;
+
+/**
+ * Tracks how far each segment of a scan has been consumed and persists it, so that a new attempt
+ * of the task resumes every segment after the last saved page instead of scanning it again.
+ *
+ * <p>A page counts as consumed once the consumer has asked the record reader for the next item
+ * after each of the page's items, and every earlier page of its segment has been consumed. So an
+ * item the consumer is still processing is never consumed yet. Progress is only saved when
+ * {@link #save()} is called, because only the consumer of the items knows when its output of them
+ * is durable. A new attempt does not return the items consumed up to the saved progress again, so
+ * they must have been written where they survive the failed attempt. Items consumed after the
+ * saved progress are returned again.
+ *
+ * <p>The consumer usually doesn't see the record reader, so the checkpoints of a running task
+ * attempt can also be saved through {@link #saveForTask(JobConf)}.
+ */
+public class ScanCheckpoints implements PageReturnListener<Map<String, AttributeValue>>,
+    Closeable {
+
+  private static final Log log = LogFactory.getLog(ScanCheckpoints.class);
+  private static final String DEFAULT_CHECKPOINT_DIR_NAME = "dynamodb-scan-checkpoints";
+  private static final String TEMP_SUFFIX = ".tmp";
+  private static final ConcurrentMap<String, ScanCheckpoints> checkpointsByTaskAttempt =
+      new ConcurrentHashMap<>();
+
+  private final FileSystem fs;
+  private final Path checkpointDir;
+  private final Object saveLock = new Object();
+  // Guarded by this
+  private final Map<Integer, SegmentProgress> progressBySegment = new HashMap<>();
+  private final Map<PageResults<Map<String, AttributeValue>>, SegmentProgress> pendingPages =
+      new IdentityHashMap<>();
+  private String taskAttemptId;
+
+  @VisibleForTesting
+  ScanCheckpoints(FileSystem fs, Path checkpointDir) throws IOException {
+    this.fs = fs;
+    this.checkpointDir = checkpointDir;
+    fs.mkdirs(checkpointDir);
+  }
+
+  /**
+   * Loads the checkpoints of the input table's scan, if scan checkpointing is enabled.
+   *
+   * @return null if checkpointing is disabled or not possible in this task
+   */
+  public static ScanCheckpoints create(JobConf conf, DynamoDBSplit split) {
+    if (conf == null || !conf.getBoolean(DynamoDBConstants.SCAN_CHECKPOINTING, false)) {
+      return null;
+    }
+
+    String taskAttemptId = conf.get("mapreduce.task.attempt.id");
+    Path checkpointRoot = getCheckpointRoot(conf);
+    if (taskAttemptId == null || checkpointRoot == null) {
+      log.warn("Scan checkpointing is enabled, but the job or task can't be identified. Scanning "
+          + "without checkpoints.");
+      return null;
+    }
+    if (conf.getMapSpeculativeExecution()) {
+      log.warn("Scan checkpointing can't be used with speculative map tasks, their attempts would "
+          + "overwrite each other's checkpoints. Scanning without checkpoints.");
+      return null;
+    }
+
+    // Segments are only the same with the same number of segments
+    Path checkpointDir = new Path(checkpointRoot, "scan-" + conf.get(DynamoDBConstants
+        .INPUT_TABLE_NAME) + "-" + split.getTotalSegments());
+    try {
+      ScanCheckpoints checkpoints = new ScanCheckpoints(checkpointDir.getFileSystem(conf),
+          checkpointDir);
+      checkpoints.taskAttemptId = taskAttemptId;
+      checkpointsByTaskAttempt.put(taskAttemptId, checkpoints);
+      return checkpoints;
+    } catch (IOException e) {
+      log.warn("Unable to use scan checkpoints in " + checkpointDir + ". Scanning without "
+          + "checkpoints.", e);
+      return null;
+    }
+  }
+
+  /**
+   * @return the directory of the job's scan checkpoints, in which consumers may keep their own
+   *     state next to the checkpoints, or null if not running as part of a job
+   */
+  public static Path getCheckpointRoot(JobConf conf) {
+    return DynamoDBUtil.getJobSharedDir(conf, DynamoDBConstants.SCAN_CHECKPOINT_DIR,
+        DEFAULT_CHECKPOINT_DIR_NAME);
+  }
+
+  /**
+   * Saves the scan progress of the running task attempt.
+   *
+   * @return false if the task attempt isn't scanning with checkpoints
+   */
+  public static boolean saveForTask(JobConf conf) throws IOException {
+    String taskAttemptId = conf.get("mapreduce.task.attempt.id");
+    ScanCheckpoints checkpoints = taskAttemptId == null ? null
+        : checkpointsByTaskAttempt.get(taskAttemptId);
+    if (checkpoints == null) {
+      return false;
+    }
+    checkpoints.save();
+    return true;
+  }
+
+  /**
+   * Starts tracking a segment, from its saved progress if there is any.
+   *
+   * @return the saved progress, or null to scan the segment from the start
+   */
+  public SegmentCheckpoint resume(int segment) {
+    SegmentCheckpoint checkpoint = null;
+    try {
+      checkpoint = load(segment);
+    } catch (IOException | JsonParseException e) {
+      log.warn("Unable to load the checkpoint of segment " + segment + ", scanning it from the "
+          + "start", e);
+    }
+
+    synchronized (this) {
+      SegmentProgress progress = new SegmentProgress(segment);
+      if (checkpoint != null) {
+        progress.lastEvaluatedKey = checkpoint.lastEvaluatedKey;
+        progress.itemsConsumed = checkpoint.itemsConsumed;
+        progress.complete = checkpoint.complete;
+        log.info("Resuming segment " + segment + " after " + checkpoint.itemsConsumed
+            + " items" + (checkpoint.complete ? ", already complete" : ""));
+      }
+      progressBySegment.put(segment, progress);
+    }
+    return checkpoint;
+  }
+
+  /**
+   * Called before a page of the segment is added to the multiplexer.
+   */
+  public synchronized void pageAdded(int segment,
+      PageResults<Map<String, AttributeValue>> page) {
+    SegmentProgress progress = progressBySegment.get(segment);
+    if (progress == null) {
+      progress = new SegmentProgress(segment);
+      progressBySegment.put(segment, progress);
+    }
+    progress.pendingPages.addLast(new PendingPage(page));
+    pendingPages.put(page, progress);
+  }
+
+  @Override
+  public synchronized void pageReturned(PageResults<Map<String, AttributeValue>> page) {
+    SegmentProgress progress = pendingPages.remove(page);
+    if (progress == null) {
+      return;
+    }
+    for (PendingPage pendingPage : progress.pendingPages) {
+      if (pendingPage.page == page) {
+        pendingPage.returned = true;
+        break;
+      }
+    }
+
+    // Progress only moves past a page once the earlier pages of the segment have been returned
+    while (!progress.pendingPages.isEmpty() && progress.pendingPages.peekFirst().returned) {
+      PageResults<Map<String, AttributeValue>> returnedPage = progress.pendingPages.pollFirst()
+          .page;
+      progress.lastEvaluatedKey = returnedPage.lastEvaluatedKey;
+      progress.itemsConsumed += returnedPage.items.size();
+      progress.complete = returnedPage.lastEvaluatedKey == null;
+      progress.changed = true;
+    }
+  }
+
+  /**
+   * @return the number of items consumed across all tracked segments, including earlier attempts
+   */
+  public synchronized long getItemsConsumed() {
+    long items = 0;
+    for (SegmentProgress progress : progressBySegment.values()) {
+      items += progress.itemsConsumed;
+    }
+    return items;
+  }
+
+  /**
+   * Persists the progress of the segments that moved since the last save. Callers must have made
+   * their output of all items they are done with durable.
+   */
+  public void save() throws IOException {
+    synchronized (saveLock) {
+      List<SegmentCheckpoint> checkpoints = new ArrayList<>();
+      synchronized (this) {
+        for (SegmentProgress progress : progressBySegment.values()) {
+          if (progress.changed) {
+            checkpoints.add(new SegmentCheckpoint(progress.segment, progress.lastEvaluatedKey,
+                progress.itemsConsumed, progress.complete));
+            progress.changed = false;
+          }
+        }
+      }
+
+      for (SegmentCheckpoint checkpoint : checkpoints) {
+        write(checkpoint);
+      }
+      if (!checkpoints.isEmpty()) {
+        log.info("Saved the progress of " + checkpoints.size() + " segments");
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    if (taskAttemptId != null) {
+      checkpointsByTaskAttempt.remove(taskAttemptId, this);
+    }
+  }
+
+  @VisibleForTesting
+  SegmentCheckpoint load(int segment) throws IOException {
+    Path path = getCheckpointPath(segment);
+    if (!fs.exists(path)) {
+      // The previous attempt may have died between removing the old checkpoint and renaming
+      path = path.suffix(TEMP_SUFFIX);
+      if (!fs.exists(path)) {
+        return null;
+      }
+    }
+    try (Reader reader = new InputStreamReader(fs.open(path), StandardCharsets.UTF_8)) {
+      return DynamoDBUtil.getGson().fromJson(reader, SegmentCheckpoint.class);
+    }
+  }
+
+  private void write(SegmentCheckpoint checkpoint) throws IOException {
+    Path path = getCheckpointPath(checkpoint.segment);
+    Path tempPath = path.suffix(TEMP_SUFFIX);
+    try (Writer writer = new OutputStreamWriter(fs.create(tempPath, true),
+        StandardCharsets.UTF_8)) {
+      DynamoDBUtil.getGson().toJson(checkpoint, writer);
+    }
+    fs.delete(path, false);
+    if (!fs.rename(tempPath, path)) {
+      throw new IOException("Unable to rename " + tempPath + " to " + path);
+    }
+  }
+
+  private Path getCheckpointPath(int segment) {
+    return new Path(checkpointDir, String.valueOf(segment));
+  }
+
+  /**
+   * Saved progress of a segment.
+   */
+  public static final class SegmentCheckpoint {
+    private final int segment;
+    private final Map<String, AttributeValue> lastEvaluatedKey;
+    private final long itemsConsumed;
+    private final boolean complete;
+
+    SegmentCheckpoint(int segment, Map<String, AttributeValue> lastEvaluatedKey,
+        long itemsConsumed, boolean complete) {
+      this.segment = segment;
+      this.lastEvaluatedKey = lastEvaluatedKey;
+      this.itemsConsumed = itemsConsumed;
+      this.complete = complete;
+    }
+
+    /**
+     * @return the key to continue the scan of the segment from
+     */
+    public Map<String, AttributeValue> getLastEvaluatedKey() {
+      return lastEvaluatedKey;
+    }
+
+    public long getItemsConsumed() {
+      return itemsConsumed;
+    }
+
+    public boolean isComplete() {
+      return complete;
+    }
+  }
+
+  private static final class SegmentProgress {
+    private final int segment;
+    private final Deque<PendingPage> pendingPages = new ArrayDeque<>();
+    private Map<String, AttributeValue> lastEvaluatedKey;
+    private long itemsConsumed;
+    private boolean complete;
+    private boolean changed;
+
+    private SegmentProgress(int segment) {
+      this.segment = segment;
+    }
+  }
+
+  private static final class PendingPage {
+    private final PageResults<Map<String, AttributeValue>> page;
+    private boolean returned;
+
+    private PendingPage(PageResults<Map<String, AttributeValue>> page) {
+      this.page = page;
+    }
+  }
+}
@@ -13,14 +13,22 @@
 
 package org.apache.hadoop.dynamodb.preader;
 
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import org.apache.hadoop.dynamodb.DynamoDBConstants;
+import org.apache.hadoop.dynamodb.ThroughputLeaseCoordinator;
+import org.apache.hadoop.dynamodb.preader.ScanCheckpoints.SegmentCheckpoint;
 import org.apache.hadoop.dynamodb.util.AbstractTimeSource;
 
 public class ScanReadManager extends AbstractReadManager {
 
+  // Set while the super constructor initializes the read requests, so it has no initializer
+  private SegmentClaims segmentClaims;
+
   public ScanReadManager(RateController rateController, AbstractTimeSource time,
       DynamoDBRecordReaderContext context) {
     super(rateController, time, context);
@@ -36,18 +44,104 @@ public class ScanReadManager extends AbstractReadManager {
       throw new RuntimeException(errorMsg);
     }
 
+    segmentClaims = SegmentClaims.create(context.getConf(), context.getSplit());
+    if (segmentClaims != null) {
+      initializeClaimedReadRequests();
+      return;
+    }
+
     // Shuffle the segments.
     Collections.shuffle(shuffleSgments, new Random());
 
+    // Queue up segment scan requests
+    int startedSegments = 0;
+    for (Integer segment : shuffleSgments) {
+      if (startSegment(segment)) {
+        startedSegments++;
+      }
+    }
+
     // Keep track of how many segments remain to be scanned. Used by the
     // record readers to signal completion once all segments have been fully
     // scanned.
-    segmentsRemaining.set(shuffleSgments.size());
+    setSegmentsRemaining(startedSegments);
+  }
 
-    // Queue up segment scan requests
-    for (Integer segment : shuffleSgments) {
-      enqueueReadRequestToTail(new ScanRecordReadRequest(this, context, segment, null /*
-      lastEvaluatedKey */));
+  @Override
+  void markSegmentComplete(int segment) {
+    super.markSegmentComplete(segment);
+    updateLeaseWeight();
+  }
+
+  @Override
+  protected boolean startNextSegment() {
+    if (segmentClaims == null) {
+      return false;
+    }
+    Integer segment;
+    while ((segment = segmentClaims.claimNext()) != null) {
+      if (startSegment(segment)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void initializeClaimedReadRequests() {
+    int maxOpenSegments = context.getConf().getInt(DynamoDBConstants.MAX_OPEN_CLAIMED_SEGMENTS,
+        DynamoDBConstants.DEFAULT_MAX_OPEN_CLAIMED_SEGMENTS);
+
+    // Further segments are claimed as these complete
+    int openSegments = 0;
+    Integer segment;
+    while (openSegments < maxOpenSegments && (segment = segmentClaims.claimNext()) != null) {
+      if (startSegment(segment)) {
+        openSegments++;
+      }
+    }
+    setSegmentsRemaining(openSegments);
+    updateLeaseWeight();
+  }
+
+  /**
+   * Weighs the task's throughput lease by the segments it's reading, which change as it claims
+   * segments of other tasks, loses segments of its split to them, and runs out of segments.
+   */
+  private void updateLeaseWeight() {
+    ThroughputLeaseCoordinator leaseCoordinator = context.getLeaseCoordinator();
+    if (segmentClaims != null && leaseCoordinator != null) {
+      leaseCoordinator.setWeight(segmentsRemaining.get());
+    }
+  }
+
+  /**
+   * Queues up the scan of a segment, from where a previous attempt left off if it saved a
+   * checkpoint.
+   *
+   * @return false if a previous attempt has completed the segment
+   */
+  private boolean startSegment(int segment) {
+    Map<String, AttributeValue> lastEvaluatedKey = null;
+    ScanCheckpoints checkpoints = context.getScanCheckpoints();
+    if (checkpoints != null) {
+      SegmentCheckpoint checkpoint = checkpoints.resume(segment);
+      if (checkpoint != null) {
+        if (checkpoint.isComplete()) {
+          return false;
+        }
+        lastEvaluatedKey = checkpoint.getLastEvaluatedKey();
+      }
+    }
+    enqueueReadRequestToTail(new ScanRecordReadRequest(this, context, segment,
+        lastEvaluatedKey));
+    return true;
+  }
+
+  private void setSegmentsRemaining(int segments) {
+    segmentsRemaining.set(segments);
+    if (segments == 0) {
+      log.info("No segments left to scan in this task");
+      context.getPageResultMultiplexer().setDraining(true);
     }
   }
 }
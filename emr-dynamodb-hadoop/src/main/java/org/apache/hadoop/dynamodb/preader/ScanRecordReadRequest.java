@@ -35,8 +35,9 @@ public class ScanRecordReadRequest extends AbstractRecordReadRequest {
   @Override
   protected PageResults<Map<String, AttributeValue>> fetchPage(RequestLimit lim) {
     // Read from DynamoDB
-    RetryResult<ScanResult> retryResult = context.getClient().scanTable(tableName, null, segment,
-        context.getSplit().getTotalSegments(), lastEvaluatedKey, lim.items, context.getReporter());
+    RetryResult<ScanResult> retryResult = context.getClient().scanTable(tableName, null,
+        context.getAttributes(), segment, context.getSplit().getTotalSegments(), lastEvaluatedKey,
+        lim.items, context.getReporter());
 
     ScanResult result = retryResult.result;
     int retries = retryResult.retries;
@@ -0,0 +1,267 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.preader;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.dynamodb.DynamoDBConstants;
+import org.apache.hadoop.dynamodb.DynamoDBUtil;
+import org.apache.hadoop.dynamodb.split.DynamoDBSplit;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.JobConf;
+
+/**
+ * Hands out the scan segments of a table to the tasks of a job as they need them, so that a task
+ * that finishes its own segments early takes over segments other tasks haven't started yet.
+ *
+ * <p>A segment is claimed by creating a file named after it in a directory shared by the tasks of
+ * the job. File creation fails if the file exists, so every segment is claimed by exactly one
+ * task. A task first claims the segments of its own split, then the remaining segments of the
+ * table. Before claiming a segment a task also records it in a directory of its own, so that a new
+ * attempt of the task reads the same segments again.
+ *
+ * <p>Claims belong to a task, not to one of its attempts. Concurrent attempts of a task would
+ * split its segments between them, so claiming isn't used when map tasks run speculatively.
+ */
+public class SegmentClaims {
+
+  private static final Log log = LogFactory.getLog(SegmentClaims.class);
+  private static final String DEFAULT_CLAIM_DIR_NAME = "dynamodb-segment-claims";
+  private static final String OWNERS_DIR_NAME = "owners";
+
+  private final FileSystem fs;
+  private final Path claimDir;
+  private final Path ownerDir;
+  private final String taskId;
+  private final int totalSegments;
+  private final Deque<Integer> reclaimedSegments = new ArrayDeque<>();
+  private final Deque<Integer> homeSegments;
+  private final Set<Integer> homeSegmentSet;
+  // Claims are never released, so a segment known to be claimed stays claimed
+  private final Set<Integer> claimedSegments = new HashSet<>();
+  private final Set<Integer> readSegments = new HashSet<>();
+  private final int stealStart;
+  private int stealOffset;
+  private boolean stealing = true;
+
+  @VisibleForTesting
+  SegmentClaims(FileSystem fs, Path claimDir, String taskId, List<Integer> homeSegments,
+      int totalSegments) throws IOException {
+    this.fs = fs;
+    this.claimDir = claimDir;
+    this.ownerDir = new Path(claimDir, OWNERS_DIR_NAME + Path.SEPARATOR + taskId);
+    this.taskId = taskId;
+    this.totalSegments = totalSegments;
+
+    List<Integer> shuffledSegments = new ArrayList<>(homeSegments);
+    Random random = new Random();
+    Collections.shuffle(shuffledSegments, random);
+    this.homeSegments = new ArrayDeque<>(shuffledSegments);
+    this.homeSegmentSet = new HashSet<>(homeSegments);
+    // Tasks start stealing at different segments to avoid competing for the same ones
+    this.stealStart = random.nextInt(totalSegments);
+
+    fs.mkdirs(ownerDir);
+    for (FileStatus status : fs.listStatus(ownerDir)) {
+      int segment = Integer.parseInt(status.getPath().getName());
+      String owner = getClaimOwner(segment);
+      // An empty claim was left by an attempt of this task that died before writing its id
+      if (taskId.equals(owner) || "".equals(owner)) {
+        reclaimedSegments.add(segment);
+        claimedSegments.add(segment);
+      } else if (owner != null) {
+        // Claimed by another task. Records without a claim are kept, as an attempt of this task
+        // may be about to claim the segment.
+        fs.delete(status.getPath(), false);
+      }
+    }
+    if (!reclaimedSegments.isEmpty()) {
+      log.info("Segments claimed by a previous attempt: " + reclaimedSegments);
+    }
+  }
+
+  /**
+   * Claims segments of the input table for the scan of the given split, if segment claiming is
+   * enabled.
+   *
+   * @return null if claiming is disabled or not possible in this task
+   */
+  public static SegmentClaims create(JobConf conf, DynamoDBSplit split) {
+    if (conf == null || !conf.getBoolean(DynamoDBConstants.SEGMENT_CLAIMING, false)) {
+      return null;
+    }
+
+    String taskId = DynamoDBUtil.getTaskId(conf);
+    Path claimRoot = DynamoDBUtil.getJobSharedDir(conf, DynamoDBConstants.SEGMENT_CLAIM_DIR,
+        DEFAULT_CLAIM_DIR_NAME);
+    if (taskId == null || claimRoot == null) {
+      log.warn("Segment claiming is enabled, but the job or task can't be identified. Reading "
+          + "the segments of the split.");
+      return null;
+    }
+    if (conf.getMapSpeculativeExecution()) {
+      log.warn("Segment claiming can't be used with speculative map tasks. Reading the segments "
+          + "of the split.");
+      return null;
+    }
+
+    // Jobs reading the same table with different segment counts don't share claims
+    String tableName = conf.get(DynamoDBConstants.INPUT_TABLE_NAME);
+    Path claimDir = new Path(claimRoot, "scan-" + tableName + "-" + split.getTotalSegments());
+    try {
+      return new SegmentClaims(claimDir.getFileSystem(conf), claimDir, taskId,
+          split.getSegments(), split.getTotalSegments());
+    } catch (IOException e) {
+      log.warn("Unable to claim segments in " + claimDir + ". Reading the segments of the split.",
+          e);
+      return null;
+    }
+  }
+
+  /**
+   * @return the next segment this task should read, or null if all segments have been claimed
+   */
+  public synchronized Integer claimNext() {
+    Integer segment = nextSegment();
+    if (segment != null) {
+      readSegments.add(segment);
+    }
+    return segment;
+  }
+
+  private Integer nextSegment() {
+    if (!reclaimedSegments.isEmpty()) {
+      return reclaimedSegments.poll();
+    }
+
+    while (!homeSegments.isEmpty()) {
+      int segment = homeSegments.poll();
+      if (claimedSegments.contains(segment)) {
+        // Reclaimed from a previous attempt
+        continue;
+      }
+      try {
+        if (tryClaim(segment)) {
+          return segment;
+        }
+        log.info("Segment " + segment + " of this split was claimed by another task");
+      } catch (IOException e) {
+        // The segment may be read twice, but it isn't lost
+        log.warn("Unable to claim segment " + segment + ". Reading it without a claim and no "
+            + "longer taking over other segments.", e);
+        stealing = false;
+        return segment;
+      }
+    }
+
+    if (!stealing) {
+      return null;
+    }
+    try {
+      return steal();
+    } catch (IOException e) {
+      log.warn("Unable to take over segments of other tasks", e);
+      stealing = false;
+      return null;
+    }
+  }
+
+  private Integer steal() throws IOException {
+    // Segments another attempt of this task took over are this task's to read as well
+    for (FileStatus status : fs.listStatus(ownerDir)) {
+      int segment = Integer.parseInt(status.getPath().getName());
+      if (!readSegments.contains(segment) && taskId.equals(getClaimOwner(segment))) {
+        claimedSegments.add(segment);
+        log.info("Reading segment " + segment + " claimed by another attempt of this task");
+        return segment;
+      }
+    }
+
+    for (FileStatus status : fs.listStatus(claimDir)) {
+      if (status.isFile()) {
+        claimedSegments.add(Integer.parseInt(status.getPath().getName()));
+      }
+    }
+
+    while (stealOffset < totalSegments) {
+      int segment = (stealStart + stealOffset++) % totalSegments;
+      if (!homeSegmentSet.contains(segment) && !claimedSegments.contains(segment)
+          && tryClaim(segment)) {
+        log.info("Took over segment " + segment);
+        return segment;
+      }
+    }
+    return null;
+  }
+
+  private boolean tryClaim(int segment) throws IOException {
+    // Recorded first, so that a new attempt finds the claim even if this one dies right after it
+    Path ownerPath = new Path(ownerDir, String.valueOf(segment));
+    fs.create(ownerPath, true).close();
+
+    try (FSDataOutputStream out = fs.create(getClaimPath(segment), false)) {
+      out.writeUTF(taskId);
+    } catch (FileAlreadyExistsException e) {
+      claimedSegments.add(segment);
+      String owner = getClaimOwner(segment);
+      if (taskId.equals(owner)) {
+        // Claimed by another attempt of this task
+        return true;
+      }
+      // The owner record may belong to another attempt of this task still writing its claim
+      if (owner != null && !owner.isEmpty()) {
+        fs.delete(ownerPath, false);
+      }
+      return false;
+    }
+    claimedSegments.add(segment);
+    return true;
+  }
+
+  /**
+   * @return the id of the task that claimed the segment, null if it's unclaimed, or an empty
+   *     string if the claiming attempt hasn't written its id, or died before it could
+   */
+  private String getClaimOwner(int segment) throws IOException {
+    Path claimPath = getClaimPath(segment);
+    if (!fs.exists(claimPath)) {
+      return null;
+    }
+    try (FSDataInputStream in = fs.open(claimPath)) {
+      return in.readUTF();
+    } catch (EOFException e) {
+      return "";
+    }
+  }
+
+  private Path getClaimPath(int segment) {
+    return new Path(claimDir, String.valueOf(segment));
+  }
+}
@@ -15,16 +15,21 @@ package org.apache.hadoop.dynamodb.preader;
 
 import org.apache.hadoop.dynamodb.util.AbstractTimeSource;
 
-class TokenBucket {
+/**
+ * A token bucket that refills continuously at a rate per second, up to its capacity. The read
+ * workers take read units from it, and the record writer takes write units from it to pace its
+ * writes evenly.
+ */
+public class TokenBucket {
 
-  private final double rate; // refill rate in milliseconds
-  private final double capacity;
+  private double rate; // refill rate in milliseconds
+  private double capacity;
   private final AbstractTimeSource time;
 
   private double tokens;
   private long lastRefill; // in nanoseconds
 
-  TokenBucket(double refillRateInSeconds, double capacity, AbstractTimeSource time) {
+  public TokenBucket(double refillRateInSeconds, double capacity, AbstractTimeSource time) {
     this.rate = refillRateInSeconds / 1000.0;
     this.capacity = capacity;
     this.time = time;
@@ -38,7 +43,7 @@ class TokenBucket {
    * @return Amount of tokens acquired between `min` and `max` if tokens are available, 0 if less
    * than `min` are available.
    */
-  synchronized double acquire(double minTokens, double maxTokens) {
+  public synchronized double acquire(double minTokens, double maxTokens) {
     refill();
     double avail = Math.floor(Math.min(maxTokens, tokens));
     if (avail >= minTokens) {
@@ -48,6 +53,32 @@ class TokenBucket {
     return 0.0f;
   }
 
+  /**
+   * Changes the refill rate and capacity. Tokens refilled so far are kept, up to the new capacity.
+   */
+  public synchronized void setRate(double refillRateInSeconds, double capacity) {
+    refill();
+    this.rate = refillRateInSeconds / 1000.0;
+    this.capacity = capacity;
+    this.tokens = Math.min(tokens, capacity);
+  }
+
+  /**
+   * Refills and computes how long it takes until at least `minTokens` are available.
+   *
+   * @return Milliseconds until `minTokens` are available, 0 if they are available now.
+   */
+  public synchronized long getMillisUntilAvailable(double minTokens) {
+    refill();
+    if (tokens >= minTokens) {
+      return 0;
+    }
+    if (rate <= 0) {
+      return Long.MAX_VALUE;
+    }
+    return (long) Math.ceil((minTokens - tokens) / rate);
+  }
+
   /**
    * Update the number of tokens in the bucket based. Caps at the bucket capacity, but allows
    * taking the bucket into deficit.
@@ -60,17 +91,18 @@ class TokenBucket {
   }
 
   /**
-   * Refill the bucket based on current time. Caps at the bucket capacity.
+   * Refill the bucket based on current time. Caps at the bucket capacity. Refills by the
+   * nanosecond, so that callers acquiring more often than once a millisecond still see it refill.
    */
   private void refill() {
     long nowNano = time.getNanoTime();
-    long deltaMs = time.getTimeDeltaMs(lastRefill, nowNano);
-    if (deltaMs < 0) {
+    long deltaNano = nowNano - lastRefill;
+    if (deltaNano < 0) {
       return;
     }
 
-    tokens = Math.min(tokens + deltaMs * rate, capacity);
+    tokens = Math.min(tokens + deltaNano * rate / AbstractTimeSource.NANOSECONDS_IN_MILLISECOND,
+        capacity);
     lastRefill = nowNano;
-
   }
 }
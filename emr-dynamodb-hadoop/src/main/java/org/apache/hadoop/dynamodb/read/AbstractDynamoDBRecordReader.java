@@ -23,12 +23,17 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.dynamodb.DynamoDBClient;
 import org.apache.hadoop.dynamodb.DynamoDBConstants;
 import org.apache.hadoop.dynamodb.DynamoDBItemWritable;
+import org.apache.hadoop.dynamodb.DynamoDBOperationType;
 import org.apache.hadoop.dynamodb.IopsCalculator;
+import org.apache.hadoop.dynamodb.ThroughputLeaseCoordinator;
 import org.apache.hadoop.dynamodb.preader.AbstractReadManager;
 import org.apache.hadoop.dynamodb.preader.DynamoDBRecordReaderContext;
 import org.apache.hadoop.dynamodb.preader.PageResultMultiplexer;
+import org.apache.hadoop.dynamodb.preader.PrimaryKeyLookupReader;
 import org.apache.hadoop.dynamodb.preader.QueryReadManager;
 import org.apache.hadoop.dynamodb.preader.RateController;
+import org.apache.hadoop.dynamodb.preader.ReadMetrics;
+import org.apache.hadoop.dynamodb.preader.ScanCheckpoints;
 import org.apache.hadoop.dynamodb.preader.ScanReadManager;
 import org.apache.hadoop.dynamodb.split.DynamoDBSplit;
 import org.apache.hadoop.dynamodb.util.TimeSource;
@@ -58,7 +63,10 @@ public abstract class AbstractDynamoDBRecordReader<K, V> implements RecordReader
   protected final Reporter reporter;
   private final PageResultMultiplexer<Map<String, AttributeValue>> pageMux;
   private final AbstractReadManager readMgr;
+  private final PrimaryKeyLookupReader lookupReader;
   private final DynamoDBRecordReaderContext context;
+  private final ScanCheckpoints scanCheckpoints;
+  private ThroughputLeaseCoordinator leaseCoordinator;
   protected volatile long readItemCount;
 
   public AbstractDynamoDBRecordReader(DynamoDBRecordReaderContext context) {
@@ -70,16 +78,28 @@ public abstract class AbstractDynamoDBRecordReader<K, V> implements RecordReader
     this.approxTotalItemCount = split.getApproxItemCount();
     this.reporter = context.getReporter();
 
-    int numSegments = split.getSegments().size();
-    if (numSegments != 1 && isQuery()) {
-      throw new IllegalArgumentException("Query should always result in one segment");
+    if (isPrimaryKeyLookup()) {
+      // The keys are read as they're needed, without read workers or a page multiplexer
+      this.pageMux = null;
+      this.scanCheckpoints = null;
+      this.readMgr = null;
+      this.lookupReader = initLookupReader();
+    } else {
+      this.pageMux = new PageResultMultiplexer<>(DynamoDBConstants.PSCAN_SEGMENT_BATCH_SIZE,
+          DynamoDBConstants.PSCAN_MULTIPLEXER_CAPACITY, getMultiplexerBufferBytes());
+      this.context.setPageResultMultiplexer(this.pageMux);
+
+      this.scanCheckpoints = isQuery() ? null : ScanCheckpoints.create(context.getConf(), split);
+      if (scanCheckpoints != null) {
+        this.context.setScanCheckpoints(scanCheckpoints);
+        this.pageMux.setPageReturnListener(scanCheckpoints);
+      }
+
+      this.readMgr = initReadManager();
+      this.lookupReader = null;
+      context.getReadMetrics().setPageResultMultiplexer(pageMux);
     }
-
-    this.pageMux = new PageResultMultiplexer<>(DynamoDBConstants.PSCAN_SEGMENT_BATCH_SIZE,
-        DynamoDBConstants.PSCAN_MULTIPLEXER_CAPACITY);
-    this.context.setPageResultMultiplexer(this.pageMux);
-
-    this.readMgr = initReadManager();
+    context.getReadMetrics().startSnapshots(context.getConf());
 
     printInitInfo();
   }
@@ -103,7 +123,7 @@ public abstract class AbstractDynamoDBRecordReader<K, V> implements RecordReader
   public boolean next(K key, V value) throws IOException {
     reporter.progress();
 
-    Map<String, AttributeValue> item = pageMux.next();
+    Map<String, AttributeValue> item = lookupReader != null ? lookupReader.next() : pageMux.next();
     if (item != null) {
       convertDynamoDBItemToValue(item, value);
       return true;
@@ -116,15 +136,35 @@ public abstract class AbstractDynamoDBRecordReader<K, V> implements RecordReader
   public void close() throws IOException {
     log.info("Closing down record reader");
 
-    readMgr.shutdown();
-    client.close();
-
-    // Note that there is no guarantee that the read workers have pushed all
-    // their data to the mux - we're making the assumption that this is fine
-    // since shutdown should not be called until after all items have been
-    // read from the mux. If it's called earlier, it's because someone wants
-    // to cancel the run.
-    pageMux.setDraining(true);
+    try {
+      // Lookups have no read manager, page multiplexer, lease or checkpoints
+      if (readMgr != null) {
+        readMgr.shutdown();
+      }
+      if (leaseCoordinator != null) {
+        leaseCoordinator.close();
+      }
+      if (scanCheckpoints != null) {
+        scanCheckpoints.close();
+      }
+      client.close();
+
+      // Note that there is no guarantee that the read workers have pushed all
+      // their data to the mux - we're making the assumption that this is fine
+      // since shutdown should not be called until after all items have been
+      // read from the mux. If it's called earlier, it's because someone wants
+      // to cancel the run.
+      if (pageMux != null) {
+        pageMux.setDraining(true);
+      }
+    } finally {
+      ReadMetrics readMetrics = context.getReadMetrics();
+      readMetrics.close();
+      log.info("Read metrics: " + readMetrics);
+      if (reporter != null) {
+        readMetrics.reportCounters(reporter);
+      }
+    }
   }
 
   protected void convertDynamoDBItemToValue(Map<String, AttributeValue> item, V value) {
@@ -142,11 +182,16 @@ public abstract class AbstractDynamoDBRecordReader<K, V> implements RecordReader
   protected abstract void convertDynamoDBItemToValue(DynamoDBItemWritable item, V toValue);
 
   private AbstractReadManager initReadManager() {
-    // Calculate target rate. Currently this is only done at task startup
-    // time, but we could have this refresh every x minutes so that changes
-    // in table provisioning could be reflected.
+    // Calculate target rate. The read manager refreshes it every few
+    // minutes so that changes in table provisioning are reflected.
+    int localSegments = split.getSegments().size();
+    leaseCoordinator = ThroughputLeaseCoordinator.create(context.getConf(),
+        DynamoDBOperationType.READ, tableName, localSegments,
+        (double) localSegments / split.getTotalSegments());
+    // A scan that claims segments weighs its lease by the segments it's reading
+    context.setLeaseCoordinator(leaseCoordinator);
     IopsCalculator iopsCalculator = new ReadIopsCalculator(createJobClient(context.getConf()),
-        client, tableName, split.getTotalSegments(), split.getSegments().size());
+        client, tableName, split.getTotalSegments(), localSegments, leaseCoordinator);
     double targetRate = iopsCalculator.calculateTargetIops();
 
     // Set up the read manager, which will read from input segments and into
@@ -154,11 +199,42 @@ public abstract class AbstractDynamoDBRecordReader<K, V> implements RecordReader
     TimeSource time = new TimeSource();
     RateController rateController = new RateController(time, targetRate, DynamoDBConstants
         .RATE_CONTROLLER_WINDOW_SIZE_SEC, context.getAverageItemSize());
-
-    if (isQuery()) {
-      return new QueryReadManager(rateController, time, context);
+    rateController.setRetryCoordinator(client.getRetryCoordinator());
+
+    AbstractReadManager readManager = isQuery()
+        ? new QueryReadManager(rateController, time, context)
+        : new ScanReadManager(rateController, time, context);
+    if (leaseCoordinator != null) {
+      // Follow the share of the throughput as often as the lease is renewed
+      readManager.setIopsCalculator(iopsCalculator, leaseCoordinator.getRenewIntervalMs());
+    } else {
+      readManager.setIopsCalculator(iopsCalculator);
     }
-    return new ScanReadManager(rateController, time, context);
+    return readManager;
+  }
+
+  private PrimaryKeyLookupReader initLookupReader() {
+    // Lookups are short, so the task keeps its share of the segments for their duration
+    IopsCalculator iopsCalculator = new ReadIopsCalculator(createJobClient(context.getConf()),
+        client, tableName, split.getTotalSegments(), split.getSegments().size());
+    RateController rateController = new RateController(new TimeSource(),
+        iopsCalculator.calculateTargetIops(), DynamoDBConstants.RATE_CONTROLLER_WINDOW_SIZE_SEC,
+        context.getAverageItemSize());
+    rateController.setRetryCoordinator(client.getRetryCoordinator());
+    return new PrimaryKeyLookupReader(context, rateController);
+  }
+
+  private long getMultiplexerBufferBytes() {
+    double heapFraction = context.getConf().getDouble(
+        DynamoDBConstants.PSCAN_MULTIPLEXER_HEAP_FRACTION,
+        DynamoDBConstants.DEFAULT_PSCAN_MULTIPLEXER_HEAP_FRACTION);
+    return (long) (Runtime.getRuntime().maxMemory() * heapFraction
+        / DynamoDBConstants.PSCAN_MULTIPLEXER_HEAP_BYTES_PER_ITEM_BYTE);
+  }
+
+  private boolean isPrimaryKeyLookup() {
+    return split.getFilterPushdown().isPrimaryKeyLookup() && context.getConf().getBoolean(
+        DynamoDBConstants.PRIMARY_KEY_LOOKUP, DynamoDBConstants.DEFAULT_PRIMARY_KEY_LOOKUP);
   }
 
   private boolean isQuery() {
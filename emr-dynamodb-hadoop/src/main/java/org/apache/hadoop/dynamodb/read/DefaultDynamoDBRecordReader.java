@@ -13,6 +13,7 @@
 
 package org.apache.hadoop.dynamodb.read;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.dynamodb.DynamoDBItemWritable;
 import org.apache.hadoop.dynamodb.preader.DynamoDBRecordReaderContext;
 import org.apache.hadoop.io.Text;
@@ -20,8 +21,11 @@ import org.apache.hadoop.io.Text;
 public class DefaultDynamoDBRecordReader extends AbstractDynamoDBRecordReader<Text,
     DynamoDBItemWritable> {
 
+  private final Configuration conf;
+
   public DefaultDynamoDBRecordReader(DynamoDBRecordReaderContext context) {
     super(context);
+    this.conf = context.getConf();
   }
 
   @Override
@@ -31,7 +35,10 @@ public class DefaultDynamoDBRecordReader extends AbstractDynamoDBRecordReader<Te
 
   @Override
   public DynamoDBItemWritable createValue() {
-    return new DynamoDBItemWritable();
+    // Lets the value pick the configured serialization format when it is shuffled
+    DynamoDBItemWritable value = new DynamoDBItemWritable();
+    value.setConf(conf);
+    return value;
   }
 
   @Override
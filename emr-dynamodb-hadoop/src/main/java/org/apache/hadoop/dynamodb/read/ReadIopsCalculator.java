@@ -20,6 +20,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.dynamodb.DynamoDBClient;
 import org.apache.hadoop.dynamodb.DynamoDBConstants;
 import org.apache.hadoop.dynamodb.IopsCalculator;
+import org.apache.hadoop.dynamodb.ThroughputLeaseCoordinator;
 import org.apache.hadoop.mapred.JobClient;
 import org.apache.hadoop.mapred.JobConf;
 
@@ -27,6 +28,9 @@ public class ReadIopsCalculator implements IopsCalculator {
 
   private static final Log log = LogFactory.getLog(ReadIopsCalculator.class);
 
+  // With a lease the target is recalculated at every renewal, but the table described less often
+  private static final long LEASED_TABLE_THROUGHPUT_MAX_AGE_MS = 5 * 60 * 1000;
+
   private final DynamoDBClient dynamoDBClient;
   private final JobClient jobClient;
   private final JobConf jobConf;
@@ -35,9 +39,24 @@ public class ReadIopsCalculator implements IopsCalculator {
   private final double throughputPercent;
   private final int totalSegments;
   private final int localSegments;
+  private final ThroughputLeaseCoordinator leaseCoordinator;
+
+  private double initialTableThroughput;
+  private double tableThroughput;
+  private long tableThroughputTimeMs;
 
   public ReadIopsCalculator(JobClient jobClient, DynamoDBClient dynamoDBClient, String tableName,
       int totalSegments, int localSegments) {
+    this(jobClient, dynamoDBClient, tableName, totalSegments, localSegments, null);
+  }
+
+  /**
+   * @param leaseCoordinator if not null, the task's share of the throughput comes from its lease
+   *                         rather than from its share of the segments
+   */
+  public ReadIopsCalculator(JobClient jobClient, DynamoDBClient dynamoDBClient, String tableName,
+      int totalSegments, int localSegments, ThroughputLeaseCoordinator leaseCoordinator) {
+    this.leaseCoordinator = leaseCoordinator;
     this.jobConf = (JobConf) jobClient.getConf();
     this.jobClient = jobClient;
 
@@ -53,12 +72,32 @@ public class ReadIopsCalculator implements IopsCalculator {
     log.info("Throughput percent: " + throughputPercent);
   }
 
-  public long calculateTargetIops() {
-    double configuredThroughput = Math.floor(Double.parseDouble(
-        jobConf.get(DynamoDBConstants.READ_THROUGHPUT,
-            String.valueOf(getThroughput()))) * throughputPercent);
-    long throughputPerTask = Math.max((long) (configuredThroughput / totalSegments
-        * localSegments), 1);
+  /**
+   * Scales the configured throughput by how much the table's throughput changed since the first
+   * calculation, so that repeated calculations follow changes in table provisioning.
+   */
+  public synchronized long calculateTargetIops() {
+    long now = System.currentTimeMillis();
+    if (leaseCoordinator == null || tableThroughput == 0
+        || now - tableThroughputTimeMs > LEASED_TABLE_THROUGHPUT_MAX_AGE_MS) {
+      tableThroughput = getThroughput();
+      tableThroughputTimeMs = now;
+    }
+    if (initialTableThroughput == 0) {
+      initialTableThroughput = tableThroughput;
+    }
+    double configuredThroughput = Double.parseDouble(jobConf.get(
+        DynamoDBConstants.READ_THROUGHPUT, String.valueOf(initialTableThroughput)));
+    if (initialTableThroughput > 0 && tableThroughput != initialTableThroughput) {
+      log.info("Throughput of table " + tableName + " changed from " + initialTableThroughput
+          + " to " + tableThroughput);
+      configuredThroughput *= tableThroughput / initialTableThroughput;
+    }
+    configuredThroughput = Math.floor(configuredThroughput * throughputPercent);
+    double taskThroughput = leaseCoordinator != null
+        ? configuredThroughput * leaseCoordinator.getShare()
+        : configuredThroughput / totalSegments * localSegments;
+    long throughputPerTask = Math.max((long) taskThroughput, 1);
 
     log.info("Throughput per task for table " + tableName + " : " + throughputPerTask);
     return throughputPerTask;
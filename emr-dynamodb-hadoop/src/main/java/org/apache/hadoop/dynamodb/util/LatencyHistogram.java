@@ -0,0 +1,92 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A histogram of latencies in the style of HdrHistogram: every power of two of microseconds is
+ * split into {@link #SUB_BUCKETS} linear buckets, so that percentiles are within a quarter of the
+ * recorded latencies at any scale, with a fixed, small number of buckets. Not thread safe.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = SUB_BUCKETS + (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final long[] counts = new long[BUCKETS];
+  private long count;
+  private long totalMicros;
+  private long maxMicros;
+
+  public void record(long latencyNanos) {
+    long micros = Math.max(TimeUnit.NANOSECONDS.toMicros(latencyNanos), 0);
+    counts[getBucket(micros)]++;
+    count++;
+    totalMicros += micros;
+    maxMicros = Math.max(maxMicros, micros);
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getTotalMillis() {
+    return TimeUnit.MICROSECONDS.toMillis(totalMicros);
+  }
+
+  public long getMaxMillis() {
+    return TimeUnit.MICROSECONDS.toMillis(maxMicros);
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return the latency that the given percentile of the recorded latencies are at or below,
+   *     rounded up to the bucket it falls in, or 0 if nothing was recorded
+   */
+  public long getPercentileMillis(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max((long) Math.ceil(count * percentile / 100), 1);
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      seen += counts[bucket];
+      if (seen >= rank) {
+        return TimeUnit.MICROSECONDS.toMillis(Math.min(getBucketUpperMicros(bucket), maxMicros));
+      }
+    }
+    return getMaxMillis();
+  }
+
+  private static int getBucket(long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+    int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(micros);
+    int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+  }
+
+  private static long getBucketUpperMicros(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+    long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+    long width = 1L << (exponent - SUB_BUCKET_BITS);
+    return (SUB_BUCKETS + subBucket + 1) * width - 1;
+  }
+}
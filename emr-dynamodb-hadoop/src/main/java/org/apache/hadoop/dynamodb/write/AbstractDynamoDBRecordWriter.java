@@ -19,25 +19,30 @@ import static org.apache.hadoop.dynamodb.DynamoDBUtil.createJobClient;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
 import com.amazonaws.services.dynamodbv2.model.Capacity;
 import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
 import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
 import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.dynamodb.CapacityModel;
 import org.apache.hadoop.dynamodb.DynamoDBClient;
 import org.apache.hadoop.dynamodb.DynamoDBConstants;
 import org.apache.hadoop.dynamodb.DynamoDBItemWritable;
 import org.apache.hadoop.dynamodb.DynamoDBOperationType;
-import org.apache.hadoop.dynamodb.DynamoDBUtil;
-import org.apache.hadoop.dynamodb.IopsCalculator;
 import org.apache.hadoop.dynamodb.IopsController;
+import org.apache.hadoop.dynamodb.ThroughputLeaseCoordinator;
+import org.apache.hadoop.dynamodb.WriteMetrics;
+import org.apache.hadoop.dynamodb.preader.TokenBucket;
+import org.apache.hadoop.dynamodb.util.AbstractTimeSource;
+import org.apache.hadoop.dynamodb.util.TimeSource;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordWriter;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.util.Progressable;
-import org.joda.time.DateTime;
-import org.joda.time.DateTimeZone;
 
 /**
  * AbstractDynamoDBRecordWriter does all the backend work for reading in key-value pairs from the
@@ -53,20 +58,32 @@ public abstract class AbstractDynamoDBRecordWriter<K, V> implements RecordWriter
 
   private static final Log log = LogFactory.getLog(AbstractDynamoDBRecordWriter.class);
   private static final long PRINT_COUNT_INCREMENT = 1000;
+  private static final long RATE_UPDATE_INTERVAL_MS = 1000;
+  // How far writes may run ahead of the target rate, which also bounds the size of a batch
+  private static final long MAX_BURST_MS = 100;
 
   private final DynamoDBClient client;
   private final Progressable progressable;
   private final String tableName;
+  private final CapacityModel capacityModel;
+  private final AbstractTimeSource time = new TimeSource();
+  private final TokenBucket writeUnitBucket;
+  private double writeUnitBurst;
   private IopsController iopsController;
+  private ThroughputLeaseCoordinator leaseCoordinator;
+  private WriteLanes writeLanes;
   private long permissibleWritesPerSecond;
   private Reporter reporter;
 
   private int batchSize = 0;
-  private long intervalBeginTime = 0;
+  private double batchWriteUnits = 0;
+  private long intervalBeginNanos;
   private long nextPrintCount = PRINT_COUNT_INCREMENT;
   private long totalItemsWritten = 0;
   private double totalIOPSConsumed = 0;
   private long writesPerSecond = 0;
+  private double writeUnitsPerSecond = 0;
+  private double totalCoalescedWriteUnits = 0;
   private boolean deletionMode;
 
   public AbstractDynamoDBRecordWriter(JobConf jobConf, Progressable progressable) {
@@ -82,18 +99,40 @@ public abstract class AbstractDynamoDBRecordWriter<K, V> implements RecordWriter
     deletionMode = jobConf.getBoolean(DynamoDBConstants.DELETION_MODE,
         DynamoDBConstants.DEFAULT_DELETION_MODE);
 
-    IopsCalculator iopsCalculator = new WriteIopsCalculator(createJobClient(jobConf), client,
+    TableDescription table = client.describeTable(tableName);
+    client.setKeySchema(tableName, table.getKeySchema());
+    capacityModel = new CapacityModel(table);
+    WriteIopsCalculator iopsCalculator = new WriteIopsCalculator(createJobClient(jobConf), client,
         tableName);
-    iopsController = new IopsController(iopsCalculator, DEFAULT_AVERAGE_ITEM_SIZE_IN_BYTES,
-        DynamoDBOperationType.WRITE);
+    leaseCoordinator = ThroughputLeaseCoordinator.create(jobConf, DynamoDBOperationType.WRITE,
+        tableName, 1, 1.0 / iopsCalculator.getMaxParallelTasks());
+    if (leaseCoordinator != null) {
+      iopsCalculator.setLeaseCoordinator(leaseCoordinator);
+      iopsController = new IopsController(iopsCalculator, DEFAULT_AVERAGE_ITEM_SIZE_IN_BYTES,
+          DynamoDBOperationType.WRITE, leaseCoordinator.getRenewIntervalMs());
+    } else {
+      iopsController = new IopsController(iopsCalculator, DEFAULT_AVERAGE_ITEM_SIZE_IN_BYTES,
+          DynamoDBOperationType.WRITE);
+    }
+    iopsController.setRetryCoordinator(client.getRetryCoordinator());
     permissibleWritesPerSecond = iopsController.getTargetItemsPerSecond();
     log.info("Number of allocated item writes per second: " + permissibleWritesPerSecond);
+    double writeUnitsRate = getWriteUnitsRate();
+    writeUnitBurst = getWriteUnitBurst(writeUnitsRate);
+    writeUnitBucket = new TokenBucket(writeUnitsRate, writeUnitBurst, time);
+    intervalBeginNanos = time.getNanoTime();
 
     // Hive may not have a valid Reporter and pass in null progressable
     // TODO Check whether this would happen when excluding Hive
     if (progressable instanceof Reporter) {
       reporter = (Reporter) progressable;
     }
+
+    int laneCount = jobConf.getInt(DynamoDBConstants.WRITE_LANES,
+        DynamoDBConstants.DEFAULT_WRITE_LANES);
+    if (laneCount > 1) {
+      writeLanes = createWriteLanes(jobConf, table, laneCount);
+    }
   }
 
   @Override
@@ -103,45 +142,80 @@ public abstract class AbstractDynamoDBRecordWriter<K, V> implements RecordWriter
           + "specified.");
     }
 
-    verifyInterval();
+    updateWriteRate();
     if (progressable != null) {
       progressable.progress();
     }
 
     DynamoDBItemWritable item = convertValueToDynamoDBItem(key, value);
-    BatchWriteItemResult result = client.putBatch(tableName, item.getItem(),
-        permissibleWritesPerSecond - writesPerSecond, reporter, deletionMode);
+    // Sized once, for both the capacity model and the batch
+    int itemSizeBytes = CapacityModel.getItemSizeBytes(item.getItem());
+    double itemWriteUnits = capacityModel.getWriteUnits(item.getItem(), itemSizeBytes,
+        deletionMode);
+    acquireWriteUnits(itemWriteUnits);
+    totalItemsWritten++;
+    // Batches of the items written in a burst, so that the batches go out as evenly as the items
+    long maxItemsPerBatch = permissibleWritesPerSecond * MAX_BURST_MS / 1000;
+    if (writeLanes != null) {
+      // The lanes report the capacity they consumed once per interval
+      writeLanes.write(item.getItem(), itemSizeBytes,
+          Math.max(maxItemsPerBatch / writeLanes.size(), 1));
+      writesPerSecond++;
+      writeUnitsPerSecond += itemWriteUnits;
+      return;
+    }
 
+    batchWriteUnits += itemWriteUnits;
+    BatchWriteItemResult result = client.putBatch(tableName, item.getItem(), itemSizeBytes,
+        maxItemsPerBatch, reporter, deletionMode);
     batchSize++;
-    totalItemsWritten++;
 
     if (result != null) {
-      if (result.getConsumedCapacity() != null) {
-        for (ConsumedCapacity consumedCapacity : result.getConsumedCapacity()) {
-          double consumedUnits = consumedCapacity.getTable().getCapacityUnits();
-          if (consumedCapacity.getLocalSecondaryIndexes() != null) {
-            for (Capacity lsiConsumedCapacity :
-                consumedCapacity.getLocalSecondaryIndexes().values()) {
-              consumedUnits += lsiConsumedCapacity.getCapacityUnits();
-            }
-          }
-          totalIOPSConsumed += consumedUnits;
-        }
-      }
+      totalIOPSConsumed += getConsumedCapacityUnits(result);
 
       int unprocessedItems = 0;
       for (List<WriteRequest> requests : result.getUnprocessedItems().values()) {
         unprocessedItems += requests.size();
       }
+      double unprocessedWriteUnits = batchWriteUnits * unprocessedItems / batchSize;
       writesPerSecond += batchSize - unprocessedItems;
+      writeUnitsPerSecond += batchWriteUnits - unprocessedWriteUnits;
       batchSize = unprocessedItems;
+      batchWriteUnits = unprocessedWriteUnits;
     }
   }
 
   @Override
   public void close(Reporter reporter) throws IOException {
+    // The capacity consumed by the last batches still counts towards the rate of the table
+    if (writeLanes != null) {
+      writeLanes.close();
+      totalIOPSConsumed += writeLanes.drainConsumedCapacity();
+    } else {
+      BatchWriteItemResult result = client.flushWrites(this.reporter);
+      if (result != null) {
+        totalIOPSConsumed += getConsumedCapacityUnits(result);
+      }
+      writesPerSecond += batchSize;
+      writeUnitsPerSecond += batchWriteUnits;
+      batchSize = 0;
+      batchWriteUnits = 0;
+    }
+    if (writesPerSecond > 0) {
+      iopsController.update(writesPerSecond, Math.max(totalIOPSConsumed, writeUnitsPerSecond));
+    }
+    if (leaseCoordinator != null) {
+      leaseCoordinator.close();
+    }
     client.close();
     log.info(totalItemsWritten + " total items written");
+
+    WriteMetrics writeMetrics = client.getWriteMetrics();
+    log.info("Write metrics: " + writeMetrics);
+    Reporter counterReporter = reporter != null ? reporter : this.reporter;
+    if (counterReporter != null) {
+      writeMetrics.reportCounters(counterReporter);
+    }
   }
 
   /**
@@ -152,23 +226,113 @@ public abstract class AbstractDynamoDBRecordWriter<K, V> implements RecordWriter
    */
   protected abstract DynamoDBItemWritable convertValueToDynamoDBItem(K key, V value);
 
-  private void verifyInterval() {
-    if (writesPerSecond >= permissibleWritesPerSecond) {
-      if (writesPerSecond > 0) {
-        iopsController.update(writesPerSecond, totalIOPSConsumed);
+  /**
+   * @return the capacity units the batch consumed from the table and its local secondary indexes
+   */
+  static double getConsumedCapacityUnits(BatchWriteItemResult result) {
+    double consumedUnits = 0;
+    if (result.getConsumedCapacity() != null) {
+      for (ConsumedCapacity consumedCapacity : result.getConsumedCapacity()) {
+        consumedUnits += consumedCapacity.getTable().getCapacityUnits();
+        if (consumedCapacity.getLocalSecondaryIndexes() != null) {
+          for (Capacity lsiConsumedCapacity :
+              consumedCapacity.getLocalSecondaryIndexes().values()) {
+            consumedUnits += lsiConsumedCapacity.getCapacityUnits();
+          }
+        }
       }
-      permissibleWritesPerSecond = iopsController.getTargetItemsPerSecond();
+    }
+    return consumedUnits;
+  }
+
+  /**
+   * Creates lanes with a client each, which share the write metrics of the writer's client. The
+   * clients of the lanes write one batch at a time, to keep the writes of a key in order.
+   */
+  private WriteLanes createWriteLanes(JobConf jobConf, TableDescription table, int laneCount) {
+    JobConf laneConf = new JobConf(jobConf);
+    laneConf.setInt(DynamoDBConstants.MAX_CONCURRENT_WRITE_BATCHES, 1);
+    List<DynamoDBClient> laneClients = new ArrayList<>();
+    for (int i = 0; i < laneCount; i++) {
+      DynamoDBClient laneClient = new DynamoDBClient(laneConf);
+      laneClient.setWriteMetrics(client.getWriteMetrics());
+      laneClient.setKeySchema(tableName, table.getKeySchema());
+      laneClients.add(laneClient);
+    }
+    List<String> keyNames = new ArrayList<>();
+    for (KeySchemaElement key : table.getKeySchema()) {
+      keyNames.add(key.getAttributeName());
+    }
+    return new WriteLanes(laneClients, tableName, keyNames, deletionMode, reporter);
+  }
 
-      if (totalItemsWritten > nextPrintCount) {
-        log.info("Total items written: " + totalItemsWritten);
-        log.info("New writes per second: " + permissibleWritesPerSecond);
-        nextPrintCount += PRINT_COUNT_INCREMENT;
+  /**
+   * Takes the write units of an item from the bucket, waiting until the bucket has refilled
+   * enough. Items larger than the bucket wait for a full bucket and leave it in deficit.
+   */
+  private void acquireWriteUnits(double writeUnits) {
+    long waitMs = writeUnitBucket.getMillisUntilAvailable(Math.min(writeUnits, writeUnitBurst));
+    while (waitMs > 0) {
+      try {
+        Thread.sleep(waitMs);
+      } catch (InterruptedException e) {
+        throw new RuntimeException("Interrupted while waiting ", e);
       }
+      client.getWriteMetrics().recordRateLimitSleep(waitMs);
+      waitMs = writeUnitBucket.getMillisUntilAvailable(Math.min(writeUnits, writeUnitBurst));
+    }
+    writeUnitBucket.forceUpdate(-writeUnits);
+  }
+
+  /**
+   * Once per interval, follows the target rate of the IOPS controller, returns the write units of
+   * coalesced writes to the bucket, and takes the write units the table consumed beyond those
+   * predicted by the capacity model from the bucket.
+   */
+  private void updateWriteRate() {
+    if (time.getTimeSinceMs(intervalBeginNanos) < RATE_UPDATE_INTERVAL_MS) {
+      return;
+    }
+    if (writeLanes != null) {
+      totalIOPSConsumed += writeLanes.drainConsumedCapacity();
+    }
+    // Writes replaced by a later write of their key were never sent, give their units back
+    double coalescedWriteUnits = client.getWriteMetrics().getCoalescedWriteUnits();
+    double savedWriteUnits = coalescedWriteUnits - totalCoalescedWriteUnits;
+    totalCoalescedWriteUnits = coalescedWriteUnits;
+    writeUnitBucket.forceUpdate(savedWriteUnits);
+    writeUnitsPerSecond = Math.max(writeUnitsPerSecond - savedWriteUnits, 0);
+    if (writesPerSecond > 0) {
+      // The consumed capacity only counts the table and its local indexes, the capacity model
+      // also counts the global indexes that can throttle the writes
+      iopsController.update(writesPerSecond, Math.max(totalIOPSConsumed, writeUnitsPerSecond));
+    }
+    if (totalIOPSConsumed > writeUnitsPerSecond) {
+      writeUnitBucket.forceUpdate(writeUnitsPerSecond - totalIOPSConsumed);
+    }
+    permissibleWritesPerSecond = iopsController.getTargetItemsPerSecond();
+    double writeUnitsRate = getWriteUnitsRate();
+    writeUnitBurst = getWriteUnitBurst(writeUnitsRate);
+    writeUnitBucket.setRate(writeUnitsRate, writeUnitBurst);
 
-      DynamoDBUtil.verifyInterval(intervalBeginTime, 1000L);
-      intervalBeginTime = new DateTime(DateTimeZone.UTC).getMillis();
-      totalIOPSConsumed = 0;
-      writesPerSecond = 0;
+    if (totalItemsWritten > nextPrintCount) {
+      log.info("Total items written: " + totalItemsWritten);
+      log.info("New writes per second: " + permissibleWritesPerSecond + ", write units per "
+          + "second: " + writeUnitsRate);
+      nextPrintCount += PRINT_COUNT_INCREMENT;
     }
+
+    intervalBeginNanos = time.getNanoTime();
+    totalIOPSConsumed = 0;
+    writesPerSecond = 0;
+    writeUnitsPerSecond = 0;
+  }
+
+  private double getWriteUnitsRate() {
+    return Math.max(iopsController.getTargetIops(), 1);
+  }
+
+  private static double getWriteUnitBurst(double writeUnitsRate) {
+    return Math.max(writeUnitsRate * MAX_BURST_MS / 1000, 1);
   }
 }
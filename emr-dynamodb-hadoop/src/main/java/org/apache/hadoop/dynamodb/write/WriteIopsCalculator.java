@@ -20,6 +20,7 @@ import org.apache.hadoop.dynamodb.DynamoDBClient;
 import org.apache.hadoop.dynamodb.DynamoDBConstants;
 import org.apache.hadoop.dynamodb.DynamoDBUtil;
 import org.apache.hadoop.dynamodb.IopsCalculator;
+import org.apache.hadoop.dynamodb.ThroughputLeaseCoordinator;
 import org.apache.hadoop.mapred.JobClient;
 import org.apache.hadoop.mapred.JobConf;
 
@@ -27,6 +28,9 @@ public class WriteIopsCalculator implements IopsCalculator {
 
   private static final Log log = LogFactory.getLog(WriteIopsCalculator.class);
 
+  // With a lease the target is recalculated at every renewal, but the table described less often
+  private static final long LEASED_TABLE_THROUGHPUT_MAX_AGE_MS = 5 * 60 * 1000;
+
   private final DynamoDBClient dynamoDBClient;
   private final JobClient jobClient;
   private final JobConf jobConf;
@@ -34,6 +38,9 @@ public class WriteIopsCalculator implements IopsCalculator {
 
   private final int maxParallelTasks;
   private final double throughputPercent;
+  private ThroughputLeaseCoordinator leaseCoordinator;
+  private String tableThroughput;
+  private long tableThroughputTimeMs;
 
   public WriteIopsCalculator(JobClient jobClient, DynamoDBClient dynamoDBClient, String tableName) {
     this.jobConf = (JobConf) jobClient.getConf();
@@ -62,16 +69,41 @@ public class WriteIopsCalculator implements IopsCalculator {
     }
   }
 
+  /**
+   * Shares the throughput through the given lease rather than evenly between the max parallel
+   * tasks.
+   */
+  public void setLeaseCoordinator(ThroughputLeaseCoordinator leaseCoordinator) {
+    this.leaseCoordinator = leaseCoordinator;
+  }
+
+  public int getMaxParallelTasks() {
+    return maxParallelTasks;
+  }
+
   public long calculateTargetIops() {
     double configuredThroughput = Math.floor(Double.parseDouble(
-        jobConf.get(DynamoDBConstants.WRITE_THROUGHPUT, String.valueOf(getThroughput())))
+        jobConf.get(DynamoDBConstants.WRITE_THROUGHPUT, getTableThroughput()))
         * throughputPercent);
-    long throughputPerTask = Math.max((long) (configuredThroughput / maxParallelTasks), 1);
+    double taskThroughput = leaseCoordinator != null
+        ? configuredThroughput * leaseCoordinator.getShare()
+        : configuredThroughput / maxParallelTasks;
+    long throughputPerTask = Math.max((long) taskThroughput, 1);
 
     log.info("Throughput per task for table " + tableName + " : " + throughputPerTask);
     return throughputPerTask;
   }
 
+  private synchronized String getTableThroughput() {
+    long now = System.currentTimeMillis();
+    if (leaseCoordinator == null || tableThroughput == null
+        || now - tableThroughputTimeMs > LEASED_TABLE_THROUGHPUT_MAX_AGE_MS) {
+      tableThroughput = String.valueOf(getThroughput());
+      tableThroughputTimeMs = now;
+    }
+    return tableThroughput;
+  }
+
   int calculateMaxMapTasks(int totalMapTasks) {
     try {
       return DynamoDBUtil.calcMaxMapTasks(jobClient);
@@ -0,0 +1,196 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.write;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.dynamodb.CapacityModel;
+import org.apache.hadoop.dynamodb.DynamoDBClient;
+import org.apache.hadoop.dynamodb.DynamoDBUtil;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * Writes the items of a record writer through several lanes, each a sender thread with its own
+ * client and batch, so that a task isn't limited to one synchronous stream of batch writes.
+ *
+ * <p>Items are routed to lanes by the hash of their primary key, so all writes of a key go through
+ * the same lane, in the order they were written. Each lane has a bounded queue, and writing blocks
+ * while the queue of the item's lane is full.
+ */
+class WriteLanes implements Closeable {
+
+  private static final Log log = LogFactory.getLog(WriteLanes.class);
+  private static final int QUEUE_CAPACITY_PER_LANE = 1000;
+  private static final long OFFER_TIMEOUT_MS = 100;
+  // Tells a lane to flush its batch and stop
+  private static final QueuedItem END_OF_LANE = new QueuedItem(null, 0);
+
+  private final String tableName;
+  private final Collection<String> keyNames;
+  private final boolean deletionMode;
+  private final Reporter reporter;
+  private final List<Lane> lanes = new ArrayList<>();
+  private final DoubleAdder consumedCapacity = new DoubleAdder();
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  private volatile long maxItemsPerBatch;
+
+  /**
+   * @param clients  the clients of the lanes, one per lane
+   * @param keyNames the names of the primary key attributes of the table
+   */
+  WriteLanes(List<DynamoDBClient> clients, String tableName, Collection<String> keyNames,
+      boolean deletionMode, Reporter reporter) {
+    this.tableName = tableName;
+    this.keyNames = keyNames;
+    this.deletionMode = deletionMode;
+    this.reporter = reporter;
+    for (int i = 0; i < clients.size(); i++) {
+      Lane lane = new Lane(clients.get(i));
+      lane.setName("DynamoDBWriteLane-" + i);
+      lane.setDaemon(true);
+      lanes.add(lane);
+    }
+    for (Lane lane : lanes) {
+      lane.start();
+    }
+    log.info("Writing through " + lanes.size() + " lanes");
+  }
+
+  /**
+   * Queues the item on the lane of its key, blocking while the lane is full.
+   *
+   * @param itemSizeBytes    the size of the item, as computed by
+   *                         {@link CapacityModel#getItemSizeBytes(Map)}
+   * @param maxItemsPerBatch the most items a lane writes in a batch
+   */
+  void write(Map<String, AttributeValue> item, int itemSizeBytes, long maxItemsPerBatch) {
+    this.maxItemsPerBatch = maxItemsPerBatch;
+    offer(lanes.get(getLane(item)), new QueuedItem(item, itemSizeBytes));
+  }
+
+  int size() {
+    return lanes.size();
+  }
+
+  /**
+   * @return the capacity units consumed by the batches written since the last call
+   */
+  double drainConsumedCapacity() {
+    return consumedCapacity.sumThenReset();
+  }
+
+  /**
+   * Writes the items left in the lanes and stops them.
+   */
+  @Override
+  public void close() {
+    for (Lane lane : lanes) {
+      offer(lane, END_OF_LANE);
+    }
+    for (Lane lane : lanes) {
+      try {
+        lane.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while waiting for the write lanes", e);
+      }
+    }
+    checkFailure();
+  }
+
+  int getLane(Map<String, AttributeValue> item) {
+    int hash = 1;
+    for (String keyName : keyNames) {
+      // Numbers written differently may be the same key
+      AttributeValue key = DynamoDBUtil.normalizeKeyValue(item.get(keyName));
+      hash = 31 * hash + (key == null ? 0 : key.hashCode());
+    }
+    return Math.floorMod(hash, lanes.size());
+  }
+
+  private void offer(Lane lane, QueuedItem item) {
+    try {
+      while (!lane.queue.offer(item, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        // A failed lane stops taking items
+        checkFailure();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while waiting for a write lane", e);
+    }
+    checkFailure();
+  }
+
+  private void checkFailure() {
+    Throwable t = failure.get();
+    if (t != null) {
+      throw new RuntimeException("Write lane failed", t);
+    }
+  }
+
+  private final class Lane extends Thread {
+    private final DynamoDBClient client;
+    private final BlockingQueue<QueuedItem> queue =
+        new ArrayBlockingQueue<>(QUEUE_CAPACITY_PER_LANE);
+
+    private Lane(DynamoDBClient client) {
+      this.client = client;
+    }
+
+    @Override
+    public void run() {
+      try {
+        QueuedItem item = queue.take();
+        while (item != END_OF_LANE) {
+          BatchWriteItemResult result = client.putBatch(tableName, item.item, item.sizeBytes,
+              maxItemsPerBatch, reporter, deletionMode);
+          if (result != null) {
+            consumedCapacity.add(AbstractDynamoDBRecordWriter.getConsumedCapacityUnits(result));
+          }
+          item = queue.take();
+        }
+        BatchWriteItemResult result = client.flushWrites(reporter);
+        if (result != null) {
+          consumedCapacity.add(AbstractDynamoDBRecordWriter.getConsumedCapacityUnits(result));
+        }
+        client.close();
+      } catch (Throwable t) {
+        log.error("Write lane " + getName() + " failed", t);
+        failure.compareAndSet(null, t);
+      }
+    }
+  }
+
+  private static final class QueuedItem {
+    private final Map<String, AttributeValue> item;
+    private final int sizeBytes;
+
+    private QueuedItem(Map<String, AttributeValue> item, int sizeBytes) {
+      this.item = item;
+      this.sizeBytes = sizeBytes;
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class AttributeValueTypeAdapterTest {
+
+  private static final String ITEM_JSON = "{\"s\":{\"s\":\"caf\u00e9 \\\"<q>\\\"\\n\"},"
+      + "\"b\":{\"b\":\"AAH/fwU=\"},\"emptySS\":{\"sS\":[]},\"ns\":{\"nS\":[\"1\",\"2\"]},"
+      + "\"bs\":{\"bS\":[\"AQ==\",\"\"]},\"m\":{\"m\":{\"inner\":{\"n\":\"-1.5E+10\"}}},"
+      + "\"l\":{\"l\":[{\"s\":\"x\"},{\"l\":[{\"nULLValue\":true}]}]},"
+      + "\"bool\":{\"bOOL\":false},\"empty\":{}}";
+
+  private final Gson gson = DynamoDBUtil.getGson();
+
+  @Test
+  public void testWritesReflectiveFormat() {
+    assertEquals(ITEM_JSON, gson.toJson(getTestItem(), DynamoDBItemWritable.type));
+  }
+
+  @Test
+  public void testReadsReflectiveFormat() {
+    Map<String, AttributeValue> item = gson.fromJson(ITEM_JSON, DynamoDBItemWritable.type);
+
+    assertEquals(getTestItem(), item);
+    assertNull(item.get("empty").getS());
+    assertEquals(0, item.get("emptySS").getSS().size());
+  }
+
+  @Test
+  public void testIgnoresNullsAndUnknownFields() {
+    Map<String, AttributeValue> item = gson.fromJson(
+        "{\"a\":{\"s\":null,\"n\":\"1\",\"unknown\":[1,{\"x\":2}]},\"b\":null}",
+        DynamoDBItemWritable.type);
+
+    assertEquals(new AttributeValue().withN("1"), item.get("a"));
+    assertNull(item.get("b"));
+  }
+
+  @Test
+  public void testWritesRemainingBytesOfBinary() {
+    ByteBuffer buffer = ByteBuffer.wrap(new byte[]{9, 0, 1, -1, 127, 5});
+    buffer.position(1);
+
+    String json = gson.toJson(new AttributeValue().withB(buffer));
+
+    assertEquals("{\"b\":\"AAH/fwU=\"}", json);
+    assertEquals(1, buffer.position());
+    assertArrayEquals(new byte[]{0, 1, -1, 127, 5},
+        gson.fromJson(json, AttributeValue.class).getB().array());
+  }
+
+  private static Map<String, AttributeValue> getTestItem() {
+    Map<String, AttributeValue> nested = new LinkedHashMap<>();
+    nested.put("inner", new AttributeValue().withN("-1.5E+10"));
+
+    Map<String, AttributeValue> item = new LinkedHashMap<>();
+    item.put("s", new AttributeValue().withS("caf\u00e9 \"<q>\"\n"));
+    item.put("b", new AttributeValue().withB(ByteBuffer.wrap(new byte[]{0, 1, -1, 127, 5})));
+    item.put("emptySS", new AttributeValue().withSS(new ArrayList<String>()));
+    item.put("ns", new AttributeValue().withNS("1", "2"));
+    item.put("bs", new AttributeValue().withBS(ByteBuffer.wrap(new byte[]{1}),
+        ByteBuffer.wrap(new byte[0])));
+    item.put("m", new AttributeValue().withM(nested));
+    item.put("l", new AttributeValue().withL(new AttributeValue("x"),
+        new AttributeValue().withL(new AttributeValue().withNULL(true))));
+    item.put("bool", new AttributeValue().withBOOL(false));
+    item.put("empty", new AttributeValue());
+    return item;
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndexDescription;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.LocalSecondaryIndexDescription;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class CapacityModelTest {
+
+  @Test
+  public void testWriteUnitsRoundUpToTheKilobyte() {
+    CapacityModel model = new CapacityModel(table(100));
+
+    assertEquals(1, model.getWriteUnits(item("a", 10), false), 0);
+    // 10 bytes of names and the key, and 1023 of payload
+    assertEquals(2, model.getWriteUnits(item("a", 1023), false), 0);
+    assertEquals(1, model.getWriteUnits(key("a"), true), 0);
+  }
+
+  @Test
+  public void testLocalIndexesAddTheirProjections() {
+    TableDescription table = table(100).withLocalSecondaryIndexes(
+        new LocalSecondaryIndexDescription().withIndexName("keys")
+            .withKeySchema(hash("id"), range("ts"))
+            .withProjection(new Projection().withProjectionType(ProjectionType.KEYS_ONLY)),
+        new LocalSecondaryIndexDescription().withIndexName("all")
+            .withKeySchema(hash("id"), range("payload"))
+            .withProjection(new Projection().withProjectionType(ProjectionType.ALL)));
+    CapacityModel model = new CapacityModel(table);
+
+    Map<String, AttributeValue> item = item("a", 2000);
+    assertEquals(2 + 2, model.getWriteUnits(item, false), 0);
+    item.put("ts", new AttributeValue().withN("1"));
+    assertEquals(2 + 1 + 2, model.getWriteUnits(item, false), 0);
+    assertEquals(3, model.getWriteUnits(key("a"), true), 0);
+  }
+
+  @Test
+  public void testGlobalIndexesCountRelativeToTableThroughput() {
+    TableDescription table = table(100).withGlobalSecondaryIndexes(
+        new GlobalSecondaryIndexDescription().withIndexName("narrow")
+            .withKeySchema(hash("payload"))
+            .withProjection(new Projection().withProjectionType(ProjectionType.INCLUDE)
+                .withNonKeyAttributes("ts"))
+            .withProvisionedThroughput(throughput(10)),
+        new GlobalSecondaryIndexDescription().withIndexName("on-demand")
+            .withKeySchema(hash("payload"))
+            .withProjection(new Projection().withProjectionType(ProjectionType.ALL))
+            .withProvisionedThroughput(throughput(0)));
+    CapacityModel model = new CapacityModel(table);
+
+    // A unit of an index with a tenth of the throughput weighs ten units of the table
+    assertEquals(50, model.getWriteUnits(item("a", 5000), false), 0);
+    assertEquals(1, model.getWriteUnits(key("a"), false), 0);
+    assertEquals(10, model.getWriteUnits(key("a"), true), 0);
+  }
+
+  @Test
+  public void testReadUnitsRoundUpPagesToFourKilobytes() {
+    assertEquals(0.5, CapacityModel.getReadUnits(0), 0);
+    assertEquals(0.5, CapacityModel.getReadUnits(4096), 0);
+    assertEquals(1, CapacityModel.getReadUnits(4097), 0);
+
+    assertEquals(8192, CapacityModel.getMaxReadBytes(1.4));
+    assertEquals(12288, CapacityModel.getMaxReadBytes(1.5));
+    assertEquals(4097, CapacityModel.getMinReadBytes(1));
+    assertEquals(0, CapacityModel.getMinReadBytes(0));
+  }
+
+  private static TableDescription table(long writeUnits) {
+    return new TableDescription().withTableName("table").withKeySchema(hash("id"))
+        .withProvisionedThroughput(throughput(writeUnits));
+  }
+
+  private static ProvisionedThroughputDescription throughput(long writeUnits) {
+    return new ProvisionedThroughputDescription().withReadCapacityUnits(writeUnits)
+        .withWriteCapacityUnits(writeUnits);
+  }
+
+  private static KeySchemaElement hash(String name) {
+    return new KeySchemaElement(name, KeyType.HASH);
+  }
+
+  private static KeySchemaElement range(String name) {
+    return new KeySchemaElement(name, KeyType.RANGE);
+  }
+
+  private static Map<String, AttributeValue> key(String id) {
+    Map<String, AttributeValue> key = new HashMap<>();
+    key.put("id", new AttributeValue(id));
+    return key;
+  }
+
+  private static Map<String, AttributeValue> item(String id, int payloadBytes) {
+    Map<String, AttributeValue> item = key(id);
+    StringBuilder payload = new StringBuilder();
+    for (int i = 0; i < payloadBytes; i++) {
+      payload.append('x');
+    }
+    item.put("payload", new AttributeValue(payload.toString()));
+    return item;
+  }
+}
@@ -14,8 +14,25 @@
 package org.apache.hadoop.dynamodb;
 
 import static org.apache.hadoop.dynamodb.DynamoDBConstants.DEFAULT_MAX_ITEM_SIZE;
-
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.Capacity;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
 import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
@@ -29,13 +46,23 @@ import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.dynamodb.filter.DynamoDBQueryFilter;
+import org.apache.hadoop.dynamodb.test.InMemoryDynamoDB;
+import org.apache.hadoop.mapred.Reporter;
 import org.hamcrest.core.Is;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
-
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -114,6 +141,29 @@ public class DynamoDBClientTest {
     dynamoDBClient.getAWSCredentialsProvider(conf);
   }
 
+  @Test
+  public void testCustomClient() {
+    InMemoryDynamoDB.createTable("table", "id", ScalarAttributeType.S, 10, 20);
+    Configuration conf = new Configuration();
+    conf.set(DynamoDBConstants.CUSTOM_CLIENT_CONF, InMemoryDynamoDB.class.getName());
+    try {
+      DynamoDBClient dynamoDBClient = new DynamoDBClient(conf);
+      Assert.assertEquals(20L, dynamoDBClient.describeTable("table").getProvisionedThroughput()
+          .getWriteCapacityUnits().longValue());
+    } finally {
+      InMemoryDynamoDB.reset();
+    }
+  }
+
+  @Test
+  public void testCustomClientNotFound() {
+    Configuration conf = new Configuration();
+    conf.set(DynamoDBConstants.CUSTOM_CLIENT_CONF, "org.apache.hadoop.dynamodb"
+        + ".NonExistentAmazonDynamoDB");
+    expectedException.expectCause(Is.isA(ClassNotFoundException.class));
+    new DynamoDBClient(conf);
+  }
+
   @Test
   public void testCustomProviderCannotCast() {
     Configuration conf = new Configuration();
@@ -219,6 +269,266 @@ public class DynamoDBClientTest {
     }
   }
 
+  @Test
+  public void testAsyncPutBatchWritesAllBatchesOnClose() throws Exception {
+    conf.setInt(DynamoDBConstants.MAX_CONCURRENT_WRITE_BATCHES, 4);
+    AmazonDynamoDB dynamoDB = mock(AmazonDynamoDB.class);
+    when(dynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenReturn(
+        new BatchWriteItemResult().withUnprocessedItems(new HashMap<String, List<WriteRequest>>()));
+
+    DynamoDBClient asyncClient = new DynamoDBClient(conf, dynamoDB);
+    for (int i = 0; i < 100; i++) {
+      asyncClient.putBatch("dummyTable", ImmutableMap.of("id", new AttributeValue(
+          String.valueOf(i))), 25, null, false);
+    }
+    // Three full batches were handed off while buffering, the fourth is flushed on close
+    asyncClient.close();
+
+    verify(dynamoDB, times(4)).batchWriteItem(any(BatchWriteItemRequest.class));
+  }
+
+  @Test
+  public void testAsyncPutBatchResubmitsUnprocessedItems() throws Exception {
+    conf.setInt(DynamoDBConstants.MAX_CONCURRENT_WRITE_BATCHES, 2);
+    WriteRequest unprocessed = new WriteRequest();
+    AmazonDynamoDB dynamoDB = mock(AmazonDynamoDB.class);
+    when(dynamoDB.batchWriteItem(any(BatchWriteItemRequest.class)))
+        .thenReturn(new BatchWriteItemResult().withUnprocessedItems(
+            Collections.singletonMap("dummyTable", Collections.singletonList(unprocessed))))
+        .thenReturn(new BatchWriteItemResult().withUnprocessedItems(
+            new HashMap<String, List<WriteRequest>>()));
+
+    DynamoDBClient asyncClient = new DynamoDBClient(conf, dynamoDB);
+    for (int i = 0; i < 26; i++) {
+      asyncClient.putBatch("dummyTable", ImmutableMap.of("id", new AttributeValue(
+          String.valueOf(i))), 25, null, false);
+    }
+    asyncClient.close();
+
+    // First batch is written twice because of the unprocessed item, then the last item on close
+    verify(dynamoDB, times(3)).batchWriteItem(any(BatchWriteItemRequest.class));
+  }
+
+  @Test
+  public void testAsyncPutBatchSurfacesFailureOnClose() throws Exception {
+    conf.setInt(DynamoDBConstants.MAX_CONCURRENT_WRITE_BATCHES, 2);
+    AmazonServiceException validationException = new AmazonServiceException("Invalid item");
+    validationException.setStatusCode(400);
+    validationException.setErrorCode("ValidationException");
+    AmazonDynamoDB dynamoDB = mock(AmazonDynamoDB.class);
+    when(dynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenThrow(validationException);
+
+    DynamoDBClient asyncClient = new DynamoDBClient(conf, dynamoDB);
+    asyncClient.putBatch("dummyTable", ImmutableMap.of("id", new AttributeValue("1")), 25, null,
+        false);
+
+    expectedException.expect(RuntimeException.class);
+    asyncClient.close();
+  }
+
+  @Test
+  public void testAsyncPutBatchKeepsTheWritesOfAKeyInOrder() throws Exception {
+    conf.setInt(DynamoDBConstants.MAX_CONCURRENT_WRITE_BATCHES, 2);
+    AmazonDynamoDB dynamoDB = mock(AmazonDynamoDB.class);
+    // The first batch leaves the first write of key K unprocessed
+    BatchRecorder batches = new BatchRecorder(1);
+    when(dynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenAnswer(batches);
+
+    DynamoDBClient asyncClient = new DynamoDBClient(conf, dynamoDB);
+    asyncClient.setKeySchema("dummyTable", Collections.singletonList(
+        new KeySchemaElement("id", KeyType.HASH)));
+    for (String id : Arrays.asList("K", "A", "B", "K", "C")) {
+      asyncClient.putBatch("dummyTable", ImmutableMap.of("id", new AttributeValue(id)), 2, null,
+          false);
+    }
+    asyncClient.close();
+
+    // [K, A], the retry of [K], then [B, K] and [C] in either order
+    Assert.assertEquals(4, batches.sent.size());
+    Assert.assertEquals(1, batches.sent.get(1).size());
+    Assert.assertEquals("K", batches.sent.get(1).get(0).getPutRequest().getItem().get("id")
+        .getS());
+  }
+
+  @Test
+  public void testFlushWritesReturnsTheCapacityOfBatchesInFlight() throws Exception {
+    conf.setInt(DynamoDBConstants.MAX_CONCURRENT_WRITE_BATCHES, 2);
+    AmazonDynamoDB dynamoDB = mock(AmazonDynamoDB.class);
+    when(dynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenReturn(
+        new BatchWriteItemResult()
+            .withUnprocessedItems(new HashMap<String, List<WriteRequest>>())
+            .withConsumedCapacity(new ConsumedCapacity().withTableName("dummyTable")
+                .withTable(new Capacity().withCapacityUnits(1.0))));
+
+    DynamoDBClient asyncClient = new DynamoDBClient(conf, dynamoDB);
+    Assert.assertNull(asyncClient.putBatch("dummyTable", ImmutableMap.of("id",
+        new AttributeValue("1")), 25, null, false));
+    BatchWriteItemResult result = asyncClient.flushWrites(Reporter.NULL);
+    asyncClient.close();
+
+    Assert.assertEquals(1, result.getConsumedCapacity().size());
+    verify(dynamoDB, times(1)).batchWriteItem(any(BatchWriteItemRequest.class));
+  }
+
+  @Test
+  public void testPutBatchCoalescesWritesOfAKey() throws Exception {
+    client.setKeySchema("dummyTable", Arrays.asList(new KeySchemaElement("id", KeyType.HASH),
+        new KeySchemaElement("range", KeyType.RANGE)));
+    for (int version = 0; version < 3; version++) {
+      for (int id = 0; id < 2; id++) {
+        client.putBatch("dummyTable", ImmutableMap.of("id", new AttributeValue(String.valueOf(id)),
+            "range", new AttributeValue("r"), "version", new AttributeValue(
+                String.valueOf(version))), 25, null, false);
+      }
+    }
+    // Items without a range key aren't coalesced
+    client.putBatch("dummyTable", ImmutableMap.of("id", new AttributeValue("0")), 25, null, false);
+
+    List<WriteRequest> requests = client.getWriteBatchMap().get("dummyTable");
+    Assert.assertEquals(3, requests.size());
+    for (int id = 0; id < 2; id++) {
+      Map<String, AttributeValue> item = requests.get(id).getPutRequest().getItem();
+      Assert.assertEquals(String.valueOf(id), item.get("id").getS());
+      Assert.assertEquals("2", item.get("version").getS());
+    }
+    Assert.assertEquals(4, client.getWriteMetrics().getCoalescedItems());
+    Assert.assertEquals(4.0, client.getWriteMetrics().getCoalescedWriteUnits(), 0);
+  }
+
+  @Test
+  public void testPutBatchCoalescesNumbersWrittenDifferently() throws Exception {
+    client.setKeySchema("dummyTable", Collections.singletonList(
+        new KeySchemaElement("id", KeyType.HASH)));
+    for (String id : Arrays.asList("10", "10.0", "1e1", "1.00E+1")) {
+      client.putBatch("dummyTable", ImmutableMap.of("id", new AttributeValue().withN(id)), 25,
+          null, false);
+    }
+
+    List<WriteRequest> requests = client.getWriteBatchMap().get("dummyTable");
+    Assert.assertEquals(1, requests.size());
+    Assert.assertEquals("1.00E+1", requests.get(0).getPutRequest().getItem().get("id").getN());
+    Assert.assertEquals(3, client.getWriteMetrics().getCoalescedItems());
+  }
+
+  @Test
+  public void testPutBatchSendsOnlyTheLastWriteOfAKey() throws Exception {
+    AmazonDynamoDB dynamoDB = mock(AmazonDynamoDB.class);
+    BatchRecorder batches = new BatchRecorder(0);
+    when(dynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenAnswer(batches);
+
+    DynamoDBClient keyedClient = new DynamoDBClient(conf, dynamoDB);
+    keyedClient.setKeySchema("dummyTable", Collections.singletonList(
+        new KeySchemaElement("id", KeyType.HASH)));
+    for (int version = 0; version < 3; version++) {
+      keyedClient.putBatch("dummyTable", ImmutableMap.of("id", new AttributeValue("1"), "version",
+          new AttributeValue(String.valueOf(version))), 25, null, false);
+    }
+    keyedClient.close();
+
+    Assert.assertEquals(1, batches.sent.size());
+    List<WriteRequest> requests = batches.sent.get(0);
+    Assert.assertEquals(1, requests.size());
+    Assert.assertEquals("2", requests.get(0).getPutRequest().getItem().get("version").getS());
+  }
+
+  @Test
+  public void testPutBatchReplacesUnprocessedWriteOfAKey() throws Exception {
+    conf.setLong(DynamoDBConstants.MAX_BATCH_SIZE, 100);
+    AmazonDynamoDB dynamoDB = mock(AmazonDynamoDB.class);
+    BatchRecorder batches = new BatchRecorder(1);
+    when(dynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenAnswer(batches);
+
+    DynamoDBClient keyedClient = new DynamoDBClient(conf, dynamoDB);
+    keyedClient.setKeySchema("dummyTable", Collections.singletonList(
+        new KeySchemaElement("id", KeyType.HASH)));
+    keyedClient.putBatch("dummyTable", ImmutableMap.of("id", new AttributeValue("1"), "pad",
+        new AttributeValue(Strings.repeat("a", 20))), 25, null, false);
+    keyedClient.putBatch("dummyTable", ImmutableMap.of("id", new AttributeValue("2"), "pad",
+        new AttributeValue(Strings.repeat("b", 40))), 25, null, false);
+    // Too large to replace the pending write of the key, so the batch is written first, and
+    // leaves that write unprocessed
+    keyedClient.putBatch("dummyTable", ImmutableMap.of("id", new AttributeValue("1"), "pad",
+        new AttributeValue(Strings.repeat("c", 50))), 25, null, false);
+    keyedClient.close();
+
+    Assert.assertEquals(2, batches.sent.size());
+    List<WriteRequest> retried = batches.sent.get(1);
+    Assert.assertEquals(1, retried.size());
+    Assert.assertEquals(Strings.repeat("c", 50),
+        retried.get(0).getPutRequest().getItem().get("pad").getS());
+  }
+
+  @Test
+  public void testScanTableSendsProjectionExpression() {
+    AmazonDynamoDB dynamoDB = mock(AmazonDynamoDB.class);
+    when(dynamoDB.scan(any(ScanRequest.class))).thenReturn(new ScanResult());
+
+    new DynamoDBClient(conf, dynamoDB).scanTable("dummyTable", null, Arrays.asList("id",
+        "name", "id"), 0, 1, null, 10, Reporter.NULL);
+
+    ArgumentCaptor<ScanRequest> captor = ArgumentCaptor.forClass(ScanRequest.class);
+    verify(dynamoDB).scan(captor.capture());
+    Assert.assertEquals("#p0,#p1", captor.getValue().getProjectionExpression());
+    Assert.assertEquals(ImmutableMap.of("#p0", "id", "#p1", "name"),
+        captor.getValue().getExpressionAttributeNames());
+    Assert.assertNull(captor.getValue().getAttributesToGet());
+  }
+
+  @Test
+  public void testScanTableWithoutAttributesFetchesWholeItem() {
+    AmazonDynamoDB dynamoDB = mock(AmazonDynamoDB.class);
+    when(dynamoDB.scan(any(ScanRequest.class))).thenReturn(new ScanResult());
+
+    new DynamoDBClient(conf, dynamoDB).scanTable("dummyTable", null, null, 0, 1, null, 10,
+        Reporter.NULL);
+
+    ArgumentCaptor<ScanRequest> captor = ArgumentCaptor.forClass(ScanRequest.class);
+    verify(dynamoDB).scan(captor.capture());
+    Assert.assertNull(captor.getValue().getProjectionExpression());
+    Assert.assertNull(captor.getValue().getAttributesToGet());
+  }
+
+  @Test
+  public void testQueryTableSendsAttributesToGet() {
+    AmazonDynamoDB dynamoDB = mock(AmazonDynamoDB.class);
+    when(dynamoDB.query(any(QueryRequest.class))).thenReturn(new QueryResult());
+
+    new DynamoDBClient(conf, dynamoDB).queryTable("dummyTable", new DynamoDBQueryFilter(),
+        Arrays.asList("id", "name"), null, 10, Reporter.NULL);
+
+    ArgumentCaptor<QueryRequest> captor = ArgumentCaptor.forClass(QueryRequest.class);
+    verify(dynamoDB).query(captor.capture());
+    Assert.assertEquals(Arrays.asList("id", "name"), captor.getValue().getAttributesToGet());
+    Assert.assertNull(captor.getValue().getProjectionExpression());
+  }
+
+  /**
+   * Records the write requests of the batches as they are sent, as the client reuses its request
+   * map. The first batches leave their first write request unprocessed.
+   */
+  private static class BatchRecorder implements Answer<BatchWriteItemResult> {
+    private final List<List<WriteRequest>> sent = new ArrayList<>();
+    private int unprocessedBatches;
+
+    BatchRecorder(int unprocessedBatches) {
+      this.unprocessedBatches = unprocessedBatches;
+    }
+
+    @Override
+    public synchronized BatchWriteItemResult answer(InvocationOnMock invocation) {
+      BatchWriteItemRequest request = (BatchWriteItemRequest) invocation.getArguments()[0];
+      List<WriteRequest> requests = new ArrayList<>(request.getRequestItems().get("dummyTable"));
+      sent.add(requests);
+      Map<String, List<WriteRequest>> unprocessedItems = new HashMap<>();
+      if (unprocessedBatches > 0) {
+        unprocessedBatches--;
+        unprocessedItems.put("dummyTable", Collections.singletonList(requests.get(0)));
+      }
+      return new BatchWriteItemResult().withUnprocessedItems(unprocessedItems)
+          .withConsumedCapacity(new ArrayList<ConsumedCapacity>());
+    }
+  }
+
   private void setTestProxyHostAndPort(Configuration conf) {
     setProxyHostAndPort(conf, TEST_PROXY_HOST, TEST_PROXY_PORT);
   }
@@ -22,6 +22,7 @@ import static org.mockito.Mockito.when;
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
 
+import org.apache.hadoop.dynamodb.util.TimeSource;
 import org.joda.time.Duration;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -37,9 +38,15 @@ public class DynamoDBFibonacciRetryerTest {
   @Mock
   private Callable<Object> call;
 
+  private static DynamoDBFibonacciRetryer createRetryer() {
+    // Not the coordinator of the task, so that tests don't share its retry budget
+    return new DynamoDBFibonacciRetryer(Duration.standardSeconds(10),
+        new RetryCoordinator(new TimeSource()), null);
+  }
+
   @Test
   public void testSuceedCall() throws Exception {
-    DynamoDBFibonacciRetryer retryer = new DynamoDBFibonacciRetryer(Duration.standardSeconds(10));
+    DynamoDBFibonacciRetryer retryer = createRetryer();
     retryer.runWithRetry(call, null, null);
     verify(call).call();
   }
@@ -50,7 +57,7 @@ public class DynamoDBFibonacciRetryerTest {
     ase.setErrorCode("ProvisionedThroughputExceededException");
     ase.setStatusCode(400);
     when(call.call()).thenThrow(ase);
-    DynamoDBFibonacciRetryer retryer = new DynamoDBFibonacciRetryer(Duration.standardSeconds(10));
+    DynamoDBFibonacciRetryer retryer = createRetryer();
 
     try {
       retryer.runWithRetry(call, null, null);
@@ -66,7 +73,7 @@ public class DynamoDBFibonacciRetryerTest {
     ase.setErrorCode("ArbitRetryableException");
     ase.setStatusCode(500);
     when(call.call()).thenThrow(ase);
-    DynamoDBFibonacciRetryer retryer = new DynamoDBFibonacciRetryer(Duration.standardSeconds(10));
+    DynamoDBFibonacciRetryer retryer = createRetryer();
 
     try {
       retryer.runWithRetry(call, null, null);
@@ -82,7 +89,7 @@ public class DynamoDBFibonacciRetryerTest {
     ase.setErrorCode("ArbitRetryableException");
     ase.setStatusCode(503);
     when(call.call()).thenThrow(ase);
-    DynamoDBFibonacciRetryer retryer = new DynamoDBFibonacciRetryer(Duration.standardSeconds(10));
+    DynamoDBFibonacciRetryer retryer = createRetryer();
 
     try {
       retryer.runWithRetry(call, null, null);
@@ -98,7 +105,7 @@ public class DynamoDBFibonacciRetryerTest {
     ase.setErrorCode("ArbitNonRetryableException");
     ase.setStatusCode(400);
     when(call.call()).thenThrow(ase);
-    DynamoDBFibonacciRetryer retryer = new DynamoDBFibonacciRetryer(Duration.standardSeconds(10));
+    DynamoDBFibonacciRetryer retryer = createRetryer();
 
     try {
       retryer.runWithRetry(call, null, null);
@@ -111,7 +118,7 @@ public class DynamoDBFibonacciRetryerTest {
   public void testRetryACEException() throws Exception {
     AmazonClientException ace = new AmazonClientException("Test");
     when(call.call()).thenThrow(ace);
-    DynamoDBFibonacciRetryer retryer = new DynamoDBFibonacciRetryer(Duration.standardSeconds(10));
+    DynamoDBFibonacciRetryer retryer = createRetryer();
 
     try {
       retryer.runWithRetry(call, null, null);
@@ -125,7 +132,7 @@ public class DynamoDBFibonacciRetryerTest {
   public void testNonRetryIOException() throws Exception {
     IOException ioe = new IOException("Test");
     when(call.call()).thenThrow(ioe);
-    DynamoDBFibonacciRetryer retryer = new DynamoDBFibonacciRetryer(Duration.standardSeconds(10));
+    DynamoDBFibonacciRetryer retryer = createRetryer();
 
     try {
       retryer.runWithRetry(call, null, null);
@@ -24,6 +24,7 @@ import com.google.gson.reflect.TypeToken;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.conf.Configuration;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -203,4 +204,97 @@ public class DynamoDBItemWritableTest {
     DynamoDBItemWritable item = new DynamoDBItemWritable(map);
     assertEquals(item.getItem(), map);
   }
+
+  @Test
+  public void testBinaryFormatRoundTrip() throws IOException {
+    Map<String, AttributeValue> nested = new HashMap<>();
+    nested.put("inner", new AttributeValue().withN("-1.5E+10"));
+    nested.put("flag", new AttributeValue().withBOOL(false));
+
+    Map<String, AttributeValue> sampleData = new HashMap<>();
+    sampleData.put("s", new AttributeValue().withS("caf\u00e9 \ud83d\ude00 \u0000"));
+    sampleData.put("emptyS", new AttributeValue().withS(""));
+    sampleData.put("n", new AttributeValue().withN("1234"));
+    sampleData.put("b", new AttributeValue().withB(ByteBuffer.wrap(new byte[]{0, 1, -1, 127})));
+    sampleData.put("ss", new AttributeValue().withSS("a", "b"));
+    sampleData.put("emptySS", new AttributeValue().withSS(new ArrayList<String>()));
+    sampleData.put("ns", new AttributeValue().withNS("1.0", "1.10", "2.0"));
+    sampleData.put("bs", new AttributeValue().withBS(ByteBuffer.wrap(new byte[]{1}),
+        ByteBuffer.wrap(new byte[0])));
+    sampleData.put("m", new AttributeValue().withM(nested));
+    sampleData.put("emptyM", new AttributeValue().withM(new HashMap<String, AttributeValue>()));
+    sampleData.put("l", new AttributeValue().withL(new AttributeValue("x"),
+        new AttributeValue().withL(new AttributeValue().withNULL(true)),
+        new AttributeValue().withM(nested)));
+    sampleData.put("null", new AttributeValue().withNULL(true));
+    sampleData.put("bool", new AttributeValue().withBOOL(true));
+    sampleData.put("empty", new AttributeValue());
+
+    DynamoDBItemWritable copy = binaryRoundTrip(new DynamoDBItemWritable(sampleData));
+
+    assertEquals(sampleData, copy.getItem());
+    assertNull(copy.getItem().get("n").getS());
+    assertNull(copy.getItem().get("empty").getS());
+    assertEquals(0, copy.getItem().get("emptySS").getSS().size());
+  }
+
+  @Test
+  public void testBinaryFormatWithEmptyAndNullItems() throws IOException {
+    assertEquals(new HashMap<String, AttributeValue>(),
+        binaryRoundTrip(new DynamoDBItemWritable()).getItem());
+    assertNull(binaryRoundTrip(new DynamoDBItemWritable(null)).getItem());
+  }
+
+  @Test
+  public void testBinaryFormatPreservesBufferPosition() throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(new byte[]{1, 2, 3, 4});
+    buffer.position(1);
+    Map<String, AttributeValue> sampleData = new HashMap<>();
+    sampleData.put("b", new AttributeValue().withB(buffer));
+
+    DynamoDBItemWritable copy = binaryRoundTrip(new DynamoDBItemWritable(sampleData));
+
+    assertArrayEquals(new byte[]{2, 3, 4}, copy.getItem().get("b").getB().array());
+    assertEquals(1, buffer.position());
+  }
+
+  @Test
+  public void testBinaryFormatIsReadableWithoutConfiguration() throws IOException {
+    setTestData();
+    Configuration conf = new Configuration(false);
+    conf.setBoolean(DynamoDBConstants.ITEM_WRITABLE_BINARY_FORMAT, true);
+    item.setConf(conf);
+
+    ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+    item.write(new DataOutputStream(outStream));
+
+    // Readers always detect the format from the header, so a plain instance reads both
+    item = new DynamoDBItemWritable();
+    item.readFields(new DataInputStream(new ByteArrayInputStream(outStream.toByteArray())));
+    checkReturnedItem();
+  }
+
+  @Test(expected = IOException.class)
+  public void testBinaryFormatRejectsUnknownVersion() throws IOException {
+    ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+    DataOutput out = new DataOutputStream(outStream);
+    out.writeChar(0x0001);
+    out.writeByte(0x01);
+    out.writeByte(DynamoDBItemBinaryCodec.VERSION + 1);
+
+    item.readFields(new DataInputStream(new ByteArrayInputStream(outStream.toByteArray())));
+  }
+
+  private DynamoDBItemWritable binaryRoundTrip(DynamoDBItemWritable writable) throws IOException {
+    Configuration conf = new Configuration(false);
+    conf.setBoolean(DynamoDBConstants.ITEM_WRITABLE_BINARY_FORMAT, true);
+    writable.setConf(conf);
+
+    ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+    writable.write(new DataOutputStream(outStream));
+
+    DynamoDBItemWritable copy = new DynamoDBItemWritable();
+    copy.readFields(new DataInputStream(new ByteArrayInputStream(outStream.toByteArray())));
+    return copy;
+  }
 }
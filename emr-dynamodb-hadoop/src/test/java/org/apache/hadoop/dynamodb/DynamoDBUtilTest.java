@@ -39,6 +39,8 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -57,6 +59,12 @@ public class DynamoDBUtilTest {
   private static final List<String> TEST_NAMES = Lists.newArrayList("id", "payload", "number", "collection");
   private static final String TEST_STRING = "AfFLIHsycSvZoEhPPKHUrtwewDAlcD";
   private static final String TEST_NUMBER = "3592.0001";
+  // Eight significant digits take four bytes, plus a byte
+  private static final int TEST_NUMBER_SIZE = 5;
+  // Nine significant digits take five bytes, plus a byte
+  private static final int TEST_NUMBER_ARRAY_ELEMENT_SIZE = 6;
+  // Three bytes for a map or list, and a byte for each of its elements
+  private static final int DOCUMENT_OVERHEAD = 3;
   private static final List<String> TEST_NUMBER_ARRAY = Lists.newArrayList("2.14748364", "1.23452487", "1.73904643");
   private static final List<AttributeValue> TEST_LIST = Lists.newArrayList(new AttributeValue(TEST_STRING),
     new AttributeValue().withN(TEST_NUMBER));
@@ -78,11 +86,12 @@ public class DynamoDBUtilTest {
     item.put(TEST_NAMES.get(2), new AttributeValue().withN(TEST_NUMBER));
     item.put(TEST_NAMES.get(3), new AttributeValue().withNS(TEST_NUMBER_ARRAY));
 
-    List<String> allStrings = Lists.newArrayList(TEST_STRING, TEST_STRING, TEST_NUMBER);
+    List<String> allStrings = Lists.newArrayList(TEST_STRING, TEST_STRING);
     allStrings.addAll(TEST_NAMES);
-    allStrings.addAll(TEST_NUMBER_ARRAY);
 
-    assertEquals(getExpectedItemSize(allStrings), DynamoDBUtil.getItemSizeBytes(item));
+    assertEquals(getExpectedItemSize(allStrings) + TEST_NUMBER_SIZE
+            + TEST_NUMBER_ARRAY.size() * TEST_NUMBER_ARRAY_ELEMENT_SIZE,
+        DynamoDBUtil.getItemSizeBytes(item));
   }
   
   @Test
@@ -94,10 +103,11 @@ public class DynamoDBUtilTest {
     item.put(TEST_NAMES.get(2), new AttributeValue().withN(TEST_NUMBER));
     item.put(TEST_NAMES.get(3), new AttributeValue().withL(TEST_LIST));
 
-    List<String> allStrings = Lists.newArrayList(TEST_STRING, TEST_STRING, TEST_STRING, TEST_NUMBER, TEST_NUMBER);
+    List<String> allStrings = Lists.newArrayList(TEST_STRING, TEST_STRING, TEST_STRING);
     allStrings.addAll(TEST_NAMES);
 
-    assertEquals(getExpectedItemSize(allStrings), DynamoDBUtil.getItemSizeBytes(item));
+    assertEquals(getExpectedItemSize(allStrings) + 2 * TEST_NUMBER_SIZE + DOCUMENT_OVERHEAD
+        + TEST_LIST.size(), DynamoDBUtil.getItemSizeBytes(item));
   }
   
   @Test
@@ -112,11 +122,12 @@ public class DynamoDBUtilTest {
     attrMap.put(TEST_MAP_KEYS.get(1), new AttributeValue().withN(TEST_NUMBER));
     item.put(TEST_NAMES.get(3), new AttributeValue().withM(attrMap));
 
-    List<String> allStrings = Lists.newArrayList(TEST_STRING, TEST_STRING, TEST_STRING, TEST_NUMBER, TEST_NUMBER);
+    List<String> allStrings = Lists.newArrayList(TEST_STRING, TEST_STRING, TEST_STRING);
     allStrings.addAll(TEST_NAMES);
     allStrings.addAll(TEST_MAP_KEYS);
 
-    assertEquals(getExpectedItemSize(allStrings), DynamoDBUtil.getItemSizeBytes(item));
+    assertEquals(getExpectedItemSize(allStrings) + 2 * TEST_NUMBER_SIZE + DOCUMENT_OVERHEAD
+        + attrMap.size(), DynamoDBUtil.getItemSizeBytes(item));
   }
 
   @Test
@@ -145,11 +156,64 @@ public class DynamoDBUtilTest {
     item.put(TEST_NAMES.get(2), new AttributeValue().withN(TEST_NUMBER));
     item.put(TEST_NAMES.get(3), new AttributeValue().withNS(TEST_NUMBER_ARRAY));
 
-    List<String> allStrings = Lists.newArrayList(TEST_STRING, TEST_NUMBER, TEST_NUMBER);
+    List<String> allStrings = Lists.newArrayList(TEST_STRING);
     allStrings.addAll(TEST_NAMES);
-    allStrings.addAll(TEST_NUMBER_ARRAY);
 
-    assertEquals(getExpectedItemSize(allStrings), DynamoDBUtil.getItemSizeBytes(item));
+    assertEquals(getExpectedItemSize(allStrings) + 2 * TEST_NUMBER_SIZE
+            + TEST_NUMBER_ARRAY.size() * TEST_NUMBER_ARRAY_ELEMENT_SIZE,
+        DynamoDBUtil.getItemSizeBytes(item));
+  }
+
+  @Test
+  public void testNumberSizeCountsSignificantDigits() {
+    assertEquals(2, DynamoDBUtil.getItemSizeBytes(numberItem("0")));
+    assertEquals(2, DynamoDBUtil.getItemSizeBytes(numberItem("-1000.00")));
+    assertEquals(3, DynamoDBUtil.getItemSizeBytes(numberItem("0.00123")));
+    assertEquals(3, DynamoDBUtil.getItemSizeBytes(numberItem("1.23E+30")));
+    assertEquals(20, DynamoDBUtil.getItemSizeBytes(numberItem(
+        "12345678901234567890123456789012345678")));
+  }
+
+  @Test
+  public void testUtf8ItemSize() {
+    // Two, three and four bytes a character
+    String twoBytes = String.valueOf((char) 0xe9);
+    String threeBytes = String.valueOf((char) 0x20ac);
+    String fourBytes = new String(Character.toChars(0x1f600));
+    Map<String, AttributeValue> item = new HashMap<>();
+    item.put("caf" + twoBytes, new AttributeValue().withSS(threeBytes, fourBytes));
+
+    assertEquals(5 + 3 + 4, DynamoDBUtil.getItemSizeBytes(item));
+    for (String string : Lists.newArrayList("", "ascii", twoBytes + threeBytes + fourBytes,
+        fourBytes.substring(0, 1), "a" + fourBytes.substring(1) + "b")) {
+      assertEquals(string.getBytes(StandardCharsets.UTF_8).length,
+          DynamoDBUtil.getUtf8Length(string));
+    }
+  }
+
+  @Test
+  public void testBinaryItemSizeCountsRemainingBytes() {
+    ByteBuffer heap = ByteBuffer.wrap(new byte[16]);
+    heap.position(4);
+    heap.limit(10);
+    ByteBuffer direct = ByteBuffer.allocateDirect(8);
+
+    Map<String, AttributeValue> item = new HashMap<>();
+    item.put("b", new AttributeValue().withB(heap));
+    item.put("bs", new AttributeValue().withBS(direct, heap.slice()));
+
+    assertEquals(1 + 6 + 2 + 8 + 6, DynamoDBUtil.getItemSizeBytes(item));
+    assertEquals(4, heap.position());
+  }
+
+  @Test
+  public void testBooleanAndNullItemSize() {
+    Map<String, AttributeValue> item = new HashMap<>();
+    item.put("flag", new AttributeValue().withBOOL(false));
+    item.put("none", new AttributeValue().withNULL(true));
+    item.put("empty", new AttributeValue().withL(new ArrayList<AttributeValue>()));
+
+    assertEquals(4 + 1 + 4 + 1 + 5 + DOCUMENT_OVERHEAD, DynamoDBUtil.getItemSizeBytes(item));
   }
 
   @Test
@@ -201,6 +265,12 @@ public class DynamoDBUtilTest {
         getBoundedBatchLimit(conf, DEFAULT_MAX_ITEMS_PER_BATCH));
   }
 
+  private static Map<String, AttributeValue> numberItem(String number) {
+    Map<String, AttributeValue> item = new HashMap<>();
+    item.put("", new AttributeValue().withN(number));
+    return item;
+  }
+
   private int getExpectedItemSize(List<String> strings) {
     int size = 0;
     for (String str : strings) {
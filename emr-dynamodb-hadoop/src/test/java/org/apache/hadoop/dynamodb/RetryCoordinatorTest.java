@@ -0,0 +1,92 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.dynamodb.util.MockTimeSource;
+import org.junit.Test;
+
+public class RetryCoordinatorTest {
+
+  private final MockTimeSource time = new MockTimeSource();
+
+  @Test
+  public void testDelaysGrowWithJitterUpToTheMaximum() {
+    RetryCoordinator coordinator = new RetryCoordinator(time);
+
+    long previousDelay = 0;
+    for (int i = 0; i < 20; i++) {
+      long delay = coordinator.getRetryDelayMs(previousDelay);
+      long lower = Math.max((long) (previousDelay * RetryCoordinator.MIN_DELAY_GROWTH),
+          RetryCoordinator.BASE_DELAY_MS);
+      assertTrue(delay >= Math.min(lower, RetryCoordinator.MAX_DELAY_MS));
+      assertTrue(delay <= Math.min(Math.max(previousDelay * 3, lower + 1),
+          RetryCoordinator.MAX_DELAY_MS));
+      previousDelay = delay;
+    }
+  }
+
+  @Test
+  public void testRetriesWithoutBudgetWaitTheMaximumDelay() {
+    RetryCoordinator coordinator = new RetryCoordinator(time);
+    for (int i = 0; i < RetryCoordinator.MAX_RETRY_BUDGET; i++) {
+      assertTrue(coordinator.getRetryDelayMs(0) < RetryCoordinator.MAX_DELAY_MS);
+    }
+    assertEquals(RetryCoordinator.MAX_DELAY_MS, coordinator.getRetryDelayMs(0));
+
+    // Successful calls earn retries back
+    for (int i = 0; i < 1 / RetryCoordinator.RETRY_BUDGET_PER_SUCCESS + 1; i++) {
+      coordinator.onSuccess();
+    }
+    assertTrue(coordinator.getRetryDelayMs(0) < RetryCoordinator.MAX_DELAY_MS);
+    assertEquals(RetryCoordinator.MAX_DELAY_MS, coordinator.getRetryDelayMs(0));
+
+    // And so does time
+    time.advanceByMillis(1000);
+    assertTrue(coordinator.getRetryDelayMs(0) < RetryCoordinator.MAX_DELAY_MS);
+  }
+
+  @Test
+  public void testThrottlesLowerTheRateOncePerIntervalAndItRecovers() {
+    RetryCoordinator coordinator = new RetryCoordinator(time);
+    time.setNanoTime(0);
+    assertEquals(1.0, coordinator.getRateFactor(DynamoDBOperationType.WRITE), 0.001);
+
+    coordinator.onThrottle(DynamoDBOperationType.WRITE);
+    coordinator.onThrottle(DynamoDBOperationType.WRITE);
+    double factor = RetryCoordinator.RATE_DECREASE_FACTOR;
+    assertEquals(factor, coordinator.getRateFactor(DynamoDBOperationType.WRITE), 0.001);
+    assertEquals(1.0, coordinator.getRateFactor(DynamoDBOperationType.READ), 0.001);
+
+    time.advanceByMillis(RetryCoordinator.DECREASE_INTERVAL_MS);
+    factor += RetryCoordinator.RATE_INCREASE_PER_SECOND;
+    assertEquals(factor, coordinator.getRateFactor(DynamoDBOperationType.WRITE), 0.001);
+    coordinator.onThrottle(DynamoDBOperationType.WRITE);
+    factor *= RetryCoordinator.RATE_DECREASE_FACTOR;
+    assertEquals(factor, coordinator.getRateFactor(DynamoDBOperationType.WRITE), 0.001);
+
+    // Never below the minimum
+    for (int i = 0; i < 100; i++) {
+      time.advanceByMillis(RetryCoordinator.DECREASE_INTERVAL_MS);
+      coordinator.onThrottle(DynamoDBOperationType.WRITE);
+    }
+    assertEquals(RetryCoordinator.MIN_RATE_FACTOR,
+        coordinator.getRateFactor(DynamoDBOperationType.WRITE), 0.001);
+
+    time.advanceByMillis(1000 * 1000);
+    assertEquals(1.0, coordinator.getRateFactor(DynamoDBOperationType.WRITE), 0.001);
+  }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.JobConf;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+public class ThroughputLeaseCoordinatorTest {
+
+  private static final double EPSILON = 0.001;
+  private static final long RENEW_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+  private File leaseDir;
+  private FileSystem fs;
+
+  @Before
+  public void setup() throws IOException {
+    leaseDir = Files.createTempDirectory("dynamodb-leases").toFile();
+    fs = FileSystem.getLocal(new Configuration());
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.fullyDelete(leaseDir);
+  }
+
+  @Test
+  public void testSharesThroughputByWeight() throws IOException {
+    ThroughputLeaseCoordinator first = createCoordinator("task_1", 1);
+    ThroughputLeaseCoordinator second = createCoordinator("task_2", 3);
+    first.renew();
+
+    assertEquals(0.25, first.getShare(), EPSILON);
+    assertEquals(0.75, second.getShare(), EPSILON);
+
+    // The share of a finished task goes to the tasks still running
+    second.close();
+    first.renew();
+    assertEquals(1.0, first.getShare(), EPSILON);
+    first.close();
+  }
+
+  @Test
+  public void testSharesFollowWeightChanges() throws IOException {
+    ThroughputLeaseCoordinator first = createCoordinator("task_1", 1);
+    ThroughputLeaseCoordinator second = createCoordinator("task_2", 1);
+
+    // The first task took over segments of the second one
+    first.setWeight(3);
+    second.renew();
+    assertEquals(0.75, first.getShare(), EPSILON);
+    assertEquals(0.25, second.getShare(), EPSILON);
+    assertEquals(2, fs.listStatus(new Path(leaseDir.getAbsolutePath())).length);
+
+    // The second task has no segments left to read
+    second.setWeight(0);
+    first.renew();
+    assertEquals(1.0, first.getShare(), EPSILON);
+    assertEquals(0.0, second.getShare(), EPSILON);
+    first.close();
+    second.close();
+  }
+
+  @Test
+  public void testExpiredLeasesAreIgnored() throws IOException {
+    Path expiredLease = new Path(leaseDir.getAbsolutePath(), "task_2_3");
+    fs.create(expiredLease).close();
+    fs.setTimes(expiredLease,
+        System.currentTimeMillis() - RENEW_INTERVAL_MS * ThroughputLeaseCoordinator
+            .LEASE_TTL_INTERVALS * 2, -1);
+
+    ThroughputLeaseCoordinator coordinator = createCoordinator("task_1", 1);
+
+    assertEquals(1.0, coordinator.getShare(), EPSILON);
+    coordinator.close();
+  }
+
+  @Test
+  public void testDisabledByDefault() {
+    JobConf conf = new JobConf();
+    conf.set("mapreduce.task.attempt.id", "attempt_1_0001_m_000001_0");
+    conf.set("mapreduce.job.id", "job_1_0001");
+    conf.set(DynamoDBConstants.THROUGHPUT_LEASE_DIR, leaseDir.getAbsolutePath());
+
+    assertNull(ThroughputLeaseCoordinator.create(conf, DynamoDBOperationType.READ, "table", 1,
+        1.0));
+  }
+
+  private ThroughputLeaseCoordinator createCoordinator(String leaseId, int weight)
+      throws IOException {
+    return new ThroughputLeaseCoordinator(fs, new Path(leaseDir.getAbsolutePath()), leaseId,
+        weight, 0.1, RENEW_INTERVAL_MS);
+  }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.services.dynamodbv2.model.Capacity;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.mapred.Counters.Counter;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.Reporter;
+import org.junit.Test;
+
+public class WriteMetricsTest {
+
+  @Test
+  public void testBatchLatencyPercentiles() {
+    WriteMetrics metrics = new WriteMetrics(25);
+    for (int i = 1; i <= 100; i++) {
+      metrics.recordBatch(TimeUnit.MILLISECONDS.toNanos(i), 25, 1000, 0, null);
+    }
+
+    // Within a quarter of the exact percentiles, and never above the maximum
+    assertInRange(50, metrics.getBatchLatencyPercentileMillis(50));
+    assertInRange(99, metrics.getBatchLatencyPercentileMillis(99));
+    assertEquals(100, metrics.getBatchLatencyPercentileMillis(100));
+    assertEquals(1, metrics.getBatchLatencyPercentileMillis(0));
+    assertEquals(0, new WriteMetrics(25).getBatchLatencyPercentileMillis(50));
+  }
+
+  @Test
+  public void testCountsBatchesAndWriteUnitsPerTableAndIndex() {
+    WriteMetrics metrics = new WriteMetrics(25);
+    ConsumedCapacity consumed = new ConsumedCapacity().withTableName("table")
+        .withTable(new Capacity().withCapacityUnits(10.0))
+        .withLocalSecondaryIndexes(Collections.singletonMap("lsi",
+            new Capacity().withCapacityUnits(4.0)));
+    metrics.recordBatch(TimeUnit.MILLISECONDS.toNanos(20), 25, 10000, 5,
+        Collections.singletonList(consumed));
+    metrics.recordBatch(TimeUnit.MILLISECONDS.toNanos(30), 5, 2000, 0,
+        Collections.singletonList(consumed));
+    metrics.recordUnprocessedRetry(150);
+    metrics.recordRateLimitSleep(300);
+    metrics.recordRateLimitSleep(200);
+    metrics.recordCoalescedWrite(1.0);
+    metrics.recordCoalescedWrite(2.0);
+
+    assertEquals(2, metrics.getBatches());
+    assertEquals(30, metrics.getItems());
+    assertEquals(12000, metrics.getBytes());
+    assertEquals(0.6, metrics.getBatchFillRatio(), 0.001);
+    assertEquals(5, metrics.getUnprocessedItems());
+    assertEquals(1, metrics.getUnprocessedRetryRounds());
+    assertEquals(150, metrics.getUnprocessedSleepMillis());
+    assertEquals(500, metrics.getRateLimitSleepMillis());
+    assertEquals(2, metrics.getCoalescedItems());
+    assertEquals(3.0, metrics.getCoalescedWriteUnits(), 0);
+    assertEquals(20.0, metrics.getWriteUnits().get("table"), 0);
+    assertEquals(8.0, metrics.getWriteUnits().get("table-lsi"), 0);
+
+    final Map<String, Long> counters = new HashMap<>();
+    metrics.reportCounters(new CountingReporter(counters));
+    assertEquals(2, (long) counters.get(PrintCounter.WriteBatches.getName()));
+    assertEquals(50, (long) counters.get(PrintCounter.WriteBatchLatencyMillis.getName()));
+    // Ratios, percentiles and maximums don't add up across tasks, so they aren't counters
+    for (String counter : counters.keySet()) {
+      assertFalse(counter, counter.contains("Fill") || counter.contains("P50")
+          || counter.contains("P99") || counter.contains("Max"));
+    }
+    assertTrue(metrics.toString(), metrics.toString().contains("fill=0.6"));
+    assertTrue(metrics.toString(), metrics.toString().contains("maxMs=30"));
+    assertEquals(500, (long) counters.get(PrintCounter.WriteRateLimitSleepMillis.getName()));
+    assertEquals(3, (long) counters.get(PrintCounter.WriteCoalescedCapacityUnits.getName()));
+    assertEquals(20, (long) counters.get(WriteMetrics.WRITE_UNITS_COUNTER_PREFIX + "table"));
+    assertEquals(8, (long) counters.get(WriteMetrics.WRITE_UNITS_COUNTER_PREFIX + "table-lsi"));
+  }
+
+  private static void assertInRange(long expected, long actual) {
+    assertTrue(actual + " not within a quarter of " + expected,
+        actual >= expected * 0.75 && actual <= expected * 1.25);
+  }
+
+  private static final class CountingReporter implements Reporter {
+    private final Map<String, Long> counters;
+
+    private CountingReporter(Map<String, Long> counters) {
+      this.counters = counters;
+    }
+
+    @Override
+    public void incrCounter(String group, String counter, long amount) {
+      assertEquals("DynamoDB", group);
+      counters.put(counter, (counters.containsKey(counter) ? counters.get(counter) : 0) + amount);
+    }
+
+    @Override
+    public void incrCounter(Enum<?> key, long amount) {
+    }
+
+    @Override
+    public void progress() {
+    }
+
+    @Override
+    public void setStatus(String status) {
+    }
+
+    @Override
+    public InputSplit getInputSplit() {
+      return null;
+    }
+
+    @Override
+    public Counter getCounter(String group, String name) {
+      return null;
+    }
+
+    @Override
+    public Counter getCounter(Enum<?> name) {
+      return null;
+    }
+
+    @Override
+    public float getProgress() {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class DynamoDBQueryFilterTest {
+
+  @Test
+  public void testFansOutInConditionToOneQueryPerValue() {
+    DynamoDBQueryFilter filter = new DynamoDBQueryFilter();
+    filter.getKeyConditions().put("id", new Condition()
+        .withComparisonOperator(ComparisonOperator.IN)
+        .withAttributeValueList(s("a"), s("b"), s("c")));
+    filter.getKeyConditions().put("ts", between(n("1"), n("9")));
+
+    List<DynamoDBQuerySegment> segments = filter.getQuerySegments(1);
+
+    assertEquals(3, segments.size());
+    for (int i = 0; i < segments.size(); i++) {
+      Map<String, Condition> keyConditions = segments.get(i).getKeyConditions();
+      assertEquals(new Condition().withComparisonOperator(ComparisonOperator.EQ)
+          .withAttributeValueList(s(String.valueOf((char) ('a' + i)))), keyConditions.get("id"));
+      assertEquals(between(n("1"), n("9")), keyConditions.get("ts"));
+    }
+  }
+
+  @Test
+  public void testQueriesRepeatedInValuesOnce() {
+    DynamoDBQueryFilter filter = new DynamoDBQueryFilter();
+    filter.getKeyConditions().put("id", new Condition()
+        .withComparisonOperator(ComparisonOperator.IN)
+        .withAttributeValueList(n("1"), n("2"), n("1.0"), n("1")));
+
+    List<DynamoDBQuerySegment> segments = filter.getQuerySegments(1);
+
+    assertEquals(2, segments.size());
+    assertEquals(n("1"), segments.get(0).getKeyConditions().get("id").getAttributeValueList()
+        .get(0));
+    assertEquals(n("2"), segments.get(1).getKeyConditions().get("id").getAttributeValueList()
+        .get(0));
+  }
+
+  @Test
+  public void testRangeSegmentsReadEveryNumberOnce() {
+    DynamoDBQueryFilter filter = new DynamoDBQueryFilter();
+    filter.getKeyConditions().put("id", new Condition()
+        .withComparisonOperator(ComparisonOperator.EQ).withAttributeValueList(s("a")));
+    filter.getKeyConditions().put("ts", between(n("0"), n("100")));
+
+    List<DynamoDBQuerySegment> segments = filter.getQuerySegments(4);
+
+    assertEquals(4, segments.size());
+    List<Map<String, AttributeValue>> items = new ArrayList<>();
+    for (int ts = 0; ts <= 100; ts++) {
+      items.add(Collections.singletonMap("ts", n(String.valueOf(ts))));
+    }
+    int itemsRead = 0;
+    for (DynamoDBQuerySegment segment : segments) {
+      itemsRead += segment.filterItems(query(segment, items), null).size();
+    }
+    assertEquals(items.size(), itemsRead);
+  }
+
+  @Test
+  public void testSplitsDecimalAndStringRanges() {
+    assertEquals(Arrays.asList(n("0.5"), n("0.75"), n("1")),
+        DynamoDBQueryFilter.splitRange(n("0.5"), n("1"), 2));
+    assertEquals(Arrays.asList(s("a"), s("b"), s("c"), s("d"), s("e")),
+        DynamoDBQueryFilter.splitRange(s("a"), s("e"), 4));
+    assertEquals(Arrays.asList(s("user#"), s("user#="), s("user#z")),
+        DynamoDBQueryFilter.splitRange(s("user#"), s("user#z"), 2));
+  }
+
+  @Test
+  public void testLeavesIndivisibleRangesWhole() {
+    assertEquals(Arrays.asList(n("1"), n("2")), DynamoDBQueryFilter.splitRange(n("1"), n("2"),
+        4));
+    assertEquals(Arrays.asList(s("abc"), s("abd")), DynamoDBQueryFilter.splitRange(s("abc"),
+        s("abd"), 4));
+  }
+
+  @Test
+  public void testRemovesRangeKeyOnlyAddedForFiltering() {
+    DynamoDBQuerySegment segment = new DynamoDBQuerySegment(new HashMap<String, Condition>(),
+        "ts", n("10"));
+    List<String> attributes = Collections.singletonList("value");
+    assertEquals(Arrays.asList("value", "ts"), new ArrayList<>(segment.getAttributesToGet(
+        attributes)));
+
+    Map<String, AttributeValue> kept = new HashMap<>();
+    kept.put("ts", n("5"));
+    kept.put("value", s("kept"));
+    Map<String, AttributeValue> dropped = new HashMap<>();
+    dropped.put("ts", n("10.0"));
+    dropped.put("value", s("dropped"));
+
+    List<Map<String, AttributeValue>> items = segment.filterItems(Arrays.asList(kept, dropped),
+        attributes);
+
+    assertEquals(1, items.size());
+    assertFalse(items.get(0).containsKey("ts"));
+    assertTrue(items.get(0).containsKey("value"));
+  }
+
+  @Test
+  public void testLooksUpKeysOfEqualitiesOnWholePrimaryKey() {
+    DynamoDBQueryFilter filter = new DynamoDBQueryFilter();
+    filter.getKeyConditions().put("id", new Condition()
+        .withComparisonOperator(ComparisonOperator.IN).withAttributeValueList(s("a"), s("b")));
+    filter.getKeyConditions().put("ts", new Condition()
+        .withComparisonOperator(ComparisonOperator.EQ).withAttributeValueList(n("1")));
+    assertFalse(filter.isPrimaryKeyLookup());
+
+    filter.setPrimaryKeyConditions(true);
+    assertTrue(filter.isPrimaryKeyLookup());
+    List<Map<String, AttributeValue>> keys = filter.getPrimaryKeys();
+    assertEquals(2, keys.size());
+    assertEquals(s("a"), keys.get(0).get("id"));
+    assertEquals(n("1"), keys.get(0).get("ts"));
+    assertEquals(s("b"), keys.get(1).get("id"));
+
+    filter.getKeyConditions().put("ts", between(n("1"), n("9")));
+    assertFalse(filter.isPrimaryKeyLookup());
+  }
+
+  private static List<Map<String, AttributeValue>> query(DynamoDBQuerySegment segment,
+      List<Map<String, AttributeValue>> items) {
+    List<AttributeValue> bounds = segment.getKeyConditions().get("ts").getAttributeValueList();
+    BigDecimal lower = new BigDecimal(bounds.get(0).getN());
+    BigDecimal upper = new BigDecimal(bounds.get(1).getN());
+    List<Map<String, AttributeValue>> result = new ArrayList<>();
+    for (Map<String, AttributeValue> item : items) {
+      BigDecimal ts = new BigDecimal(item.get("ts").getN());
+      if (ts.compareTo(lower) >= 0 && ts.compareTo(upper) <= 0) {
+        result.add(item);
+      }
+    }
+    return result;
+  }
+
+  private static Condition between(AttributeValue lower, AttributeValue upper) {
+    return new Condition().withComparisonOperator(ComparisonOperator.BETWEEN)
+        .withAttributeValueList(lower, upper);
+  }
+
+  private static AttributeValue n(String value) {
+    return new AttributeValue().withN(value);
+  }
+
+  private static AttributeValue s(String value) {
+    return new AttributeValue().withS(value);
+  }
+}
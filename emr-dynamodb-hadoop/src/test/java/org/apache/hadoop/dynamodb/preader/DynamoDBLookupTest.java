@@ -0,0 +1,222 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.preader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.hadoop.dynamodb.DynamoDBClient;
+import org.apache.hadoop.dynamodb.DynamoDBConstants;
+import org.apache.hadoop.dynamodb.DynamoDBFibonacciRetryer.RetryResult;
+import org.apache.hadoop.dynamodb.preader.DynamoDBLookup.LookupResult;
+import org.apache.hadoop.dynamodb.util.TimeSource;
+import org.apache.hadoop.mapred.Reporter;
+import org.junit.Test;
+
+public class DynamoDBLookupTest {
+
+  private static final String TABLE_NAME = "lookup";
+
+  @Test
+  public void testBatchesKeysAndRetriesUnprocessedKeys() throws IOException {
+    FakeClient client = new FakeClient(1000);
+    client.unprocessedFirstBatch = true;
+    DynamoDBLookup<Integer> lookup = new DynamoDBLookup<>(client, TABLE_NAME, null, null,
+        100000, 1000, 3, new TimeSource());
+
+    int numKeys = 250;
+    for (int i = 0; i < numKeys; i++) {
+      lookup.lookup(key(i), i);
+    }
+    lookup.flush();
+
+    List<LookupResult<Integer>> results = pollAll(lookup);
+    lookup.close();
+
+    assertEquals(numKeys, results.size());
+    for (LookupResult<Integer> result : results) {
+      assertEquals(key(result.getTag()).get("id"), result.getItem().get("id"));
+    }
+    for (int batchSize : client.batchSizes) {
+      assertTrue(batchSize <= DynamoDBConstants.MAX_BATCH_GET_ITEMS);
+    }
+    assertEquals(numKeys, client.keysProcessed.get());
+  }
+
+  @Test
+  public void testCachesItemsAndMissingKeys() throws IOException {
+    FakeClient client = new FakeClient(10);
+    DynamoDBLookup<String> lookup = new DynamoDBLookup<>(client, TABLE_NAME, null, null,
+        100000, 100, 1, new TimeSource());
+
+    lookup.lookup(key(1), "first");
+    lookup.lookup(key(1), "repeated in batch");
+    lookup.lookup(key(20), "missing");
+    lookup.flush();
+    assertEquals(3, pollAll(lookup).size());
+
+    lookup.lookup(key(1), "cached");
+    lookup.lookup(key(20), "cached missing");
+    List<LookupResult<String>> results = pollAll(lookup);
+    lookup.close();
+
+    assertEquals(2, results.size());
+    assertEquals("cached", results.get(0).getTag());
+    assertEquals("1", results.get(0).getItem().get("id").getN());
+    assertNull(results.get(1).getItem());
+    assertEquals(2, client.keysProcessed.get());
+  }
+
+  @Test(timeout = 10000)
+  public void testSharesTheReadOfAKeyInFlight() throws Exception {
+    final CountDownLatch batchStarted = new CountDownLatch(1);
+    final CountDownLatch batchReleased = new CountDownLatch(1);
+    FakeClient client = new FakeClient(1000) {
+      @Override
+      public RetryResult<BatchGetItemResult> batchGetItem(String tableName,
+          List<Map<String, AttributeValue>> keys, Collection<String> attributes,
+          Reporter reporter) {
+        batchStarted.countDown();
+        try {
+          batchReleased.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        return super.batchGetItem(tableName, keys, attributes, reporter);
+      }
+    };
+    DynamoDBLookup<String> lookup = new DynamoDBLookup<>(client, TABLE_NAME, null, null,
+        100000, 1000, 2, new TimeSource());
+
+    // A full batch is submitted right away
+    for (int i = 0; i < DynamoDBConstants.MAX_BATCH_GET_ITEMS; i++) {
+      lookup.lookup(key(i), "batch");
+    }
+    batchStarted.await();
+    lookup.lookup(key(1), "in flight");
+    batchReleased.countDown();
+    lookup.flush();
+    List<LookupResult<String>> results = pollAll(lookup);
+    lookup.close();
+
+    assertEquals(DynamoDBConstants.MAX_BATCH_GET_ITEMS + 1, results.size());
+    assertEquals(Collections.singletonList(DynamoDBConstants.MAX_BATCH_GET_ITEMS),
+        client.batchSizes);
+    for (LookupResult<String> result : results) {
+      if ("in flight".equals(result.getTag())) {
+        assertEquals("1", result.getItem().get("id").getN());
+        return;
+      }
+    }
+    fail("The lookup of the key in flight has no result");
+  }
+
+  @Test
+  public void testMatchesItemsToKeysOutsideOfProjection() throws IOException {
+    FakeClient client = new FakeClient(10);
+    DynamoDBLookup<String> lookup = new DynamoDBLookup<>(client, TABLE_NAME,
+        Collections.singletonList("value"), null, 100000, 100, 1, new TimeSource());
+
+    Map<String, AttributeValue> key = new HashMap<>();
+    key.put("id", new AttributeValue().withN("2.0"));
+    lookup.lookup(key, "decimal key");
+    lookup.flush();
+    List<LookupResult<String>> results = pollAll(lookup);
+    lookup.close();
+
+    assertEquals(1, results.size());
+    assertEquals(Collections.singletonMap("value", new AttributeValue("value-2")),
+        results.get(0).getItem());
+  }
+
+  private static <T> List<LookupResult<T>> pollAll(DynamoDBLookup<T> lookup) throws IOException {
+    List<LookupResult<T>> results = new ArrayList<>();
+    for (LookupResult<T> result = lookup.poll(); result != null; result = lookup.poll()) {
+      results.add(result);
+    }
+    return results;
+  }
+
+  private static Map<String, AttributeValue> key(int id) {
+    return Collections.singletonMap("id", new AttributeValue().withN(String.valueOf(id)));
+  }
+
+  /**
+   * Serves items with ids below a limit, and can leave half of the first batch unprocessed.
+   */
+  private static class FakeClient extends DynamoDBClient {
+    private final int numItems;
+    private final List<Integer> batchSizes = Collections.synchronizedList(
+        new ArrayList<Integer>());
+    private final AtomicInteger keysProcessed = new AtomicInteger();
+    private volatile boolean unprocessedFirstBatch;
+
+    private FakeClient(int numItems) {
+      this.numItems = numItems;
+    }
+
+    @Override
+    public RetryResult<BatchGetItemResult> batchGetItem(String tableName,
+        List<Map<String, AttributeValue>> keys, Collection<String> attributes,
+        Reporter reporter) {
+      batchSizes.add(keys.size());
+      int processed = keys.size();
+      if (unprocessedFirstBatch) {
+        unprocessedFirstBatch = false;
+        processed = keys.size() / 2;
+      }
+
+      List<Map<String, AttributeValue>> items = new ArrayList<>();
+      for (Map<String, AttributeValue> key : keys.subList(0, processed)) {
+        int id = Integer.parseInt(key.get("id").getN());
+        if (id < numItems) {
+          Map<String, AttributeValue> item = new HashMap<>();
+          item.put("id", new AttributeValue().withN(String.valueOf(id)));
+          item.put("value", new AttributeValue("value-" + id));
+          item.put("other", new AttributeValue("other"));
+          if (attributes != null) {
+            item.keySet().retainAll(attributes);
+          }
+          items.add(item);
+        }
+      }
+      keysProcessed.addAndGet(processed);
+
+      Map<String, KeysAndAttributes> unprocessedKeys = new HashMap<>();
+      if (processed < keys.size()) {
+        unprocessedKeys.put(tableName, new KeysAndAttributes().withKeys(
+            new ArrayList<>(keys.subList(processed, keys.size()))));
+      }
+      return new RetryResult<>(new BatchGetItemResult()
+          .withResponses(Collections.singletonMap(tableName, items))
+          .withUnprocessedKeys(unprocessedKeys)
+          .withConsumedCapacity(new ConsumedCapacity().withCapacityUnits(processed * 0.5)), 0);
+    }
+  }
+}
@@ -17,6 +17,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import org.apache.hadoop.dynamodb.DynamoDBConstants;
+import org.apache.hadoop.dynamodb.DynamoDBOperationType;
+import org.apache.hadoop.dynamodb.RetryCoordinator;
 import org.apache.hadoop.dynamodb.util.MockTimeSource;
 import org.junit.Before;
 import org.junit.Test;
@@ -144,4 +146,46 @@ public class RateControllerTest {
     }
     assertEquals(1, ctrl.getAvgItemSize(), 0.01);
   }
+
+  @Test
+  public void setTargetRate() {
+    time.setNanoTime(0);
+    RateController ctrl = new RateController(time, 10, 1, 100.0);
+
+    // Drain the bucket of 10 units
+    double rcu = 0;
+    RateController.RequestLimit lim;
+    while ((lim = ctrl.getNextRequestLimit()) != RateController.RequestLimit.ZERO) {
+      rcu += lim.readCapacityUnits;
+    }
+    assertEquals(10, rcu, 0.01);
+
+    // A second at the new rate refills 100 units
+    ctrl.setTargetRate(100);
+    assertEquals(100, ctrl.getTargetRate(), 0.01);
+    time.advanceByMillis(1000);
+    rcu = 0;
+    while ((lim = ctrl.getNextRequestLimit()) != RateController.RequestLimit.ZERO) {
+      rcu += lim.readCapacityUnits;
+    }
+    assertEquals(100, rcu, 0.01);
+  }
+
+  @Test
+  public void followsRateOfRetryCoordinator() {
+    time.setNanoTime(0);
+    RateController ctrl = new RateController(time, 100, 1, 100.0);
+    RetryCoordinator coordinator = new RetryCoordinator(time);
+    ctrl.setRetryCoordinator(coordinator);
+    coordinator.onThrottle(DynamoDBOperationType.READ);
+
+    // The bucket shrinks to the lowered rate, 0.7 of the target
+    double rcu = 0;
+    RateController.RequestLimit lim;
+    while ((lim = ctrl.getNextRequestLimit()) != RateController.RequestLimit.ZERO) {
+      rcu += lim.readCapacityUnits;
+    }
+    assertEquals(70, rcu, 1);
+    assertEquals(100, ctrl.getTargetRate(), 0.01);
+  }
 }
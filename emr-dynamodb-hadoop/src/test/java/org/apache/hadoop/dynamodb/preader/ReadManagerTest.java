@@ -17,12 +17,14 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import org.apache.hadoop.dynamodb.DynamoDBConstants;
+import org.apache.hadoop.dynamodb.IopsCalculator;
 import org.apache.hadoop.dynamodb.preader.RateController.RequestLimit;
 import org.apache.hadoop.dynamodb.split.DynamoDBSegmentsSplit;
 import org.apache.hadoop.dynamodb.split.DynamoDBSplit;
 import org.apache.hadoop.dynamodb.util.AbstractTimeSource;
 import org.apache.hadoop.dynamodb.util.MockTimeSource;
 import org.junit.Before;
+import org.junit.Test;
 import org.junit.experimental.theories.DataPoints;
 import org.junit.experimental.theories.FromDataPoints;
 import org.junit.experimental.theories.Theories;
@@ -93,6 +95,29 @@ public class ReadManagerTest {
         "itemSize=" + itemSize + ", windowSize=" + windowSize, 0, delta, 0.15);
   }
 
+  @Test
+  public void testTargetRateRefresh() {
+    final int DURATION_SEC = 660; // 11 min, longer than the longest refresh interval
+    final int ADVANCE_BY_MILLIS = 50;
+
+    MockTimeSource time = new MockTimeSource();
+    RateController rateCtr = new RateController(time, 100, 5, 100);
+    MockReadManager mgr = new MockReadManager(rateCtr, time, dummyContext);
+    mgr.setIopsCalculator(new IopsCalculator() {
+      @Override
+      public long calculateTargetIops() {
+        return 200;
+      }
+    });
+
+    while (time.getTimeSinceMs(0) <= DURATION_SEC * 1000) {
+      mgr.tick();
+      time.advanceByMillis(ADVANCE_BY_MILLIS);
+    }
+
+    assertEquals(200, rateCtr.getTargetRate(), 0.01);
+  }
+
   /**
    * Implement a dummy worker, it's states are IDLE, READING, SLEEPING.
    */
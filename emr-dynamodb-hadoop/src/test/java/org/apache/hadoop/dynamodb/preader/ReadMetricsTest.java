@@ -0,0 +1,175 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.preader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.dynamodb.DynamoDBUtil;
+import org.apache.hadoop.dynamodb.PrintCounter;
+import org.apache.hadoop.dynamodb.preader.ReadMetrics.Snapshot;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.mapred.Counters.Counter;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.Reporter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReadMetricsTest {
+
+  private File snapshotDir;
+
+  @Before
+  public void setup() throws IOException {
+    snapshotDir = Files.createTempDirectory("dynamodb-read-metrics").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.fullyDelete(snapshotDir);
+  }
+
+  @Test
+  public void testRecordsPagesAndEvaluations() {
+    ReadMetrics metrics = new ReadMetrics();
+    metrics.recordPage(millis(5), 10, 8, 100, 4000, 0);
+    metrics.recordPage(millis(50), 10, 9.5, 120, 5000, 1);
+    metrics.recordPage(millis(500), 10, 10, 130, 6000, 0);
+    metrics.recordFailedPage(millis(5000));
+    metrics.recordEvaluation(4, 90, 100);
+    metrics.recordEvaluation(2, 100, 100);
+
+    Snapshot snapshot = metrics.getSnapshot();
+    assertEquals(3, snapshot.getPages());
+    assertEquals(1, snapshot.getFailedPages());
+    assertEquals(350, snapshot.getItems());
+    assertEquals(15000, snapshot.getBytes());
+    assertEquals(1, snapshot.getRetries());
+    assertEquals(30, snapshot.getPermittedReadUnits(), 0);
+    assertEquals(27.5, snapshot.getConsumedReadUnits(), 0);
+    assertEquals(5555, snapshot.getPageLatencyMillis());
+    assertEquals(5000, snapshot.getMaxPageLatencyMillis());
+    assertInRange(50, snapshot.getPageLatencyP50Millis());
+    assertInRange(5000, snapshot.getPageLatencyP99Millis());
+    assertEquals(2, snapshot.getWorkers());
+    assertEquals(4, snapshot.getPeakWorkers());
+    assertEquals(100, snapshot.getReadUnitsPerSecond(), 0);
+    assertEquals(100, snapshot.getTargetReadUnitsPerSecond(), 0);
+
+    CountingReporter reporter = new CountingReporter();
+    metrics.reportCounters(reporter);
+    assertEquals(3, reporter.get(PrintCounter.ReadPages));
+    assertEquals(5555, reporter.get(PrintCounter.ReadPageLatencyMillis));
+    assertEquals(30, reporter.get(PrintCounter.ReadCapacityUnitsPermitted));
+    assertEquals(28, reporter.get(PrintCounter.ReadCapacityUnitsConsumed));
+    // Peaks don't add up across tasks, so they are only in the snapshots and the task log
+    for (String counter : reporter.counters.keySet()) {
+      assertFalse(counter, counter.contains("Peak"));
+    }
+  }
+
+  @Test
+  public void testAppendsSnapshotsWithMultiplexerOccupancy() throws IOException {
+    PageResultMultiplexer<Map<String, AttributeValue>> pageMux = new PageResultMultiplexer<>(2,
+        10);
+    pageMux.addPageResults(new PageResults<>(Collections.nCopies(3,
+        Collections.singletonMap("id", new AttributeValue("a"))), null), 300);
+    ReadMetrics metrics = new ReadMetrics();
+    metrics.setPageResultMultiplexer(pageMux);
+    metrics.recordPage(millis(20), 5, 5, 3, 300, 0);
+
+    File snapshotFile = new File(snapshotDir, "metrics.json");
+    metrics.startSnapshots(snapshotFile.toPath(), TimeUnit.HOURS.toMillis(1));
+    // Closing writes a last snapshot
+    metrics.close();
+    metrics.close();
+
+    List<String> lines = Files.readAllLines(snapshotFile.toPath(), StandardCharsets.UTF_8);
+    assertEquals(1, lines.size());
+    Snapshot snapshot = DynamoDBUtil.getGson().fromJson(lines.get(0), Snapshot.class);
+    assertEquals(1, snapshot.getPages());
+    assertEquals(1, snapshot.getBufferedPages());
+    assertEquals(300, snapshot.getBufferedBytes());
+    assertEquals(1, snapshot.getPeakBufferedPages());
+    assertEquals(300, snapshot.getPeakBufferedBytes());
+  }
+
+  private static void assertInRange(long expected, long actual) {
+    assertTrue(actual + " not within a quarter of " + expected,
+        actual >= expected * 0.75 && actual <= expected * 1.25);
+  }
+
+  private static long millis(long millis) {
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+
+  private static final class CountingReporter implements Reporter {
+    private final Map<String, Long> counters = new HashMap<>();
+
+    private long get(PrintCounter counter) {
+      Long value = counters.get(counter.getGroup() + "." + counter.getName());
+      return value == null ? 0 : value;
+    }
+
+    @Override
+    public void incrCounter(String group, String counter, long amount) {
+      String name = group + "." + counter;
+      counters.put(name, (counters.containsKey(name) ? counters.get(name) : 0) + amount);
+    }
+
+    @Override
+    public void incrCounter(Enum<?> key, long amount) {
+    }
+
+    @Override
+    public void progress() {
+    }
+
+    @Override
+    public void setStatus(String status) {
+    }
+
+    @Override
+    public InputSplit getInputSplit() {
+      return null;
+    }
+
+    @Override
+    public Counter getCounter(String group, String name) {
+      return null;
+    }
+
+    @Override
+    public Counter getCounter(Enum<?> name) {
+      return null;
+    }
+
+    @Override
+    public float getProgress() {
+      return 0;
+    }
+  }
+}
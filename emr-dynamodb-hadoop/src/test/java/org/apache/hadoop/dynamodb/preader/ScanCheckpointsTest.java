@@ -0,0 +1,133 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.preader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.dynamodb.DynamoDBConstants;
+import org.apache.hadoop.dynamodb.preader.ScanCheckpoints.SegmentCheckpoint;
+import org.apache.hadoop.dynamodb.split.DynamoDBSegmentsSplit;
+import org.apache.hadoop.dynamodb.split.DynamoDBSplit;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.JobConf;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+public class ScanCheckpointsTest {
+
+  private File checkpointDir;
+  private FileSystem fs;
+
+  @Before
+  public void setup() throws IOException {
+    checkpointDir = Files.createTempDirectory("dynamodb-checkpoints").toFile();
+    fs = FileSystem.getLocal(new Configuration());
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.fullyDelete(checkpointDir);
+  }
+
+  @Test
+  public void testSavesConsumedPages() throws IOException {
+    ScanCheckpoints checkpoints = createCheckpoints();
+    assertNull(checkpoints.resume(3));
+    PageResults<Map<String, AttributeValue>> firstPage = createPage(2, "b");
+    PageResults<Map<String, AttributeValue>> secondPage = createPage(1, "c");
+    checkpoints.pageAdded(3, firstPage);
+    checkpoints.pageAdded(3, secondPage);
+
+    // The second page was consumed first, but the first page's items must not be skipped
+    checkpoints.pageReturned(secondPage);
+    checkpoints.save();
+    assertNull(createCheckpoints().resume(3));
+
+    checkpoints.pageReturned(firstPage);
+    checkpoints.save();
+    SegmentCheckpoint checkpoint = createCheckpoints().resume(3);
+    assertEquals(createKey("c"), checkpoint.getLastEvaluatedKey());
+    assertEquals(3, checkpoint.getItemsConsumed());
+    assertFalse(checkpoint.isComplete());
+  }
+
+  @Test
+  public void testNotUsedBySpeculativeMapTasks() {
+    JobConf conf = new JobConf();
+    conf.setBoolean(DynamoDBConstants.SCAN_CHECKPOINTING, true);
+    conf.set(DynamoDBConstants.SCAN_CHECKPOINT_DIR, checkpointDir.getAbsolutePath());
+    conf.set(DynamoDBConstants.INPUT_TABLE_NAME, "table");
+    conf.set("mapreduce.job.id", "job_1_0001");
+    conf.set("mapreduce.task.attempt.id", "attempt_1_0001_m_000001_0");
+    DynamoDBSplit split = new DynamoDBSegmentsSplit(null, 0, 0, Arrays.asList(0), 4, null);
+
+    conf.setMapSpeculativeExecution(true);
+    assertNull(ScanCheckpoints.create(conf, split));
+    conf.setMapSpeculativeExecution(false);
+    ScanCheckpoints checkpoints = ScanCheckpoints.create(conf, split);
+    assertNotNull(checkpoints);
+    checkpoints.close();
+  }
+
+  @Test
+  public void testResumesFromSavedProgress() throws IOException {
+    ScanCheckpoints firstAttempt = createCheckpoints();
+    firstAttempt.resume(0);
+    PageResults<Map<String, AttributeValue>> page = createPage(5, "a");
+    firstAttempt.pageAdded(0, page);
+    firstAttempt.pageReturned(page);
+    firstAttempt.save();
+
+    ScanCheckpoints secondAttempt = createCheckpoints();
+    assertEquals(createKey("a"), secondAttempt.resume(0).getLastEvaluatedKey());
+    PageResults<Map<String, AttributeValue>> lastPage = createPage(2, null);
+    secondAttempt.pageAdded(0, lastPage);
+    secondAttempt.pageReturned(lastPage);
+    secondAttempt.save();
+
+    SegmentCheckpoint checkpoint = createCheckpoints().resume(0);
+    assertTrue(checkpoint.isComplete());
+    assertEquals(7, checkpoint.getItemsConsumed());
+  }
+
+  private ScanCheckpoints createCheckpoints() throws IOException {
+    return new ScanCheckpoints(fs, new Path(checkpointDir.getAbsolutePath()));
+  }
+
+  private static PageResults<Map<String, AttributeValue>> createPage(int items,
+      String lastKey) {
+    return new PageResults<>(Collections.nCopies(items, createKey("item")),
+        lastKey == null ? null : createKey(lastKey));
+  }
+
+  private static Map<String, AttributeValue> createKey(String id) {
+    return Collections.singletonMap("id", new AttributeValue(id));
+  }
+}
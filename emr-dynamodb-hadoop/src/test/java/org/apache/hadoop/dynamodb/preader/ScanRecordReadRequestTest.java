@@ -23,6 +23,7 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -54,6 +55,7 @@ public final class ScanRecordReadRequestTest {
     when(client.scanTable(
         anyString(),
         any(DynamoDBQueryFilter.class),
+        any(Collection.class),
         anyInt(),
         anyInt(),
         any(Map.class),
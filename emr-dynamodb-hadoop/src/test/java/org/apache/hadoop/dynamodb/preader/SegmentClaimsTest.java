@@ -0,0 +1,116 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.preader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class SegmentClaimsTest {
+
+  private File claimDir;
+  private FileSystem fs;
+
+  @Before
+  public void setup() throws IOException {
+    claimDir = Files.createTempDirectory("dynamodb-claims").toFile();
+    fs = FileSystem.getLocal(new Configuration());
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.fullyDelete(claimDir);
+  }
+
+  @Test
+  public void testClaimsHomeSegmentsFirst() throws IOException {
+    SegmentClaims claims = createClaims("task_1", 4, 1, 3);
+
+    assertEquals(new HashSet<>(Arrays.asList(1, 3)), claimSegments(claims, 2));
+  }
+
+  @Test
+  public void testIdleTaskTakesOverUnclaimedSegments() throws IOException {
+    SegmentClaims busy = createClaims("task_1", 4, 0, 1, 2);
+    SegmentClaims idle = createClaims("task_2", 4, 3);
+    int started = busy.claimNext();
+
+    // The other two segments haven't been started by their own task
+    Set<Integer> expected = new HashSet<>(Arrays.asList(0, 1, 2, 3));
+    expected.remove(started);
+    assertEquals(expected, claimSegments(idle, 3));
+    assertNull(idle.claimNext());
+    assertNull(busy.claimNext());
+  }
+
+  @Test
+  public void testNewAttemptReclaimsSegments() throws IOException {
+    SegmentClaims firstAttempt = createClaims("task_1", 4, 0);
+    assertEquals(0, (int) firstAttempt.claimNext());
+    assertEquals(Collections.singleton(1), claimSegments(createClaims("task_2", 4, 1), 1));
+    int stolen = firstAttempt.claimNext();
+
+    SegmentClaims secondAttempt = createClaims("task_1", 4, 0);
+
+    assertEquals(new HashSet<>(Arrays.asList(0, stolen)), claimSegments(secondAttempt, 2));
+  }
+
+  @Test
+  public void testAttemptsOfATaskShareItsClaims() throws IOException {
+    SegmentClaims firstAttempt = createClaims("task_1", 2, 0);
+    SegmentClaims secondAttempt = createClaims("task_1", 2, 0);
+
+    assertEquals(0, (int) firstAttempt.claimNext());
+    assertEquals(0, (int) secondAttempt.claimNext());
+    // Taken over from the other task by the first attempt
+    assertEquals(1, (int) firstAttempt.claimNext());
+    assertEquals(1, (int) secondAttempt.claimNext());
+    assertNull(firstAttempt.claimNext());
+    assertNull(secondAttempt.claimNext());
+    assertNull(createClaims("task_2", 2, 1).claimNext());
+
+    // The claims of the task survive both attempts
+    SegmentClaims thirdAttempt = createClaims("task_1", 2, 0);
+    assertEquals(new HashSet<>(Arrays.asList(0, 1)), claimSegments(thirdAttempt, 2));
+  }
+
+  private SegmentClaims createClaims(String taskId, int totalSegments, Integer... homeSegments)
+      throws IOException {
+    return new SegmentClaims(fs, new Path(claimDir.getAbsolutePath()), taskId,
+        Arrays.asList(homeSegments), totalSegments);
+  }
+
+  private static Set<Integer> claimSegments(SegmentClaims claims, int count) {
+    Set<Integer> segments = new HashSet<>();
+    for (int i = 0; i < count; i++) {
+      segments.add(claims.claimNext());
+    }
+    return segments;
+  }
+}
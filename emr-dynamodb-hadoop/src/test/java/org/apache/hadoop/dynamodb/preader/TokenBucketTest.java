@@ -57,4 +57,54 @@ public class TokenBucketTest {
     assertEquals(CAPACITY, tokens, EPSILON);
   }
 
+  @Test
+  public void testMillisUntilAvailable() {
+    final double RATE = 10.0;
+    final double CAPACITY = RATE * 3;
+
+    MockTimeSource time = new MockTimeSource();
+    TokenBucket bucket = new TokenBucket(RATE, CAPACITY, time);
+    assertEquals(0, bucket.getMillisUntilAvailable(MIN));
+
+    // One token refills every 100 ms
+    bucket.acquire(CAPACITY, Double.MAX_VALUE);
+    assertEquals(100, bucket.getMillisUntilAvailable(MIN));
+
+    time.advanceByMillis(60);
+    assertEquals(40, bucket.getMillisUntilAvailable(MIN));
+
+    time.advanceByMillis(40);
+    assertEquals(0, bucket.getMillisUntilAvailable(MIN));
+    assertEquals(MIN, bucket.acquire(MIN, Double.MAX_VALUE), EPSILON);
+  }
+
+  @Test
+  public void testSetRate() {
+    MockTimeSource time = new MockTimeSource();
+    TokenBucket bucket = new TokenBucket(10.0, 30.0, time);
+
+    // Shrinking the capacity drops the tokens above it
+    bucket.setRate(5.0, 5.0);
+    assertEquals(5.0, bucket.acquire(MIN, Double.MAX_VALUE), EPSILON);
+
+    // Refills at the new rate
+    time.advanceByMillis(200);
+    assertEquals(1.0, bucket.acquire(MIN, Double.MAX_VALUE), EPSILON);
+  }
+
+  @Test
+  public void testRefillsWhenAcquiredMoreOftenThanEveryMillisecond() {
+    MockTimeSource time = new MockTimeSource();
+    time.setNanoTime(0);
+    TokenBucket bucket = new TokenBucket(1000.0, 10.0, time);
+    bucket.forceUpdate(-10.0);
+
+    // Tokens refilled by the nanosecond aren't lost by acquiring again within the millisecond
+    for (int i = 1; i <= 10; i++) {
+      time.setNanoTime(i * 300 * 1000);
+      bucket.getMillisUntilAvailable(MIN);
+    }
+    assertEquals(3.0, bucket.forceUpdate(0), EPSILON);
+  }
+
 }
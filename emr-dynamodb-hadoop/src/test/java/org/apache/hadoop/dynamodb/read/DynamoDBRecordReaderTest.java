@@ -15,13 +15,21 @@ package org.apache.hadoop.dynamodb.read;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
 import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
 import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
 import com.amazonaws.services.dynamodbv2.model.ScanResult;
 import com.amazonaws.services.dynamodbv2.model.TableDescription;
 
@@ -29,8 +37,10 @@ import org.apache.hadoop.dynamodb.DynamoDBClient;
 import org.apache.hadoop.dynamodb.DynamoDBConstants;
 import org.apache.hadoop.dynamodb.DynamoDBFibonacciRetryer.RetryResult;
 import org.apache.hadoop.dynamodb.DynamoDBItemWritable;
+import org.apache.hadoop.dynamodb.filter.DynamoDBIndexInfo;
 import org.apache.hadoop.dynamodb.filter.DynamoDBQueryFilter;
 import org.apache.hadoop.dynamodb.preader.DynamoDBRecordReaderContext;
+import org.apache.hadoop.dynamodb.preader.ReadMetrics;
 import org.apache.hadoop.dynamodb.split.DynamoDBSegmentsSplit;
 import org.apache.hadoop.dynamodb.split.DynamoDBSplit;
 import org.apache.hadoop.mapred.Counters.Counter;
@@ -42,9 +52,12 @@ import org.junit.Test;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class DynamoDBRecordReaderTest {
 
@@ -71,8 +84,9 @@ public class DynamoDBRecordReaderTest {
 
       @Override
       public RetryResult<ScanResult> scanTable(String tableName, DynamoDBQueryFilter
-          dynamoDBQueryFilter, Integer segment, Integer totalSegments, Map<String,
-          AttributeValue> exclusiveStartKey, long limit, Reporter reporter) {
+          dynamoDBQueryFilter, Collection<String> attributes, Integer segment, Integer
+          totalSegments, Map<String, AttributeValue> exclusiveStartKey, long limit,
+          Reporter reporter) {
 
         List<Map<String, AttributeValue>> items = getItems();
         if (i == 0) {
@@ -134,8 +148,9 @@ public class DynamoDBRecordReaderTest {
 
       @Override
       public RetryResult<ScanResult> scanTable(String tableName, DynamoDBQueryFilter
-          dynamoDBQueryFilter, Integer segment, Integer totalSegments, Map<String,
-          AttributeValue> exclusiveStartKey, long limit, Reporter reporter) {
+          dynamoDBQueryFilter, Collection<String> attributes, Integer segment, Integer
+          totalSegments, Map<String, AttributeValue> exclusiveStartKey, long limit,
+          Reporter reporter) {
         return new RetryResult<>(getHashNumberRangeKeyItems(HASH_KEYS, "S"), 0);
       }
     });
@@ -176,8 +191,9 @@ public class DynamoDBRecordReaderTest {
 
       @Override
       public RetryResult<ScanResult> scanTable(String tableName, DynamoDBQueryFilter
-          dynamoDBQueryFilter, Integer segment, Integer totalSegments, Map<String,
-          AttributeValue> exclusiveStartKey, long limit, Reporter reporter) {
+          dynamoDBQueryFilter, Collection<String> attributes, Integer segment, Integer
+          totalSegments, Map<String, AttributeValue> exclusiveStartKey, long limit,
+          Reporter reporter) {
         assertNull(exclusiveStartKey);
         return new RetryResult<>(getHashNumberRangeKeyItems(HASH_KEYS, "S"), 0);
       }
@@ -218,8 +234,9 @@ public class DynamoDBRecordReaderTest {
 
       @Override
       public RetryResult<ScanResult> scanTable(String tableName, DynamoDBQueryFilter
-          dynamoDBQueryFilter, Integer segment, Integer totalSegments, Map<String,
-          AttributeValue> exclusiveStartKey, long limit, Reporter reporter) {
+          dynamoDBQueryFilter, Collection<String> attributes, Integer segment, Integer
+          totalSegments, Map<String, AttributeValue> exclusiveStartKey, long limit,
+          Reporter reporter) {
         assertEquals(0, (int) segment);
         assertEquals(4, (int) totalSegments);
         return new RetryResult<>(getHashKeyItems(HASH_KEYS), 0);
@@ -243,6 +260,91 @@ public class DynamoDBRecordReaderTest {
     }
   }
 
+  @Test
+  public void testPrimaryKeyLookupReadsKeysInBatches() throws IOException {
+    int numKeys = 150;
+    List<AttributeValue> hashKeys = new ArrayList<>();
+    List<Integer> segments = new ArrayList<>();
+    for (int i = 0; i < numKeys; i++) {
+      hashKeys.add(new AttributeValue().withN(String.valueOf(i)));
+      segments.add(i);
+    }
+    DynamoDBQueryFilter filter = new DynamoDBQueryFilter();
+    filter.getKeyConditions().put(HASH_KEY, new Condition()
+        .withComparisonOperator(ComparisonOperator.IN).withAttributeValueList(hashKeys));
+    filter.setPrimaryKeyConditions(true);
+    DynamoDBSplit split = new DynamoDBSegmentsSplit(null, 0, 0, segments, numKeys, filter);
+
+    final List<Integer> batchSizes = new ArrayList<>();
+    DynamoDBRecordReaderContext context = buildContext();
+    context.setSplit(split);
+    context.setClient(new DynamoDBClient() {
+      boolean throttled = false;
+
+      @Override
+      public TableDescription describeTable(String tableName) {
+        return getTableDescription("N", null);
+      }
+
+      @Override
+      public RetryResult<QueryResult> queryTable(String tableName,
+          Map<String, Condition> keyConditions, DynamoDBIndexInfo index,
+          Collection<String> attributes, Map<String, AttributeValue> exclusiveStartKey,
+          long limit, Reporter reporter) {
+        fail("Keys should not be queried");
+        return null;
+      }
+
+      @Override
+      public RetryResult<GetItemResult> getItem(String tableName,
+          Map<String, AttributeValue> key, Collection<String> attributes, Reporter reporter) {
+        batchSizes.add(1);
+        return new RetryResult<>(new GetItemResult().withItem(key)
+            .withConsumedCapacity(new ConsumedCapacity().withCapacityUnits(0.5)), 0);
+      }
+
+      @Override
+      public RetryResult<BatchGetItemResult> batchGetItem(String tableName,
+          List<Map<String, AttributeValue>> keys, Collection<String> attributes,
+          Reporter reporter) {
+        batchSizes.add(keys.size());
+        // The first batch only reads half of its keys
+        int processed = throttled ? keys.size() : keys.size() / 2;
+        throttled = true;
+        Map<String, List<Map<String, AttributeValue>>> responses = new HashMap<>();
+        responses.put(tableName, new ArrayList<>(keys.subList(0, processed)));
+        Map<String, KeysAndAttributes> unprocessedKeys = new HashMap<>();
+        if (processed < keys.size()) {
+          unprocessedKeys.put(tableName, new KeysAndAttributes()
+              .withKeys(keys.subList(processed, keys.size())));
+        }
+        return new RetryResult<>(new BatchGetItemResult().withResponses(responses)
+            .withUnprocessedKeys(unprocessedKeys).withConsumedCapacity(new ConsumedCapacity()
+                .withCapacityUnits(processed * 0.5)), 0);
+      }
+    });
+
+    DefaultDynamoDBRecordReader reader = new DefaultDynamoDBRecordReader(context);
+
+    Set<String> hashKeysRead = new HashSet<>();
+    DynamoDBItemWritable value = reader.createValue();
+    while (reader.next(reader.createKey(), value)) {
+      assertTrue(hashKeysRead.add(getHashKeyValue(value, "N")));
+    }
+    reader.close();
+
+    assertEquals(numKeys, hashKeysRead.size());
+    for (int batchSize : batchSizes) {
+      assertTrue(batchSize <= DynamoDBConstants.MAX_BATCH_GET_ITEMS);
+    }
+
+    // Every call is recorded in the read metrics
+    ReadMetrics.Snapshot metrics = context.getReadMetrics().getSnapshot();
+    assertEquals(batchSizes.size(), metrics.getPages());
+    assertEquals(numKeys, metrics.getItems());
+    assertEquals(numKeys * 0.5, metrics.getConsumedReadUnits(), 0.001);
+  }
+
   @Test(expected = IOException.class, timeout = 10000)
   public void testExceptionInDbClient() throws IOException {
     DynamoDBSplit split = new DynamoDBSegmentsSplit(null, 0, 0, Arrays.asList(0), 4, new
@@ -257,8 +359,9 @@ public class DynamoDBRecordReaderTest {
 
       @Override
       public RetryResult<ScanResult> scanTable(String tableName, DynamoDBQueryFilter
-          dynamoDBQueryFilter, Integer segment, Integer totalSegments, Map<String,
-          AttributeValue> exclusiveStartKey, long limit, Reporter reporter) {
+          dynamoDBQueryFilter, Collection<String> attributes, Integer segment, Integer
+          totalSegments, Map<String, AttributeValue> exclusiveStartKey, long limit,
+          Reporter reporter) {
         throw new RuntimeException("Unrecoverable Exception");
       }
     });
@@ -45,6 +45,35 @@ public class PageResultMultiplexerTest {
     Assert.assertArrayEquals(expectedOrder, muxToList(mux).toArray());
   }
 
+  /*
+   * A page is returned once the consumer asks for the item after its last item
+   */
+  @Test(timeout = 2000)
+  public void testPageReturnListener() throws Exception {
+    PageResultMultiplexer<Integer> mux = new PageResultMultiplexer<>(2, DEFAULT_CAPACITY);
+    final List<PageResults<Integer>> returnedPages = new ArrayList<>();
+    mux.setPageReturnListener(new PageResultMultiplexer.PageReturnListener<Integer>() {
+      @Override
+      public void pageReturned(PageResults<Integer> page) {
+        returnedPages.add(page);
+      }
+    });
+
+    PageResults<Integer> shortPage = new PageResults<>(Arrays.asList(1), null);
+    PageResults<Integer> longPage = new PageResults<>(Arrays.asList(2, 2), null);
+    mux.addPageResults(shortPage);
+    mux.addPageResults(longPage);
+    mux.setDraining(true);
+
+    Assert.assertEquals(1, (int) mux.next());
+    Assert.assertTrue(returnedPages.isEmpty());
+    Assert.assertEquals(2, (int) mux.next());
+    Assert.assertEquals(Arrays.asList(shortPage), returnedPages);
+    Assert.assertEquals(2, (int) mux.next());
+    Assert.assertNull(mux.next());
+    Assert.assertEquals(Arrays.asList(shortPage, longPage), returnedPages);
+  }
+
   /*
    * Multiplex over pages of different sizes
    */
@@ -189,6 +218,115 @@ public class PageResultMultiplexerTest {
     // success if not timing out
   }
 
+  /*
+   * Test that items batched by one consumer are never handed out to another.
+   */
+  @Test(timeout = 10000)
+  public void testEveryItemIsReturnedOnceAcrossConsumers() throws InterruptedException {
+    final int BATCH_SIZE = 4;
+    final int CAPACITY = 8;
+    final int PRODUCERS = 4;
+    final int PAGES_PER_PRODUCER = 500;
+
+    PageResultMultiplexer<Integer> mux = new PageResultMultiplexer<>(BATCH_SIZE, CAPACITY);
+    List<MuxConsumer> consumers = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      MuxConsumer consumer = new MuxConsumer(mux);
+      consumer.start();
+      consumers.add(consumer);
+    }
+    List<MuxProducer> producers = new ArrayList<>();
+    for (int i = 0; i < PRODUCERS; i++) {
+      MuxProducer producer = new MuxProducer(mux, PAGES_PER_PRODUCER);
+      producer.start();
+      producers.add(producer);
+    }
+    for (MuxProducer producer : producers) {
+      producer.jobFinishLatch.await();
+    }
+    mux.setDraining(true);
+
+    int[] counts = new int[PAGES_PER_PRODUCER];
+    for (MuxConsumer consumer : consumers) {
+      consumer.jobFinishLatch.await();
+      for (Integer n : consumer.out) {
+        counts[n]++;
+      }
+    }
+    for (int count : counts) {
+      Assert.assertEquals(PRODUCERS, count);
+    }
+  }
+
+  /*
+   * Test that a failed page is surfaced to the consumer.
+   */
+  @Test(timeout = 2000, expected = IOException.class)
+  public void testFailedPage() throws IOException {
+    PageResultMultiplexer<Integer> mux = new PageResultMultiplexer<>(1, DEFAULT_CAPACITY);
+    mux.addPageResults(new PageResults<Integer>(new RuntimeException("Scan failed")));
+
+    mux.next();
+  }
+
+  /*
+   * Test that a page is admitted into an empty mux even if it is larger than the byte budget.
+   */
+  @Test(timeout = 2000)
+  public void testOversizedPageIsAdmittedIntoEmptyMux() throws IOException {
+    PageResultMultiplexer<Integer> mux = new PageResultMultiplexer<>(1, DEFAULT_CAPACITY, 10);
+
+    Assert.assertTrue(mux.addPageResults(new PageResults<>(Arrays.asList(1, 2), null), 100));
+    Assert.assertEquals(100, mux.getPeakBytes());
+    Assert.assertEquals(Integer.valueOf(1), mux.next());
+  }
+
+  /*
+   * Test that producers block on the byte budget and that a consumer doesn't wait for a full batch
+   * while they do.
+   */
+  @Test(timeout = 2000)
+  public void testByteBudget() throws InterruptedException, IOException {
+    final int BATCH_SIZE = 10;
+    final PageResultMultiplexer<Integer> mux =
+        new PageResultMultiplexer<>(BATCH_SIZE, DEFAULT_CAPACITY, 100);
+    mux.addPageResults(new PageResults<>(Arrays.asList(1), null), 60);
+
+    final CountDownLatch added = new CountDownLatch(1);
+    Thread producer = new Thread() {
+      @Override
+      public void run() {
+        mux.addPageResults(new PageResults<>(Arrays.asList(2), null), 60);
+        added.countDown();
+      }
+    };
+    producer.start();
+
+    // Neither page fills a batch, but consuming the first one makes room for the second
+    Assert.assertEquals(Integer.valueOf(1), mux.next());
+    added.await();
+    mux.setDraining(true);
+    Assert.assertEquals(Integer.valueOf(2), mux.next());
+    Assert.assertNull(mux.next());
+    Assert.assertEquals(60, mux.getPeakBytes());
+    Assert.assertEquals(1, mux.getPeakPages());
+  }
+
+  /*
+   * Test that a multiplexer with a byte budget hands out the buffered pages when a batch doesn't
+   * fill in time.
+   */
+  @Test(timeout = 2000)
+  public void testAdaptiveBatchWait() throws IOException {
+    PageResultMultiplexer<Integer> mux =
+        new PageResultMultiplexer<>(50, DEFAULT_CAPACITY, Long.MAX_VALUE);
+    mux.addPageResults(new PageResults<>(Arrays.asList(1, 1), null), 1);
+    mux.addPageResults(new PageResults<>(Arrays.asList(2), null), 1);
+
+    Assert.assertEquals(Integer.valueOf(1), mux.next());
+    Assert.assertEquals(Integer.valueOf(2), mux.next());
+  }
+
   /**
    * Helper function, fully consume multiplexer output into a list (blocking).
    */
@@ -69,4 +69,20 @@ public class ReadIopsCalculatorTest {
     assertEquals(expectedReadIops, readIops);
   }
 
+  @Test
+  public void testCalculateTargetIopsFollowsTableThroughput() {
+    ((JobConf) jobClient.getConf()).set(DynamoDBConstants.READ_THROUGHPUT, "1000");
+    long readIops = readIopsCalculator.calculateTargetIops();
+    assertEquals((long) (1000 * THROUGHPUT_READ_PERCENT * LOCAL_SEGMENTS / TOTAL_SEGMETNS),
+        readIops);
+
+    // The table's throughput doubles, so does the configured throughput
+    when(dynamoDBClient.describeTable(TABLE_NAME)).thenReturn(new TableDescription()
+        .withProvisionedThroughput(new ProvisionedThroughputDescription()
+            .withReadCapacityUnits(READ_CAPACITY_UNITS * 2)));
+    readIops = readIopsCalculator.calculateTargetIops();
+    assertEquals((long) (2000 * THROUGHPUT_READ_PERCENT * LOCAL_SEGMENTS / TOTAL_SEGMETNS),
+        readIops);
+  }
+
 }
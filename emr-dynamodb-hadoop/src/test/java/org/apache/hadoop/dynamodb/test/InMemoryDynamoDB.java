@@ -0,0 +1,856 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.BillingMode;
+import com.amazonaws.services.dynamodbv2.model.BillingModeSummary;
+import com.amazonaws.services.dynamodbv2.model.Capacity;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.TableStatus;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.UnsignedBytes;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * In-process stand-in for DynamoDB, for end-to-end tests of the read and write pipelines.
+ *
+ * <p>Tables live in a static registry so that every client created by a job running in the
+ * {@code LocalJobRunner} sees the same data. Jobs pick this client up through
+ * {@link org.apache.hadoop.dynamodb.DynamoDBConstants#CUSTOM_CLIENT_CONF}. The fake models the
+ * parts of DynamoDB the connector depends on: parallel scan segments over the hash of the
+ * partition key, pages capped by Limit and by 1MB with a LastEvaluatedKey, UnprocessedItems from
+ * BatchWriteItem and provisioned throughput with a one second burst. A request against exhausted
+ * capacity fails with a ProvisionedThroughputExceededException, and every request can be delayed
+ * to simulate the service latency.
+ */
+public class InMemoryDynamoDB extends AbstractAmazonDynamoDB {
+
+  private static final ConcurrentMap<String, Table> tables = new ConcurrentHashMap<>();
+
+  private static final int MAX_PAGE_BYTES = 1024 * 1024;
+  private static final int MAX_BATCH_WRITE_ITEMS = 25;
+  private static final int READ_UNIT_BYTES = 4096;
+  private static final int WRITE_UNIT_BYTES = 1024;
+  private static final long HASH_SPACE = 1L << 32;
+
+  /**
+   * Creates a table, replacing any table with the same name.
+   *
+   * @param readCapacityUnits read capacity per second, or 0 for an on-demand table
+   * @param writeCapacityUnits write capacity per second, or 0 for an on-demand table
+   */
+  public static Table createTable(String tableName, String hashKeyName,
+      ScalarAttributeType hashKeyType, String rangeKeyName, ScalarAttributeType rangeKeyType,
+      long readCapacityUnits, long writeCapacityUnits) {
+    Table table = new Table(tableName, hashKeyName, hashKeyType, rangeKeyName, rangeKeyType,
+        readCapacityUnits, writeCapacityUnits);
+    tables.put(tableName, table);
+    return table;
+  }
+
+  public static Table createTable(String tableName, String hashKeyName,
+      ScalarAttributeType hashKeyType, long readCapacityUnits, long writeCapacityUnits) {
+    return createTable(tableName, hashKeyName, hashKeyType, null, null, readCapacityUnits,
+        writeCapacityUnits);
+  }
+
+  public static Table getTable(String tableName) {
+    Table table = tables.get(tableName);
+    if (table == null) {
+      ResourceNotFoundException e = new ResourceNotFoundException("Requested resource not found: "
+          + "Table: " + tableName + " not found");
+      e.setErrorCode("ResourceNotFoundException");
+      e.setStatusCode(400);
+      throw e;
+    }
+    return table;
+  }
+
+  /**
+   * Drops every table.
+   */
+  public static void reset() {
+    tables.clear();
+  }
+
+  @Override
+  public void setEndpoint(String endpoint) {
+    // Nothing to connect to
+  }
+
+  @Override
+  public void shutdown() {
+    // Tables outlive the clients, see reset()
+  }
+
+  @Override
+  public DescribeTableResult describeTable(DescribeTableRequest request) {
+    Table table = getTable(request.getTableName());
+    table.delay();
+    return new DescribeTableResult().withTable(table.describe());
+  }
+
+  @Override
+  public ScanResult scan(ScanRequest request) {
+    Table table = getTable(request.getTableName());
+    table.delay();
+    table.checkCapacity(table.readCapacity);
+
+    long lowerHash = 0;
+    long upperHash = HASH_SPACE;
+    if (request.getTotalSegments() != null) {
+      int segment = request.getSegment();
+      int totalSegments = request.getTotalSegments();
+      if (segment < 0 || segment >= totalSegments) {
+        throw validationError("Segment " + segment + " is out of range for " + totalSegments
+            + " total segments");
+      }
+      lowerHash = HASH_SPACE * segment / totalSegments;
+      upperHash = HASH_SPACE * (segment + 1) / totalSegments;
+    }
+
+    NavigableMap<StoredKey, Map<String, AttributeValue>> range = table.items.subMap(
+        new StoredKey(lowerHash, ""), true, new StoredKey(upperHash, ""), false);
+    if (request.getExclusiveStartKey() != null) {
+      range = range.tailMap(table.toStoredKey(request.getExclusiveStartKey()), false);
+    }
+
+    Page page = readPage(table, range.values().iterator(), request.getLimit(),
+        request.getScanFilter(), getProjection(request.getProjectionExpression(),
+            request.getExpressionAttributeNames(), request.getAttributesToGet()));
+    double units = table.consumeRead(page, Boolean.TRUE.equals(request.getConsistentRead()));
+
+    return new ScanResult()
+        .withItems(page.items)
+        .withCount(page.items.size())
+        .withScannedCount(page.scannedCount)
+        .withLastEvaluatedKey(page.lastEvaluatedKey)
+        .withConsumedCapacity(getConsumedCapacity(table, units,
+            request.getReturnConsumedCapacity()));
+  }
+
+  @Override
+  public QueryResult query(QueryRequest request) {
+    Table table = getTable(request.getTableName());
+    table.delay();
+    if (request.getIndexName() != null) {
+      throw new UnsupportedOperationException("Queries on indexes are not supported");
+    }
+    table.checkCapacity(table.readCapacity);
+
+    Map<String, Condition> keyConditions = request.getKeyConditions();
+    Condition hashCondition = keyConditions == null ? null : keyConditions.get(table.hashKeyName);
+    if (hashCondition == null || !ComparisonOperator.EQ.toString().equals(
+        hashCondition.getComparisonOperator())) {
+      throw validationError("Query condition missed key schema element: " + table.hashKeyName);
+    }
+    Condition rangeCondition = table.rangeKeyName == null ? null
+        : keyConditions.get(table.rangeKeyName);
+
+    AttributeValue hashKey = hashCondition.getAttributeValueList().get(0);
+    List<Map<String, AttributeValue>> partition = new ArrayList<>();
+    for (Map<String, AttributeValue> item : table.items.subMap(
+        new StoredKey(table.hash(hashKey), ""), true,
+        new StoredKey(table.hash(hashKey) + 1, ""), false).values()) {
+      if (hashKey.equals(item.get(table.hashKeyName))
+          && (rangeCondition == null || matches(item.get(table.rangeKeyName), rangeCondition))) {
+        partition.add(item);
+      }
+    }
+    if (table.rangeKeyName != null) {
+      Comparator<Map<String, AttributeValue>> order = (a, b) ->
+          compare(a.get(table.rangeKeyName), b.get(table.rangeKeyName));
+      Collections.sort(partition, Boolean.FALSE.equals(request.getScanIndexForward())
+          ? order.reversed() : order);
+    }
+
+    Iterator<Map<String, AttributeValue>> items = partition.iterator();
+    if (request.getExclusiveStartKey() != null) {
+      StoredKey startKey = table.toStoredKey(request.getExclusiveStartKey());
+      while (items.hasNext() && !table.toStoredKey(items.next()).equals(startKey)) {
+        // Skip up to and including the last item of the previous page
+      }
+    }
+
+    Page page = readPage(table, items, request.getLimit(), request.getQueryFilter(),
+        getProjection(request.getProjectionExpression(), request.getExpressionAttributeNames(),
+            request.getAttributesToGet()));
+    double units = table.consumeRead(page, Boolean.TRUE.equals(request.getConsistentRead()));
+
+    return new QueryResult()
+        .withItems(page.items)
+        .withCount(page.items.size())
+        .withScannedCount(page.scannedCount)
+        .withLastEvaluatedKey(page.lastEvaluatedKey)
+        .withConsumedCapacity(getConsumedCapacity(table, units,
+            request.getReturnConsumedCapacity()));
+  }
+
+  @Override
+  public GetItemResult getItem(GetItemRequest request) {
+    Table table = getTable(request.getTableName());
+    table.delay();
+    table.checkCapacity(table.readCapacity);
+
+    Map<String, AttributeValue> item = table.items.get(table.toStoredKey(request.getKey()));
+    double units = readUnits(item == null ? 0 : itemSizeBytes(item),
+        Boolean.TRUE.equals(request.getConsistentRead()));
+    table.readCapacity.consume(units);
+    table.consumedReadCapacity.add(units);
+    if (item != null) {
+      table.itemsRead.incrementAndGet();
+      item = project(item, getProjection(request.getProjectionExpression(),
+          request.getExpressionAttributeNames(), request.getAttributesToGet()));
+    }
+    return new GetItemResult()
+        .withItem(item)
+        .withConsumedCapacity(getConsumedCapacity(table, units,
+            request.getReturnConsumedCapacity()));
+  }
+
+  @Override
+  public PutItemResult putItem(PutItemRequest request) {
+    Table table = getTable(request.getTableName());
+    table.delay();
+    table.checkCapacity(table.writeCapacity);
+
+    double units = table.write(new WriteRequest().withPutRequest(
+        new PutRequest(request.getItem())));
+    return new PutItemResult()
+        .withConsumedCapacity(getConsumedCapacity(table, units,
+            request.getReturnConsumedCapacity()));
+  }
+
+  /**
+   * Applies the writes in request order while the table has write capacity left, handing the
+   * rest back as UnprocessedItems. As in DynamoDB, a batch of which no write could be applied
+   * fails with a ProvisionedThroughputExceededException instead.
+   */
+  @Override
+  public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+    int requestCount = 0;
+    for (List<WriteRequest> writeRequests : request.getRequestItems().values()) {
+      requestCount += writeRequests.size();
+    }
+    if (requestCount == 0 || requestCount > MAX_BATCH_WRITE_ITEMS) {
+      throw validationError("Member must have length less than or equal to "
+          + MAX_BATCH_WRITE_ITEMS + " and greater than or equal to 1");
+    }
+
+    Map<String, List<WriteRequest>> unprocessedItems = new HashMap<>();
+    List<ConsumedCapacity> consumedCapacity = new ArrayList<>();
+    boolean processedAny = false;
+    String throttledTable = null;
+    for (Entry<String, List<WriteRequest>> entry : request.getRequestItems().entrySet()) {
+      Table table = getTable(entry.getKey());
+      table.delay();
+
+      double units = 0;
+      List<WriteRequest> unprocessed = new ArrayList<>();
+      for (WriteRequest writeRequest : entry.getValue()) {
+        if (unprocessed.isEmpty() && table.writeCapacity.isAvailable()) {
+          units += table.write(writeRequest);
+          processedAny = true;
+        } else {
+          unprocessed.add(writeRequest);
+        }
+      }
+      if (!unprocessed.isEmpty()) {
+        unprocessedItems.put(entry.getKey(), unprocessed);
+        throttledTable = table.name;
+      }
+      ConsumedCapacity tableCapacity = getConsumedCapacity(table, units,
+          request.getReturnConsumedCapacity());
+      if (tableCapacity != null) {
+        consumedCapacity.add(tableCapacity);
+      }
+    }
+
+    if (!processedAny) {
+      Table table = getTable(throttledTable);
+      table.throttledRequests.incrementAndGet();
+      throw throughputExceeded(table.name);
+    }
+    for (Entry<String, List<WriteRequest>> entry : unprocessedItems.entrySet()) {
+      getTable(entry.getKey()).unprocessedItems.addAndGet(entry.getValue().size());
+    }
+    return new BatchWriteItemResult()
+        .withUnprocessedItems(unprocessedItems)
+        .withConsumedCapacity(consumedCapacity.isEmpty() ? null : consumedCapacity);
+  }
+
+  private static Page readPage(Table table, Iterator<Map<String, AttributeValue>> items,
+      Integer limit, Map<String, Condition> filter, Collection<String> projection) {
+    Page page = new Page();
+    Map<String, AttributeValue> last = null;
+    while (items.hasNext() && (limit == null || page.scannedCount < limit)
+        && page.bytesRead < MAX_PAGE_BYTES) {
+      last = items.next();
+      page.scannedCount++;
+      page.bytesRead += itemSizeBytes(last);
+      if (matches(last, filter)) {
+        page.items.add(project(last, projection));
+      }
+    }
+    if (last != null && items.hasNext()) {
+      page.lastEvaluatedKey = table.getKey(last);
+    }
+    return page;
+  }
+
+  private static ConsumedCapacity getConsumedCapacity(Table table, double units,
+      String returnConsumedCapacity) {
+    if (returnConsumedCapacity == null
+        || ReturnConsumedCapacity.NONE.toString().equals(returnConsumedCapacity)) {
+      return null;
+    }
+    return new ConsumedCapacity()
+        .withTableName(table.name)
+        .withCapacityUnits(units)
+        .withTable(new Capacity().withCapacityUnits(units));
+  }
+
+  private static Collection<String> getProjection(String projectionExpression,
+      Map<String, String> expressionAttributeNames, Collection<String> attributesToGet) {
+    if (projectionExpression == null) {
+      return attributesToGet == null || attributesToGet.isEmpty() ? null : attributesToGet;
+    }
+    List<String> attributes = new ArrayList<>();
+    for (String path : projectionExpression.split(",")) {
+      String attribute = path.trim();
+      if (expressionAttributeNames != null && expressionAttributeNames.containsKey(attribute)) {
+        attribute = expressionAttributeNames.get(attribute);
+      } else if (attribute.contains(".") || attribute.contains("[")) {
+        throw new UnsupportedOperationException("Nested projections are not supported: " + path);
+      }
+      attributes.add(attribute);
+    }
+    return attributes;
+  }
+
+  private static Map<String, AttributeValue> project(Map<String, AttributeValue> item,
+      Collection<String> projection) {
+    Map<String, AttributeValue> projected = new HashMap<>();
+    if (projection == null) {
+      projected.putAll(item);
+    } else {
+      for (String attribute : projection) {
+        if (item.containsKey(attribute)) {
+          projected.put(attribute, item.get(attribute));
+        }
+      }
+    }
+    return projected;
+  }
+
+  private static boolean matches(Map<String, AttributeValue> item,
+      Map<String, Condition> filter) {
+    if (filter != null) {
+      for (Entry<String, Condition> entry : filter.entrySet()) {
+        if (!matches(item.get(entry.getKey()), entry.getValue())) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static boolean matches(AttributeValue value, Condition condition) {
+    List<AttributeValue> arguments = condition.getAttributeValueList();
+    switch (ComparisonOperator.fromValue(condition.getComparisonOperator())) {
+      case NULL:
+        return value == null;
+      case NOT_NULL:
+        return value != null;
+      case EQ:
+        return value != null && value.equals(arguments.get(0));
+      case NE:
+        return value == null || !value.equals(arguments.get(0));
+      case LT:
+        return isComparable(value, arguments.get(0)) && compare(value, arguments.get(0)) < 0;
+      case LE:
+        return isComparable(value, arguments.get(0)) && compare(value, arguments.get(0)) <= 0;
+      case GT:
+        return isComparable(value, arguments.get(0)) && compare(value, arguments.get(0)) > 0;
+      case GE:
+        return isComparable(value, arguments.get(0)) && compare(value, arguments.get(0)) >= 0;
+      case BETWEEN:
+        return isComparable(value, arguments.get(0)) && compare(value, arguments.get(0)) >= 0
+            && compare(value, arguments.get(1)) <= 0;
+      case BEGINS_WITH:
+        return value != null && beginsWith(value, arguments.get(0));
+      case IN:
+        return value != null && arguments.contains(value);
+      default:
+        throw new UnsupportedOperationException("Unsupported comparison operator: "
+            + condition.getComparisonOperator());
+    }
+  }
+
+  private static boolean beginsWith(AttributeValue value, AttributeValue prefix) {
+    if (value.getS() != null && prefix.getS() != null) {
+      return value.getS().startsWith(prefix.getS());
+    } else if (value.getB() != null && prefix.getB() != null) {
+      byte[] bytes = toBytes(value.getB());
+      byte[] prefixBytes = toBytes(prefix.getB());
+      return bytes.length >= prefixBytes.length
+          && Arrays.equals(Arrays.copyOf(bytes, prefixBytes.length), prefixBytes);
+    }
+    return false;
+  }
+
+  private static boolean isComparable(AttributeValue a, AttributeValue b) {
+    return a != null && ((a.getS() != null && b.getS() != null)
+        || (a.getN() != null && b.getN() != null) || (a.getB() != null && b.getB() != null));
+  }
+
+  private static int compare(AttributeValue a, AttributeValue b) {
+    if (a.getS() != null) {
+      return a.getS().compareTo(b.getS());
+    } else if (a.getN() != null) {
+      return new BigDecimal(a.getN()).compareTo(new BigDecimal(b.getN()));
+    }
+    return UnsignedBytes.lexicographicalComparator().compare(toBytes(a.getB()), toBytes(b.getB()));
+  }
+
+  private static byte[] toBytes(ByteBuffer buffer) {
+    ByteBuffer duplicate = buffer.duplicate();
+    byte[] bytes = new byte[duplicate.remaining()];
+    duplicate.get(bytes);
+    return bytes;
+  }
+
+  private static double readUnits(long bytes, boolean consistentRead) {
+    long units = Math.max(1, (bytes + READ_UNIT_BYTES - 1) / READ_UNIT_BYTES);
+    return consistentRead ? units : units / 2.0;
+  }
+
+  private static double writeUnits(long bytes) {
+    return Math.max(1, (bytes + WRITE_UNIT_BYTES - 1) / WRITE_UNIT_BYTES);
+  }
+
+  /**
+   * Approximates the DynamoDB item size: attribute names plus the size of their values.
+   */
+  static long itemSizeBytes(Map<String, AttributeValue> item) {
+    long size = 0;
+    for (Entry<String, AttributeValue> entry : item.entrySet()) {
+      size += entry.getKey().getBytes(StandardCharsets.UTF_8).length
+          + valueSizeBytes(entry.getValue());
+    }
+    return size;
+  }
+
+  private static long valueSizeBytes(AttributeValue value) {
+    long size = 0;
+    if (value.getS() != null) {
+      size += value.getS().getBytes(StandardCharsets.UTF_8).length;
+    }
+    if (value.getN() != null) {
+      size += numberSizeBytes(value.getN());
+    }
+    if (value.getB() != null) {
+      size += value.getB().remaining();
+    }
+    if (value.getSS() != null) {
+      for (String element : value.getSS()) {
+        size += element.getBytes(StandardCharsets.UTF_8).length;
+      }
+    }
+    if (value.getNS() != null) {
+      for (String element : value.getNS()) {
+        size += numberSizeBytes(element);
+      }
+    }
+    if (value.getBS() != null) {
+      for (ByteBuffer element : value.getBS()) {
+        size += element.remaining();
+      }
+    }
+    if (value.getM() != null) {
+      size += 3 + itemSizeBytes(value.getM());
+    }
+    if (value.getL() != null && !value.getL().isEmpty()) {
+      size += 3;
+      for (AttributeValue element : value.getL()) {
+        size += 1 + valueSizeBytes(element);
+      }
+    }
+    if (value.getNULL() != null || value.getBOOL() != null) {
+      size += 1;
+    }
+    return size;
+  }
+
+  private static long numberSizeBytes(String number) {
+    return (number.replaceAll("[^0-9]", "").length() + 1) / 2 + 1;
+  }
+
+  private static AmazonServiceException validationError(String message) {
+    AmazonServiceException e = new AmazonServiceException(message);
+    e.setErrorCode("ValidationException");
+    e.setStatusCode(400);
+    return e;
+  }
+
+  private static ProvisionedThroughputExceededException throughputExceeded(String tableName) {
+    ProvisionedThroughputExceededException e = new ProvisionedThroughputExceededException("The "
+        + "level of configured provisioned throughput for table " + tableName + " was exceeded");
+    e.setErrorCode("ProvisionedThroughputExceededException");
+    e.setStatusCode(400);
+    return e;
+  }
+
+  private static final class Page {
+    private final List<Map<String, AttributeValue>> items = new ArrayList<>();
+    private int scannedCount;
+    private long bytesRead;
+    private Map<String, AttributeValue> lastEvaluatedKey;
+  }
+
+  /**
+   * Position of an item in a table: the unsigned 32 bit hash of its partition key, which decides
+   * the scan segment the item belongs to, followed by its encoded primary key.
+   */
+  private static final class StoredKey implements Comparable<StoredKey> {
+    private final long hash;
+    private final String key;
+
+    private StoredKey(long hash, String key) {
+      this.hash = hash;
+      this.key = key;
+    }
+
+    @Override
+    public int compareTo(StoredKey other) {
+      int result = Long.compare(hash, other.hash);
+      return result != 0 ? result : key.compareTo(other.key);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof StoredKey && compareTo((StoredKey) other) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * Long.hashCode(hash) + key.hashCode();
+    }
+  }
+
+  /**
+   * Provisioned capacity refilled continuously at the provisioned rate, with at most one second
+   * of unused capacity saved up. Like DynamoDB, a request is admitted while a capacity unit is
+   * left and may take the balance below zero, since its cost is only known once it is served.
+   */
+  private static final class CapacityBucket {
+    private final long unitsPerSecond;
+    private double available;
+    private long lastRefillNanos = System.nanoTime();
+
+    private CapacityBucket(long unitsPerSecond) {
+      this.unitsPerSecond = unitsPerSecond;
+      this.available = unitsPerSecond;
+    }
+
+    private synchronized boolean isAvailable() {
+      if (unitsPerSecond <= 0) {
+        return true;
+      }
+      long now = System.nanoTime();
+      available = Math.min(unitsPerSecond, available
+          + unitsPerSecond * (now - lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1));
+      lastRefillNanos = now;
+      return available >= 1;
+    }
+
+    private synchronized void consume(double units) {
+      available -= units;
+    }
+  }
+
+  /**
+   * An in-memory table, and the statistics of the requests it has served.
+   */
+  public static final class Table {
+    private final String name;
+    private final String hashKeyName;
+    private final ScalarAttributeType hashKeyType;
+    private final String rangeKeyName;
+    private final ScalarAttributeType rangeKeyType;
+    private final long readCapacityUnits;
+    private final long writeCapacityUnits;
+    private final CapacityBucket readCapacity;
+    private final CapacityBucket writeCapacity;
+    private final ConcurrentSkipListMap<StoredKey, Map<String, AttributeValue>> items =
+        new ConcurrentSkipListMap<>();
+
+    private final DoubleAdder consumedReadCapacity = new DoubleAdder();
+    private final DoubleAdder consumedWriteCapacity = new DoubleAdder();
+    private final AtomicLong itemsRead = new AtomicLong();
+    private final AtomicLong itemsWritten = new AtomicLong();
+    private final AtomicLong throttledRequests = new AtomicLong();
+    private final AtomicLong unprocessedItems = new AtomicLong();
+    private volatile long latencyMillis;
+
+    private Table(String name, String hashKeyName, ScalarAttributeType hashKeyType,
+        String rangeKeyName, ScalarAttributeType rangeKeyType, long readCapacityUnits,
+        long writeCapacityUnits) {
+      this.name = name;
+      this.hashKeyName = hashKeyName;
+      this.hashKeyType = hashKeyType;
+      this.rangeKeyName = rangeKeyName;
+      this.rangeKeyType = rangeKeyType;
+      this.readCapacityUnits = readCapacityUnits;
+      this.writeCapacityUnits = writeCapacityUnits;
+      this.readCapacity = new CapacityBucket(readCapacityUnits);
+      this.writeCapacity = new CapacityBucket(writeCapacityUnits);
+    }
+
+    /**
+     * Delays every request against the table by the given latency.
+     */
+    public Table withLatency(long latency, TimeUnit unit) {
+      latencyMillis = unit.toMillis(latency);
+      return this;
+    }
+
+    /**
+     * Stores items without consuming any capacity.
+     */
+    public Table load(Collection<Map<String, AttributeValue>> newItems) {
+      for (Map<String, AttributeValue> item : newItems) {
+        items.put(toStoredKey(item), new HashMap<>(item));
+      }
+      return this;
+    }
+
+    public Map<String, AttributeValue> getItem(Map<String, AttributeValue> key) {
+      return items.get(toStoredKey(key));
+    }
+
+    public Collection<Map<String, AttributeValue>> getItems() {
+      return Collections.unmodifiableCollection(items.values());
+    }
+
+    public int getItemCount() {
+      return items.size();
+    }
+
+    public double getConsumedReadCapacity() {
+      return consumedReadCapacity.sum();
+    }
+
+    public double getConsumedWriteCapacity() {
+      return consumedWriteCapacity.sum();
+    }
+
+    public long getItemsRead() {
+      return itemsRead.get();
+    }
+
+    public long getItemsWritten() {
+      return itemsWritten.get();
+    }
+
+    /**
+     * @return the number of requests rejected with a ProvisionedThroughputExceededException
+     */
+    public long getThrottledRequests() {
+      return throttledRequests.get();
+    }
+
+    /**
+     * @return the number of writes handed back as UnprocessedItems
+     */
+    public long getUnprocessedItems() {
+      return unprocessedItems.get();
+    }
+
+    private TableDescription describe() {
+      List<KeySchemaElement> keySchema = new ArrayList<>();
+      List<AttributeDefinition> attributeDefinitions = new ArrayList<>();
+      keySchema.add(new KeySchemaElement(hashKeyName, KeyType.HASH));
+      attributeDefinitions.add(new AttributeDefinition(hashKeyName, hashKeyType));
+      if (rangeKeyName != null) {
+        keySchema.add(new KeySchemaElement(rangeKeyName, KeyType.RANGE));
+        attributeDefinitions.add(new AttributeDefinition(rangeKeyName, rangeKeyType));
+      }
+
+      long sizeBytes = 0;
+      for (Map<String, AttributeValue> item : items.values()) {
+        sizeBytes += itemSizeBytes(item);
+      }
+
+      boolean onDemand = readCapacityUnits <= 0 || writeCapacityUnits <= 0;
+      return new TableDescription()
+          .withTableName(name)
+          .withTableStatus(TableStatus.ACTIVE)
+          .withKeySchema(keySchema)
+          .withAttributeDefinitions(attributeDefinitions)
+          .withItemCount((long) items.size())
+          .withTableSizeBytes(sizeBytes)
+          .withBillingModeSummary(new BillingModeSummary().withBillingMode(onDemand
+              ? BillingMode.PAY_PER_REQUEST : BillingMode.PROVISIONED))
+          .withProvisionedThroughput(new ProvisionedThroughputDescription()
+              .withReadCapacityUnits(onDemand ? 0 : readCapacityUnits)
+              .withWriteCapacityUnits(onDemand ? 0 : writeCapacityUnits));
+    }
+
+    private void checkCapacity(CapacityBucket capacity) {
+      if (!capacity.isAvailable()) {
+        throttledRequests.incrementAndGet();
+        throw throughputExceeded(name);
+      }
+    }
+
+    private double consumeRead(Page page, boolean consistentRead) {
+      double units = readUnits(page.bytesRead, consistentRead);
+      readCapacity.consume(units);
+      consumedReadCapacity.add(units);
+      itemsRead.addAndGet(page.items.size());
+      return units;
+    }
+
+    private double write(WriteRequest writeRequest) {
+      Map<String, AttributeValue> previous;
+      double units;
+      if (writeRequest.getPutRequest() != null) {
+        Map<String, AttributeValue> item = writeRequest.getPutRequest().getItem();
+        previous = items.put(toStoredKey(item), new HashMap<>(item));
+        units = writeUnits(Math.max(itemSizeBytes(item),
+            previous == null ? 0 : itemSizeBytes(previous)));
+      } else {
+        previous = items.remove(toStoredKey(writeRequest.getDeleteRequest().getKey()));
+        units = writeUnits(previous == null ? 0 : itemSizeBytes(previous));
+      }
+      writeCapacity.consume(units);
+      consumedWriteCapacity.add(units);
+      itemsWritten.incrementAndGet();
+      return units;
+    }
+
+    private void delay() {
+      long latency = latencyMillis;
+      if (latency > 0) {
+        try {
+          Thread.sleep(latency);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException("Interrupted while simulating latency", e);
+        }
+      }
+    }
+
+    private Map<String, AttributeValue> getKey(Map<String, AttributeValue> item) {
+      Map<String, AttributeValue> key = new LinkedHashMap<>();
+      key.put(hashKeyName, item.get(hashKeyName));
+      if (rangeKeyName != null) {
+        key.put(rangeKeyName, item.get(rangeKeyName));
+      }
+      return key;
+    }
+
+    private long hash(AttributeValue hashKey) {
+      return Hashing.murmur3_32().hashString(encode(hashKeyName, hashKey, hashKeyType),
+          StandardCharsets.UTF_8).asInt() & 0xffffffffL;
+    }
+
+    private StoredKey toStoredKey(Map<String, AttributeValue> item) {
+      AttributeValue hashKey = item.get(hashKeyName);
+      String key = encode(hashKeyName, hashKey, hashKeyType);
+      if (rangeKeyName != null) {
+        key += '\u0000' + encode(rangeKeyName, item.get(rangeKeyName), rangeKeyType);
+      }
+      return new StoredKey(hash(hashKey), key);
+    }
+
+    private static String encode(String attributeName, AttributeValue value,
+        ScalarAttributeType type) {
+      if (value != null) {
+        switch (type) {
+          case S:
+            if (value.getS() != null) {
+              return value.getS();
+            }
+            break;
+          case N:
+            if (value.getN() != null) {
+              return new BigDecimal(value.getN()).stripTrailingZeros().toPlainString();
+            }
+            break;
+          case B:
+            if (value.getB() != null) {
+              return Base64.getEncoder().encodeToString(toBytes(value.getB()));
+            }
+            break;
+          default:
+            break;
+        }
+      }
+      throw validationError("One of the required keys was not given a value of type " + type
+          + ": " + attributeName);
+    }
+  }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class InMemoryDynamoDBTest {
+
+  private static final String TABLE_NAME = "table";
+
+  private final InMemoryDynamoDB dynamoDB = new InMemoryDynamoDB();
+
+  @Before
+  public void setup() {
+    InMemoryDynamoDB.reset();
+  }
+
+  @After
+  public void tearDown() {
+    InMemoryDynamoDB.reset();
+  }
+
+  @Test
+  public void testParallelScanReturnsEveryItemOnce() {
+    InMemoryDynamoDB.createTable(TABLE_NAME, "id", ScalarAttributeType.S, 0, 0)
+        .load(getItems(1000));
+
+    Set<String> ids = new HashSet<>();
+    int totalSegments = 7;
+    for (int segment = 0; segment < totalSegments; segment++) {
+      Map<String, AttributeValue> lastEvaluatedKey = null;
+      do {
+        ScanResult result = dynamoDB.scan(new ScanRequest(TABLE_NAME)
+            .withSegment(segment)
+            .withTotalSegments(totalSegments)
+            .withLimit(50)
+            .withExclusiveStartKey(lastEvaluatedKey));
+        assertTrue(result.getCount() <= 50);
+        for (Map<String, AttributeValue> item : result.getItems()) {
+          assertTrue(ids.add(item.get("id").getS()));
+        }
+        lastEvaluatedKey = result.getLastEvaluatedKey();
+      } while (lastEvaluatedKey != null);
+    }
+
+    assertEquals(1000, ids.size());
+  }
+
+  @Test
+  public void testScanPagesAreLimitedToOneMegabyte() {
+    List<Map<String, AttributeValue>> items = getItems(300);
+    char[] padding = new char[10 * 1024];
+    for (Map<String, AttributeValue> item : items) {
+      item.put("padding", new AttributeValue(new String(padding)));
+    }
+    InMemoryDynamoDB.createTable(TABLE_NAME, "id", ScalarAttributeType.S, 0, 0).load(items);
+
+    ScanResult result = dynamoDB.scan(new ScanRequest(TABLE_NAME)
+        .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL));
+
+    assertTrue(result.getCount() < 300);
+    assertTrue(result.getLastEvaluatedKey() != null);
+    // Eventually consistent reads of 1MB cost 128 units
+    assertEquals(128, result.getConsumedCapacity().getCapacityUnits(), 2);
+  }
+
+  @Test
+  public void testQueryReturnsPartitionInRangeKeyOrder() {
+    List<Map<String, AttributeValue>> items = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      Map<String, AttributeValue> item = new HashMap<>();
+      item.put("id", new AttributeValue(i % 2 == 0 ? "even" : "odd"));
+      item.put("n", new AttributeValue().withN(String.valueOf(i)));
+      items.add(item);
+    }
+    Collections.shuffle(items);
+    InMemoryDynamoDB.createTable(TABLE_NAME, "id", ScalarAttributeType.S, "n",
+        ScalarAttributeType.N, 0, 0).load(items);
+
+    Map<String, Condition> keyConditions = new HashMap<>();
+    keyConditions.put("id", new Condition().withComparisonOperator(ComparisonOperator.EQ)
+        .withAttributeValueList(new AttributeValue("even")));
+    keyConditions.put("n", new Condition().withComparisonOperator(ComparisonOperator.GE)
+        .withAttributeValueList(new AttributeValue().withN("10")));
+    QueryResult result = dynamoDB.query(new QueryRequest(TABLE_NAME)
+        .withKeyConditions(keyConditions)
+        .withLimit(3));
+    QueryResult next = dynamoDB.query(new QueryRequest(TABLE_NAME)
+        .withKeyConditions(keyConditions)
+        .withExclusiveStartKey(result.getLastEvaluatedKey()));
+
+    assertEquals("10", result.getItems().get(0).get("n").getN());
+    assertEquals("14", result.getItems().get(2).get("n").getN());
+    assertEquals(2, next.getCount().intValue());
+    assertEquals("18", next.getItems().get(1).get("n").getN());
+    assertNull(next.getLastEvaluatedKey());
+  }
+
+  @Test
+  public void testBatchWriteReturnsUnprocessedItemsWhenCapacityRunsOut() {
+    InMemoryDynamoDB.Table table =
+        InMemoryDynamoDB.createTable(TABLE_NAME, "id", ScalarAttributeType.S, 10, 10);
+
+    BatchWriteItemResult result = dynamoDB.batchWriteItem(getBatch(25));
+
+    assertEquals(10, table.getItemCount());
+    assertEquals(15, result.getUnprocessedItems().get(TABLE_NAME).size());
+    try {
+      dynamoDB.batchWriteItem(new BatchWriteItemRequest(result.getUnprocessedItems()));
+      fail("Expected the table to be throttled");
+    } catch (ProvisionedThroughputExceededException e) {
+      assertEquals("ProvisionedThroughputExceededException", e.getErrorCode());
+    }
+    assertEquals(15, table.getUnprocessedItems());
+    assertEquals(1, table.getThrottledRequests());
+  }
+
+  private static BatchWriteItemRequest getBatch(int count) {
+    List<WriteRequest> writeRequests = new ArrayList<>();
+    for (Map<String, AttributeValue> item : getItems(count)) {
+      writeRequests.add(new WriteRequest(new PutRequest(item)));
+    }
+    return new BatchWriteItemRequest(Collections.singletonMap(TABLE_NAME, writeRequests));
+  }
+
+  private static List<Map<String, AttributeValue>> getItems(int count) {
+    List<Map<String, AttributeValue>> items = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Map<String, AttributeValue> item = new HashMap<>();
+      item.put("id", new AttributeValue("item-" + i));
+      item.put("value", new AttributeValue().withN(String.valueOf(i)));
+      items.add(item);
+    }
+    return items;
+  }
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.test;
+
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.dynamodb.DynamoDBConstants;
+import org.apache.hadoop.dynamodb.DynamoDBItemWritable;
+import org.apache.hadoop.dynamodb.read.DynamoDBInputFormat;
+import org.apache.hadoop.dynamodb.test.InMemoryDynamoDB.Table;
+import org.apache.hadoop.dynamodb.write.DynamoDBOutputFormat;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobClient;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RunningJob;
+import org.apache.hadoop.mapred.lib.IdentityMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a map-only job copying one {@link InMemoryDynamoDB} table to another through
+ * {@link DynamoDBInputFormat} and {@link DynamoDBOutputFormat} in the {@code LocalJobRunner}, and
+ * reports the throughput the read and write pipelines achieved.
+ */
+public class LocalJobThroughputHarness {
+
+  private static final Log log = LogFactory.getLog(LocalJobThroughputHarness.class);
+
+  /**
+   * @param workDir directory for the files of the local job runner
+   * @param maxMapTasks number of map tasks the local job runner runs concurrently
+   * @return a configuration using the provisioned throughput of the tables, which tests may
+   *     override to drive the tables harder than they are provisioned for
+   */
+  public static JobConf createCopyJobConf(String inputTableName, String outputTableName,
+      File workDir, int maxMapTasks) {
+    JobConf conf = new JobConf();
+    conf.setJobName("dynamodb-copy-" + inputTableName + "-" + outputTableName);
+    conf.set("mapreduce.framework.name", "local");
+    conf.set("fs.defaultFS", "file:///");
+    conf.set("hadoop.tmp.dir", new File(workDir, "tmp").getAbsolutePath());
+    conf.set("mapreduce.jobtracker.staging.root.dir",
+        new File(workDir, "staging").getAbsolutePath());
+    conf.setInt("mapreduce.local.map.tasks.maximum", maxMapTasks);
+
+    conf.set(DynamoDBConstants.CUSTOM_CLIENT_CONF, InMemoryDynamoDB.class.getName());
+    conf.set(DynamoDBConstants.INPUT_TABLE_NAME, inputTableName);
+    conf.set(DynamoDBConstants.OUTPUT_TABLE_NAME, outputTableName);
+    conf.setInt(DynamoDBConstants.MAX_MAP_TASKS, maxMapTasks);
+
+    // What the Hive storage handler derives from the table descriptions
+    InMemoryDynamoDB dynamoDB = new InMemoryDynamoDB();
+    TableDescription input = dynamoDB.describeTable(
+        new DescribeTableRequest(inputTableName)).getTable();
+    TableDescription output = dynamoDB.describeTable(
+        new DescribeTableRequest(outputTableName)).getTable();
+    conf.setLong(DynamoDBConstants.READ_THROUGHPUT,
+        getCapacityUnits(input.getProvisionedThroughput().getReadCapacityUnits()));
+    conf.setLong(DynamoDBConstants.WRITE_THROUGHPUT,
+        getCapacityUnits(output.getProvisionedThroughput().getWriteCapacityUnits()));
+    conf.setLong(DynamoDBConstants.ITEM_COUNT, input.getItemCount());
+    conf.setLong(DynamoDBConstants.TABLE_SIZE_BYTES, input.getTableSizeBytes());
+    if (input.getItemCount() > 0) {
+      conf.setFloat(DynamoDBConstants.AVG_ITEM_SIZE,
+          (float) input.getTableSizeBytes() / input.getItemCount());
+    }
+
+    conf.setInputFormat(DynamoDBInputFormat.class);
+    conf.setOutputFormat(DynamoDBOutputFormat.class);
+    conf.setMapperClass(IdentityMapper.class);
+    conf.setNumReduceTasks(0);
+    conf.setOutputKeyClass(Text.class);
+    conf.setOutputValueClass(DynamoDBItemWritable.class);
+    return conf;
+  }
+
+  private static long getCapacityUnits(long provisionedCapacityUnits) {
+    return provisionedCapacityUnits > 0 ? provisionedCapacityUnits
+        : DynamoDBConstants.DEFAULT_CAPACITY_FOR_ON_DEMAND;
+  }
+
+  /**
+   * Runs the job and waits for it to complete.
+   *
+   * @throws IOException if the job fails
+   */
+  public static Report runCopyJob(JobConf conf) throws IOException {
+    Table input = InMemoryDynamoDB.getTable(conf.get(DynamoDBConstants.INPUT_TABLE_NAME));
+    Table output = InMemoryDynamoDB.getTable(conf.get(DynamoDBConstants.OUTPUT_TABLE_NAME));
+    long itemsRead = input.getItemsRead();
+    long itemsWritten = output.getItemsWritten();
+    double readCapacity = input.getConsumedReadCapacity();
+    double writeCapacity = output.getConsumedWriteCapacity();
+    long readThrottles = input.getThrottledRequests();
+    long writeThrottles = output.getThrottledRequests();
+    long unprocessedItems = output.getUnprocessedItems();
+
+    long start = System.nanoTime();
+    RunningJob job = JobClient.runJob(conf);
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    if (!job.isSuccessful()) {
+      throw new IOException("Job " + job.getID() + " failed");
+    }
+
+    Report report = new Report(elapsedMillis,
+        input.getItemsRead() - itemsRead,
+        output.getItemsWritten() - itemsWritten,
+        input.getConsumedReadCapacity() - readCapacity,
+        output.getConsumedWriteCapacity() - writeCapacity,
+        input.getThrottledRequests() - readThrottles,
+        output.getThrottledRequests() - writeThrottles,
+        output.getUnprocessedItems() - unprocessedItems);
+    log.info(report);
+    return report;
+  }
+
+  /**
+   * Items and capacity units moved by a job, with the throttled requests it caused.
+   */
+  public static final class Report {
+    public final long elapsedMillis;
+    public final long itemsRead;
+    public final long itemsWritten;
+    public final double consumedReadCapacity;
+    public final double consumedWriteCapacity;
+    public final long throttledReads;
+    public final long throttledWrites;
+    public final long unprocessedItems;
+
+    private Report(long elapsedMillis, long itemsRead, long itemsWritten,
+        double consumedReadCapacity, double consumedWriteCapacity, long throttledReads,
+        long throttledWrites, long unprocessedItems) {
+      this.elapsedMillis = elapsedMillis;
+      this.itemsRead = itemsRead;
+      this.itemsWritten = itemsWritten;
+      this.consumedReadCapacity = consumedReadCapacity;
+      this.consumedWriteCapacity = consumedWriteCapacity;
+      this.throttledReads = throttledReads;
+      this.throttledWrites = throttledWrites;
+      this.unprocessedItems = unprocessedItems;
+    }
+
+    public double getItemsReadPerSecond() {
+      return perSecond(itemsRead);
+    }
+
+    public double getItemsWrittenPerSecond() {
+      return perSecond(itemsWritten);
+    }
+
+    public double getReadCapacityPerSecond() {
+      return perSecond(consumedReadCapacity);
+    }
+
+    public double getWriteCapacityPerSecond() {
+      return perSecond(consumedWriteCapacity);
+    }
+
+    private double perSecond(double value) {
+      return value * 1000 / Math.max(elapsedMillis, 1);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Copied in %d ms: read %d items (%.1f items/s, %.1f RCU consumed, "
+              + "%.1f RCU/s, %d throttled), wrote %d items (%.1f items/s, %.1f WCU consumed, "
+              + "%.1f WCU/s, %d throttled, %d unprocessed)", elapsedMillis, itemsRead,
+          getItemsReadPerSecond(), consumedReadCapacity, getReadCapacityPerSecond(),
+          throttledReads, itemsWritten, getItemsWrittenPerSecond(), consumedWriteCapacity,
+          getWriteCapacityPerSecond(), throttledWrites, unprocessedItems);
+    }
+  }
+}
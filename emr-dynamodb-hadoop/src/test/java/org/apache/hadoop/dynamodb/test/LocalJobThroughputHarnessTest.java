@@ -0,0 +1,160 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import org.apache.hadoop.dynamodb.DynamoDBConstants;
+import org.apache.hadoop.dynamodb.test.InMemoryDynamoDB.Table;
+import org.apache.hadoop.dynamodb.test.LocalJobThroughputHarness.Report;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.mapred.JobConf;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class LocalJobThroughputHarnessTest {
+
+  private static final String INPUT_TABLE_NAME = "input";
+  private static final String OUTPUT_TABLE_NAME = "output";
+
+  private File workDir;
+
+  @Before
+  public void setup() throws IOException {
+    InMemoryDynamoDB.reset();
+    workDir = Files.createTempDirectory("dynamodb-local-job").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    InMemoryDynamoDB.reset();
+    FileUtil.fullyDelete(workDir);
+  }
+
+  @Test
+  public void testCopiesTableAcrossSegments() throws IOException {
+    Table input = InMemoryDynamoDB.createTable(INPUT_TABLE_NAME, "id", ScalarAttributeType.S,
+        1000, 1000).load(getItems(2000)).withLatency(2, TimeUnit.MILLISECONDS);
+    Table output = InMemoryDynamoDB.createTable(OUTPUT_TABLE_NAME, "id", ScalarAttributeType.S,
+        1000, 2000).withLatency(2, TimeUnit.MILLISECONDS);
+    JobConf conf = LocalJobThroughputHarness.createCopyJobConf(INPUT_TABLE_NAME,
+        OUTPUT_TABLE_NAME, workDir, 2);
+    conf.setInt(DynamoDBConstants.SCAN_SEGMENTS, 4);
+
+    Report report = LocalJobThroughputHarness.runCopyJob(conf);
+
+    assertEquals(2000, report.itemsRead);
+    assertEquals(2000, report.itemsWritten);
+    assertEquals(2000, report.consumedWriteCapacity, 0);
+    assertTrue(report.consumedReadCapacity > 0);
+    assertEquals(new ArrayList<>(input.getItems()), new ArrayList<>(output.getItems()));
+  }
+
+  @Test
+  public void testCopiesTableWithAsyncReadEngine() throws IOException {
+    Table input = InMemoryDynamoDB.createTable(INPUT_TABLE_NAME, "id", ScalarAttributeType.S,
+        1000, 1000).load(getItems(2000)).withLatency(2, TimeUnit.MILLISECONDS);
+    Table output = InMemoryDynamoDB.createTable(OUTPUT_TABLE_NAME, "id", ScalarAttributeType.S,
+        1000, 2000);
+    JobConf conf = LocalJobThroughputHarness.createCopyJobConf(INPUT_TABLE_NAME,
+        OUTPUT_TABLE_NAME, workDir, 1);
+    conf.setInt(DynamoDBConstants.SCAN_SEGMENTS, 8);
+    conf.set(DynamoDBConstants.READ_ENGINE, DynamoDBConstants.READ_ENGINE_ASYNC);
+
+    Report report = LocalJobThroughputHarness.runCopyJob(conf);
+
+    assertEquals(2000, report.itemsRead);
+    assertEquals(new ArrayList<>(input.getItems()), new ArrayList<>(output.getItems()));
+  }
+
+  @Test
+  public void testCopiesTableWithThroughputCoordination() throws IOException {
+    Table input = InMemoryDynamoDB.createTable(INPUT_TABLE_NAME, "id", ScalarAttributeType.S,
+        1000, 1000).load(getItems(2000));
+    Table output = InMemoryDynamoDB.createTable(OUTPUT_TABLE_NAME, "id", ScalarAttributeType.S,
+        1000, 2000);
+    JobConf conf = LocalJobThroughputHarness.createCopyJobConf(INPUT_TABLE_NAME,
+        OUTPUT_TABLE_NAME, workDir, 2);
+    conf.setInt(DynamoDBConstants.SCAN_SEGMENTS, 4);
+    conf.setBoolean(DynamoDBConstants.THROUGHPUT_COORDINATION, true);
+    conf.set(DynamoDBConstants.THROUGHPUT_LEASE_DIR, new File(workDir, "leases").getPath());
+
+    Report report = LocalJobThroughputHarness.runCopyJob(conf);
+
+    assertEquals(2000, report.itemsWritten);
+    assertEquals(new ArrayList<>(input.getItems()), new ArrayList<>(output.getItems()));
+  }
+
+  @Test
+  public void testCopiesTableWithSegmentClaiming() throws IOException {
+    Table input = InMemoryDynamoDB.createTable(INPUT_TABLE_NAME, "id", ScalarAttributeType.S,
+        1000, 1000).load(getItems(2000));
+    Table output = InMemoryDynamoDB.createTable(OUTPUT_TABLE_NAME, "id", ScalarAttributeType.S,
+        1000, 2000);
+    JobConf conf = LocalJobThroughputHarness.createCopyJobConf(INPUT_TABLE_NAME,
+        OUTPUT_TABLE_NAME, workDir, 2);
+    conf.setInt(DynamoDBConstants.SCAN_SEGMENTS, 8);
+    conf.setBoolean(DynamoDBConstants.SEGMENT_CLAIMING, true);
+    conf.setMapSpeculativeExecution(false);
+    conf.set(DynamoDBConstants.SEGMENT_CLAIM_DIR, new File(workDir, "claims").getPath());
+    conf.setInt(DynamoDBConstants.MAX_OPEN_CLAIMED_SEGMENTS, 1);
+
+    Report report = LocalJobThroughputHarness.runCopyJob(conf);
+
+    // Every segment is read exactly once, whichever task claims it
+    assertEquals(2000, report.itemsRead);
+    assertEquals(new ArrayList<>(input.getItems()), new ArrayList<>(output.getItems()));
+  }
+
+  @Test
+  public void testRetriesUnprocessedItemsOfOverdrivenTable() throws IOException {
+    InMemoryDynamoDB.createTable(INPUT_TABLE_NAME, "id", ScalarAttributeType.S, 1000, 1000)
+        .load(getItems(300));
+    Table output = InMemoryDynamoDB.createTable(OUTPUT_TABLE_NAME, "id", ScalarAttributeType.S,
+        1000, 100);
+    JobConf conf = LocalJobThroughputHarness.createCopyJobConf(INPUT_TABLE_NAME,
+        OUTPUT_TABLE_NAME, workDir, 1);
+    conf.setLong(DynamoDBConstants.WRITE_THROUGHPUT, 1000);
+
+    Report report = LocalJobThroughputHarness.runCopyJob(conf);
+
+    assertEquals(300, output.getItemCount());
+    assertTrue(report.unprocessedItems + report.throttledWrites > 0);
+  }
+
+  private static List<Map<String, AttributeValue>> getItems(int count) {
+    List<Map<String, AttributeValue>> items = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Map<String, AttributeValue> item = new HashMap<>();
+      item.put("id", new AttributeValue("item-" + i));
+      item.put("number", new AttributeValue().withN(String.valueOf(i)));
+      item.put("payload", new AttributeValue(DynamoDBTestUtils.getRandomNumber()));
+      items.add(item);
+    }
+    return items;
+  }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.write;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.Capacity;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.hadoop.dynamodb.DynamoDBClient;
+import org.apache.hadoop.mapred.Reporter;
+import org.junit.Test;
+
+public class WriteLanesTest {
+
+  private static final int NUM_LANES = 4;
+  private static final int NUM_KEYS = 50;
+  private static final int VERSIONS_PER_KEY = 20;
+
+  @Test
+  public void testWritesOfAKeyStayInOrderOnOneLane() {
+    List<FakeClient> clients = new ArrayList<>();
+    for (int i = 0; i < NUM_LANES; i++) {
+      clients.add(new FakeClient(false));
+    }
+    WriteLanes lanes = createLanes(clients);
+
+    for (int version = 0; version < VERSIONS_PER_KEY; version++) {
+      for (int key = 0; key < NUM_KEYS; key++) {
+        lanes.write(item(key, version), 0, 5);
+      }
+    }
+    lanes.close();
+
+    Map<String, FakeClient> clientByKey = new HashMap<>();
+    int written = 0;
+    for (FakeClient client : clients) {
+      assertTrue("Lane wasn't closed", client.closed);
+      assertTrue("Lane wasn't used", !client.written.isEmpty());
+      Map<String, Integer> lastVersions = new HashMap<>();
+      for (Map<String, AttributeValue> item : client.written) {
+        String key = item.get("id").getS();
+        int version = Integer.parseInt(item.get("version").getN());
+        Integer lastVersion = lastVersions.put(key, version);
+        assertEquals(lastVersion == null ? 0 : lastVersion + 1, version);
+        FakeClient previousClient = clientByKey.put(key, client);
+        assertTrue(previousClient == null || previousClient == client);
+      }
+      written += client.written.size();
+    }
+    assertEquals(NUM_KEYS * VERSIONS_PER_KEY, written);
+    // Every full batch of 5 items reports a unit, each lane may end with a partial batch
+    assertEquals(written / 5.0, lanes.drainConsumedCapacity(), NUM_LANES);
+    assertEquals(0, lanes.drainConsumedCapacity(), 0);
+  }
+
+  @Test
+  public void testFailedLaneFailsTheWriter() {
+    WriteLanes lanes = createLanes(Collections.singletonList(new FakeClient(true)));
+    try {
+      for (int i = 0; i < 10000; i++) {
+        lanes.write(item(i, 0), 0, 5);
+      }
+      lanes.close();
+      fail("Expected the failure of the lane");
+    } catch (RuntimeException e) {
+      assertEquals("Write lane failed", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testNumbersWrittenDifferentlyGoToTheLaneOfTheirKey() {
+    List<FakeClient> clients = new ArrayList<>();
+    for (int i = 0; i < NUM_LANES; i++) {
+      clients.add(new FakeClient(false));
+    }
+    WriteLanes lanes = createLanes(clients);
+    for (int key = 0; key < NUM_KEYS; key++) {
+      int lane = lanes.getLane(numberItem(String.valueOf(key)));
+      assertEquals(lane, lanes.getLane(numberItem(key + ".0")));
+      assertEquals(lane, lanes.getLane(numberItem(key + "00e-2")));
+    }
+    lanes.close();
+  }
+
+  private static WriteLanes createLanes(List<? extends DynamoDBClient> clients) {
+    return new WriteLanes(new ArrayList<DynamoDBClient>(clients), "table",
+        Collections.singletonList("id"), false, Reporter.NULL);
+  }
+
+  private static Map<String, AttributeValue> item(int key, int version) {
+    Map<String, AttributeValue> item = new HashMap<>();
+    item.put("id", new AttributeValue("key-" + key));
+    item.put("version", new AttributeValue().withN(String.valueOf(version)));
+    return item;
+  }
+
+  private static Map<String, AttributeValue> numberItem(String key) {
+    return Collections.singletonMap("id", new AttributeValue().withN(key));
+  }
+
+  /**
+   * Records the items written through it, in batches of the given size.
+   */
+  private static final class FakeClient extends DynamoDBClient {
+    private final boolean failing;
+    private final List<Map<String, AttributeValue>> written = new ArrayList<>();
+    private int batched;
+    private volatile boolean closed;
+
+    private FakeClient(boolean failing) {
+      this.failing = failing;
+    }
+
+    @Override
+    public BatchWriteItemResult putBatch(String tableName, Map<String, AttributeValue> item,
+        int itemSizeBytes, long maxItemsPerBatch, Reporter reporter, boolean deletionMode) {
+      if (failing) {
+        throw new IllegalStateException("Failing lane");
+      }
+      written.add(item);
+      if (++batched < maxItemsPerBatch) {
+        return null;
+      }
+      batched = 0;
+      return new BatchWriteItemResult()
+          .withConsumedCapacity(new ConsumedCapacity().withTable(new Capacity()
+              .withCapacityUnits(1.0)))
+          .withUnprocessedItems(new HashMap<String, List<WriteRequest>>());
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
@@ -47,7 +47,7 @@ public class DynamoDBFilterFactory {
         return getFilter(operator, columnName, columnType, condition.getConstantDesc().getValue()
             .toString());
       case NARY:
-        List<ExprNodeDesc> children = ShimsLoader.getHiveShims().getIndexExpression(condition)
+        List<ExprNodeDesc> children = ShimsLoader.getHiveShims().getOriginalExpression(condition)
             .getChildren();
         String[] values = new String[children.size() - 1];
         // This currently supports IN clause only
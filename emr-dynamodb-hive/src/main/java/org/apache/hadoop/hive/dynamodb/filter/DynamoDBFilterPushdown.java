@@ -18,7 +18,9 @@ import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
 import com.amazonaws.services.dynamodbv2.model.LocalSecondaryIndexDescription;
 import com.amazonaws.services.dynamodbv2.model.Projection;
 import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -35,15 +37,24 @@ import org.apache.hadoop.dynamodb.filter.DynamoDBQueryFilter;
 import org.apache.hadoop.hive.ql.index.IndexPredicateAnalyzer;
 import org.apache.hadoop.hive.ql.index.IndexSearchCondition;
 import org.apache.hadoop.hive.ql.metadata.HiveStoragePredicateHandler.DecomposedPredicate;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFIn;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
 import org.apache.hadoop.hive.serde.serdeConstants;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
 
 public class DynamoDBFilterPushdown {
 
   private static final Log log = LogFactory.getLog(DynamoDBFilterPushdown.class);
 
   private final Set<String> eligibleHiveTypes = new HashSet<>();
+  private final Set<DynamoDBFilterOperator> eligibleOperatorsForHash = new HashSet<>();
   private final Set<DynamoDBFilterOperator> eligibleOperatorsForRange = new HashSet<>();
   private final IndexPredicateAnalyzer analyzer = new IndexPredicateAnalyzer();
 
@@ -57,8 +68,13 @@ public class DynamoDBFilterPushdown {
     eligibleHiveTypes.add(serdeConstants.STRING_TYPE_NAME);
     eligibleHiveTypes.add(serdeConstants.BINARY_TYPE_NAME);
 
+    // An IN condition is read with one query per value
+    eligibleOperatorsForHash.add(DynamoDBFilterOperator.EQ);
+    eligibleOperatorsForHash.add(DynamoDBFilterOperator.IN);
+
     // Not all scan operators are supported by DynamoDB Query API
     eligibleOperatorsForRange.add(DynamoDBFilterOperator.EQ);
+    eligibleOperatorsForRange.add(DynamoDBFilterOperator.IN);
     eligibleOperatorsForRange.add(DynamoDBFilterOperator.LE);
     eligibleOperatorsForRange.add(DynamoDBFilterOperator.LT);
     eligibleOperatorsForRange.add(DynamoDBFilterOperator.GE);
@@ -174,10 +190,143 @@ public class DynamoDBFilterPushdown {
     }
 
     List<IndexSearchCondition> searchConditions = new ArrayList<>();
-    analyzer.analyzePredicate(predicate, searchConditions);
+    List<ExprNodeDesc> conjuncts = new ArrayList<>();
+    addConjuncts(rewriteOrOfEqualities(predicate), conjuncts);
+    for (ExprNodeDesc conjunct : conjuncts) {
+      IndexSearchCondition inCondition = getInSearchCondition(hiveTypeMapping, conjunct);
+      if (inCondition != null) {
+        searchConditions.add(inCondition);
+      } else {
+        analyzer.analyzePredicate(conjunct, searchConditions);
+      }
+    }
     return searchConditions;
   }
 
+  private void addConjuncts(ExprNodeDesc predicate, List<ExprNodeDesc> conjuncts) {
+    if (predicate instanceof ExprNodeGenericFuncDesc
+        && ((ExprNodeGenericFuncDesc) predicate).getGenericUDF() instanceof GenericUDFOPAnd) {
+      for (ExprNodeDesc child : predicate.getChildren()) {
+        addConjuncts(child, conjuncts);
+      }
+    } else {
+      conjuncts.add(predicate);
+    }
+  }
+
+  /*
+   * The analyzer only accepts comparisons of a column with one constant, so it never returns IN
+   * conditions. Returns the search condition of an IN of constants on an eligible column, or null
+   * if the conjunct isn't one. The condition's expression is the whole IN, so that every value is
+   * read back from it and the pushed predicate keeps them all.
+   */
+  private IndexSearchCondition getInSearchCondition(Map<String, String> hiveTypeMapping,
+      ExprNodeDesc conjunct) {
+    if (!(conjunct instanceof ExprNodeGenericFuncDesc)
+        || !(((ExprNodeGenericFuncDesc) conjunct).getGenericUDF() instanceof GenericUDFIn)) {
+      return null;
+    }
+    List<ExprNodeDesc> children = conjunct.getChildren();
+    if (children.size() < 2 || !(children.get(0) instanceof ExprNodeColumnDesc)) {
+      return null;
+    }
+    ExprNodeColumnDesc column = (ExprNodeColumnDesc) children.get(0);
+    if (!eligibleHiveTypes.contains(hiveTypeMapping.get(column.getColumn()))) {
+      return null;
+    }
+    for (ExprNodeDesc value : children.subList(1, children.size())) {
+      if (!(value instanceof ExprNodeConstantDesc)) {
+        return null;
+      }
+    }
+    return new IndexSearchCondition(column, DynamoDBFilterOperator.IN.getHiveClass(),
+        (ExprNodeConstantDesc) children.get(1), (ExprNodeGenericFuncDesc) conjunct);
+  }
+
+  /*
+   * The analyzer doesn't look into ORs, so ORed equalities on one column, like
+   * "id = 1 OR id = 2", are rewritten into the IN condition "id IN (1, 2)" it can push down. Only
+   * the conjuncts of the predicate are rewritten. The whole predicate stays the residual
+   * predicate, so Hive still evaluates the original ORs.
+   */
+  private ExprNodeDesc rewriteOrOfEqualities(ExprNodeDesc predicate) {
+    if (!(predicate instanceof ExprNodeGenericFuncDesc)) {
+      return predicate;
+    }
+    ExprNodeGenericFuncDesc function = (ExprNodeGenericFuncDesc) predicate;
+    if (function.getGenericUDF() instanceof GenericUDFOPOr) {
+      ExprNodeDesc inPredicate = getInPredicate(function);
+      return inPredicate == null ? predicate : inPredicate;
+    }
+    if (!(function.getGenericUDF() instanceof GenericUDFOPAnd)) {
+      return predicate;
+    }
+
+    List<ExprNodeDesc> children = new ArrayList<>();
+    boolean rewritten = false;
+    for (ExprNodeDesc child : function.getChildren()) {
+      ExprNodeDesc rewrittenChild = rewriteOrOfEqualities(child);
+      rewritten |= rewrittenChild != child;
+      children.add(rewrittenChild);
+    }
+    return rewritten ? new ExprNodeGenericFuncDesc(function.getTypeInfo(),
+        function.getGenericUDF(), children) : predicate;
+  }
+
+  /*
+   * Returns the IN condition matching the same rows as the OR, or null if the OR isn't made of
+   * equalities and IN conditions on one column.
+   */
+  private ExprNodeDesc getInPredicate(ExprNodeGenericFuncDesc orPredicate) {
+    ExprNodeColumnDesc column = null;
+    List<ExprNodeDesc> values = new ArrayList<>();
+    Deque<ExprNodeDesc> disjuncts = new ArrayDeque<>(orPredicate.getChildren());
+    while (!disjuncts.isEmpty()) {
+      ExprNodeDesc disjunct = disjuncts.poll();
+      if (!(disjunct instanceof ExprNodeGenericFuncDesc)) {
+        return null;
+      }
+      GenericUDF udf = ((ExprNodeGenericFuncDesc) disjunct).getGenericUDF();
+      List<ExprNodeDesc> children = disjunct.getChildren();
+      if (udf instanceof GenericUDFOPOr) {
+        disjuncts.addAll(children);
+        continue;
+      }
+
+      ExprNodeDesc columnChild;
+      List<ExprNodeDesc> valueChildren;
+      if (udf instanceof GenericUDFOPEqual && children.size() == 2) {
+        // The column may be on either side of an equality
+        boolean columnFirst = children.get(0) instanceof ExprNodeColumnDesc;
+        columnChild = children.get(columnFirst ? 0 : 1);
+        valueChildren = children.subList(columnFirst ? 1 : 0, columnFirst ? 2 : 1);
+      } else if (udf instanceof GenericUDFIn && children.size() > 1) {
+        columnChild = children.get(0);
+        valueChildren = children.subList(1, children.size());
+      } else {
+        return null;
+      }
+
+      if (!(columnChild instanceof ExprNodeColumnDesc) || (column != null && !column.getColumn()
+          .equals(((ExprNodeColumnDesc) columnChild).getColumn()))) {
+        return null;
+      }
+      column = (ExprNodeColumnDesc) columnChild;
+      for (ExprNodeDesc value : valueChildren) {
+        if (!(value instanceof ExprNodeConstantDesc)) {
+          return null;
+        }
+        values.add(value);
+      }
+    }
+
+    List<ExprNodeDesc> inChildren = new ArrayList<>();
+    inChildren.add(column);
+    inChildren.addAll(values);
+    return new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo, new GenericUDFIn(),
+        inChildren);
+  }
+
   private List<IndexSearchCondition> prioritizeSearchConditions(List<IndexSearchCondition>
       searchConditions) {
     Map<String, IndexSearchCondition> priorityFilterMap = new HashMap<>();
@@ -287,6 +436,9 @@ public class DynamoDBFilterPushdown {
     if (indexUseForQuery != null) {
       log.info("Setting index name used for query: " + indexUseForQuery.getIndexName());
       filter.setIndex(indexUseForQuery);
+    } else if (keyFiltersUseForQuery.size() == schema.size()) {
+      // Conditions on the whole primary key can be read by key
+      filter.setPrimaryKeyConditions(true);
     }
     for (DynamoDBFilter f : keyFiltersUseForQuery) {
       filter.addKeyCondition(f);
@@ -367,7 +519,7 @@ public class DynamoDBFilterPushdown {
       String hashKeyName = schema.get(HASH_KEY_INDEX).getAttributeName();
       if (filterMap.containsKey(hashKeyName)) {
         DynamoDBFilter hashKeyFilter = filterMap.get(hashKeyName);
-        if (DynamoDBFilterOperator.EQ.equals(hashKeyFilter.getOperator())) {
+        if (eligibleOperatorsForHash.contains(hashKeyFilter.getOperator())) {
           dynamoDBFilters.add(hashKeyFilter);
           hashKeyFilterExists = true;
         }
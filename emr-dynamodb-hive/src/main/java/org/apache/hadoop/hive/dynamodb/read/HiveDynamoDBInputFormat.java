@@ -15,15 +15,19 @@ package org.apache.hadoop.hive.dynamodb.read;
 
 import com.amazonaws.services.dynamodbv2.model.TableDescription;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.dynamodb.DynamoDBClient;
 import org.apache.hadoop.dynamodb.DynamoDBConstants;
 import org.apache.hadoop.dynamodb.DynamoDBItemWritable;
 import org.apache.hadoop.dynamodb.filter.DynamoDBQueryFilter;
+import org.apache.hadoop.dynamodb.filter.DynamoDBQuerySegment;
 import org.apache.hadoop.dynamodb.preader.DynamoDBRecordReaderContext;
 import org.apache.hadoop.dynamodb.read.DefaultDynamoDBRecordReader;
 import org.apache.hadoop.dynamodb.read.DynamoDBInputFormat;
@@ -36,6 +40,7 @@ import org.apache.hadoop.hive.dynamodb.util.HiveDynamoDBUtil;
 import org.apache.hadoop.hive.ql.index.IndexPredicateAnalyzer;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.TableScanDesc;
+import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
@@ -79,7 +84,7 @@ public class HiveDynamoDBInputFormat extends DynamoDBInputFormat {
     DynamoDBSplit bbSplit = (DynamoDBSplit) split;
     bbSplit.setDynamoDBFilterPushdown(queryFilter);
 
-    Collection<String> attributes = (columnMapping == null ? null : columnMapping.values());
+    Collection<String> attributes = getProjectedAttributes(conf, columnMapping, hiveTypeMapping);
     DynamoDBRecordReaderContext context = buildHiveDynamoDBRecordReaderContext(bbSplit, conf,
         reporter, attributes);
     return new DefaultDynamoDBRecordReader(context);
@@ -89,8 +94,9 @@ public class HiveDynamoDBInputFormat extends DynamoDBInputFormat {
   protected int getNumSegments(int tableNormalizedReadThroughput, int
       tableNormalizedWriteThroughput, long currentTableSizeBytes, JobConf conf) throws IOException {
     if (isQuery(conf)) {
-      log.info("Defaulting to 1 segment because there are key conditions");
-      return 1;
+      int numSegments = getQuerySegments(conf).size();
+      log.info("Using " + numSegments + " segments for the queries of the key conditions");
+      return numSegments;
     } else {
       return super.getNumSegments(tableNormalizedReadThroughput, tableNormalizedWriteThroughput,
           currentTableSizeBytes, conf);
@@ -101,11 +107,19 @@ public class HiveDynamoDBInputFormat extends DynamoDBInputFormat {
   protected int getNumMappers(int maxClusterMapTasks, int configuredReadThroughput, JobConf conf)
       throws IOException {
     if (isQuery(conf)) {
-      log.info("Defaulting to 1 mapper because there are key conditions");
-      return 1;
-    } else {
-      return super.getNumMappers(maxClusterMapTasks, configuredReadThroughput, conf);
+      int numSegments = getQuerySegments(conf).size();
+      if (numSegments == 1) {
+        log.info("Defaulting to 1 mapper because there are key conditions");
+        return 1;
+      }
+      if (isPrimaryKeyLookup(conf) && numSegments <= DynamoDBConstants.MAX_BATCH_GET_ITEMS) {
+        // Starting more tasks takes longer than reading the keys
+        log.info("Defaulting to 1 mapper because the " + numSegments + " keys to look up fit in "
+            + "one batch");
+        return 1;
+      }
     }
+    return super.getNumMappers(maxClusterMapTasks, configuredReadThroughput, conf);
   }
 
   @Override
@@ -121,13 +135,63 @@ public class HiveDynamoDBInputFormat extends DynamoDBInputFormat {
     return context;
   }
 
+  /**
+   * Returns the DynamoDB attributes backing the Hive columns read by this query, or null when the
+   * whole item is needed, i.e. when there is no column mapping or a column being read is not
+   * mapped to a single attribute (such as a column holding the entire item).
+   */
+  private Collection<String> getProjectedAttributes(JobConf conf,
+      Map<String, String> columnMapping, Map<String, String> hiveTypeMapping) {
+    if (columnMapping == null || columnMapping.isEmpty()) {
+      return null;
+    }
+
+    Collection<String> readColumns = ColumnProjectionUtils.isReadAllColumns(conf)
+        ? hiveTypeMapping.keySet() : Arrays.asList(ColumnProjectionUtils.getReadColumnNames(conf));
+    if (readColumns.isEmpty()) {
+      if (ColumnProjectionUtils.isReadAllColumns(conf)) {
+        return null;
+      }
+      // No column is needed (e.g. count(*)), any mapped attribute is enough to produce the rows
+      return columnMapping.values();
+    }
+
+    Set<String> attributes = new LinkedHashSet<>();
+    for (String column : readColumns) {
+      String attribute = columnMapping.get(column.toLowerCase());
+      if (attribute == null) {
+        log.info("Column " + column + " is not mapped to an attribute, reading whole items");
+        return null;
+      }
+      attributes.add(attribute);
+    }
+    log.info("Projecting DynamoDB attributes " + attributes);
+    return attributes;
+  }
+
   private boolean isQuery(JobConf conf) throws IOException {
+    return getQueryFilter(conf).getKeyConditions().size() >= 1;
+  }
+
+  private boolean isPrimaryKeyLookup(JobConf conf) throws IOException {
+    return conf.getBoolean(DynamoDBConstants.PRIMARY_KEY_LOOKUP,
+        DynamoDBConstants.DEFAULT_PRIMARY_KEY_LOOKUP) && getQueryFilter(conf).isPrimaryKeyLookup();
+  }
+
+  /**
+   * Returns the queries the key conditions are fanned out to, one per segment. The record readers
+   * find the same ones from the same configuration.
+   */
+  private List<DynamoDBQuerySegment> getQuerySegments(JobConf conf) throws IOException {
+    return getQueryFilter(conf).getQuerySegments(conf.getInt(
+        DynamoDBConstants.QUERY_RANGE_SEGMENTS, DynamoDBConstants.DEFAULT_QUERY_RANGE_SEGMENTS));
+  }
+
+  private DynamoDBQueryFilter getQueryFilter(JobConf conf) throws IOException {
     Map<String, String> hiveDynamoDBMapping =
         HiveDynamoDBUtil.fromJsonString(conf.get(DynamoDBConstants.DYNAMODB_COLUMN_MAPPING));
     Map<String, String> hiveTypeMapping = HiveDynamoDBUtil.extractHiveTypeMapping(conf);
-    DynamoDBQueryFilter filter = getQueryFilter(conf, hiveDynamoDBMapping, hiveTypeMapping);
-
-    return filter.getKeyConditions().size() >= 1;
+    return getQueryFilter(conf, hiveDynamoDBMapping, hiveTypeMapping);
   }
 
   private DynamoDBQueryFilter getQueryFilter(JobConf conf, Map<String, String>
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.hive.dynamodb.udf;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.hadoop.dynamodb.preader.DynamoDBLookup;
+import org.apache.hadoop.dynamodb.preader.DynamoDBLookup.LookupResult;
+import org.apache.hadoop.hive.dynamodb.type.HiveDynamoDBItemType;
+import org.apache.hadoop.hive.dynamodb.type.HiveDynamoDBType;
+import org.apache.hadoop.hive.dynamodb.type.HiveDynamoDBTypeFactory;
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.MapredContext;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.session.SessionState;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDTF;
+import org.apache.hadoop.hive.serde2.objectinspector.ConstantObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * Joins the rows of a query with the items of a DynamoDB table on the map side, by looking up the
+ * item of each row's primary key with a {@link DynamoDBLookup}, instead of reading the whole table
+ * and joining it in a shuffle.
+ *
+ * <p>The first argument is the table name and the second one the key attribute names, separated
+ * by commas. They are followed by a value for each key attribute, and by any columns to pass
+ * through. A row is returned for each input row, with the key values, the passed through columns
+ * and the item as a map&lt;string,string&gt; of JSON attribute values, like a column of a
+ * {@link org.apache.hadoop.hive.dynamodb.DynamoDBStorageHandler} table mapped to whole items. The
+ * item is null if the table has no item with the key.
+ *
+ * <p>Rows are returned once their batch has been read, not in the order of the input, so the
+ * columns to join with have to be passed through rather than joined by a LATERAL VIEW.
+ */
+@Description(name = "dynamodb_lookup",
+    value = "_FUNC_(table, keyNames, keyValue1[, keyValue2], col1, col2, ...) - Returns the key "
+        + "values and columns passed with the item of the key in the DynamoDB table",
+    extended = "Example:\n"
+        + "  > SELECT dynamodb_lookup('Customers', 'customerId', o.customer_id, o.amount)\n"
+        + "  > AS (customer_id, amount, customer) FROM orders o;")
+public class DynamoDBLookupUDTF extends GenericUDTF {
+
+  private static final int KEY_VALUES_INDEX = 2;
+
+  private String tableName;
+  private String[] keyNames;
+  private ObjectInspector[] argumentInspectors;
+  private HiveDynamoDBType[] keyTypes;
+  private JobConf conf;
+  private Reporter reporter;
+  private DynamoDBLookup<Object[]> lookup;
+  private final HiveDynamoDBItemType itemType = new HiveDynamoDBItemType();
+
+  @Override
+  public void configure(MapredContext context) {
+    conf = context.getJobConf();
+    reporter = context.getReporter();
+  }
+
+  @Override
+  public StructObjectInspector initialize(StructObjectInspector argOIs)
+      throws UDFArgumentException {
+    List<? extends StructField> arguments = argOIs.getAllStructFieldRefs();
+    if (arguments.size() < KEY_VALUES_INDEX + 1) {
+      throw new UDFArgumentLengthException("dynamodb_lookup takes a table name, key attribute "
+          + "names and key values");
+    }
+    argumentInspectors = new ObjectInspector[arguments.size()];
+    for (int i = 0; i < arguments.size(); i++) {
+      argumentInspectors[i] = arguments.get(i).getFieldObjectInspector();
+    }
+    tableName = getConstantString(0);
+    keyNames = getConstantString(1).split(",");
+    for (int i = 0; i < keyNames.length; i++) {
+      keyNames[i] = keyNames[i].trim();
+    }
+    if (arguments.size() < KEY_VALUES_INDEX + keyNames.length) {
+      throw new UDFArgumentLengthException("dynamodb_lookup takes a value for each of the key "
+          + "attributes " + String.join(",", keyNames));
+    }
+
+    keyTypes = new HiveDynamoDBType[keyNames.length];
+    for (int i = 0; i < keyNames.length; i++) {
+      ObjectInspector keyInspector = argumentInspectors[KEY_VALUES_INDEX + i];
+      if (keyInspector.getCategory() != ObjectInspector.Category.PRIMITIVE) {
+        throw new UDFArgumentTypeException(KEY_VALUES_INDEX + i, "The value of key attribute "
+            + keyNames[i] + " must be a primitive, but was " + keyInspector.getTypeName());
+      }
+      try {
+        keyTypes[i] = HiveDynamoDBTypeFactory.getTypeObjectFromHiveType(keyInspector);
+      } catch (IllegalArgumentException e) {
+        throw new UDFArgumentTypeException(KEY_VALUES_INDEX + i, e.getMessage());
+      }
+    }
+
+    List<String> fieldNames = new ArrayList<>();
+    List<ObjectInspector> fieldInspectors = new ArrayList<>();
+    for (int i = KEY_VALUES_INDEX; i < argumentInspectors.length; i++) {
+      fieldNames.add("col" + (i - KEY_VALUES_INDEX));
+      fieldInspectors.add(ObjectInspectorUtils.getStandardObjectInspector(argumentInspectors[i],
+          ObjectInspectorCopyOption.JAVA));
+    }
+    fieldNames.add("item");
+    fieldInspectors.add(ObjectInspectorFactory.getStandardMapObjectInspector(
+        PrimitiveObjectInspectorFactory.javaStringObjectInspector,
+        PrimitiveObjectInspectorFactory.javaStringObjectInspector));
+    return ObjectInspectorFactory.getStandardStructObjectInspector(fieldNames, fieldInspectors);
+  }
+
+  @Override
+  public void process(Object[] args) throws HiveException {
+    // The row is kept until its batch has been read, so Hive's reused objects are copied
+    Object[] row = new Object[args.length - KEY_VALUES_INDEX + 1];
+    for (int i = KEY_VALUES_INDEX; i < args.length; i++) {
+      row[i - KEY_VALUES_INDEX] = ObjectInspectorUtils.copyToStandardObject(args[i],
+          argumentInspectors[i], ObjectInspectorCopyOption.JAVA);
+    }
+
+    Map<String, AttributeValue> key = new HashMap<>();
+    for (int i = 0; i < keyNames.length; i++) {
+      AttributeValue keyValue = args[KEY_VALUES_INDEX + i] == null ? null
+          : keyTypes[i].getDynamoDBData(args[KEY_VALUES_INDEX + i],
+              argumentInspectors[KEY_VALUES_INDEX + i], false);
+      if (keyValue == null) {
+        // A key with a null attribute has no item
+        forward(row);
+        return;
+      }
+      key.put(keyNames[i], keyValue);
+    }
+
+    try {
+      getLookup().lookup(key, row);
+      forwardResults();
+    } catch (IOException e) {
+      throw new HiveException("Could not look up the items of table " + tableName, e);
+    }
+  }
+
+  @Override
+  public void close() throws HiveException {
+    if (lookup == null) {
+      return;
+    }
+    try {
+      lookup.flush();
+      forwardResults();
+    } catch (IOException e) {
+      throw new HiveException("Could not look up the items of table " + tableName, e);
+    } finally {
+      lookup.close();
+      lookup = null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "dynamodb_lookup";
+  }
+
+  private DynamoDBLookup<Object[]> getLookup() {
+    if (lookup == null) {
+      if (conf == null) {
+        // Not configured when Hive runs the query in the client, without a task
+        conf = SessionState.get() == null ? new JobConf()
+            : new JobConf(SessionState.get().getConf());
+      }
+      lookup = DynamoDBLookup.create(conf, tableName, null, reporter);
+    }
+    return lookup;
+  }
+
+  private void forwardResults() throws IOException, HiveException {
+    LookupResult<Object[]> result;
+    while ((result = lookup.poll()) != null) {
+      Object[] row = result.getTag();
+      row[row.length - 1] = result.getItem() == null ? null
+          : itemType.buildHiveData(result.getItem());
+      forward(row);
+    }
+  }
+
+  private String getConstantString(int index) throws UDFArgumentException {
+    ObjectInspector inspector = argumentInspectors[index];
+    Object value = inspector instanceof ConstantObjectInspector
+        ? ((ConstantObjectInspector) inspector).getWritableConstantValue() : null;
+    if (value == null || value.toString().trim().isEmpty()) {
+      throw new UDFArgumentTypeException(index, "dynamodb_lookup takes a constant string as "
+          + (index == 0 ? "table name" : "key attribute names"));
+    }
+    return value.toString().trim();
+  }
+}
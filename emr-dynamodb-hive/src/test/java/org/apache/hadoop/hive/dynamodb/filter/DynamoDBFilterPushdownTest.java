@@ -20,7 +20,9 @@ import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFIn;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
 import org.apache.hadoop.hive.serde.serdeConstants;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
 import org.junit.Assert;
@@ -425,6 +427,67 @@ public class DynamoDBFilterPushdownTest {
     Assert.assertEquals(0, dynamoDBQueryFilter.getKeyConditions().size());
   }
 
+  @Test
+  public void testPredicateToDynamoDBFilterWithHashKeyIn() {
+    ExprNodeDesc combinedPredicate = buildPredicate(Lists.newArrayList(
+        new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo, new GenericUDFIn(),
+            Lists.newArrayList(
+                new ExprNodeColumnDesc(TypeInfoFactory.stringTypeInfo, HASH_KEY_NAME, null,
+                    false),
+                new ExprNodeConstantDesc(TypeInfoFactory.stringTypeInfo, HASH_KEY_VALUE),
+                new ExprNodeConstantDesc(TypeInfoFactory.stringTypeInfo, COLUMN1_VALUE))),
+        column2Predicate));
+
+    DynamoDBQueryFilter dynamoDBQueryFilter = dynamoDBFilterPushdown.predicateToDynamoDBFilter(
+        tableKeySchema, null, null,
+        hiveDynamoDBMapping, hiveTypeMapping, combinedPredicate);
+
+    Assert.assertEquals(1, dynamoDBQueryFilter.getKeyConditions().size());
+    assertInKeyCondition(HASH_KEY_NAME, dynamoDBQueryFilter, HASH_KEY_VALUE, COLUMN1_VALUE);
+    Assert.assertTrue(dynamoDBQueryFilter.getScanFilter().containsKey(COLUMN2_NAME));
+    // The range key is unknown, so the keys are queried
+    Assert.assertFalse(dynamoDBQueryFilter.isPrimaryKeyLookup());
+  }
+
+  @Test
+  public void testPredicateToDynamoDBFilterWithHashKeyOrEqualities() {
+    ExprNodeDesc otherHashKeyPredicate = new ExprNodeGenericFuncDesc(
+        TypeInfoFactory.booleanTypeInfo,
+        new GenericUDFOPEqual(), Lists.newArrayList(
+        new ExprNodeConstantDesc(TypeInfoFactory.stringTypeInfo, COLUMN1_VALUE),
+        new ExprNodeColumnDesc(TypeInfoFactory.stringTypeInfo, HASH_KEY_NAME, null, false)
+    ));
+    ExprNodeDesc orPredicate = new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo,
+        new GenericUDFOPOr(), Lists.newArrayList(hashKeyPredicate, otherHashKeyPredicate));
+    ExprNodeDesc combinedPredicate = buildPredicate(Lists.newArrayList(
+        orPredicate,
+        rangeKeyPredicate));
+
+    DecomposedPredicate decomposedPredicate =
+        dynamoDBFilterPushdown.pushPredicate(hiveTypeMapping, combinedPredicate);
+    DynamoDBQueryFilter dynamoDBQueryFilter = dynamoDBFilterPushdown.predicateToDynamoDBFilter(
+        tableKeySchema, null, null,
+        hiveDynamoDBMapping, hiveTypeMapping, decomposedPredicate.pushedPredicate);
+
+    Assert.assertEquals(2, dynamoDBQueryFilter.getKeyConditions().size());
+    assertInKeyCondition(HASH_KEY_NAME, dynamoDBQueryFilter, HASH_KEY_VALUE, COLUMN1_VALUE);
+    assertKeyCondition(RANGE_KEY_NAME, RANGE_KEY_VALUE, dynamoDBQueryFilter);
+    Assert.assertEquals(2, dynamoDBQueryFilter.getQuerySegments(1).size());
+    Assert.assertTrue(dynamoDBQueryFilter.isPrimaryKeyLookup());
+    Assert.assertEquals(2, dynamoDBQueryFilter.getPrimaryKeys().size());
+  }
+
+  @Test
+  public void testPredicateToDynamoDBFilterWithOrOfDifferentColumnsNotPushed() {
+    ExprNodeDesc orPredicate = new ExprNodeGenericFuncDesc(TypeInfoFactory.booleanTypeInfo,
+        new GenericUDFOPOr(), Lists.newArrayList(hashKeyPredicate, column1Predicate));
+
+    DecomposedPredicate decomposedPredicate =
+        dynamoDBFilterPushdown.pushPredicate(hiveTypeMapping, orPredicate);
+
+    Assert.assertNull(decomposedPredicate);
+  }
+
   private ExprNodeDesc buildPredicate(List<ExprNodeDesc> predicates) {
     ExprNodeDesc combinedPredicate = null;
     for (ExprNodeDesc predicate : predicates) {
@@ -498,6 +561,19 @@ public class DynamoDBFilterPushdownTest {
         .withProjection(projection);
   }
 
+  private void assertInKeyCondition(String columnName, DynamoDBQueryFilter filter,
+      String... columnValues) {
+    Condition condition = new Condition();
+    List<AttributeValue> attributeValueList = new ArrayList<>();
+    for (String columnValue : columnValues) {
+      attributeValueList.add(new AttributeValue(columnValue));
+    }
+    condition.setAttributeValueList(attributeValueList);
+    condition.setComparisonOperator(DynamoDBFilterOperator.IN.getDynamoDBName());
+    Assert.assertEquals(condition.toString(),
+        filter.getKeyConditions().get(columnName).toString());
+  }
+
   private void assertKeyCondition(String columnName, String columnValue,
       DynamoDBQueryFilter filter) {
     Condition hashKeyCondition = new Condition();
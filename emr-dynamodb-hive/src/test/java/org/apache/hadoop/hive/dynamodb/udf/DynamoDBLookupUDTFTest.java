@@ -0,0 +1,98 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.hive.dynamodb.udf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.Collector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+public class DynamoDBLookupUDTFTest {
+
+  private static final ObjectInspector STRING =
+      PrimitiveObjectInspectorFactory.javaStringObjectInspector;
+  private static final ObjectInspector LONG =
+      PrimitiveObjectInspectorFactory.javaLongObjectInspector;
+
+  private final DynamoDBLookupUDTF udtf = new DynamoDBLookupUDTF();
+
+  @Test
+  public void testReturnsTheKeyValuesColumnsAndItem() throws UDFArgumentException {
+    StructObjectInspector output = udtf.initialize(arguments(constant("Customers"),
+        constant("customerId,region"), LONG, STRING, STRING));
+
+    assertEquals("struct<col0:bigint,col1:string,col2:string,item:map<string,string>>",
+        output.getTypeName());
+  }
+
+  @Test(expected = UDFArgumentException.class)
+  public void testRequiresAConstantTableName() throws UDFArgumentException {
+    udtf.initialize(arguments(STRING, constant("customerId"), LONG));
+  }
+
+  @Test(expected = UDFArgumentException.class)
+  public void testRequiresAValueForEachKeyAttribute() throws UDFArgumentException {
+    udtf.initialize(arguments(constant("Customers"), constant("customerId,region"), LONG));
+  }
+
+  @Test(expected = UDFArgumentException.class)
+  public void testRequiresPrimitiveKeyValues() throws UDFArgumentException {
+    udtf.initialize(arguments(constant("Customers"), constant("customerId"),
+        ObjectInspectorFactory.getStandardListObjectInspector(STRING)));
+  }
+
+  @Test
+  public void testReturnsRowsWithANullKeyWithoutAnItem() throws HiveException {
+    final List<Object> rows = new ArrayList<>();
+    udtf.setCollector(new Collector() {
+      @Override
+      public void collect(Object row) {
+        rows.add(row);
+      }
+    });
+    udtf.initialize(arguments(constant("Customers"), constant("customerId"), LONG, STRING));
+
+    udtf.process(new Object[] {"Customers", "customerId", null, "order-1"});
+    udtf.close();
+
+    assertEquals(1, rows.size());
+    assertArrayEquals(new Object[] {null, "order-1", null}, (Object[]) rows.get(0));
+  }
+
+  private static ObjectInspector constant(String value) {
+    return PrimitiveObjectInspectorFactory.getPrimitiveWritableConstantObjectInspector(
+        TypeInfoFactory.stringTypeInfo, new Text(value));
+  }
+
+  private static StructObjectInspector arguments(ObjectInspector... inspectors) {
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < inspectors.length; i++) {
+      names.add("_col" + i);
+    }
+    return ObjectInspectorFactory.getStandardStructObjectInspector(names,
+        Arrays.asList(inspectors));
+  }
+}
@@ -14,6 +14,7 @@
 package org.apache.hadoop.dynamodb.exportformat;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -38,7 +39,10 @@ public class ExportFileFlusher {
       FILE_FLUSHER_POOL_SIZE, 1L, TimeUnit.MINUTES, new SynchronousQueue<Runnable>(),
       new ThreadPoolExecutor.CallerRunsPolicy());
   private final AbstractTimeSource time;
+  private final Object pendingClosesLock = new Object();
   private volatile Throwable exception = null;
+  // Guarded by pendingClosesLock
+  private int pendingCloses;
 
   public ExportFileFlusher(AbstractTimeSource time) {
     this.time = time;
@@ -48,6 +52,9 @@ public class ExportFileFlusher {
   public void close(final RecordWriter recordWriter, final Reporter reporter) throws IOException {
     throwCaughtException();
 
+    synchronized (pendingClosesLock) {
+      pendingCloses++;
+    }
     closePool.execute(new Runnable() {
       @Override
       public void run() {
@@ -60,12 +67,35 @@ public class ExportFileFlusher {
           log.error(
               "Exception caught while closing stream. This exception will be thrown later.", e);
           exception = e;
+        } finally {
+          synchronized (pendingClosesLock) {
+            pendingCloses--;
+            pendingClosesLock.notifyAll();
+          }
         }
 
       }
     });
   }
 
+  /**
+   * Waits until the files handed to close() so far are closed. Unlike sync(), more files can be
+   * closed afterwards.
+   */
+  public void awaitClosed() throws IOException {
+    synchronized (pendingClosesLock) {
+      while (pendingCloses > 0) {
+        try {
+          pendingClosesLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting for files to close");
+        }
+      }
+    }
+    throwCaughtException();
+  }
+
   public void sync() throws IOException {
     log.info("Waiting for all output files to properly close.");
     closePool.shutdown();
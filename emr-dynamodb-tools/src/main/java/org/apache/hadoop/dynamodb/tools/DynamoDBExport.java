@@ -55,6 +55,7 @@ public class DynamoDBExport extends Configured implements Tool {
     jobConf.setOutputKeyClass(Text.class);
     jobConf.setOutputValueClass(Text.class);
     jobConf.setMapperClass(ExportMapper.class);
+    jobConf.setMapRunnerClass(ExportMapRunner.class);
     jobConf.setReducerClass(IdentityReducer.class);
     jobConf.setInputFormat(DynamoDBInputFormat.class);
     jobConf.setOutputFormat(ExportManifestOutputFormat.class);
@@ -84,6 +85,12 @@ public class DynamoDBExport extends Configured implements Tool {
       }
     }
     setTableProperties(jobConf, tableName, readRatio, totalSegments);
+    if (jobConf.getBoolean(DynamoDBConstants.SEGMENT_CLAIMING, false)
+        || jobConf.getBoolean(DynamoDBConstants.SCAN_CHECKPOINTING, false)) {
+      // Concurrent attempts of a task would split its segment claims between them, and overwrite
+      // each other's checkpoints
+      jobConf.setMapSpeculativeExecution(false);
+    }
 
     Date startTime = new Date();
     System.out.println("Job started: " + startTime);
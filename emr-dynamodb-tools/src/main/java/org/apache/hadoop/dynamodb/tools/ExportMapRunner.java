@@ -0,0 +1,36 @@
+/**
+ * Copyright 2012-2016 Amazon.com, Inc. or its affiliates. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"). You may not use this file
+ * except in compliance with the License. A copy of the License is located at
+ *
+ *     http://aws.amazon.com/apache2.0/
+ *
+ * or in the "LICENSE.TXT" file accompanying this file. This file is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.apache.hadoop.dynamodb.tools;
+
+import java.io.IOException;
+import org.apache.hadoop.dynamodb.DynamoDBItemWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.MapRunner;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+
+/**
+ * Lets the {@link ExportMapper} emit the files of previous attempts before the first item, which
+ * a resumed scan may never read.
+ */
+class ExportMapRunner extends MapRunner<Text, DynamoDBItemWritable, Text, Text> {
+
+  @Override
+  public void run(RecordReader<Text, DynamoDBItemWritable> input,
+      OutputCollector<Text, Text> output, Reporter reporter) throws IOException {
+    ((ExportMapper) getMapper()).restoreOutputFiles(output, reporter);
+    super.run(input, output, reporter);
+  }
+}
@@ -13,14 +13,26 @@
 
 package org.apache.hadoop.dynamodb.tools;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.dynamodb.DynamoDBConstants;
 import org.apache.hadoop.dynamodb.DynamoDBItemWritable;
+import org.apache.hadoop.dynamodb.DynamoDBUtil;
 import org.apache.hadoop.dynamodb.exportformat.ExportFileFlusher;
 import org.apache.hadoop.dynamodb.exportformat.ExportOutputFormat;
+import org.apache.hadoop.dynamodb.preader.ScanCheckpoints;
 import org.apache.hadoop.dynamodb.util.TimeSource;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.JobConf;
@@ -31,30 +43,54 @@ import org.apache.hadoop.mapred.OutputFormat;
 import org.apache.hadoop.mapred.RecordWriter;
 import org.apache.hadoop.mapred.Reporter;
 
+/**
+ * Writes the items to files of at most {@link #MAX_ITEM_COUNT_PER_FILE} items and emits the file
+ * names for the manifest.
+ *
+ * <p>With scan checkpointing enabled, the mapper saves the scan's progress when it rotates files,
+ * at most every checkpoint interval, after the files written so far have been closed. It also
+ * saves the names of those files, so that a new attempt of the task, which resumes the scan after
+ * the saved progress, puts them in the manifest again. Files of a failed attempt that aren't in
+ * the manifest are ignored by the import tool. The items a failed attempt read after its last
+ * checkpoint may be exported twice; importing them twice writes the same items again.
+ */
 class ExportMapper extends MapReduceBase implements Mapper<Text, DynamoDBItemWritable, Text, Text> {
 
   private static final Log log = LogFactory.getLog(ExportMapper.class);
   private static final int MAX_ITEM_COUNT_PER_FILE = 100000;
+  private static final String FILE_LIST_DIR_NAME = "export-files";
   private final OutputFormat<NullWritable, DynamoDBItemWritable> outputFormat = new
       ExportOutputFormat();
   private final TimeSource time = new TimeSource();
   private final ExportFileFlusher flusher = new ExportFileFlusher(time);
+  private final List<String> closedFilenames = new ArrayList<>();
   private long itemCount = 0;
   private JobConf jobConf;
   private RecordWriter<NullWritable, DynamoDBItemWritable> recordWriter;
+  private String outputFilename;
+  // Null unless saving scan checkpoints
+  private Path fileListPath;
+  private long checkpointIntervalNanos;
+  private long lastCheckpointNanos;
 
   @Override
   public void map(Text key, DynamoDBItemWritable value, OutputCollector<Text, Text> output,
       Reporter reporter) throws IOException {
     // Rotate output file if needed
     if (itemCount % MAX_ITEM_COUNT_PER_FILE == 0) {
-      long start = time.getNanoTime();
+      final long start = time.getNanoTime();
       if (recordWriter != null) {
         flusher.close(recordWriter, reporter);
+        closedFilenames.add(outputFilename);
+        if (fileListPath != null
+            && time.getNanoTime() - lastCheckpointNanos >= checkpointIntervalNanos) {
+          checkpoint();
+        }
       }
 
       String newOutputFilename = generateFilename();
       recordWriter = outputFormat.getRecordWriter(null, jobConf, newOutputFilename, reporter);
+      outputFilename = newOutputFilename;
 
       long duration = time.getTimeSinceMs(start);
       log.info("Rotated over to file: " + newOutputFilename + " in " + (duration / 1000.0) + " "
@@ -65,9 +101,7 @@ class ExportMapper extends MapReduceBase implements Mapper<Text, DynamoDBItemWri
       // read spread on S3 when we later consume the data. We achieve this
       // by providing the reverse of the filename as the key in the mapper
       // output.
-      String sortKey = new StringBuilder(newOutputFilename).reverse().toString();
-      output.collect(new Text(sortKey), new Text(newOutputFilename));
-      reporter.incrCounter(Counters.OUTPUT_FILES, 1);
+      collectFilename(newOutputFilename, output, reporter);
     }
 
     // Write item to output file
@@ -88,6 +122,75 @@ class ExportMapper extends MapReduceBase implements Mapper<Text, DynamoDBItemWri
   @Override
   public void configure(JobConf job) {
     jobConf = job;
+
+    String taskId = DynamoDBUtil.getTaskId(job);
+    Path checkpointRoot = ScanCheckpoints.getCheckpointRoot(job);
+    // Like the scan checkpoints, the file list is shared by the attempts of the task
+    if (job.getBoolean(DynamoDBConstants.SCAN_CHECKPOINTING, false) && taskId != null
+        && checkpointRoot != null && !job.getMapSpeculativeExecution()) {
+      fileListPath = new Path(checkpointRoot, FILE_LIST_DIR_NAME + Path.SEPARATOR + taskId);
+      checkpointIntervalNanos = job.getLong(DynamoDBConstants.SCAN_CHECKPOINT_INTERVAL_MS,
+          DynamoDBConstants.DEFAULT_SCAN_CHECKPOINT_INTERVAL_MS) * 1000000L;
+      lastCheckpointNanos = time.getNanoTime();
+    }
+  }
+
+  /**
+   * Puts the files saved by previous attempts of the task in the manifest. Called before the
+   * first item is read, as the scan may have been completed by previous attempts.
+   */
+  void restoreOutputFiles(OutputCollector<Text, Text> output, Reporter reporter)
+      throws IOException {
+    if (fileListPath == null) {
+      return;
+    }
+    FileSystem fs = fileListPath.getFileSystem(jobConf);
+    if (!fs.exists(fileListPath)) {
+      return;
+    }
+
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(fs.open(fileListPath),
+        StandardCharsets.UTF_8))) {
+      String filename;
+      while ((filename = reader.readLine()) != null) {
+        closedFilenames.add(filename);
+        collectFilename(filename, output, reporter);
+      }
+    }
+    log.info("Restored " + closedFilenames.size() + " files written by previous attempts");
+  }
+
+  private void checkpoint() throws IOException {
+    long start = time.getNanoTime();
+    flusher.awaitClosed();
+
+    // Saved before the scan progress: at worst a new attempt exports some items twice
+    FileSystem fs = fileListPath.getFileSystem(jobConf);
+    Path tempPath = fileListPath.suffix(".tmp");
+    try (Writer writer = new OutputStreamWriter(fs.create(tempPath, true),
+        StandardCharsets.UTF_8)) {
+      for (String filename : closedFilenames) {
+        writer.write(filename);
+        writer.write('\n');
+      }
+    }
+    fs.delete(fileListPath, false);
+    if (!fs.rename(tempPath, fileListPath)) {
+      throw new IOException("Unable to rename " + tempPath + " to " + fileListPath);
+    }
+
+    if (ScanCheckpoints.saveForTask(jobConf)) {
+      log.info("Saved checkpoint after " + closedFilenames.size() + " files in "
+          + time.getTimeSinceMs(start) + " ms");
+    }
+    lastCheckpointNanos = time.getNanoTime();
+  }
+
+  private static void collectFilename(String filename, OutputCollector<Text, Text> output,
+      Reporter reporter) throws IOException {
+    String sortKey = new StringBuilder(filename).reverse().toString();
+    output.collect(new Text(sortKey), new Text(filename));
+    reporter.incrCounter(Counters.OUTPUT_FILES, 1);
   }
 
   private String generateFilename() {
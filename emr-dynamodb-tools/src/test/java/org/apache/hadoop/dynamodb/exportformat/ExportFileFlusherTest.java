@@ -106,6 +106,27 @@ public class ExportFileFlusherTest {
     assertEquals(ExportFileFlusher.FILE_FLUSHER_POOL_SIZE * 2, closedFiles.get());
   }
 
+  @Test
+  public void awaitClosed_whenFilesClosing_thenWaitsForThem() throws IOException {
+    doAnswer(new Answer() {
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable {
+        Thread.sleep(100);
+        closedFiles.incrementAndGet();
+        return null;
+      }
+    }).when(recordWriter).close(Reporter.NULL);
+
+    flusher.close(recordWriter, Reporter.NULL);
+    flusher.awaitClosed();
+    assertEquals(1, closedFiles.get());
+
+    // Files can still be closed afterwards
+    flusher.close(recordWriter, Reporter.NULL);
+    flusher.sync();
+    assertEquals(2, closedFiles.get());
+  }
+
   @Test
   public void close_whenIOE_thenConsecutiveCloseCallFails() throws IOException,
       InterruptedException {
@@ -24,7 +24,11 @@ public interface DynamoDbHiveShims {
 
   ExprNodeDesc deserializeExpression(String serializedFilterExpr);
 
-  ExprNodeGenericFuncDesc getIndexExpression(IndexSearchCondition condition);
+  /**
+   * Returns the whole comparison the search condition was made from. Unlike the index expression
+   * of Hive 2, which keeps the column and the first constant only, it keeps every value of an IN.
+   */
+  ExprNodeGenericFuncDesc getOriginalExpression(IndexSearchCondition condition);
 
   SerDeParametersShim getSerDeParametersShim(Configuration configuration,
       Properties properties, String serDeName) throws SerDeException;
@@ -35,7 +35,7 @@ final class DynamoDbHive1Shims implements DynamoDbHiveShims {
   }
 
   @Override
-  public ExprNodeGenericFuncDesc getIndexExpression(IndexSearchCondition condition) {
+  public ExprNodeGenericFuncDesc getOriginalExpression(IndexSearchCondition condition) {
     return condition.getComparisonExpr();
   }
 
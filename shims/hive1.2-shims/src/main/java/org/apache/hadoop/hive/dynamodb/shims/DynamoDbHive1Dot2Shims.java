@@ -22,7 +22,7 @@ class DynamoDbHive1Dot2Shims implements DynamoDbHiveShims {
   }
 
   @Override
-  public ExprNodeGenericFuncDesc getIndexExpression(IndexSearchCondition condition) {
+  public ExprNodeGenericFuncDesc getOriginalExpression(IndexSearchCondition condition) {
     return condition.getComparisonExpr();
   }
 
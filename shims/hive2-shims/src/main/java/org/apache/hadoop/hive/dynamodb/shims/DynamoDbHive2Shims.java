@@ -35,8 +35,8 @@ final class DynamoDbHive2Shims implements DynamoDbHiveShims {
   }
 
   @Override
-  public ExprNodeGenericFuncDesc getIndexExpression(IndexSearchCondition condition) {
-    return condition.getIndexExpr();
+  public ExprNodeGenericFuncDesc getOriginalExpression(IndexSearchCondition condition) {
+    return condition.getOriginalExpr();
   }
 
   /**